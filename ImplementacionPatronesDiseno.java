@@ -1,633 +1,6932 @@
-import java.util.*;
-
-// ==================== PATRON SINGLETON ====================
-
-/**
- * Implementación del patron Singleton para gestionar conexiones a base de datos.
- * Este patron garantiza una unica instancia en toda la aplicacion.
- */
-class GestorConexiones {
-    private static GestorConexiones instanciaUnica;
-    private String nombreBaseDatos;
-    private boolean estadoConexion;
-    private int totalConexiones;
-    
-    private GestorConexiones() {
-        this.nombreBaseDatos = "SistemaAcademicoDB";
-        this.estadoConexion = false;
-        this.totalConexiones = 0;
-    }
-    
-    public static GestorConexiones obtenerInstancia() {
-        if (instanciaUnica == null) {
-            synchronized (GestorConexiones.class) {
-                if (instanciaUnica == null) {
-                    instanciaUnica = new GestorConexiones();
-                }
-            }
-        }
-        return instanciaUnica;
-    }
-    
-    public void establecerConexion() {
-        if (!estadoConexion) {
-            estadoConexion = true;
-            totalConexiones++;
-            System.out.println("Conexion establecida con: " + nombreBaseDatos);
-            System.out.println("Número de conexion: " + totalConexiones);
-        } else {
-            System.out.println("La conexion ya esta activa");
-        }
-    }
-    
-    public void cerrarConexion() {
-        if (estadoConexion) {
-            estadoConexion = false;
-            System.out.println("Conexion cerrada");
-        }
-    }
-    
-    public void ejecutarComando(String comandoSQL) {
-        if (estadoConexion) {
-            System.out.println("Ejecutando: " + comandoSQL);
-        } else {
-            System.out.println("Error: Sin conexion a la base de datos");
-        }
-    }
-    
-    public void mostrarInformacion() {
-        System.out.println("\nInformacion del Gestor de Conexiones:");
-        System.out.println("Base de datos: " + nombreBaseDatos);
-        System.out.println("Estado: " + (estadoConexion ? "Conectado" : "Desconectado"));
-        System.out.println("Conexiones totales: " + totalConexiones);
-        System.out.println("Identificador: " + System.identityHashCode(this));
-    }
-}
-
-// ==================== PATRON BRIDGE ====================
-
-/**
- * Interfaz para dispositivos multimedia (Implementador)
- */
-interface DispositivoMultimedia {
-    void activar();
-    void desactivar();
-    void modificarVolumen(int nivel);
-    void seleccionarEntrada(String entrada);
-    boolean estaActivo();
-    int obtenerVolumen();
-    String obtenerModelo();
-}
-
-/**
- * Implementacion concreta: Televisor
- */
-class Televisor implements DispositivoMultimedia {
-    private boolean encendido;
-    private int volumen;
-    private String entradaActual;
-    private String marca;
-    
-    public Televisor(String marca) {
-        this.marca = marca;
-        this.encendido = false;
-        this.volumen = 20;
-        this.entradaActual = "HDMI1";
-    }
-    
-    @Override
-    public void activar() {
-        encendido = true;
-        System.out.println("Televisor " + marca + " encendido");
-    }
-    
-    @Override
-    public void desactivar() {
-        encendido = false;
-        System.out.println("Televisor " + marca + " apagado");
-    }
-    
-    @Override
-    public void modificarVolumen(int nivel) {
-        if (encendido) {
-            volumen = Math.max(0, Math.min(100, nivel));
-            System.out.println("Volumen del televisor ajustado a: " + volumen);
-        }
-    }
-    
-    @Override
-    public void seleccionarEntrada(String entrada) {
-        if (encendido) {
-            entradaActual = entrada;
-            System.out.println("Entrada cambiada a: " + entrada);
-        }
-    }
-    
-    @Override
-    public boolean estaActivo() {
-        return encendido;
-    }
-    
-    @Override
-    public int obtenerVolumen() {
-        return volumen;
-    }
-    
-    @Override
-    public String obtenerModelo() {
-        return "Televisor " + marca;
-    }
-}
-
-/**
- * Implementacion concreta: Sistema de Sonido
- */
-class SistemaSonido implements DispositivoMultimedia {
-    private boolean encendido;
-    private int volumen;
-    private String modoAudio;
-    private String modelo;
-    
-    public SistemaSonido(String modelo) {
-        this.modelo = modelo;
-        this.encendido = false;
-        this.volumen = 30;
-        this.modoAudio = "Estéreo";
-    }
-    
-    @Override
-    public void activar() {
-        encendido = true;
-        System.out.println("Sistema de sonido " + modelo + " activado");
-    }
-    
-    @Override
-    public void desactivar() {
-        encendido = false;
-        System.out.println("Sistema de sonido " + modelo + " desactivado");
-    }
-    
-    @Override
-    public void modificarVolumen(int nivel) {
-        if (encendido) {
-            volumen = Math.max(0, Math.min(80, nivel));
-            System.out.println("Volumen del sistema de sonido: " + volumen);
-        }
-    }
-    
-    @Override
-    public void seleccionarEntrada(String entrada) {
-        if (encendido) {
-            modoAudio = entrada;
-            System.out.println("Modo de audio cambiado a: " + entrada);
-        }
-    }
-    
-    @Override
-    public boolean estaActivo() {
-        return encendido;
-    }
-    
-    @Override
-    public int obtenerVolumen() {
-        return volumen;
-    }
-    
-    @Override
-    public String obtenerModelo() {
-        return "Sistema de Sonido " + modelo;
-    }
-}
-
-/**
- * Abstraccion: Control Universal
- */
-abstract class ControlUniversal {
-    protected DispositivoMultimedia dispositivo;
-    
-    public ControlUniversal(DispositivoMultimedia dispositivo) {
-        this.dispositivo = dispositivo;
-    }
-    
-    public abstract void encender();
-    public abstract void apagar();
-    public abstract void aumentarVolumen();
-    public abstract void disminuirVolumen();
-    public abstract void cambiarEntrada(String entrada);
-    
-    public void mostrarEstado() {
-        System.out.println("\nEstado del dispositivo:");
-        System.out.println("Modelo: " + dispositivo.obtenerModelo());
-        System.out.println("Encendido: " + (dispositivo.estaActivo() ? "Sí" : "No"));
-        System.out.println("Volumen actual: " + dispositivo.obtenerVolumen());
-    }
-}
-
-/**
- * Control basico
- */
-class ControlBasico extends ControlUniversal {
-    
-    public ControlBasico(DispositivoMultimedia dispositivo) {
-        super(dispositivo);
-        System.out.println("Control básico configurado para: " + dispositivo.obtenerModelo());
-    }
-    
-    @Override
-    public void encender() {
-        dispositivo.activar();
-    }
-    
-    @Override
-    public void apagar() {
-        dispositivo.desactivar();
-    }
-    
-    @Override
-    public void aumentarVolumen() {
-        dispositivo.modificarVolumen(dispositivo.obtenerVolumen() + 10);
-    }
-    
-    @Override
-    public void disminuirVolumen() {
-        dispositivo.modificarVolumen(dispositivo.obtenerVolumen() - 10);
-    }
-    
-    @Override
-    public void cambiarEntrada(String entrada) {
-        dispositivo.seleccionarEntrada(entrada);
-    }
-}
-
-/**
- * Control Avanzado
- */
-class ControlAvanzado extends ControlUniversal {
-    private int volumenPrevio;
-    private String entradaPrevia;
-    
-    public ControlAvanzado(DispositivoMultimedia dispositivo) {
-        super(dispositivo);
-        this.volumenPrevio = 20;
-        this.entradaPrevia = "HDMI1";
-        System.out.println("Control avanzado configurado para: " + dispositivo.obtenerModelo());
-    }
-    
-    @Override
-    public void encender() {
-        dispositivo.activar();
-    }
-    
-    @Override
-    public void apagar() {
-        dispositivo.desactivar();
-    }
-    
-    @Override
-    public void aumentarVolumen() {
-        dispositivo.modificarVolumen(dispositivo.obtenerVolumen() + 5);
-    }
-    
-    @Override
-    public void disminuirVolumen() {
-        dispositivo.modificarVolumen(dispositivo.obtenerVolumen() - 5);
-    }
-    
-    @Override
-    public void cambiarEntrada(String entrada) {
-        entradaPrevia = dispositivo instanceof Televisor ? "HDMI1" : "Estéreo";
-        dispositivo.seleccionarEntrada(entrada);
-    }
-    
-    public void silenciar() {
-        if (dispositivo.estaActivo()) {
-            if (dispositivo.obtenerVolumen() > 0) {
-                volumenPrevio = dispositivo.obtenerVolumen();
-                dispositivo.modificarVolumen(0);
-                System.out.println("Dispositivo silenciado");
-            } else {
-                dispositivo.modificarVolumen(volumenPrevio);
-                System.out.println("Silencio desactivado. Volumen: " + volumenPrevio);
-            }
-        }
-    }
-    
-    public void restaurarConfiguracion() {
-        if (dispositivo.estaActivo()) {
-            dispositivo.modificarVolumen(volumenPrevio);
-            dispositivo.seleccionarEntrada(entradaPrevia);
-            System.out.println("Configuración previa restaurada");
-        }
-    }
-}
-
-// ==================== PATRON BSERVER ====================
-
-/**
- * Interfaz para observadores del sistema de notificaciones
- */
-interface ObservadorNotificacion {
-    void recibirActualizacion(String mensaje);
-    String obtenerIdentificador();
-}
-
-/**
- * Sujeto observable: Sistema de Notificaciones Academicas
- */
-class SistemaNotificacionesAcademico {
-    private List<ObservadorNotificacion> observadores;
-    private String ultimoMensaje;
-    
-    public SistemaNotificacionesAcademico() {
-        this.observadores = new ArrayList<>();
-        this.ultimoMensaje = "Sistema inicializado";
-    }
-    
-    public void registrarObservador(ObservadorNotificacion observador) {
-        observadores.add(observador);
-        System.out.println("Nuevo observador registrado: " + observador.obtenerIdentificador());
-    }
-    
-    public void eliminarObservador(ObservadorNotificacion observador) {
-        if (observadores.remove(observador)) {
-            System.out.println("Observador eliminado: " + observador.obtenerIdentificador());
-        }
-    }
-    
-    private void notificarObservadores() {
-        for (ObservadorNotificacion observador : observadores) {
-            observador.recibirActualizacion(ultimoMensaje);
-        }
-    }
-    
-    public void publicarNotificacion(String titulo, String contenido) {
-        this.ultimoMensaje = "[" + titulo + "] " + contenido;
-        System.out.println("\n=== NUEVA NOTIFICACIÓN ===");
-        System.out.println("Título: " + titulo);
-        System.out.println("Contenido: " + contenido);
-        System.out.println("Observadores a notificar: " + observadores.size());
-        notificarObservadores();
-    }
-    
-    public void mostrarObservadoresActivos() {
-        System.out.println("\nObservadores activos en el sistema:");
-        if (observadores.isEmpty()) {
-            System.out.println("No hay observadores registrados");
-        } else {
-            for (ObservadorNotificacion obs : observadores) {
-                System.out.println("- " + obs.obtenerIdentificador());
-            }
-        }
-    }
-}
-
-/**
- * Observador: Estudiante
- */
-class Estudiante implements ObservadorNotificacion {
-    private String nombre;
-    private String matricula;
-    private List<String> notificacionesRecibidas;
-    
-    public Estudiante(String nombre, String matricula) {
-        this.nombre = nombre;
-        this.matricula = matricula;
-        this.notificacionesRecibidas = new ArrayList<>();
-    }
-    
-    @Override
-    public void recibirActualizacion(String mensaje) {
-        notificacionesRecibidas.add(mensaje);
-        System.out.println("Estudiante " + nombre + " recibió: " + mensaje);
-    }
-    
-    @Override
-    public String obtenerIdentificador() {
-        return "Estudiante " + nombre + " (" + matricula + ")";
-    }
-    
-    public void mostrarHistorial() {
-        System.out.println("\nHistorial de notificaciones para " + nombre + ":");
-        for (int i = 0; i < notificacionesRecibidas.size(); i++) {
-            System.out.println((i + 1) + ". " + notificacionesRecibidas.get(i));
-        }
-    }
-}
-
-/**
- * Observador: Profesor
- */
-class Profesor implements ObservadorNotificacion {
-    private String nombre;
-    private String departamento;
-    
-    public Profesor(String nombre, String departamento) {
-        this.nombre = nombre;
-        this.departamento = departamento;
-    }
-    
-    @Override
-    public void recibirActualizacion(String mensaje) {
-        System.out.println("Profesor " + nombre + " del departamento " + departamento + 
-                         " notificado: " + mensaje);
-    }
-    
-    @Override
-    public String obtenerIdentificador() {
-        return "Prof. " + nombre + " - " + departamento;
-    }
-}
-
-/**
- * Observador: Administrativo
- */
-class Administrativo implements ObservadorNotificacion {
-    private String nombre;
-    private String area;
-    
-    public Administrativo(String nombre, String area) {
-        this.nombre = nombre;
-        this.area = area;
-    }
-    
-    @Override
-    public void recibirActualizacion(String mensaje) {
-        System.out.println("Personal administrativo (" + area + "): " + nombre + 
-                         " procesa notificación: " + mensaje);
-    }
-    
-    @Override
-    public String obtenerIdentificador() {
-        return "Admin. " + nombre + " - " + area;
-    }
-}
-// ==================== CLASE PRINCIPAL ====================
-
-public class ImplementacionPatronesDiseno {
-    
-    public static void demostracionSingleton() {
-        System.out.println("\n" + "=".repeat(60));
-        System.out.println("DEMOSTRACIÓN DEL PATRÓN SINGLETON (CREACIONAL)");
-        System.out.println("=".repeat(60));
-        
-        System.out.println("\nObteniendo instancias del gestor de conexiones...");
-        
-        GestorConexiones gestor1 = GestorConexiones.obtenerInstancia();
-        GestorConexiones gestor2 = GestorConexiones.obtenerInstancia();
-        GestorConexiones gestor3 = GestorConexiones.obtenerInstancia();
-        
-        System.out.println("\nVerificación de instancia única:");
-        System.out.println("HashCode gestor1: " + System.identityHashCode(gestor1));
-        System.out.println("HashCode gestor2: " + System.identityHashCode(gestor2));
-        System.out.println("HashCode gestor3: " + System.identityHashCode(gestor3));
-        System.out.println("¿Todas las referencias apuntan al mismo objeto? " + 
-                         (gestor1 == gestor2 && gestor2 == gestor3));
-        
-        System.out.println("\nUtilizando el gestor de conexiones:");
-        gestor1.establecerConexion();
-        gestor2.ejecutarComando("SELECT * FROM Estudiantes");
-        gestor3.ejecutarComando("UPDATE Calificaciones SET nota = 9.5 WHERE id = 101");
-        
-        gestor1.mostrarInformacion();
-        
-        System.out.println("\nIntentando crear nueva conexión (debería reutilizar la existente):");
-        gestor2.establecerConexion();
-        
-        gestor3.cerrarConexion();
-        gestor1.mostrarInformacion();
-    }
-    
-    public static void demostracionBridge() {
-        System.out.println("\n" + "=".repeat(60));
-        System.out.println("DEMOSTRACIÓN DEL PATRÓN BRIDGE (ESTRUCTURAL)");
-        System.out.println("=".repeat(60));
-        
-        System.out.println("\nCreando dispositivos multimedia...");
-        DispositivoMultimedia televisorSala = new Televisor("Samsung");
-        DispositivoMultimedia sonidoHome = new SistemaSonido("Sony");
-        
-        System.out.println("\nConfigurando controles universales:");
-        ControlUniversal controlTV = new ControlBasico(televisorSala);
-        ControlUniversal controlAudio = new ControlAvanzado(sonidoHome);
-        
-        System.out.println("\n--- Operaciones con Control Básico ---");
-        controlTV.encender();
-        controlTV.aumentarVolumen();
-        controlTV.aumentarVolumen();
-        controlTV.cambiarEntrada("HDMI2");
-        controlTV.disminuirVolumen();
-        controlTV.mostrarEstado();
-        controlTV.apagar();
-        
-        System.out.println("\n--- Operaciones con Control Avanzado ---");
-        ControlAvanzado controlAudioAvanzado = (ControlAvanzado) controlAudio;
-        controlAudioAvanzado.encender();
-        controlAudioAvanzado.aumentarVolumen();
-        controlAudioAvanzado.aumentarVolumen();
-        controlAudioAvanzado.cambiarEntrada("Dolby Atmos");
-        controlAudioAvanzado.silenciar();
-        controlAudioAvanzado.silenciar();
-        controlAudioAvanzado.restaurarConfiguracion();
-        controlAudioAvanzado.mostrarEstado();
-        controlAudioAvanzado.apagar();
-        
-        System.out.println("\n--- Flexibilidad del patrón Bridge ---");
-        System.out.println("Configurando control avanzado con televisor:");
-        ControlUniversal controlCombinado = new ControlAvanzado(televisorSala);
-        controlCombinado.encender();
-        controlCombinado.cambiarEntrada("USB");
-        controlCombinado.mostrarEstado();
-    }
-    
-    public static void demostracionObserver() {
-        System.out.println("\n" + "=".repeat(60));
-        System.out.println("DEMOSTRACIÓN DEL PATRÓN OBSERVER (COMPORTAMIENTO)");
-        System.out.println("=".repeat(60));
-        
-        System.out.println("\nInicializando sistema de notificaciones académicas...");
-        SistemaNotificacionesAcademico sistema = new SistemaNotificacionesAcademico();
-        
-        System.out.println("\nRegistrando participantes del sistema académico:");
-        Estudiante estudiante1 = new Estudiante("Ana López", "A123456");
-        Estudiante estudiante2 = new Estudiante("Carlos Ruiz", "B789012");
-        Profesor profesor1 = new Profesor("Dr. Martínez", "Informática");
-        Administrativo admin1 = new Administrativo("María González", "Registro");
-        
-        sistema.registrarObservador(estudiante1);
-        sistema.registrarObservador(profesor1);
-        sistema.mostrarObservadoresActivos();
-        
-        System.out.println("\n--- Publicando notificaciones ---");
-        sistema.publicarNotificacion("Cambio de Horario", 
-                                   "Las clases del viernes se moverán al sábado en el mismo horario");
-        
-        pausa(800);
-        
-        sistema.publicarNotificacion("Entrega de Proyectos", 
-                                   "Fecha límite extendida hasta el próximo lunes a las 23:59");
-        
-        pausa(800);
-        
-        System.out.println("\nRegistrando nuevo observador...");
-        sistema.registrarObservador(estudiante2);
-        sistema.registrarObservador(admin1);
-        sistema.mostrarObservadoresActivos();
-        
-        sistema.publicarNotificacion("Mantenimiento del Sistema", 
-                                   "El campus virtual estará fuera de servicio el domingo de 2:00 a 6:00 AM");
-        
-        pausa(800);
-        
-        System.out.println("\nEliminando un observador...");
-        sistema.eliminarObservador(profesor1);
-        sistema.mostrarObservadoresActivos();
-        
-        sistema.publicarNotificacion("Resultados Exámenes", 
-                                   "Los resultados del parcial ya están disponibles en el portal");
-        
-        System.out.println("\n--- Resumen final ---");
-        estudiante1.mostrarHistorial();
-    }
-    
-    private static void pausa(int milisegundos) {
-        try {
-            Thread.sleep(milisegundos);
-        } catch (InterruptedException e) {
-            System.out.println("Pausa interrumpida");
-        }
-    }
-    
-    public static void main(String[] args) {
-        System.out.println("UNIVERSIDAD Rafael Urdaneta");
-        System.out.println("FACULTAD DE Ing computacion");
-        System.out.println("IMPLEMENTACIÓN DE PATRONES DE DISEÑO EN JAVA");
-        System.out.println("=============================================\n");
-        
-        System.out.println("Este programa demuestra tres patrones de diseño fundamentales:");
-        System.out.println("1. Singleton (Patrón Creacional)");
-        System.out.println("2. Bridge (Patrón Estructural)");
-        System.out.println("3. Observer (Patrón de Comportamiento)\n");
-        
-        demostracionSingleton();
-        pausa(1500);
-        
-        demostracionBridge();
-        pausa(1500);
-        
-        demostracionObserver();
-        
-        System.out.println("\n" + "=".repeat(60));
-        System.out.println("CONCLUSIÓN");
-        System.out.println("=".repeat(60));
-        
-        System.out.println("\nSe ha demostrado exitosamente:");
-        System.out.println("✓ Singleton: Gestión de una única instancia para conexiones a BD");
-        System.out.println("✓ Bridge: Separación entre controles y dispositivos multimedia");
-        System.out.println("✓ Observer: Sistema de notificaciones académicas eficiente");
-        
-        System.out.println("\n" + "=".repeat(60));
-        System.out.println("FIN DE LA DEMOSTRACIÓN");
-        System.out.println("=".repeat(60));
-    }
-}
-
+import java.io.*;
+import java.lang.invoke.VarHandle;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
+
+// ==================== REGISTRO DE EVENTOS ====================
+
+/**
+ * Nivel de un evento de registro; NINGUNO como nivel minimo los descarta todos
+ */
+enum NivelRegistro {
+    DEPURACION, INFORMACION, ADVERTENCIA, ERROR, NINGUNO
+}
+
+/**
+ * Destino de los eventos que pasaron el filtro de nivel
+ */
+interface DestinoRegistro {
+    void escribir(NivelRegistro nivel, String mensaje);
+    
+    /**
+     * Escribe varios eventos juntos. Por omision los escribe uno a uno.
+     */
+    default void escribirLote(NivelRegistro[] niveles, String[] mensajes, int cantidad) {
+        for (int i = 0; i < cantidad; i++) {
+            escribir(niveles[i], mensajes[i]);
+        }
+    }
+    
+    /**
+     * Espera a que lo escrito hasta ahora llegue a su destino final.
+     */
+    default void vaciar() {
+    }
+}
+
+/**
+ * Escribe en System.out, consultado en cada escritura para respetar las
+ * redirecciones. Un lote se imprime con una sola llamada, es decir, tomando
+ * el candado de la consola una vez.
+ */
+final class DestinoConsola implements DestinoRegistro {
+    static final DestinoConsola INSTANCIA = new DestinoConsola();
+    
+    private DestinoConsola() {
+    }
+    
+    @Override
+    public void escribir(NivelRegistro nivel, String mensaje) {
+        System.out.println(mensaje);
+    }
+    
+    @Override
+    public void escribirLote(NivelRegistro[] niveles, String[] mensajes, int cantidad) {
+        StringBuilder texto = new StringBuilder();
+        for (int i = 0; i < cantidad; i++) {
+            texto.append(mensajes[i]).append(System.lineSeparator());
+        }
+        System.out.print(texto);
+    }
+    
+    @Override
+    public void vaciar() {
+        System.out.flush();
+    }
+}
+
+/**
+ * Descarta todo; para mediciones donde el registro no debe influir
+ */
+final class DestinoNulo implements DestinoRegistro {
+    static final DestinoNulo INSTANCIA = new DestinoNulo();
+    
+    private DestinoNulo() {
+    }
+    
+    @Override
+    public void escribir(NivelRegistro nivel, String mensaje) {
+    }
+}
+
+/**
+ * Desacopla a quien registra del destino final con un buffer circular
+ * acotado y un hilo escritor que lo vacia en lotes. Los hilos que registran
+ * solo toman un candado breve para copiar la referencia al mensaje; la
+ * escritura lenta (consola, archivo) ocurre fuera de el. Con el buffer
+ * lleno se bloquea al que registra o se descarta el evento y se cuenta,
+ * segun la politica. Al cerrar, o al terminar la JVM, se escribe lo pendiente.
+ */
+class DestinoAsincrono implements DestinoRegistro, AutoCloseable {
+    private static final int LOTE = 1024;
+    
+    private final DestinoRegistro siguiente;
+    private final boolean bloquear;
+    private final NivelRegistro[] niveles;
+    private final String[] mensajes;
+    private final ReentrantLock candado;
+    private final Condition hayEventos;
+    private final Condition hayEspacio;
+    private final Condition escrito;
+    private final LongAdder descartados;
+    private final Thread escritor;
+    private int inicio;
+    private int cantidad;
+    private long aceptados;
+    private long escritos;
+    private boolean cerrado;
+    
+    /**
+     * La politica admitida es BLOQUEAR o DESCARTAR_NUEVO.
+     */
+    public DestinoAsincrono(DestinoRegistro siguiente, int capacidad, PoliticaDesbordamiento politica) {
+        if (capacidad < 1) {
+            throw new IllegalArgumentException("Capacidad invalida: " + capacidad);
+        }
+        if (politica != PoliticaDesbordamiento.BLOQUEAR && politica != PoliticaDesbordamiento.DESCARTAR_NUEVO) {
+            throw new IllegalArgumentException("Politica no admitida para el registro: " + politica);
+        }
+        this.siguiente = Objects.requireNonNull(siguiente);
+        this.bloquear = politica == PoliticaDesbordamiento.BLOQUEAR;
+        this.niveles = new NivelRegistro[capacidad];
+        this.mensajes = new String[capacidad];
+        this.candado = new ReentrantLock();
+        this.hayEventos = candado.newCondition();
+        this.hayEspacio = candado.newCondition();
+        this.escrito = candado.newCondition();
+        this.descartados = new LongAdder();
+        this.escritor = new Thread(this::escribirPendientes, "registro-asincrono");
+        this.escritor.setDaemon(true);
+        this.escritor.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "registro-asincrono-cierre"));
+    }
+    
+    @Override
+    public void escribir(NivelRegistro nivel, String mensaje) {
+        candado.lock();
+        try {
+            if (cerrado) {
+                descartados.increment();
+                return;
+            }
+            while (cantidad == mensajes.length) {
+                if (!bloquear) {
+                    descartados.increment();
+                    return;
+                }
+                hayEspacio.awaitUninterruptibly();
+            }
+            int posicion = (inicio + cantidad) % mensajes.length;
+            niveles[posicion] = nivel;
+            mensajes[posicion] = mensaje;
+            cantidad++;
+            aceptados++;
+            if (cantidad == 1) {
+                hayEventos.signal();
+            }
+        } finally {
+            candado.unlock();
+        }
+    }
+    
+    private void escribirPendientes() {
+        NivelRegistro[] lote = new NivelRegistro[Math.min(LOTE, mensajes.length)];
+        String[] textos = new String[lote.length];
+        while (true) {
+            int tomados;
+            candado.lock();
+            try {
+                while (cantidad == 0 && !cerrado) {
+                    hayEventos.awaitUninterruptibly();
+                }
+                if (cantidad == 0) {
+                    return;
+                }
+                tomados = Math.min(cantidad, lote.length);
+                for (int i = 0; i < tomados; i++) {
+                    int posicion = (inicio + i) % mensajes.length;
+                    lote[i] = niveles[posicion];
+                    textos[i] = mensajes[posicion];
+                    mensajes[posicion] = null;
+                }
+                inicio = (inicio + tomados) % mensajes.length;
+                cantidad -= tomados;
+                hayEspacio.signalAll();
+            } finally {
+                candado.unlock();
+            }
+            try {
+                siguiente.escribirLote(lote, textos, tomados);
+            } catch (RuntimeException e) {
+                descartados.add(tomados);
+            }
+            Arrays.fill(textos, 0, tomados, null);
+            candado.lock();
+            try {
+                escritos += tomados;
+                escrito.signalAll();
+            } finally {
+                candado.unlock();
+            }
+        }
+    }
+    
+    @Override
+    public void vaciar() {
+        candado.lock();
+        try {
+            long objetivo = aceptados;
+            while (escritos < objetivo && escritor.isAlive()) {
+                escrito.awaitUninterruptibly();
+            }
+        } finally {
+            candado.unlock();
+        }
+        siguiente.vaciar();
+    }
+    
+    public long obtenerDescartados() {
+        return descartados.sum();
+    }
+    
+    @Override
+    public void close() {
+        candado.lock();
+        try {
+            cerrado = true;
+            hayEventos.signal();
+        } finally {
+            candado.unlock();
+        }
+        try {
+            escritor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        siguiente.vaciar();
+    }
+}
+
+/**
+ * Punto unico de registro de eventos. El nivel se compara antes de tocar el
+ * mensaje: las variantes con Supplier solo lo construyen si el evento pasa
+ * el filtro, asi un nivel alto o el modo nulo no cuestan concatenaciones.
+ * Por omision escribe sincronicamente en consola a partir de INFORMACION.
+ */
+final class Registro {
+    private static volatile DestinoRegistro destino = DestinoConsola.INSTANCIA;
+    private static volatile int nivelMinimo = NivelRegistro.INFORMACION.ordinal();
+    
+    private Registro() {
+    }
+    
+    public static void configurar(DestinoRegistro nuevoDestino, NivelRegistro nivel) {
+        destino = Objects.requireNonNull(nuevoDestino);
+        nivelMinimo = nivel.ordinal();
+    }
+    
+    /**
+     * Modo nulo: ningun evento se construye ni se escribe.
+     */
+    public static void silenciar() {
+        configurar(DestinoNulo.INSTANCIA, NivelRegistro.NINGUNO);
+    }
+    
+    public static DestinoRegistro obtenerDestino() {
+        return destino;
+    }
+    
+    public static NivelRegistro obtenerNivel() {
+        return NivelRegistro.values()[nivelMinimo];
+    }
+    
+    public static boolean habilitado(NivelRegistro nivel) {
+        return nivel.ordinal() >= nivelMinimo;
+    }
+    
+    public static void registrar(NivelRegistro nivel, String mensaje) {
+        if (habilitado(nivel)) {
+            destino.escribir(nivel, mensaje);
+        }
+    }
+    
+    public static void registrar(NivelRegistro nivel, Supplier<String> mensaje) {
+        if (habilitado(nivel)) {
+            destino.escribir(nivel, mensaje.get());
+        }
+    }
+    
+    public static void depuracion(Supplier<String> mensaje) {
+        registrar(NivelRegistro.DEPURACION, mensaje);
+    }
+    
+    public static void info(String mensaje) {
+        registrar(NivelRegistro.INFORMACION, mensaje);
+    }
+    
+    public static void info(Supplier<String> mensaje) {
+        registrar(NivelRegistro.INFORMACION, mensaje);
+    }
+    
+    public static void advertencia(Supplier<String> mensaje) {
+        registrar(NivelRegistro.ADVERTENCIA, mensaje);
+    }
+    
+    public static void error(String mensaje) {
+        registrar(NivelRegistro.ERROR, mensaje);
+    }
+    
+    public static void error(Supplier<String> mensaje) {
+        registrar(NivelRegistro.ERROR, mensaje);
+    }
+}
+
+// ==================== TRAZAS ====================
+
+/**
+ * Tramos que se miden: ordenes de un control a su dispositivo, publicacion
+ * de una notificacion y entrega a cada observador
+ */
+enum CategoriaTraza {
+    DISPOSITIVO, PUBLICACION, ENTREGA
+}
+
+/**
+ * Punto de acceso estatico a las trazas, como Registro para los eventos.
+ * Cada tramo se mide con
+ *   long traza = Trazas.iniciar();
+ *   try { ... } finally { Trazas.terminar(traza, categoria, objetivo, operacion); }
+ * Desactivadas, iniciar es una lectura volatil; un tramo no muestreado
+ * devuelve 0 igual que desactivadas, asi terminar no hace nada. El
+ * objetivo (dispositivo, observador o tema) solo se convierte en nombre si
+ * el tramo fue muestreado.
+ */
+final class Trazas {
+    private static volatile RecolectorTrazas recolector;
+    
+    private Trazas() {
+    }
+    
+    /**
+     * Activa las trazas muestreando una de cada intervaloMuestreo operaciones
+     * raiz por hilo y guardando los ultimos capacidadEventos tramos para
+     * exportarlos. Reemplaza las trazas anteriores.
+     */
+    public static void configurar(int intervaloMuestreo, int capacidadEventos) {
+        recolector = new RecolectorTrazas(intervaloMuestreo, capacidadEventos);
+    }
+    
+    public static void desactivar() {
+        recolector = null;
+    }
+    
+    /**
+     * Trazas activas, o null si estan desactivadas.
+     */
+    public static RecolectorTrazas obtenerRecolector() {
+        return recolector;
+    }
+    
+    public static long iniciar() {
+        RecolectorTrazas actual = recolector;
+        return actual == null ? 0L : actual.iniciar();
+    }
+    
+    /**
+     * Como iniciar, desde un punto de medicion que recuerda el estado del
+     * ultimo hilo que paso por el.
+     */
+    public static long iniciar(PuntoTraza punto) {
+        RecolectorTrazas actual = recolector;
+        return actual == null ? 0L : actual.iniciar(punto);
+    }
+    
+    /**
+     * Como iniciar, pero el tramo solo se mide dentro de otro muestreado;
+     * para pasos que siempre ocurren dentro de una operacion ya medida.
+     */
+    public static long iniciarAnidado() {
+        RecolectorTrazas actual = recolector;
+        return actual == null ? 0L : actual.iniciarAnidado();
+    }
+    
+    public static void terminar(long inicio, CategoriaTraza categoria, Object objetivo, String operacion) {
+        if (inicio != 0L) {
+            RecolectorTrazas actual = recolector;
+            if (actual != null) {
+                actual.terminar(inicio, categoria, objetivo, operacion);
+            }
+        }
+    }
+    
+    /**
+     * Descarta el histograma del objetivo, por ejemplo al retirar un observador.
+     */
+    public static void olvidar(CategoriaTraza categoria, String nombre) {
+        RecolectorTrazas actual = recolector;
+        if (actual != null) {
+            actual.olvidar(categoria, nombre);
+        }
+    }
+}
+
+/**
+ * Punto de medicion: recuerda el estado de muestreo del ultimo hilo que
+ * paso por el, para que un tramo no muestreado no tenga que buscarlo en el
+ * ThreadLocal. Cada DispositivoTrazado tiene el suyo, y cada
+ * CanalObservador uno para sus entregas asincronas; solo se reescribe
+ * cuando lo usa otro hilo. Se lee sin sincronizar porque el estado solo se
+ * usa si es del hilo actual.
+ */
+final class PuntoTraza {
+    RecolectorTrazas.EstadoHilo ultimo;
+}
+
+/**
+ * Recolector de tramos. Cada hilo lleva una cuenta atras y mide uno de
+ * cada intervaloMuestreo tramos raiz; la cuenta empieza en un punto al
+ * azar para que los hilos no muestreen en fase. Los tramos anidados en uno
+ * muestreado se miden siempre, asi una publicacion muestreada trae todas
+ * sus entregas sincronas. Un tramo no muestreado solo descuenta en el
+ * estado de su hilo, sin contadores compartidos ni numeros aleatorios, y
+ * desde un PuntoTraza ni siquiera consulta el ThreadLocal. Al registrar un
+ * tramo muestreado su objetivo se convierte en nombre: modelo del
+ * dispositivo, identificador del observador o tema. Cada nombre tiene
+ * un histograma de una sola franja por categoria, hasta MAXIMO_OBJETIVOS
+ * nombres; los demas se agrupan en OTROS. Retirar un observador olvida su
+ * histograma. Los tramos tambien van a un anillo de eventos para exportar
+ * en formato Chrome Trace Event, que abren chrome://tracing y Perfetto.
+ * Cada hueco del anillo lleva un numero de secuencia que el escritor anula
+ * antes de escribir y publica al terminar, para que la exportacion
+ * descarte los huecos que se estan sobrescribiendo.
+ */
+final class RecolectorTrazas {
+    static final int MAXIMO_OBJETIVOS = 256;
+    static final String OTROS = "(otros)";
+    private static final long NO_MUESTREADA = 0L;
+    
+    /**
+     * Estado de muestreo de un hilo, compartido por los recolectores
+     * sucesivos: la generacion dice de cual es la cuenta, y uno nuevo la
+     * reinicia la primera vez que el hilo pasa por el.
+     */
+    static final class EstadoHilo {
+        final long hilo = Thread.currentThread().getId();
+        int generacion;
+        int restantes;
+        int profundidad;
+    }
+    
+    private static final ThreadLocal<EstadoHilo> ESTADOS = ThreadLocal.withInitial(EstadoHilo::new);
+    private static final AtomicInteger GENERACIONES = new AtomicInteger();
+    
+    private final int generacion;
+    private final int intervaloMuestreo;
+    private final long origenNanos;
+    private final EnumMap<CategoriaTraza, ConcurrentHashMap<String, HistogramaLatencia>> histogramas;
+    private final LongAdder muestreados;
+    private final int mascara;
+    private final AtomicLong cursor;
+    private final AtomicLongArray secuencias;
+    private final long[] inicios;
+    private final long[] duraciones;
+    private final long[] hilos;
+    private final CategoriaTraza[] categorias;
+    private final String[] objetivos;
+    private final String[] operaciones;
+    
+    RecolectorTrazas(int intervaloMuestreo, int capacidadEventos) {
+        if (intervaloMuestreo < 1) {
+            throw new IllegalArgumentException("Intervalo de muestreo invalido: " + intervaloMuestreo);
+        }
+        if (capacidadEventos < 1 || Integer.bitCount(capacidadEventos) != 1) {
+            throw new IllegalArgumentException("La capacidad debe ser potencia de dos: " + capacidadEventos);
+        }
+        this.generacion = GENERACIONES.incrementAndGet();
+        this.intervaloMuestreo = intervaloMuestreo;
+        this.origenNanos = System.nanoTime();
+        this.histogramas = new EnumMap<>(CategoriaTraza.class);
+        for (CategoriaTraza categoria : CategoriaTraza.values()) {
+            histogramas.put(categoria, new ConcurrentHashMap<>());
+        }
+        this.muestreados = new LongAdder();
+        this.mascara = capacidadEventos - 1;
+        this.cursor = new AtomicLong();
+        this.secuencias = new AtomicLongArray(capacidadEventos);
+        this.inicios = new long[capacidadEventos];
+        this.duraciones = new long[capacidadEventos];
+        this.hilos = new long[capacidadEventos];
+        this.categorias = new CategoriaTraza[capacidadEventos];
+        this.objetivos = new String[capacidadEventos];
+        this.operaciones = new String[capacidadEventos];
+    }
+    
+    /**
+     * El camino no muestreado es corto para que el JIT lo incorpore en cada
+     * punto de medicion; el resto vive en metodos aparte.
+     */
+    long iniciar() {
+        return iniciar(estadoHilo());
+    }
+    
+    long iniciar(PuntoTraza punto) {
+        return iniciar(estadoHilo(punto));
+    }
+    
+    private long iniciar(EstadoHilo estado) {
+        if (estado.profundidad == 0 && --estado.restantes > 0) {
+            return NO_MUESTREADA;
+        }
+        return iniciarMuestreada(estado);
+    }
+    
+    long iniciarAnidado() {
+        EstadoHilo estado = estadoHilo();
+        return estado.profundidad == 0 ? NO_MUESTREADA : iniciarMuestreada(estado);
+    }
+    
+    private EstadoHilo estadoHilo(PuntoTraza punto) {
+        EstadoHilo estado = punto.ultimo;
+        if (estado == null || estado.hilo != Thread.currentThread().getId() || estado.generacion != generacion) {
+            estado = estadoHilo();
+            punto.ultimo = estado;
+        }
+        return estado;
+    }
+    
+    private EstadoHilo estadoHilo() {
+        EstadoHilo estado = ESTADOS.get();
+        if (estado.generacion != generacion) {
+            estado.generacion = generacion;
+            estado.restantes = 1 + ThreadLocalRandom.current().nextInt(intervaloMuestreo);
+            estado.profundidad = 0;
+        }
+        return estado;
+    }
+    
+    /**
+     * El inicio de un tramo muestreado nunca es NO_MUESTREADA. Se deja en
+     * un solo metodo, demasiado grande para que el JIT lo copie en cada
+     * punto de medicion por el que pasa uno de cada intervaloMuestreo tramos.
+     */
+    private long iniciarMuestreada(EstadoHilo estado) {
+        if (estado.profundidad == 0) {
+            estado.restantes = intervaloMuestreo;
+        }
+        estado.profundidad++;
+        long ahora = System.nanoTime();
+        return ahora == NO_MUESTREADA ? 1L : ahora;
+    }
+    
+    /**
+     * Solo se invoca con tramos muestreados. Si el tramo se abrio con otro
+     * recolector, antes de reconfigurar las trazas, se ignora.
+     */
+    void terminar(long inicio, CategoriaTraza categoria, Object objetivo, String operacion) {
+        long duracion = System.nanoTime() - inicio;
+        EstadoHilo estado = estadoHilo();
+        if (estado.profundidad == 0) {
+            return;
+        }
+        estado.profundidad--;
+        String nombre = nombreDe(objetivo);
+        histogramaDe(categoria, nombre).registrar(duracion);
+        muestreados.increment();
+        
+        long indice = cursor.getAndIncrement();
+        int hueco = (int) (indice & mascara);
+        secuencias.lazySet(hueco, 0L);
+        VarHandle.storeStoreFence();
+        inicios[hueco] = inicio;
+        duraciones[hueco] = duracion;
+        hilos[hueco] = estado.hilo;
+        categorias[hueco] = categoria;
+        objetivos[hueco] = nombre;
+        operaciones[hueco] = operacion;
+        secuencias.lazySet(hueco, indice + 1);
+    }
+    
+    /**
+     * El limite es aproximado: varios hilos pueden crear a la vez los
+     * ultimos nombres que caben.
+     */
+    private HistogramaLatencia histogramaDe(CategoriaTraza categoria, String nombre) {
+        ConcurrentHashMap<String, HistogramaLatencia> porObjetivo = histogramas.get(categoria);
+        HistogramaLatencia histograma = porObjetivo.get(nombre);
+        if (histograma == null) {
+            String clave = porObjetivo.size() < MAXIMO_OBJETIVOS ? nombre : OTROS;
+            histograma = porObjetivo.computeIfAbsent(clave, ignorada -> new HistogramaLatencia(1));
+        }
+        return histograma;
+    }
+    
+    private static String nombreDe(Object objetivo) {
+        if (objetivo instanceof DispositivoMultimedia) {
+            return ((DispositivoMultimedia) objetivo).obtenerModelo();
+        }
+        if (objetivo instanceof ObservadorNotificacion) {
+            return ((ObservadorNotificacion) objetivo).obtenerIdentificador();
+        }
+        return String.valueOf(objetivo);
+    }
+    
+    public void olvidar(CategoriaTraza categoria, String nombre) {
+        histogramas.get(categoria).remove(nombre);
+    }
+    
+    public int contarObjetivos(CategoriaTraza categoria) {
+        return histogramas.get(categoria).size();
+    }
+    
+    public long obtenerMuestreados() {
+        return muestreados.sum();
+    }
+    
+    public int obtenerIntervaloMuestreo() {
+        return intervaloMuestreo;
+    }
+    
+    /**
+     * Resumen de latencia por objetivo de la categoria, del mas lento al mas
+     * rapido segun su p99; con ENTREGA es el informe de observadores lentos.
+     */
+    public List<ResumenLatencia> obtenerMasLentos(CategoriaTraza categoria, int cantidad) {
+        List<ResumenLatencia> resumenes = new ArrayList<>();
+        for (Map.Entry<String, HistogramaLatencia> entrada : histogramas.get(categoria).entrySet()) {
+            resumenes.add(entrada.getValue().resumir(entrada.getKey()));
+        }
+        resumenes.sort(Comparator.comparingLong(ResumenLatencia::obtenerP99).reversed());
+        return resumenes.subList(0, Math.min(cantidad, resumenes.size()));
+    }
+    
+    public void mostrarInforme(int cantidad) {
+        System.out.println("\nTrazas: " + muestreados.sum() + " tramos muestreados (1 de cada " +
+                         intervaloMuestreo + " tramos raiz por hilo)");
+        for (CategoriaTraza categoria : CategoriaTraza.values()) {
+            List<ResumenLatencia> lentos = obtenerMasLentos(categoria, cantidad);
+            if (!lentos.isEmpty()) {
+                System.out.println(categoria + " mas lentos:");
+                for (ResumenLatencia resumen : lentos) {
+                    System.out.println("  " + resumen);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Escribe los tramos retenidos en formato Chrome Trace Event (eventos
+     * completos "X", tiempos en microsegundos) y devuelve cuantos escribio.
+     */
+    public int exportar(Path destino) throws IOException {
+        int escritos = 0;
+        try (BufferedWriter escritor = Files.newBufferedWriter(destino, StandardCharsets.UTF_8)) {
+            escritor.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+            long hasta = cursor.get();
+            for (long indice = Math.max(0, hasta - inicios.length); indice < hasta; indice++) {
+                int hueco = (int) (indice & mascara);
+                if (secuencias.get(hueco) != indice + 1) {
+                    continue;
+                }
+                long inicio = inicios[hueco];
+                long duracion = duraciones[hueco];
+                long hilo = hilos[hueco];
+                CategoriaTraza categoria = categorias[hueco];
+                String objetivo = objetivos[hueco];
+                String operacion = operaciones[hueco];
+                VarHandle.acquireFence();
+                if (secuencias.get(hueco) != indice + 1) {
+                    continue;
+                }
+                escritor.write(escritos == 0 ? "\n" : ",\n");
+                escritor.write(String.format(Locale.ROOT,
+                    "{\"name\":%s,\"cat\":\"%s\",\"ph\":\"X\",\"ts\":%.3f,\"dur\":%.3f,\"pid\":1,\"tid\":%d," +
+                    "\"args\":{\"objetivo\":%s}}",
+                    comoJson(operacion), categoria, (inicio - origenNanos) / 1000.0, duracion / 1000.0, hilo,
+                    comoJson(objetivo)));
+                escritos++;
+            }
+            escritor.write("\n]}\n");
+        }
+        return escritos;
+    }
+    
+    private static String comoJson(String texto) {
+        StringBuilder json = new StringBuilder(texto.length() + 2).append('"');
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+}
+
+// ==================== PATRON SINGLETON ====================
+
+/**
+ * Implementación del patron Singleton para gestionar conexiones a base de datos.
+ * Este patron garantiza una unica instancia en toda la aplicacion
+ * para cada base de datos: obtenerInstancia() devuelve la del sistema
+ * academico y obtenerInstancia(nombre) la de cada facultad.
+ */
+class GestorConexiones {
+    static final String BASE_DATOS_PREDETERMINADA = "SistemaAcademicoDB";
+    private static final ConcurrentHashMap<String, GestorConexiones> GESTORES = new ConcurrentHashMap<>();
+    
+    private final String nombreBaseDatos;
+    private final AtomicBoolean estadoConexion;
+    private final MetricasConexiones metricas;
+    private volatile boolean metricasHabilitadas;
+    private volatile PoolConexiones pool;
+    private volatile LoteComandos canalizacion;
+    private volatile CacheSentencias cacheSentencias;
+    private volatile CacheResultados cacheResultados;
+    private volatile ToleranciaFallos tolerancia;
+    private final ExecutorService despachoLotes;
+    
+    private GestorConexiones(String nombreBaseDatos) {
+        this.nombreBaseDatos = nombreBaseDatos;
+        this.estadoConexion = new AtomicBoolean(false);
+        this.metricas = new MetricasConexiones();
+        this.metricasHabilitadas = true;
+        this.cacheSentencias = new CacheSentencias(256);
+        this.despachoLotes = Executors.newCachedThreadPool(tarea -> {
+            Thread hilo = new Thread(tarea, "despacho-lotes-" + nombreBaseDatos);
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+    
+    /**
+     * La JVM inicializa la clase contenedora una sola vez, al primer acceso,
+     * y publica la instancia con las garantias de la inicializacion de
+     * clases: el camino rapido es una lectura de campo estatico final, sin
+     * volatile ni candados, y nunca ve un gestor a medio construir.
+     */
+    private static final class Contenedor {
+        static final GestorConexiones INSTANCIA =
+            GESTORES.computeIfAbsent(BASE_DATOS_PREDETERMINADA, GestorConexiones::new);
+    }
+    
+    public static GestorConexiones obtenerInstancia() {
+        return Contenedor.INSTANCIA;
+    }
+    
+    /**
+     * Gestor de la base de datos indicada, uno por facultad o inquilino,
+     * creado la primera vez que se pide. Cada gestor tiene su propio pool,
+     * caches, canalizacion y metricas, de modo que la carga sobre una base
+     * no consume las conexiones de otra. La busqueda de un gestor existente
+     * es una lectura de ConcurrentHashMap, sin candados; solo la creacion
+     * se sincroniza, y por clave.
+     */
+    public static GestorConexiones obtenerInstancia(String nombreBaseDatos) {
+        GestorConexiones gestor = GESTORES.get(nombreBaseDatos);
+        if (gestor != null) {
+            return gestor;
+        }
+        if (nombreBaseDatos.equals(BASE_DATOS_PREDETERMINADA)) {
+            return Contenedor.INSTANCIA;
+        }
+        return GESTORES.computeIfAbsent(nombreBaseDatos, GestorConexiones::new);
+    }
+    
+    /**
+     * Retira el gestor del registro, cierra su pool y detiene el despacho
+     * de sus lotes. El gestor predeterminado no puede retirarse.
+     */
+    public static boolean eliminarInstancia(String nombreBaseDatos) {
+        if (nombreBaseDatos.equals(BASE_DATOS_PREDETERMINADA)) {
+            throw new IllegalArgumentException("No se puede eliminar el gestor predeterminado");
+        }
+        GestorConexiones gestor = GESTORES.remove(nombreBaseDatos);
+        if (gestor == null) {
+            return false;
+        }
+        gestor.cerrarPool();
+        gestor.despachoLotes.shutdown();
+        gestor.cerrarConexion();
+        return true;
+    }
+    
+    public static Set<String> obtenerBasesDatos() {
+        return Collections.unmodifiableSet(new TreeSet<>(GESTORES.keySet()));
+    }
+    
+    public String obtenerNombreBaseDatos() {
+        return nombreBaseDatos;
+    }
+    
+    /**
+     * Pasa de desconectado a conectado con un compareAndSet, de modo que
+     * entre varios hilos solo uno gana la transicion y la cuenta de
+     * conexiones crece una vez por transicion. Devuelve true si este hilo
+     * establecio la conexion.
+     */
+    public boolean establecerConexion() {
+        if (estadoConexion.compareAndSet(false, true)) {
+            metricas.registrarConexionAbierta();
+            Registro.info(() -> "Conexion establecida con: " + nombreBaseDatos);
+            Registro.info(() -> "Número de conexion: " + metricas.obtenerConexionesAbiertas());
+            return true;
+        }
+        Registro.info("La conexion ya esta activa");
+        return false;
+    }
+    
+    /**
+     * Devuelve true si este hilo cerro la conexion.
+     */
+    public boolean cerrarConexion() {
+        if (estadoConexion.compareAndSet(true, false)) {
+            Registro.info("Conexion cerrada");
+            return true;
+        }
+        return false;
+    }
+    
+    public boolean estaConectado() {
+        return estadoConexion.get();
+    }
+    
+    /**
+     * Activa el modo pool: cada comando se ejecuta sobre una conexion prestada
+     * por un pool acotado en lugar de la conexion logica unica.
+     */
+    public synchronized void configurarPool(FuenteConexiones fuente, ConfiguracionPool configuracion) {
+        if (pool != null) {
+            pool.cerrar();
+        }
+        pool = new PoolConexiones(nombreBaseDatos, fuente, configuracion, metricas);
+        if (tolerancia != null) {
+            habilitarToleranciaFallos(tolerancia.obtenerConfiguracion());
+        }
+        Registro.info(() -> "Pool configurado para " + nombreBaseDatos + ": " +
+                            configuracion.obtenerMinimoConexiones() + "-" +
+                            configuracion.obtenerMaximoConexiones() + " conexiones");
+    }
+    
+    public synchronized void cerrarPool() {
+        deshabilitarCanalizacion();
+        deshabilitarToleranciaFallos();
+        if (pool != null) {
+            pool.cerrar();
+            pool = null;
+            Registro.info("Pool de conexiones cerrado");
+        }
+    }
+    
+    /**
+     * Presta una conexion del pool. Debe devolverse con close(), idealmente
+     * mediante try-with-resources.
+     */
+    public ConexionPrestada prestarConexion() {
+        PoolConexiones actual = pool;
+        if (actual == null) {
+            throw new ExcepcionConexion("El pool de conexiones no esta configurado");
+        }
+        return actual.prestar();
+    }
+    
+    /**
+     * Crea un lote explicito que agrupa comandos y los envia en un solo viaje
+     * al alcanzar el tamaño maximo o al vencer la ventana de tiempo. El lote
+     * debe cerrarse, idealmente mediante try-with-resources, para despachar
+     * lo que quede pendiente. Todos los lotes del gestor se despachan por
+     * los mismos hilos, que terminan al quedar ociosos.
+     */
+    public LoteComandos crearLote(int tamanoMaximo, long ventanaMs) {
+        if (pool == null) {
+            throw new ExcepcionConexion("El pool de conexiones no esta configurado");
+        }
+        return new LoteComandos(this, despachoLotes, tamanoMaximo, ventanaMs, 1);
+    }
+    
+    /**
+     * Activa el modo canalizado: ejecutarComandoAsincrono agrupa los comandos
+     * en lotes y mantiene hasta lotesEnVuelo lotes ejecutandose a la vez.
+     */
+    public synchronized void habilitarCanalizacion(int tamanoMaximo, long ventanaMs, int lotesEnVuelo) {
+        if (pool == null) {
+            throw new ExcepcionConexion("El pool de conexiones no esta configurado");
+        }
+        deshabilitarCanalizacion();
+        canalizacion = new LoteComandos(this, despachoLotes, tamanoMaximo, ventanaMs, lotesEnVuelo);
+    }
+    
+    public synchronized void deshabilitarCanalizacion() {
+        if (canalizacion != null) {
+            canalizacion.cerrar();
+            canalizacion = null;
+        }
+    }
+    
+    /**
+     * Encola el comando sin bloquear al llamador; el resultado llega por el futuro.
+     */
+    public CompletableFuture<String> ejecutarComandoAsincrono(String comandoSQL) {
+        LoteComandos actual = canalizacion;
+        if (actual == null) {
+            return CompletableFuture.failedFuture(new ExcepcionConexion("El modo canalizado no esta habilitado"));
+        }
+        return actual.agregar(comandoSQL);
+    }
+    
+    public void ejecutarComando(String comandoSQL) {
+        boolean medir = metricasHabilitadas;
+        long inicio = medir ? System.nanoTime() : 0L;
+        boolean exito = false;
+        PoolConexiones actual = pool;
+        if (actual != null) {
+            try {
+                ejecutarEnPool(actual, TipoComando.de(comandoSQL).esLectura(), conexion -> conexion.ejecutar(comandoSQL));
+                registrarEscritura(comandoSQL);
+                exito = true;
+            } catch (RuntimeException e) {
+                Registro.error(() -> "Error: " + e.getMessage());
+            }
+        } else if (estadoConexion.get()) {
+            Registro.info(() -> "Ejecutando: " + comandoSQL);
+            registrarEscritura(comandoSQL);
+            exito = true;
+        } else {
+            Registro.error("Error: Sin conexion a la base de datos");
+        }
+        if (medir) {
+            metricas.registrarComando(TipoComando.de(comandoSQL), System.nanoTime() - inicio, exito);
+        }
+    }
+    
+    /**
+     * Reemplaza la cache de sentencias preparadas por una de la capacidad indicada.
+     */
+    public void configurarCacheSentencias(int capacidad) {
+        cacheSentencias = new CacheSentencias(capacidad);
+    }
+    
+    /**
+     * Devuelve la sentencia analizada para la plantilla, reutilizandola si ya
+     * estaba en cache bajo el mismo SQL normalizado.
+     */
+    public SentenciaPreparada prepararSentencia(String plantillaSQL) {
+        return cacheSentencias.obtener(plantillaSQL);
+    }
+    
+    /**
+     * Ejecuta una plantilla con parametros '?' enlazados en orden.
+     */
+    public void ejecutarComando(String plantillaSQL, Object... parametros) {
+        boolean medir = metricasHabilitadas;
+        long inicio = medir ? System.nanoTime() : 0L;
+        SentenciaPreparada sentencia;
+        try {
+            sentencia = cacheSentencias.obtener(plantillaSQL);
+        } catch (IllegalArgumentException e) {
+            Registro.error(() -> "Error: " + e.getMessage());
+            if (medir) {
+                metricas.registrarComando(TipoComando.de(plantillaSQL), System.nanoTime() - inicio, false);
+            }
+            return;
+        }
+        boolean exito = false;
+        PoolConexiones actual = pool;
+        if (actual != null) {
+            try {
+                ejecutarEnPool(actual, sentencia.obtenerTipo().esLectura(),
+                               conexion -> conexion.ejecutarPreparada(sentencia, parametros));
+                registrarEscritura(sentencia);
+                exito = true;
+            } catch (RuntimeException e) {
+                Registro.error(() -> "Error: " + e.getMessage());
+            }
+        } else if (estadoConexion.get()) {
+            Registro.info(() -> "Ejecutando: " + sentencia.enlazar(parametros));
+            registrarEscritura(sentencia);
+            exito = true;
+        } else {
+            Registro.error("Error: Sin conexion a la base de datos");
+        }
+        if (medir) {
+            metricas.registrarComando(sentencia.obtenerTipo(), System.nanoTime() - inicio, exito);
+        }
+    }
+    
+    /**
+     * Activa la cache de resultados para lecturas. Las escrituras que pasan por
+     * este gestor invalidan las lecturas en cache que nombran la tabla
+     * afectada, tambien en un JOIN o una subconsulta.
+     */
+    public void habilitarCacheResultados(int capacidad, long ttlMs) {
+        cacheResultados = new CacheResultados(capacidad, ttlMs);
+    }
+    
+    public void deshabilitarCacheResultados() {
+        cacheResultados = null;
+    }
+    
+    public String consultar(String comandoSQL) {
+        return consultar(comandoSQL, true);
+    }
+    
+    /**
+     * Ejecuta el comando sobre el pool y devuelve su resultado. Las lecturas
+     * se sirven desde la cache de resultados si esta activa y usarCache es true.
+     */
+    public String consultar(String comandoSQL, boolean usarCache) {
+        PoolConexiones actual = pool;
+        if (actual == null) {
+            ejecutarComando(comandoSQL);
+            return null;
+        }
+        boolean medir = metricasHabilitadas;
+        long inicio = medir ? System.nanoTime() : 0L;
+        CacheResultados cache = cacheResultados;
+        SentenciaPreparada sentencia = SentenciaPreparada.analizar(SentenciaPreparada.normalizar(comandoSQL));
+        boolean cacheable = cache != null && usarCache && sentencia.obtenerTipo().esLectura();
+        long generacion = 0;
+        String resultado = null;
+        if (cacheable) {
+            resultado = cache.obtener(sentencia.obtenerSqlNormalizado(), sentencia.obtenerTablas());
+            generacion = cache.generacionDe(sentencia.obtenerTablas());
+        }
+        if (resultado == null) {
+            try {
+                resultado = ejecutarEnPool(actual, sentencia.obtenerTipo().esLectura(),
+                                           conexion -> conexion.ejecutar(comandoSQL));
+                if (cacheable) {
+                    cache.guardar(sentencia.obtenerSqlNormalizado(), sentencia.obtenerTablas(), resultado, generacion);
+                } else {
+                    registrarEscritura(sentencia);
+                }
+            } catch (RuntimeException e) {
+                Registro.error(() -> "Error: " + e.getMessage());
+            }
+        }
+        if (medir) {
+            metricas.registrarComando(sentencia.obtenerTipo(), System.nanoTime() - inicio, resultado != null);
+        }
+        return resultado;
+    }
+    
+    /**
+     * Ejecuta la llamada sobre una conexion prestada; con la tolerancia a
+     * fallos activa, lo hace con tiempo limite, reintentos si es una lectura
+     * y circuito de proteccion.
+     */
+    private <T> T ejecutarEnPool(PoolConexiones actual, boolean lectura, Function<ConexionPrestada, T> llamada) {
+        ToleranciaFallos proteccion = tolerancia;
+        if (proteccion == null) {
+            try (ConexionPrestada conexion = actual.prestar()) {
+                return llamada.apply(conexion);
+            }
+        }
+        return proteccion.ejecutar(lectura, actual, llamada);
+    }
+    
+    /**
+     * Activa tiempo limite por comando, reintentos para lecturas y circuito
+     * de proteccion sobre los comandos que pasan por el pool. Requiere el
+     * pool configurado: sus hilos se dimensionan con su maximo, y se
+     * detienen al cerrarlo.
+     */
+    public synchronized void habilitarToleranciaFallos(ConfiguracionTolerancia configuracion) {
+        if (pool == null) {
+            throw new IllegalStateException("La tolerancia a fallos requiere el pool de conexiones configurado");
+        }
+        deshabilitarToleranciaFallos();
+        tolerancia = new ToleranciaFallos(nombreBaseDatos, configuracion,
+                                          pool.obtenerConfiguracion().obtenerMaximoConexiones());
+    }
+    
+    public synchronized void deshabilitarToleranciaFallos() {
+        if (tolerancia != null) {
+            tolerancia.close();
+            tolerancia = null;
+        }
+    }
+    
+    /**
+     * Estado del circuito de proteccion, o null si la tolerancia no esta activa.
+     */
+    public EstadoCircuito obtenerEstadoCircuito() {
+        ToleranciaFallos proteccion = tolerancia;
+        return proteccion == null ? null : proteccion.obtenerCircuito().obtenerEstado();
+    }
+    
+    private void registrarEscritura(String comandoSQL) {
+        if (cacheResultados != null) {
+            registrarEscritura(SentenciaPreparada.analizar(SentenciaPreparada.normalizar(comandoSQL)));
+        }
+    }
+    
+    private void registrarEscritura(SentenciaPreparada sentencia) {
+        CacheResultados cache = cacheResultados;
+        if (cache != null && !sentencia.obtenerTipo().esLectura() && sentencia.obtenerTabla() != null) {
+            cache.invalidarTabla(sentencia.obtenerTabla());
+        }
+    }
+    
+    /**
+     * Envia un lote de LoteComandos por una conexion del pool, pasando por
+     * la tolerancia a fallos como los comandos sueltos. Solo se reintenta si
+     * todos los comandos del lote son lecturas. El pool se lee al despachar,
+     * no al crear el lote, para que los lotes sigan a configurarPool.
+     */
+    List<String> ejecutarLote(List<String> comandosSQL) {
+        PoolConexiones actual = pool;
+        if (actual == null) {
+            throw new ExcepcionConexion("El pool de conexiones no esta configurado");
+        }
+        boolean lecturas = true;
+        for (String comandoSQL : comandosSQL) {
+            if (!TipoComando.de(comandoSQL).esLectura()) {
+                lecturas = false;
+                break;
+            }
+        }
+        return ejecutarEnPool(actual, lecturas, conexion -> conexion.ejecutarLote(comandosSQL));
+    }
+    
+    /**
+     * Invocado por LoteComandos tras cada viaje, con el numero de comandos
+     * que se aplicaron. Las escrituras invalidan la cache aunque el lote
+     * haya fallado, porque un error no garantiza que no llegaran a aplicarse.
+     * La latencia se registra una vez por viaje, bajo el tipo de sus
+     * comandos o como OTRO si el lote los mezcla.
+     */
+    void registrarLote(List<String> comandosSQL, int aplicados, long duracionNanos) {
+        if (cacheResultados != null) {
+            for (String comandoSQL : comandosSQL) {
+                registrarEscritura(comandoSQL);
+            }
+        }
+        if (metricasHabilitadas) {
+            TipoComando tipo = TipoComando.de(comandosSQL.get(0));
+            for (String comandoSQL : comandosSQL) {
+                if (TipoComando.de(comandoSQL) != tipo) {
+                    tipo = TipoComando.OTRO;
+                    break;
+                }
+            }
+            metricas.registrarLote(tipo, aplicados, comandosSQL.size() - aplicados, duracionNanos);
+        }
+    }
+    
+    /**
+     * Permite medir el costo de las metricas desactivandolas.
+     */
+    public void habilitarMetricas(boolean habilitadas) {
+        metricasHabilitadas = habilitadas;
+    }
+    
+    /**
+     * Copia de las metricas leida sin bloquear a los hilos que ejecutan comandos.
+     */
+    public InstantaneaMetricas obtenerMetricas() {
+        return metricas.instantanea();
+    }
+    
+    public void mostrarInformacion() {
+        System.out.println("\nInformacion del Gestor de Conexiones:");
+        System.out.println("Base de datos: " + nombreBaseDatos);
+        System.out.println("Estado: " + (estadoConexion.get() ? "Conectado" : "Desconectado"));
+        InstantaneaMetricas instantanea = metricas.instantanea();
+        System.out.println("Conexiones totales: " + instantanea.obtenerConexionesAbiertas());
+        PoolConexiones actual = pool;
+        if (actual != null) {
+            System.out.println("Pool: " + actual.obtenerConexionesAbiertas() + " abiertas, " +
+                             actual.obtenerConexionesInactivas() + " inactivas, " +
+                             actual.obtenerConexionesEnUso() + " en uso");
+            System.out.println("Pool: " + actual.obtenerConexionesCreadas() + " creadas, " +
+                             actual.obtenerConexionesDesalojadas() + " desalojadas, " +
+                             actual.obtenerConexionesInvalidas() + " invalidas, " +
+                             actual.obtenerEsperasAgotadas() + " esperas agotadas");
+        }
+        ToleranciaFallos proteccion = tolerancia;
+        if (proteccion != null) {
+            System.out.println("Circuito: " + proteccion.obtenerCircuito());
+            System.out.println("Tolerancia: " + proteccion.obtenerTiemposAgotados() + " tiempos agotados, " +
+                             proteccion.obtenerReintentos() + " reintentos");
+        }
+        CacheSentencias cache = cacheSentencias;
+        System.out.println("Cache de sentencias: " + cache.obtenerAciertos() + " aciertos, " +
+                         cache.obtenerFallos() + " fallos, " + cache.obtenerDesalojos() + " desalojos (" +
+                         cache.obtenerTamano() + "/" + cache.obtenerCapacidad() + ")");
+        CacheResultados resultados = cacheResultados;
+        if (resultados != null) {
+            System.out.println("Cache de resultados: " + resultados.obtenerAciertos() + " aciertos, " +
+                             resultados.obtenerFallos() + " fallos, " + resultados.obtenerExpirados() + " expirados, " +
+                             resultados.obtenerInvalidados() + " invalidados, " + resultados.obtenerDesalojos() +
+                             " desalojos (" + resultados.obtenerTamano() + "/" + resultados.obtenerCapacidad() + ")");
+        }
+        if (instantanea.obtenerComandosEjecutados() > 0 || instantanea.obtenerFallos() > 0) {
+            System.out.println("Comandos: " + instantanea.obtenerComandosEjecutados() + " ejecutados, " +
+                             instantanea.obtenerFallos() + " fallidos");
+            for (ResumenLatencia resumen : instantanea.obtenerLatencias().values()) {
+                System.out.println("  " + resumen);
+            }
+        }
+        System.out.println("Identificador: " + System.identityHashCode(this));
+    }
+}
+
+/**
+ * Error al obtener o utilizar una conexion a la base de datos.
+ */
+class ExcepcionConexion extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    
+    public ExcepcionConexion(String mensaje) {
+        super(mensaje);
+    }
+    
+    public ExcepcionConexion(String mensaje, Throwable causa) {
+        super(mensaje, causa);
+    }
+}
+
+/**
+ * Sin capacidad libre para atender el comando: la espera de una conexion
+ * del pool se agoto, o todos los hilos de ejecucion estan ocupados. No
+ * dice nada de la salud de la base, por eso el circuito de proteccion no
+ * la cuenta como fallo.
+ */
+class ExcepcionPoolAgotado extends ExcepcionConexion {
+    private static final long serialVersionUID = 1L;
+    
+    public ExcepcionPoolAgotado(String mensaje) {
+        super(mensaje);
+    }
+    
+    public ExcepcionPoolAgotado(String mensaje, Throwable causa) {
+        super(mensaje, causa);
+    }
+}
+
+/**
+ * Lote interrumpido en uno de sus comandos. Los comandos anteriores se
+ * aplicaron y sus resultados se conservan; los posteriores no llegaron a
+ * enviarse. La causa es el error del comando fallido.
+ */
+class ExcepcionLoteParcial extends ExcepcionConexion {
+    private static final long serialVersionUID = 1L;
+    private final String[] resultados;
+    
+    public ExcepcionLoteParcial(List<String> resultados, Throwable causa) {
+        super("Lote interrumpido en el comando " + (resultados.size() + 1) + ": " + causa.getMessage(), causa);
+        this.resultados = resultados.toArray(new String[0]);
+    }
+    
+    /**
+     * Resultados de los comandos aplicados, en orden; su tamaño es el
+     * indice del comando fallido.
+     */
+    public List<String> obtenerResultados() {
+        return List.of(resultados);
+    }
+}
+
+/**
+ * Conexion fisica a la base de datos
+ */
+interface ConexionBaseDatos {
+    String ejecutar(String comandoSQL);
+    
+    /**
+     * Envia varios comandos en un solo viaje y devuelve un resultado por
+     * comando. Un driver sin lotes nativos los ejecuta uno a uno; si uno
+     * falla, lanza ExcepcionLoteParcial con los resultados de los que ya
+     * se aplicaron y no envia los siguientes.
+     */
+    default List<String> ejecutarLote(List<String> comandosSQL) {
+        List<String> resultados = new ArrayList<>(comandosSQL.size());
+        for (String comandoSQL : comandosSQL) {
+            try {
+                resultados.add(ejecutar(comandoSQL));
+            } catch (RuntimeException e) {
+                throw new ExcepcionLoteParcial(resultados, e);
+            }
+        }
+        return resultados;
+    }
+    
+    /**
+     * Ejecuta una sentencia ya analizada; el driver puede omitir el analisis.
+     */
+    default String ejecutarPreparada(SentenciaPreparada sentencia, Object[] parametros) {
+        return ejecutar(sentencia.enlazar(parametros));
+    }
+    
+    boolean esValida();
+    void cerrar();
+    long obtenerIdentificador();
+}
+
+/**
+ * Origen de conexiones fisicas (driver real o sustituto en memoria)
+ */
+interface FuenteConexiones {
+    ConexionBaseDatos abrirConexion(String nombreBaseDatos);
+}
+
+/**
+ * Sustituto en memoria de la base de datos. Simula la latencia de ida y
+ * vuelta de cada viaje mas un costo por comando y un costo de analisis para
+ * el SQL no preparado, y permite invalidar las conexiones abiertas (como
+ * tras un reinicio del servidor) para probar la validacion. Tambien admite
+ * inyectar fallos y bloqueos para probar la tolerancia a fallos.
+ */
+class BaseDatosSimulada implements FuenteConexiones {
+    private final long latenciaMicros;
+    private final long costoComandoMicros;
+    private final long costoAnalisisMicros;
+    private final AtomicLong secuencia;
+    private final AtomicLong comandosEjecutados;
+    private final AtomicLong fallosInyectados;
+    private volatile long generacion;
+    private volatile double probabilidadFallo;
+    private volatile double probabilidadBloqueo;
+    private volatile long bloqueoMicros;
+    
+    public BaseDatosSimulada(long latenciaMicros) {
+        this(latenciaMicros, 0);
+    }
+    
+    public BaseDatosSimulada(long latenciaMicros, long costoComandoMicros) {
+        this(latenciaMicros, costoComandoMicros, 0);
+    }
+    
+    public BaseDatosSimulada(long latenciaMicros, long costoComandoMicros, long costoAnalisisMicros) {
+        this.latenciaMicros = latenciaMicros;
+        this.costoComandoMicros = costoComandoMicros;
+        this.costoAnalisisMicros = costoAnalisisMicros;
+        this.secuencia = new AtomicLong();
+        this.comandosEjecutados = new AtomicLong();
+        this.fallosInyectados = new AtomicLong();
+        this.generacion = 0;
+    }
+    
+    @Override
+    public ConexionBaseDatos abrirConexion(String nombreBaseDatos) {
+        return new ConexionSimulada(secuencia.incrementAndGet(), generacion);
+    }
+    
+    /**
+     * Invalida todas las conexiones abiertas hasta el momento.
+     */
+    public void reiniciar() {
+        generacion++;
+    }
+    
+    public long obtenerConexionesCreadas() {
+        return secuencia.get();
+    }
+    
+    public long obtenerComandosEjecutados() {
+        return comandosEjecutados.get();
+    }
+    
+    /**
+     * A partir de ahora cada viaje falla con probabilidadFallo y, con
+     * probabilidadBloqueo, tarda bloqueoMicros adicionales, como un servidor
+     * colgado. Con ceros la base vuelve a responder con normalidad.
+     */
+    public void inyectarFallos(double probabilidadFallo, double probabilidadBloqueo, long bloqueoMicros) {
+        this.probabilidadFallo = probabilidadFallo;
+        this.probabilidadBloqueo = probabilidadBloqueo;
+        this.bloqueoMicros = bloqueoMicros;
+    }
+    
+    public long obtenerFallosInyectados() {
+        return fallosInyectados.get();
+    }
+    
+    /**
+     * Un viaje interrumpido, por ejemplo al agotarse el tiempo limite del
+     * comando, termina con error en lugar de completar.
+     */
+    private void simularViaje(int comandos, int analisis) {
+        long micros = latenciaMicros + costoComandoMicros * comandos + costoAnalisisMicros * analisis;
+        ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+        if (probabilidadBloqueo > 0 && aleatorio.nextDouble() < probabilidadBloqueo) {
+            micros += bloqueoMicros;
+        }
+        long fin = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(micros);
+        for (long restante = fin - System.nanoTime(); restante > 0; restante = fin - System.nanoTime()) {
+            LockSupport.parkNanos(restante);
+            if (Thread.currentThread().isInterrupted()) {
+                throw new ExcepcionConexion("Viaje a la base de datos interrumpido");
+            }
+        }
+        if (probabilidadFallo > 0 && aleatorio.nextDouble() < probabilidadFallo) {
+            fallosInyectados.incrementAndGet();
+            throw new ExcepcionConexion("Fallo simulado de la base de datos");
+        }
+    }
+    
+    private class ConexionSimulada implements ConexionBaseDatos {
+        private final long identificador;
+        private final long generacionConexion;
+        private volatile boolean cerrada;
+        
+        ConexionSimulada(long identificador, long generacionConexion) {
+            this.identificador = identificador;
+            this.generacionConexion = generacionConexion;
+        }
+        
+        @Override
+        public String ejecutar(String comandoSQL) {
+            if (!esValida()) {
+                throw new ExcepcionConexion("Conexion " + identificador + " no valida");
+            }
+            simularViaje(1, 1);
+            comandosEjecutados.incrementAndGet();
+            return "OK";
+        }
+        
+        @Override
+        public String ejecutarPreparada(SentenciaPreparada sentencia, Object[] parametros) {
+            if (!esValida()) {
+                throw new ExcepcionConexion("Conexion " + identificador + " no valida");
+            }
+            sentencia.validarParametros(parametros);
+            simularViaje(1, 0);
+            comandosEjecutados.incrementAndGet();
+            return "OK";
+        }
+        
+        @Override
+        public List<String> ejecutarLote(List<String> comandosSQL) {
+            if (!esValida()) {
+                throw new ExcepcionConexion("Conexion " + identificador + " no valida");
+            }
+            simularViaje(comandosSQL.size(), comandosSQL.size());
+            comandosEjecutados.addAndGet(comandosSQL.size());
+            return Collections.nCopies(comandosSQL.size(), "OK");
+        }
+        
+        @Override
+        public boolean esValida() {
+            return !cerrada && generacionConexion == generacion;
+        }
+        
+        @Override
+        public void cerrar() {
+            cerrada = true;
+        }
+        
+        @Override
+        public long obtenerIdentificador() {
+            return identificador;
+        }
+    }
+}
+
+/**
+ * Parametros del pool de conexiones
+ */
+class ConfiguracionPool {
+    private final int minimoConexiones;
+    private final int maximoConexiones;
+    private final long tiempoEsperaMs;
+    private final long tiempoInactividadMs;
+    private final boolean validarAlPrestar;
+    
+    public ConfiguracionPool(int minimoConexiones, int maximoConexiones, long tiempoEsperaMs,
+                             long tiempoInactividadMs, boolean validarAlPrestar) {
+        if (minimoConexiones < 0 || maximoConexiones < 1 || minimoConexiones > maximoConexiones) {
+            throw new IllegalArgumentException("Limites de pool invalidos: " +
+                                             minimoConexiones + "-" + maximoConexiones);
+        }
+        if (tiempoEsperaMs < 0 || tiempoInactividadMs <= 0) {
+            throw new IllegalArgumentException("Tiempos de pool invalidos");
+        }
+        this.minimoConexiones = minimoConexiones;
+        this.maximoConexiones = maximoConexiones;
+        this.tiempoEsperaMs = tiempoEsperaMs;
+        this.tiempoInactividadMs = tiempoInactividadMs;
+        this.validarAlPrestar = validarAlPrestar;
+    }
+    
+    public int obtenerMinimoConexiones() {
+        return minimoConexiones;
+    }
+    
+    public int obtenerMaximoConexiones() {
+        return maximoConexiones;
+    }
+    
+    public long obtenerTiempoEsperaMs() {
+        return tiempoEsperaMs;
+    }
+    
+    public long obtenerTiempoInactividadMs() {
+        return tiempoInactividadMs;
+    }
+    
+    public boolean debeValidarAlPrestar() {
+        return validarAlPrestar;
+    }
+}
+
+/**
+ * Pool acotado de conexiones. Los permisos de un semaforo justo limitan los
+ * prestamos simultaneos y atienden a los hilos en orden de llegada; las
+ * conexiones libres se reutilizan en orden LIFO y un hilo de fondo desaloja
+ * las que superan el tiempo de inactividad sin bajar del minimo.
+ */
+class PoolConexiones {
+    private final String nombreBaseDatos;
+    private final FuenteConexiones fuente;
+    private final ConfiguracionPool configuracion;
+    private final Semaphore permisos;
+    private final ConcurrentLinkedDeque<ConexionInactiva> inactivas;
+    private final AtomicInteger conexionesAbiertas;
+    private final AtomicLong conexionesCreadas;
+    private final AtomicLong conexionesDesalojadas;
+    private final AtomicLong conexionesInvalidas;
+    private final AtomicLong esperasAgotadas;
+    private final ScheduledExecutorService desalojador;
+    private final MetricasConexiones metricas;
+    private volatile boolean cerrado;
+    
+    public PoolConexiones(String nombreBaseDatos, FuenteConexiones fuente, ConfiguracionPool configuracion,
+                          MetricasConexiones metricas) {
+        this.nombreBaseDatos = nombreBaseDatos;
+        this.fuente = fuente;
+        this.configuracion = configuracion;
+        this.permisos = new Semaphore(configuracion.obtenerMaximoConexiones(), true);
+        this.inactivas = new ConcurrentLinkedDeque<>();
+        this.conexionesAbiertas = new AtomicInteger();
+        this.conexionesCreadas = new AtomicLong();
+        this.conexionesDesalojadas = new AtomicLong();
+        this.conexionesInvalidas = new AtomicLong();
+        this.esperasAgotadas = new AtomicLong();
+        this.metricas = metricas;
+        this.desalojador = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "desalojo-" + nombreBaseDatos);
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        completarMinimo();
+        long periodo = Math.max(10, configuracion.obtenerTiempoInactividadMs() / 2);
+        desalojador.scheduleWithFixedDelay(this::desalojarInactivas, periodo, periodo, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * El cierre se comprueba otra vez con el permiso ya adquirido y con la
+     * conexion en la mano: un hilo que esperaba cuando se cerro el pool no
+     * debe abrir ni llevarse una conexion que ya nadie cerraria.
+     */
+    public ConexionPrestada prestar() {
+        verificarAbierto();
+        try {
+            if (!permisos.tryAcquire(configuracion.obtenerTiempoEsperaMs(), TimeUnit.MILLISECONDS)) {
+                esperasAgotadas.incrementAndGet();
+                throw new ExcepcionPoolAgotado("Tiempo de espera agotado al solicitar conexion a " + nombreBaseDatos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExcepcionConexion("Espera de conexion interrumpida", e);
+        }
+        try {
+            verificarAbierto();
+            ConexionBaseDatos conexion = obtenerConexion();
+            if (cerrado) {
+                descartar(conexion);
+                verificarAbierto();
+            }
+            return new ConexionPrestada(this, conexion);
+        } catch (RuntimeException e) {
+            permisos.release();
+            throw e;
+        }
+    }
+    
+    private void verificarAbierto() {
+        if (cerrado) {
+            throw new ExcepcionConexion("El pool de " + nombreBaseDatos + " esta cerrado");
+        }
+    }
+    
+    /**
+     * Se invoca con un permiso ya adquirido. Si no hay conexiones libres y el
+     * pool esta al maximo, alguna conexion esta siendo devuelta o descartada
+     * en este momento, por lo que basta con reintentar.
+     */
+    private ConexionBaseDatos obtenerConexion() {
+        while (true) {
+            ConexionBaseDatos conexion = tomarInactiva();
+            if (conexion != null) {
+                return conexion;
+            }
+            int abiertas = conexionesAbiertas.get();
+            if (abiertas < configuracion.obtenerMaximoConexiones() &&
+                conexionesAbiertas.compareAndSet(abiertas, abiertas + 1)) {
+                return abrir();
+            }
+            Thread.onSpinWait();
+        }
+    }
+    
+    private ConexionBaseDatos tomarInactiva() {
+        ConexionInactiva inactiva;
+        while ((inactiva = inactivas.pollFirst()) != null) {
+            if (!configuracion.debeValidarAlPrestar() || inactiva.conexion.esValida()) {
+                return inactiva.conexion;
+            }
+            conexionesInvalidas.incrementAndGet();
+            descartar(inactiva.conexion);
+        }
+        return null;
+    }
+    
+    /**
+     * Abre una conexion fisica; el contador ya fue incrementado por el llamador.
+     */
+    private ConexionBaseDatos abrir() {
+        try {
+            ConexionBaseDatos conexion = fuente.abrirConexion(nombreBaseDatos);
+            conexionesCreadas.incrementAndGet();
+            metricas.registrarConexionAbierta();
+            return conexion;
+        } catch (RuntimeException e) {
+            conexionesAbiertas.decrementAndGet();
+            throw e;
+        }
+    }
+    
+    void devolver(ConexionBaseDatos conexion, boolean reutilizable) {
+        if (cerrado || !reutilizable) {
+            descartar(conexion);
+        } else {
+            inactivas.offerFirst(new ConexionInactiva(conexion, System.nanoTime()));
+            if (cerrado) {
+                vaciarInactivas();
+            }
+        }
+        permisos.release();
+    }
+    
+    private void descartar(ConexionBaseDatos conexion) {
+        try {
+            conexion.cerrar();
+        } finally {
+            conexionesAbiertas.decrementAndGet();
+        }
+    }
+    
+    /**
+     * Cierra las conexiones libres mas antiguas que superan el tiempo de
+     * inactividad, manteniendo al menos el minimo configurado. Es
+     * sincronizado para que una llamada explicita y el hilo de fondo no
+     * pasen ambos la comprobacion del minimo y desalojen por debajo de el.
+     */
+    public synchronized void desalojarInactivas() {
+        long limite = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(configuracion.obtenerTiempoInactividadMs());
+        Iterator<ConexionInactiva> iterador = inactivas.descendingIterator();
+        while (iterador.hasNext() && conexionesAbiertas.get() > configuracion.obtenerMinimoConexiones()) {
+            ConexionInactiva inactiva = iterador.next();
+            if (inactiva.desdeNanos - limite > 0) {
+                break;
+            }
+            if (inactivas.removeLastOccurrence(inactiva)) {
+                conexionesDesalojadas.incrementAndGet();
+                descartar(inactiva.conexion);
+            }
+        }
+        completarMinimo();
+    }
+    
+    private void completarMinimo() {
+        while (!cerrado) {
+            int abiertas = conexionesAbiertas.get();
+            if (abiertas >= configuracion.obtenerMinimoConexiones()) {
+                return;
+            }
+            if (conexionesAbiertas.compareAndSet(abiertas, abiertas + 1)) {
+                try {
+                    inactivas.offerLast(new ConexionInactiva(abrir(), System.nanoTime()));
+                } catch (RuntimeException e) {
+                    return;
+                }
+                if (cerrado) {
+                    vaciarInactivas();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Las conexiones prestadas se cierran al devolverlas. Quien devuelve o
+     * agrega una conexion libre mientras se cierra el pool vuelve a vaciar
+     * la lista despues de agregarla, asi ninguna queda abierta.
+     */
+    public void cerrar() {
+        cerrado = true;
+        desalojador.shutdownNow();
+        vaciarInactivas();
+    }
+    
+    private void vaciarInactivas() {
+        ConexionInactiva inactiva;
+        while ((inactiva = inactivas.pollFirst()) != null) {
+            descartar(inactiva.conexion);
+        }
+    }
+    
+    public int obtenerConexionesAbiertas() {
+        return conexionesAbiertas.get();
+    }
+    
+    public int obtenerConexionesInactivas() {
+        return inactivas.size();
+    }
+    
+    public int obtenerConexionesEnUso() {
+        return configuracion.obtenerMaximoConexiones() - permisos.availablePermits();
+    }
+    
+    public long obtenerConexionesCreadas() {
+        return conexionesCreadas.get();
+    }
+    
+    public long obtenerConexionesDesalojadas() {
+        return conexionesDesalojadas.get();
+    }
+    
+    public long obtenerConexionesInvalidas() {
+        return conexionesInvalidas.get();
+    }
+    
+    public long obtenerEsperasAgotadas() {
+        return esperasAgotadas.get();
+    }
+    
+    public ConfiguracionPool obtenerConfiguracion() {
+        return configuracion;
+    }
+    
+    private static class ConexionInactiva {
+        final ConexionBaseDatos conexion;
+        final long desdeNanos;
+        
+        ConexionInactiva(ConexionBaseDatos conexion, long desdeNanos) {
+            this.conexion = conexion;
+            this.desdeNanos = desdeNanos;
+        }
+    }
+}
+
+/**
+ * Conexion prestada por el pool. Se devuelve al cerrarse; si fallo la
+ * conexion durante su uso, o se abandono por tiempo limite, se descarta en
+ * lugar de reutilizarse. Un error del propio comando, como parametros
+ * invalidos, no la daña.
+ */
+class ConexionPrestada implements AutoCloseable {
+    private final PoolConexiones pool;
+    private final ConexionBaseDatos conexion;
+    private volatile boolean danada;
+    private boolean devuelta;
+    
+    ConexionPrestada(PoolConexiones pool, ConexionBaseDatos conexion) {
+        this.pool = pool;
+        this.conexion = conexion;
+    }
+    
+    public String ejecutar(String comandoSQL) {
+        if (devuelta) {
+            throw new ExcepcionConexion("La conexion ya fue devuelta al pool");
+        }
+        try {
+            return conexion.ejecutar(comandoSQL);
+        } catch (ExcepcionConexion e) {
+            if (afectaConexion(e)) {
+                danada = true;
+            }
+            throw e;
+        }
+    }
+    
+    public String ejecutarPreparada(SentenciaPreparada sentencia, Object[] parametros) {
+        if (devuelta) {
+            throw new ExcepcionConexion("La conexion ya fue devuelta al pool");
+        }
+        try {
+            return conexion.ejecutarPreparada(sentencia, parametros);
+        } catch (ExcepcionConexion e) {
+            if (afectaConexion(e)) {
+                danada = true;
+            }
+            throw e;
+        }
+    }
+    
+    public List<String> ejecutarLote(List<String> comandosSQL) {
+        if (devuelta) {
+            throw new ExcepcionConexion("La conexion ya fue devuelta al pool");
+        }
+        try {
+            return conexion.ejecutarLote(comandosSQL);
+        } catch (ExcepcionConexion e) {
+            if (afectaConexion(e)) {
+                danada = true;
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * En un lote fallido decide el error del comando que lo interrumpio.
+     */
+    static boolean afectaConexion(ExcepcionConexion e) {
+        return !(e instanceof ExcepcionLoteParcial) || e.getCause() instanceof ExcepcionConexion;
+    }
+    
+    /**
+     * Marca la conexion para descartarla al devolverla, aunque el comando
+     * en curso termine bien; la usa ToleranciaFallos al abandonar un
+     * intento por tiempo limite.
+     */
+    void descartar() {
+        danada = true;
+    }
+    
+    public long obtenerIdentificador() {
+        return conexion.obtenerIdentificador();
+    }
+    
+    @Override
+    public void close() {
+        if (!devuelta) {
+            devuelta = true;
+            pool.devolver(conexion, !danada);
+        }
+    }
+}
+
+/**
+ * Parametros de tolerancia a fallos de un gestor: tiempo limite por
+ * comando (incluidos sus reintentos), reintentos para lecturas con espera
+ * exponencial y aleatoria, y umbral y ventana del circuito de proteccion.
+ */
+class ConfiguracionTolerancia {
+    private final long tiempoLimiteMs;
+    private final int reintentosLectura;
+    private final long esperaBaseMs;
+    private final long esperaMaximaMs;
+    private final int umbralFallos;
+    private final long ventanaAperturaMs;
+    
+    public ConfiguracionTolerancia(long tiempoLimiteMs, int reintentosLectura, long esperaBaseMs,
+                                   long esperaMaximaMs, int umbralFallos, long ventanaAperturaMs) {
+        if (tiempoLimiteMs <= 0 || esperaBaseMs < 0 || esperaMaximaMs < esperaBaseMs || ventanaAperturaMs <= 0) {
+            throw new IllegalArgumentException("Tiempos de tolerancia invalidos");
+        }
+        if (reintentosLectura < 0 || umbralFallos < 1) {
+            throw new IllegalArgumentException("Limites de tolerancia invalidos: " +
+                                             reintentosLectura + " reintentos, umbral " + umbralFallos);
+        }
+        this.tiempoLimiteMs = tiempoLimiteMs;
+        this.reintentosLectura = reintentosLectura;
+        this.esperaBaseMs = esperaBaseMs;
+        this.esperaMaximaMs = esperaMaximaMs;
+        this.umbralFallos = umbralFallos;
+        this.ventanaAperturaMs = ventanaAperturaMs;
+    }
+    
+    public long obtenerTiempoLimiteMs() {
+        return tiempoLimiteMs;
+    }
+    
+    public int obtenerReintentosLectura() {
+        return reintentosLectura;
+    }
+    
+    public long obtenerEsperaBaseMs() {
+        return esperaBaseMs;
+    }
+    
+    public long obtenerEsperaMaximaMs() {
+        return esperaMaximaMs;
+    }
+    
+    public int obtenerUmbralFallos() {
+        return umbralFallos;
+    }
+    
+    public long obtenerVentanaAperturaMs() {
+        return ventanaAperturaMs;
+    }
+}
+
+enum EstadoCircuito {
+    CERRADO, ABIERTO, SEMIABIERTO
+}
+
+/**
+ * Circuito de proteccion. Cerrado deja pasar todo; tras umbralFallos
+ * fallos consecutivos se abre y rechaza de inmediato durante la ventana.
+ * Vencida la ventana, la primera llamada pasa como prueba (semiabierto):
+ * si tiene exito el circuito se cierra y si falla se vuelve a abrir; si
+ * no llega a la base, se libera para que la siguiente llamada pruebe. Las
+ * transiciones son compareAndSet sobre el estado, asi solo un hilo las
+ * realiza y cuenta.
+ */
+class CircuitoProteccion {
+    private final String nombre;
+    private final int umbralFallos;
+    private final long ventanaAperturaNanos;
+    private final AtomicReference<EstadoCircuito> estado;
+    private final AtomicInteger fallosConsecutivos;
+    private final LongAdder rechazadas;
+    private final AtomicLong aperturas;
+    private final AtomicLong semiaperturas;
+    private final AtomicLong cierres;
+    private volatile long abiertoHasta;
+    
+    public CircuitoProteccion(String nombre, int umbralFallos, long ventanaAperturaMs) {
+        this.nombre = nombre;
+        this.umbralFallos = umbralFallos;
+        this.ventanaAperturaNanos = TimeUnit.MILLISECONDS.toNanos(ventanaAperturaMs);
+        this.estado = new AtomicReference<>(EstadoCircuito.CERRADO);
+        this.fallosConsecutivos = new AtomicInteger();
+        this.rechazadas = new LongAdder();
+        this.aperturas = new AtomicLong();
+        this.semiaperturas = new AtomicLong();
+        this.cierres = new AtomicLong();
+    }
+    
+    /**
+     * Devuelve false si la llamada debe rechazarse sin tocar la base.
+     */
+    public boolean permitir() {
+        EstadoCircuito actual = estado.get();
+        if (actual == EstadoCircuito.CERRADO) {
+            return true;
+        }
+        if (actual == EstadoCircuito.ABIERTO && System.nanoTime() - abiertoHasta >= 0
+                && estado.compareAndSet(EstadoCircuito.ABIERTO, EstadoCircuito.SEMIABIERTO)) {
+            semiaperturas.incrementAndGet();
+            Registro.advertencia(() -> "Circuito de " + nombre + " semiabierto: llamada de prueba");
+            return true;
+        }
+        rechazadas.increment();
+        return false;
+    }
+    
+    public void registrarExito() {
+        if (fallosConsecutivos.get() != 0) {
+            fallosConsecutivos.set(0);
+        }
+        if (estado.get() == EstadoCircuito.SEMIABIERTO
+                && estado.compareAndSet(EstadoCircuito.SEMIABIERTO, EstadoCircuito.CERRADO)) {
+            cierres.incrementAndGet();
+            Registro.advertencia(() -> "Circuito de " + nombre + " cerrado");
+        }
+    }
+    
+    /**
+     * La llamada de prueba no llego a la base, por ejemplo por falta de
+     * conexiones libres: el circuito vuelve a abierto con la ventana ya
+     * vencida, sin contar una apertura, y la siguiente llamada hace de
+     * prueba. En cerrado no cambia nada.
+     */
+    public void liberarPrueba() {
+        estado.compareAndSet(EstadoCircuito.SEMIABIERTO, EstadoCircuito.ABIERTO);
+    }
+    
+    public void registrarFallo() {
+        EstadoCircuito actual = estado.get();
+        if (actual == EstadoCircuito.SEMIABIERTO) {
+            abrir(EstadoCircuito.SEMIABIERTO);
+        } else if (actual == EstadoCircuito.CERRADO && fallosConsecutivos.incrementAndGet() >= umbralFallos) {
+            abrir(EstadoCircuito.CERRADO);
+        }
+    }
+    
+    /**
+     * El plazo se escribe antes del compareAndSet para que quien vea el
+     * circuito abierto vea tambien su plazo.
+     */
+    private void abrir(EstadoCircuito desde) {
+        abiertoHasta = System.nanoTime() + ventanaAperturaNanos;
+        if (estado.compareAndSet(desde, EstadoCircuito.ABIERTO)) {
+            fallosConsecutivos.set(0);
+            aperturas.incrementAndGet();
+            Registro.advertencia(() -> "Circuito de " + nombre + " abierto durante " +
+                                       TimeUnit.NANOSECONDS.toMillis(ventanaAperturaNanos) + " ms");
+        }
+    }
+    
+    public EstadoCircuito obtenerEstado() {
+        return estado.get();
+    }
+    
+    public long obtenerRechazadas() {
+        return rechazadas.sum();
+    }
+    
+    public long obtenerAperturas() {
+        return aperturas.get();
+    }
+    
+    public long obtenerSemiaperturas() {
+        return semiaperturas.get();
+    }
+    
+    public long obtenerCierres() {
+        return cierres.get();
+    }
+    
+    @Override
+    public String toString() {
+        return estado.get() + ", " + aperturas.get() + " aperturas, " + semiaperturas.get() + " pruebas, " +
+               cierres.get() + " cierres, " + rechazadas.sum() + " llamadas rechazadas";
+    }
+}
+
+/**
+ * Ejecuta los comandos de un gestor con tiempo limite, reintentos para
+ * lecturas y circuito de proteccion. Cada intento toma su conexion del
+ * pool en el hilo llamador, asi la espera de una conexion libre no consume
+ * el tiempo limite, y corre en un hilo del ejecutor propio del gestor; el
+ * llamador espera solo el tiempo que le queda y al agotarse abandona el
+ * intento y descarta su conexion. El ejecutor tiene tantos hilos como
+ * conexiones el pool, porque cada intento retiene una, y rechaza el
+ * trabajo que no cabe en lugar de crear hilos sin limite. Un pool o un
+ * ejecutor sin capacidad no es un fallo de la base: se propaga
+ * ExcepcionPoolAgotado sin reintentar ni contarlo en el circuito. En las
+ * lecturas el tiempo que queda se reparte entre los intentos restantes,
+ * para que un viaje colgado deje margen a un reintento. Solo las lecturas
+ * se reintentan, porque repetir una escritura que quiza llego a aplicarse
+ * no es seguro. La espera entre intentos es aleatoria entre 0 y
+ * base * 2^intento, acotada por la espera maxima, para que los clientes no
+ * reintenten todos a la vez.
+ */
+class ToleranciaFallos implements AutoCloseable {
+    private final String nombreBaseDatos;
+    private final ConfiguracionTolerancia configuracion;
+    private final CircuitoProteccion circuito;
+    private final ThreadPoolExecutor ejecutor;
+    private final LongAdder tiemposAgotados;
+    private final LongAdder reintentos;
+    
+    public ToleranciaFallos(String nombreBaseDatos, ConfiguracionTolerancia configuracion, int maximoHilos) {
+        this.nombreBaseDatos = nombreBaseDatos;
+        this.configuracion = configuracion;
+        this.circuito = new CircuitoProteccion(nombreBaseDatos, configuracion.obtenerUmbralFallos(),
+                                               configuracion.obtenerVentanaAperturaMs());
+        AtomicInteger contador = new AtomicInteger();
+        this.ejecutor = new ThreadPoolExecutor(maximoHilos, maximoHilos, 60, TimeUnit.SECONDS,
+                                               new ArrayBlockingQueue<>(maximoHilos), tarea -> {
+            Thread hilo = new Thread(tarea, "comando-" + nombreBaseDatos + "-" + contador.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        this.ejecutor.allowCoreThreadTimeOut(true);
+        this.tiemposAgotados = new LongAdder();
+        this.reintentos = new LongAdder();
+    }
+    
+    public <T> T ejecutar(boolean idempotente, PoolConexiones pool, Function<ConexionPrestada, T> llamada) {
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(configuracion.obtenerTiempoLimiteMs());
+        int intento = 0;
+        while (true) {
+            if (!circuito.permitir()) {
+                throw new ExcepcionConexion("Circuito abierto para " + nombreBaseDatos + ": llamada rechazada");
+            }
+            try {
+                ConexionPrestada conexion = pool.prestar();
+                long limiteIntento = limite;
+                if (idempotente) {
+                    long restante = limite - System.nanoTime();
+                    limiteIntento = limite - restante + restante / (configuracion.obtenerReintentosLectura() - intento + 1);
+                }
+                T resultado = ejecutarConLimite(conexion, llamada, limiteIntento);
+                circuito.registrarExito();
+                return resultado;
+            } catch (ExcepcionPoolAgotado e) {
+                circuito.liberarPrueba();
+                throw e;
+            } catch (ExcepcionConexion e) {
+                if (!ConexionPrestada.afectaConexion(e)) {
+                    circuito.registrarExito();
+                    throw e;
+                }
+                circuito.registrarFallo();
+                if (!idempotente || intento >= configuracion.obtenerReintentosLectura()) {
+                    throw e;
+                }
+                long espera = calcularEspera(intento++);
+                if (System.nanoTime() + espera - limite >= 0) {
+                    throw e;
+                }
+                reintentos.increment();
+                LockSupport.parkNanos(espera);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new ExcepcionConexion("Reintento interrumpido", e);
+                }
+            }
+        }
+    }
+    
+    private long calcularEspera(int intento) {
+        long techo = Math.min(configuracion.obtenerEsperaMaximaMs(),
+                              configuracion.obtenerEsperaBaseMs() << Math.min(intento, 20));
+        return ThreadLocalRandom.current().nextLong(TimeUnit.MILLISECONDS.toNanos(techo) + 1);
+    }
+    
+    /**
+     * El intento devuelve la conexion al terminar. Si se abandona antes de
+     * que empiece, la devuelve el llamador sin usar; si ya empezo, se marca
+     * para descartarla. Los errores que no son de conexion, como parametros
+     * invalidos, se propagan sin reintentar y cuentan como respuesta sana
+     * de la base; ejecutar aplica la misma regla a un lote interrumpido por
+     * un comando erroneo.
+     */
+    private <T> T ejecutarConLimite(ConexionPrestada conexion, Function<ConexionPrestada, T> llamada, long limite) {
+        AtomicBoolean iniciado = new AtomicBoolean();
+        Future<T> futuro;
+        try {
+            futuro = ejecutor.submit(() -> {
+                if (!iniciado.compareAndSet(false, true)) {
+                    return null;
+                }
+                try (conexion) {
+                    return llamada.apply(conexion);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            conexion.close();
+            throw new ExcepcionPoolAgotado("Sin hilos libres para ejecutar comandos en " + nombreBaseDatos, e);
+        }
+        try {
+            return futuro.get(limite - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            abandonar(futuro, conexion, iniciado);
+            tiemposAgotados.increment();
+            throw new ExcepcionConexion("Tiempo limite de " + configuracion.obtenerTiempoLimiteMs() +
+                                        " ms agotado en " + nombreBaseDatos);
+        } catch (InterruptedException e) {
+            abandonar(futuro, conexion, iniciado);
+            Thread.currentThread().interrupt();
+            throw new ExcepcionConexion("Espera del comando interrumpida", e);
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof ExcepcionConexion) {
+                throw (ExcepcionConexion) causa;
+            }
+            circuito.registrarExito();
+            if (causa instanceof RuntimeException) {
+                throw (RuntimeException) causa;
+            }
+            throw new ExcepcionConexion("Fallo al ejecutar el comando", causa);
+        }
+    }
+    
+    private static void abandonar(Future<?> futuro, ConexionPrestada conexion, AtomicBoolean iniciado) {
+        if (iniciado.compareAndSet(false, true)) {
+            conexion.close();
+        } else {
+            conexion.descartar();
+        }
+        futuro.cancel(true);
+    }
+    
+    ConfiguracionTolerancia obtenerConfiguracion() {
+        return configuracion;
+    }
+    
+    public CircuitoProteccion obtenerCircuito() {
+        return circuito;
+    }
+    
+    public long obtenerTiemposAgotados() {
+        return tiemposAgotados.sum();
+    }
+    
+    public long obtenerReintentos() {
+        return reintentos.sum();
+    }
+    
+    @Override
+    public void close() {
+        ejecutor.shutdownNow();
+    }
+}
+
+/**
+ * Tipo de comando SQL segun su palabra inicial
+ */
+enum TipoComando {
+    SELECT, INSERT, UPDATE, DELETE, OTRO;
+    
+    public boolean esLectura() {
+        return this == SELECT;
+    }
+    
+    /**
+     * Clasifica el comando leyendo solo su primera palabra, sin asignar memoria.
+     */
+    public static TipoComando de(String comandoSQL) {
+        int inicio = 0;
+        while (inicio < comandoSQL.length() && Character.isWhitespace(comandoSQL.charAt(inicio))) {
+            inicio++;
+        }
+        for (TipoComando tipo : VALORES) {
+            String nombre = tipo.name();
+            int fin = inicio + nombre.length();
+            if (comandoSQL.regionMatches(true, inicio, nombre, 0, nombre.length()) &&
+                (fin == comandoSQL.length() || !Character.isLetterOrDigit(comandoSQL.charAt(fin)))) {
+                return tipo;
+            }
+        }
+        return OTRO;
+    }
+    
+    private static final TipoComando[] VALORES = {SELECT, INSERT, UPDATE, DELETE};
+}
+
+/**
+ * Histograma de latencias de escala log-lineal al estilo HDR: 16
+ * subdivisiones por potencia de dos (error relativo menor al 6%) sobre todo
+ * el rango de long. Los contadores estan repartidos en franjas por hilo,
+ * separadas en memoria, para que el registro no compita por la misma linea
+ * de cache; leer suma las franjas sin detener a los escritores. Cada franja
+ * ocupa unos 8 KB: los histogramas que se crean por objeto y reciben poco
+ * trafico usan una sola.
+ */
+class HistogramaLatencia {
+    private static final int BITS_SUBDIVISION = 4;
+    private static final int SUBDIVISIONES = 1 << BITS_SUBDIVISION;
+    private static final int CUBETAS = (64 - BITS_SUBDIVISION + 1) * SUBDIVISIONES;
+    private static final int FRANJAS = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2);
+    
+    private final int franjas;
+    private final AtomicLongArray cuentas;
+    private final LongAdder suma;
+    private final LongAccumulator maximo;
+    
+    public HistogramaLatencia() {
+        this(FRANJAS);
+    }
+    
+    /**
+     * El numero de franjas se redondea a la potencia de dos inferior.
+     */
+    public HistogramaLatencia(int franjas) {
+        if (franjas < 1) {
+            throw new IllegalArgumentException("Numero de franjas invalido: " + franjas);
+        }
+        this.franjas = Integer.highestOneBit(franjas);
+        this.cuentas = new AtomicLongArray(CUBETAS * this.franjas);
+        this.suma = new LongAdder();
+        this.maximo = new LongAccumulator(Math::max, 0);
+    }
+    
+    public void registrar(long valor) {
+        if (valor < 0) {
+            valor = 0;
+        }
+        int franja = (int) (Thread.currentThread().getId() & (franjas - 1));
+        cuentas.getAndIncrement(franja * CUBETAS + indiceDe(valor));
+        suma.add(valor);
+        maximo.accumulate(valor);
+    }
+    
+    static int indiceDe(long valor) {
+        if (valor < SUBDIVISIONES) {
+            return (int) valor;
+        }
+        int exponente = 63 - Long.numberOfLeadingZeros(valor);
+        int mantisa = (int) (valor >>> (exponente - BITS_SUBDIVISION)) & (SUBDIVISIONES - 1);
+        return (exponente - BITS_SUBDIVISION + 1) * SUBDIVISIONES + mantisa;
+    }
+    
+    /**
+     * Valor representativo (punto medio) de la cubeta.
+     */
+    static long valorDe(int indice) {
+        if (indice < SUBDIVISIONES) {
+            return indice;
+        }
+        int exponente = indice / SUBDIVISIONES + BITS_SUBDIVISION - 1;
+        long mantisa = SUBDIVISIONES + indice % SUBDIVISIONES;
+        long inferior = mantisa << (exponente - BITS_SUBDIVISION);
+        return inferior + (1L << (exponente - BITS_SUBDIVISION)) / 2;
+    }
+    
+    public ResumenLatencia resumir(String nombre) {
+        long[] totales = new long[CUBETAS];
+        long cantidad = 0;
+        for (int franja = 0; franja < franjas; franja++) {
+            int base = franja * CUBETAS;
+            for (int i = 0; i < CUBETAS; i++) {
+                long cuenta = cuentas.get(base + i);
+                totales[i] += cuenta;
+                cantidad += cuenta;
+            }
+        }
+        long maximoActual = maximo.get();
+        return new ResumenLatencia(nombre, cantidad, cantidad == 0 ? 0 : suma.sum() / cantidad,
+                                   percentil(totales, cantidad, 0.50, maximoActual),
+                                   percentil(totales, cantidad, 0.90, maximoActual),
+                                   percentil(totales, cantidad, 0.99, maximoActual),
+                                   maximoActual);
+    }
+    
+    private static long percentil(long[] totales, long cantidad, double fraccion, long maximo) {
+        if (cantidad == 0) {
+            return 0;
+        }
+        long objetivo = Math.max(1, (long) Math.ceil(cantidad * fraccion));
+        long acumulado = 0;
+        for (int i = 0; i < totales.length; i++) {
+            acumulado += totales[i];
+            if (acumulado >= objetivo) {
+                return Math.min(valorDe(i), maximo);
+            }
+        }
+        return maximo;
+    }
+}
+
+/**
+ * Resumen inmutable de un histograma de latencias, en nanosegundos
+ */
+final class ResumenLatencia {
+    private final String nombre;
+    private final long cantidad;
+    private final long media;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long maximo;
+    
+    ResumenLatencia(String nombre, long cantidad, long media, long p50, long p90, long p99, long maximo) {
+        this.nombre = nombre;
+        this.cantidad = cantidad;
+        this.media = media;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.maximo = maximo;
+    }
+    
+    public String obtenerNombre() {
+        return nombre;
+    }
+    
+    public long obtenerCantidad() {
+        return cantidad;
+    }
+    
+    public long obtenerMedia() {
+        return media;
+    }
+    
+    public long obtenerP50() {
+        return p50;
+    }
+    
+    public long obtenerP90() {
+        return p90;
+    }
+    
+    public long obtenerP99() {
+        return p99;
+    }
+    
+    public long obtenerMaximo() {
+        return maximo;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%s: n=%d media=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus max=%.1fus",
+                             nombre, cantidad, media / 1000.0, p50 / 1000.0, p90 / 1000.0,
+                             p99 / 1000.0, maximo / 1000.0);
+    }
+}
+
+/**
+ * Metricas del gestor de conexiones. Los contadores son LongAdder y las
+ * latencias se registran por tipo de comando en histogramas por franjas, de
+ * modo que el camino de ejecucion nunca toma un candado.
+ */
+class MetricasConexiones {
+    private final LongAdder conexionesAbiertas;
+    private final LongAdder comandosEjecutados;
+    private final LongAdder fallos;
+    private final EnumMap<TipoComando, HistogramaLatencia> latencias;
+    
+    public MetricasConexiones() {
+        this.conexionesAbiertas = new LongAdder();
+        this.comandosEjecutados = new LongAdder();
+        this.fallos = new LongAdder();
+        this.latencias = new EnumMap<>(TipoComando.class);
+        for (TipoComando tipo : TipoComando.values()) {
+            latencias.put(tipo, new HistogramaLatencia());
+        }
+    }
+    
+    public void registrarConexionAbierta() {
+        conexionesAbiertas.increment();
+    }
+    
+    public long obtenerConexionesAbiertas() {
+        return conexionesAbiertas.sum();
+    }
+    
+    public void registrarComando(TipoComando tipo, long duracionNanos, boolean exito) {
+        if (exito) {
+            comandosEjecutados.increment();
+        } else {
+            fallos.increment();
+        }
+        latencias.get(tipo).registrar(duracionNanos);
+    }
+    
+    /**
+     * Un lote cuenta cada comando por separado pero aporta una sola muestra
+     * de latencia, la del viaje completo.
+     */
+    public void registrarLote(TipoComando tipo, int exitos, int fallidos, long duracionNanos) {
+        comandosEjecutados.add(exitos);
+        fallos.add(fallidos);
+        latencias.get(tipo).registrar(duracionNanos);
+    }
+    
+    public InstantaneaMetricas instantanea() {
+        EnumMap<TipoComando, ResumenLatencia> resumenes = new EnumMap<>(TipoComando.class);
+        for (Map.Entry<TipoComando, HistogramaLatencia> entrada : latencias.entrySet()) {
+            ResumenLatencia resumen = entrada.getValue().resumir(entrada.getKey().name());
+            if (resumen.obtenerCantidad() > 0) {
+                resumenes.put(entrada.getKey(), resumen);
+            }
+        }
+        return new InstantaneaMetricas(conexionesAbiertas.sum(), comandosEjecutados.sum(), fallos.sum(),
+                                       Collections.unmodifiableMap(resumenes));
+    }
+}
+
+/**
+ * Copia inmutable de las metricas en un instante
+ */
+final class InstantaneaMetricas {
+    private final long conexionesAbiertas;
+    private final long comandosEjecutados;
+    private final long fallos;
+    private final Map<TipoComando, ResumenLatencia> latencias;
+    
+    InstantaneaMetricas(long conexionesAbiertas, long comandosEjecutados, long fallos,
+                        Map<TipoComando, ResumenLatencia> latencias) {
+        this.conexionesAbiertas = conexionesAbiertas;
+        this.comandosEjecutados = comandosEjecutados;
+        this.fallos = fallos;
+        this.latencias = latencias;
+    }
+    
+    public long obtenerConexionesAbiertas() {
+        return conexionesAbiertas;
+    }
+    
+    public long obtenerComandosEjecutados() {
+        return comandosEjecutados;
+    }
+    
+    public long obtenerFallos() {
+        return fallos;
+    }
+    
+    public Map<TipoComando, ResumenLatencia> obtenerLatencias() {
+        return latencias;
+    }
+}
+
+/**
+ * Comando SQL analizado una sola vez: texto normalizado, tipo, tabla
+ * principal, todas las tablas que nombra y numero de parametros '?'. Es
+ * inmutable y se comparte entre hilos.
+ */
+final class SentenciaPreparada {
+    private static final Set<String> PALABRAS_RESERVADAS = Set.of(
+        "SELECT", "INSERT", "UPDATE", "DELETE", "FROM", "INTO", "WHERE", "SET", "VALUES", "JOIN", "INNER",
+        "LEFT", "RIGHT", "FULL", "OUTER", "CROSS", "NATURAL", "ON", "USING", "AS", "GROUP", "ORDER", "BY",
+        "HAVING", "LIMIT", "OFFSET", "UNION", "EXCEPT", "INTERSECT", "AND", "OR", "NOT", "IN", "EXISTS");
+    
+    private final String sqlNormalizado;
+    private final TipoComando tipo;
+    private final String tabla;
+    private final List<String> tablas;
+    private final int numeroParametros;
+    
+    private SentenciaPreparada(String sqlNormalizado, TipoComando tipo, String tabla, List<String> tablas,
+                               int numeroParametros) {
+        this.sqlNormalizado = sqlNormalizado;
+        this.tipo = tipo;
+        this.tabla = tabla;
+        this.tablas = tablas;
+        this.numeroParametros = numeroParametros;
+    }
+    
+    /**
+     * Recorta y colapsa los espacios fuera de literales entre comillas simples.
+     */
+    public static String normalizar(String sql) {
+        StringBuilder resultado = new StringBuilder(sql.length());
+        boolean enLiteral = false;
+        boolean espacioPendiente = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (!enLiteral && Character.isWhitespace(c)) {
+                espacioPendiente = resultado.length() > 0;
+                continue;
+            }
+            if (espacioPendiente) {
+                resultado.append(' ');
+                espacioPendiente = false;
+            }
+            if (c == '\'') {
+                enLiteral = !enLiteral;
+            }
+            resultado.append(c);
+        }
+        return resultado.toString();
+    }
+    
+    /**
+     * Analiza un SQL ya normalizado. Las comas y los parentesis fuera de
+     * literales se conservan como palabras sueltas para separar listas de
+     * tablas, columnas y subconsultas.
+     */
+    public static SentenciaPreparada analizar(String sqlNormalizado) {
+        if (sqlNormalizado.isEmpty()) {
+            throw new IllegalArgumentException("Comando SQL vacio");
+        }
+        List<String> palabras = new ArrayList<>();
+        int parametros = 0;
+        boolean enLiteral = false;
+        StringBuilder palabra = new StringBuilder();
+        for (int i = 0; i <= sqlNormalizado.length(); i++) {
+            char c = i < sqlNormalizado.length() ? sqlNormalizado.charAt(i) : ' ';
+            if (c == '\'') {
+                enLiteral = !enLiteral;
+            } else if (!enLiteral && c == '?') {
+                parametros++;
+            }
+            if (!enLiteral && (Character.isLetterOrDigit(c) || c == '_' || c == '.')) {
+                palabra.append(c);
+                continue;
+            }
+            if (palabra.length() > 0) {
+                palabras.add(palabra.toString());
+                palabra.setLength(0);
+            }
+            if (!enLiteral && (c == ',' || c == '(' || c == ')')) {
+                palabras.add(String.valueOf(c));
+            }
+        }
+        if (enLiteral) {
+            throw new IllegalArgumentException("Literal sin cerrar en: " + sqlNormalizado);
+        }
+        TipoComando tipo = TipoComando.OTRO;
+        String anterior = null;
+        if (!palabras.isEmpty()) {
+            try {
+                tipo = TipoComando.valueOf(palabras.get(0).toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                tipo = TipoComando.OTRO;
+            }
+        }
+        switch (tipo) {
+            case SELECT:
+            case DELETE:
+                anterior = "FROM";
+                break;
+            case INSERT:
+                anterior = "INTO";
+                break;
+            case UPDATE:
+                anterior = "UPDATE";
+                break;
+            default:
+                break;
+        }
+        String tabla = null;
+        for (int i = 0; anterior != null && i < palabras.size() - 1; i++) {
+            if (palabras.get(i).equalsIgnoreCase(anterior) && esNombre(palabras.get(i + 1))) {
+                tabla = palabras.get(i + 1);
+                break;
+            }
+        }
+        return new SentenciaPreparada(sqlNormalizado, tipo, tabla, buscarTablas(palabras), parametros);
+    }
+    
+    /**
+     * Tablas nombradas tras FROM, JOIN, INTO o UPDATE en cualquier nivel,
+     * incluidas las subconsultas y las listas separadas por comas con sus
+     * alias. Basta con que no falte ninguna: una tabla de mas solo hace
+     * que la cache invalide de mas.
+     */
+    private static List<String> buscarTablas(List<String> palabras) {
+        Set<String> tablas = new LinkedHashSet<>();
+        for (int i = 0; i < palabras.size(); i++) {
+            String clave = palabras.get(i).toUpperCase(Locale.ROOT);
+            if (!clave.equals("FROM") && !clave.equals("JOIN") && !clave.equals("INTO") && !clave.equals("UPDATE")) {
+                continue;
+            }
+            int j = i + 1;
+            while (j < palabras.size() && esNombre(palabras.get(j))) {
+                tablas.add(palabras.get(j));
+                j++;
+                if (j < palabras.size() && palabras.get(j).equalsIgnoreCase("AS")) {
+                    j++;
+                }
+                if (j < palabras.size() && esNombre(palabras.get(j))) {
+                    j++;
+                }
+                if (j >= palabras.size() || !palabras.get(j).equals(",")) {
+                    break;
+                }
+                j++;
+            }
+        }
+        return List.copyOf(tablas);
+    }
+    
+    private static boolean esNombre(String palabra) {
+        char inicial = palabra.charAt(0);
+        return (Character.isLetter(inicial) || inicial == '_')
+            && !PALABRAS_RESERVADAS.contains(palabra.toUpperCase(Locale.ROOT));
+    }
+    
+    public void validarParametros(Object[] parametros) {
+        int recibidos = parametros == null ? 0 : parametros.length;
+        if (recibidos != numeroParametros) {
+            throw new IllegalArgumentException("Se esperaban " + numeroParametros +
+                                             " parametros y se recibieron " + recibidos);
+        }
+    }
+    
+    /**
+     * Sustituye cada '?' por el literal SQL del parametro correspondiente.
+     */
+    public String enlazar(Object[] parametros) {
+        validarParametros(parametros);
+        if (numeroParametros == 0) {
+            return sqlNormalizado;
+        }
+        StringBuilder resultado = new StringBuilder(sqlNormalizado.length() + 16 * numeroParametros);
+        boolean enLiteral = false;
+        int siguiente = 0;
+        for (int i = 0; i < sqlNormalizado.length(); i++) {
+            char c = sqlNormalizado.charAt(i);
+            if (c == '\'') {
+                enLiteral = !enLiteral;
+            }
+            if (!enLiteral && c == '?') {
+                agregarLiteral(resultado, parametros[siguiente++]);
+            } else {
+                resultado.append(c);
+            }
+        }
+        return resultado.toString();
+    }
+    
+    private static void agregarLiteral(StringBuilder destino, Object valor) {
+        if (valor == null) {
+            destino.append("NULL");
+        } else if (valor instanceof Number || valor instanceof Boolean) {
+            destino.append(valor);
+        } else {
+            destino.append('\'').append(valor.toString().replace("'", "''")).append('\'');
+        }
+    }
+    
+    public String obtenerSqlNormalizado() {
+        return sqlNormalizado;
+    }
+    
+    public TipoComando obtenerTipo() {
+        return tipo;
+    }
+    
+    public String obtenerTabla() {
+        return tabla;
+    }
+    
+    /**
+     * Todas las tablas que nombra la sentencia, empezando por la principal.
+     */
+    public List<String> obtenerTablas() {
+        return tablas;
+    }
+    
+    public int obtenerNumeroParametros() {
+        return numeroParametros;
+    }
+}
+
+/**
+ * Cache LRU acotada de sentencias analizadas, indexada por SQL normalizado.
+ * El analisis de un fallo se hace fuera del candado; si dos hilos analizan
+ * la misma sentencia a la vez se conserva la primera.
+ */
+class CacheSentencias {
+    private final int capacidad;
+    private final LinkedHashMap<String, SentenciaPreparada> sentencias;
+    private final LongAdder aciertos;
+    private final LongAdder fallos;
+    private final LongAdder desalojos;
+    
+    public CacheSentencias(int capacidad) {
+        if (capacidad < 1) {
+            throw new IllegalArgumentException("Capacidad de cache invalida: " + capacidad);
+        }
+        this.capacidad = capacidad;
+        this.aciertos = new LongAdder();
+        this.fallos = new LongAdder();
+        this.desalojos = new LongAdder();
+        this.sentencias = new LinkedHashMap<String, SentenciaPreparada>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SentenciaPreparada> mayor) {
+                if (size() > CacheSentencias.this.capacidad) {
+                    desalojos.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    public SentenciaPreparada obtener(String sql) {
+        String clave = SentenciaPreparada.normalizar(sql);
+        SentenciaPreparada sentencia;
+        synchronized (sentencias) {
+            sentencia = sentencias.get(clave);
+        }
+        if (sentencia != null) {
+            aciertos.increment();
+            return sentencia;
+        }
+        fallos.increment();
+        SentenciaPreparada nueva = SentenciaPreparada.analizar(clave);
+        synchronized (sentencias) {
+            SentenciaPreparada existente = sentencias.putIfAbsent(clave, nueva);
+            return existente != null ? existente : nueva;
+        }
+    }
+    
+    public long obtenerAciertos() {
+        return aciertos.sum();
+    }
+    
+    public long obtenerFallos() {
+        return fallos.sum();
+    }
+    
+    public long obtenerDesalojos() {
+        return desalojos.sum();
+    }
+    
+    public int obtenerCapacidad() {
+        return capacidad;
+    }
+    
+    public int obtenerTamano() {
+        synchronized (sentencias) {
+            return sentencias.size();
+        }
+    }
+}
+
+/**
+ * Cache LRU de resultados de lectura con tiempo de vida. Cada tabla tiene un
+ * contador de generacion que las escrituras incrementan: una entrada guardada
+ * con una generacion anterior a la actual se considera invalidada, asi que
+ * invalidar una tabla es O(1) y una lectura que empezo antes de una escritura
+ * nunca deja en cache un resultado obsoleto. Una lectura depende de todas las
+ * tablas que nombra, incluidas las de sus JOIN y subconsultas; su generacion
+ * es la suma de los contadores de esas tablas, que crece en cuanto cualquiera
+ * de ellas recibe una escritura.
+ */
+class CacheResultados {
+    private final int capacidad;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, ResultadoEnCache> resultados;
+    private final ConcurrentHashMap<String, AtomicLong> generaciones;
+    private final LongAdder aciertos;
+    private final LongAdder fallos;
+    private final LongAdder expirados;
+    private final LongAdder invalidados;
+    private final LongAdder desalojos;
+    
+    public CacheResultados(int capacidad, long ttlMs) {
+        if (capacidad < 1 || ttlMs <= 0) {
+            throw new IllegalArgumentException("Parametros de cache de resultados invalidos");
+        }
+        this.capacidad = capacidad;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.generaciones = new ConcurrentHashMap<>();
+        this.aciertos = new LongAdder();
+        this.fallos = new LongAdder();
+        this.expirados = new LongAdder();
+        this.invalidados = new LongAdder();
+        this.desalojos = new LongAdder();
+        this.resultados = new LinkedHashMap<String, ResultadoEnCache>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ResultadoEnCache> mayor) {
+                if (size() > CacheResultados.this.capacidad) {
+                    desalojos.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    public String obtener(String sqlNormalizado, List<String> tablas) {
+        ResultadoEnCache entrada;
+        synchronized (resultados) {
+            entrada = resultados.get(sqlNormalizado);
+        }
+        if (entrada != null) {
+            if (entrada.generacion != generacionDe(tablas)) {
+                invalidados.increment();
+                eliminar(sqlNormalizado, entrada);
+            } else if (System.nanoTime() - entrada.expiraNanos > 0) {
+                expirados.increment();
+                eliminar(sqlNormalizado, entrada);
+            } else {
+                aciertos.increment();
+                return entrada.valor;
+            }
+        }
+        fallos.increment();
+        return null;
+    }
+    
+    /**
+     * Guarda un resultado leido cuando sus tablas estaban en la generacion indicada.
+     */
+    public void guardar(String sqlNormalizado, List<String> tablas, String valor, long generacion) {
+        if (generacion != generacionDe(tablas)) {
+            return;
+        }
+        ResultadoEnCache entrada = new ResultadoEnCache(valor, generacion, System.nanoTime() + ttlNanos);
+        synchronized (resultados) {
+            resultados.put(sqlNormalizado, entrada);
+        }
+    }
+    
+    public long generacionDe(List<String> tablas) {
+        long suma = 0;
+        for (int i = 0; i < tablas.size(); i++) {
+            AtomicLong generacion = generaciones.get(tablas.get(i).toLowerCase(Locale.ROOT));
+            if (generacion != null) {
+                suma += generacion.get();
+            }
+        }
+        return suma;
+    }
+    
+    public void invalidarTabla(String tabla) {
+        generaciones.computeIfAbsent(tabla.toLowerCase(Locale.ROOT), clave -> new AtomicLong()).incrementAndGet();
+    }
+    
+    private void eliminar(String sqlNormalizado, ResultadoEnCache entrada) {
+        synchronized (resultados) {
+            resultados.remove(sqlNormalizado, entrada);
+        }
+    }
+    
+    public long obtenerAciertos() {
+        return aciertos.sum();
+    }
+    
+    public long obtenerFallos() {
+        return fallos.sum();
+    }
+    
+    public long obtenerExpirados() {
+        return expirados.sum();
+    }
+    
+    public long obtenerInvalidados() {
+        return invalidados.sum();
+    }
+    
+    public long obtenerDesalojos() {
+        return desalojos.sum();
+    }
+    
+    public int obtenerCapacidad() {
+        return capacidad;
+    }
+    
+    public int obtenerTamano() {
+        synchronized (resultados) {
+            return resultados.size();
+        }
+    }
+    
+    private static class ResultadoEnCache {
+        final String valor;
+        final long generacion;
+        final long expiraNanos;
+        
+        ResultadoEnCache(String valor, long generacion, long expiraNanos) {
+            this.valor = valor;
+            this.generacion = generacion;
+            this.expiraNanos = expiraNanos;
+        }
+    }
+}
+
+/**
+ * Agrupa comandos en lotes que se envian en un solo viaje por una conexion
+ * del pool. Un lote se despacha al llegar a tamanoMaximo comandos o cuando
+ * vence la ventana desde su primer comando. Con lotesEnVuelo mayor que uno
+ * varios lotes se ejecutan a la vez y el orden entre lotes no se garantiza;
+ * dentro de un lote los comandos se ejecutan en el orden en que se agregaron.
+ */
+class LoteComandos implements AutoCloseable {
+    private static final ScheduledExecutorService TEMPORIZADOR = Executors.newSingleThreadScheduledExecutor(tarea -> {
+        Thread hilo = new Thread(tarea, "temporizador-lotes");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+    
+    private final int tamanoMaximo;
+    private final long ventanaMs;
+    private final int lotesEnVuelo;
+    private final Executor despachador;
+    private final GestorConexiones gestor;
+    private final ArrayDeque<Runnable> enEspera = new ArrayDeque<>();
+    private int enVuelo;
+    private List<String> comandos;
+    private List<CompletableFuture<String>> resultados;
+    private long generacion;
+    private boolean cerrado;
+    
+    /**
+     * El despachador es del gestor y lo comparten todos sus lotes; cada lote
+     * limita por su cuenta cuantos de sus viajes ocupan un hilo a la vez.
+     */
+    LoteComandos(GestorConexiones gestor, Executor despachador, int tamanoMaximo, long ventanaMs, int lotesEnVuelo) {
+        if (tamanoMaximo < 1 || ventanaMs < 0 || lotesEnVuelo < 1) {
+            throw new IllegalArgumentException("Parametros de lote invalidos");
+        }
+        this.tamanoMaximo = tamanoMaximo;
+        this.ventanaMs = ventanaMs;
+        this.lotesEnVuelo = lotesEnVuelo;
+        this.gestor = gestor;
+        this.despachador = despachador;
+        this.comandos = new ArrayList<>(tamanoMaximo);
+        this.resultados = new ArrayList<>(tamanoMaximo);
+    }
+    
+    public CompletableFuture<String> agregar(String comandoSQL) {
+        CompletableFuture<String> resultado = new CompletableFuture<>();
+        synchronized (this) {
+            if (cerrado) {
+                resultado.completeExceptionally(new ExcepcionConexion("El lote de comandos esta cerrado"));
+                return resultado;
+            }
+            comandos.add(comandoSQL);
+            resultados.add(resultado);
+            if (comandos.size() >= tamanoMaximo) {
+                despacharPendientes();
+            } else if (comandos.size() == 1) {
+                long generacionActual = generacion;
+                TEMPORIZADOR.schedule(() -> vencerVentana(generacionActual), ventanaMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        return resultado;
+    }
+    
+    /**
+     * Despacha de inmediato los comandos pendientes.
+     */
+    public synchronized void vaciar() {
+        if (!comandos.isEmpty()) {
+            despacharPendientes();
+        }
+    }
+    
+    private synchronized void vencerVentana(long generacionProgramada) {
+        if (generacion == generacionProgramada && !comandos.isEmpty()) {
+            despacharPendientes();
+        }
+    }
+    
+    private void despacharPendientes() {
+        List<String> lote = comandos;
+        List<CompletableFuture<String>> futuros = resultados;
+        comandos = new ArrayList<>(tamanoMaximo);
+        resultados = new ArrayList<>(tamanoMaximo);
+        generacion++;
+        Runnable viaje = () -> {
+            try {
+                ejecutar(lote, futuros);
+            } finally {
+                terminarViaje();
+            }
+        };
+        if (enVuelo < lotesEnVuelo) {
+            enVuelo++;
+            lanzar(viaje);
+        } else {
+            enEspera.add(viaje);
+        }
+    }
+    
+    private synchronized void terminarViaje() {
+        Runnable siguiente = enEspera.poll();
+        if (siguiente == null) {
+            enVuelo--;
+        } else {
+            lanzar(siguiente);
+        }
+    }
+    
+    /**
+     * Entrega el viaje al despachador ocupando un hueco ya reservado. Si el
+     * despacho esta detenido, el viaje se ejecuta en el hilo que lo lanza y
+     * falla al no encontrar el pool, igual que lo haria en su propio hilo.
+     */
+    private void lanzar(Runnable viaje) {
+        try {
+            despachador.execute(viaje);
+        } catch (RejectedExecutionException e) {
+            viaje.run();
+        }
+    }
+    
+    /**
+     * Cada futuro se completa con el resultado de su comando. Si el lote se
+     * interrumpe a medias, los comandos aplicados se completan con su
+     * resultado, el fallido con su error y los no enviados con un error
+     * propio que indica que es seguro reenviarlos. Si el viaje entero falla,
+     * por ejemplo al agotarse el tiempo limite, no se sabe que se aplico y
+     * todos fallan con esa causa.
+     */
+    private void ejecutar(List<String> lote, List<CompletableFuture<String>> futuros) {
+        long inicio = System.nanoTime();
+        List<String> respuestas;
+        try {
+            respuestas = gestor.ejecutarLote(lote);
+        } catch (ExcepcionLoteParcial e) {
+            List<String> aplicados = e.obtenerResultados();
+            gestor.registrarLote(lote, aplicados.size(), System.nanoTime() - inicio);
+            completar(futuros, aplicados);
+            futuros.get(aplicados.size()).completeExceptionally(e.getCause());
+            if (aplicados.size() + 1 < futuros.size()) {
+                fallar(futuros.subList(aplicados.size() + 1, futuros.size()),
+                       new ExcepcionConexion("Comando no enviado: el lote se interrumpio en el comando " +
+                                             (aplicados.size() + 1) + " de " + lote.size(), e.getCause()));
+            }
+            return;
+        } catch (RuntimeException e) {
+            gestor.registrarLote(lote, 0, System.nanoTime() - inicio);
+            fallar(futuros, e);
+            return;
+        }
+        gestor.registrarLote(lote, lote.size(), System.nanoTime() - inicio);
+        completar(futuros, respuestas);
+    }
+    
+    private static void completar(List<CompletableFuture<String>> futuros, List<String> respuestas) {
+        for (int i = 0; i < respuestas.size(); i++) {
+            futuros.get(i).complete(respuestas.get(i));
+        }
+    }
+    
+    private static void fallar(List<CompletableFuture<String>> futuros, Throwable causa) {
+        for (CompletableFuture<String> futuro : futuros) {
+            futuro.completeExceptionally(causa);
+        }
+    }
+    
+    /**
+     * Despacha lo pendiente y deja de aceptar comandos; los viajes en vuelo
+     * y en espera terminan en los hilos del gestor.
+     */
+    @Override
+    public void close() {
+        cerrar();
+    }
+    
+    public void cerrar() {
+        synchronized (this) {
+            if (cerrado) {
+                return;
+            }
+            vaciar();
+            cerrado = true;
+        }
+    }
+}
+
+// ==================== PATRON BRIDGE ====================
+
+/**
+ * Interfaz para dispositivos multimedia (Implementador)
+ */
+interface DispositivoMultimedia {
+    void activar();
+    void desactivar();
+    void modificarVolumen(int nivel);
+    void seleccionarEntrada(String entrada);
+    boolean estaActivo();
+    int obtenerVolumen();
+    String obtenerEntrada();
+    String obtenerModelo();
+    
+    /**
+     * Suma delta al volumen y devuelve el resultado. La version por omision
+     * lee y luego escribe, por lo que no es atomica; los dispositivos con
+     * EstadoDispositivo la sobrescriben con una actualizacion atomica.
+     */
+    default int ajustarVolumen(int delta) {
+        modificarVolumen(obtenerVolumen() + delta);
+        return obtenerVolumen();
+    }
+    
+    /**
+     * Volumen mas alto que acepta el dispositivo; por omision la escala de 0 a 100.
+     */
+    default int obtenerVolumenMaximo() {
+        return 100;
+    }
+    
+    /**
+     * Instantanea compacta del estado, en el formato de palabra de
+     * EstadoDispositivo. La version por omision la arma con las lecturas
+     * del dispositivo y version 0; los dispositivos con EstadoDispositivo
+     * devuelven su palabra, con la version de su ultimo cambio.
+     */
+    default long capturarEstado() {
+        return EstadoDispositivo.empaquetar(estaActivo(), obtenerVolumen(), obtenerEntrada());
+    }
+    
+    /**
+     * Lleva el dispositivo al estado de la instantanea enviando solo los
+     * campos que difieren, y devuelve cuantas ordenes envio. Volumen y
+     * entrada se fijan con el dispositivo encendido: se enciende antes si
+     * hace falta y se apaga al final si la instantanea estaba apagada. Si
+     * ambos estados estan apagados no se envia nada, porque el dispositivo
+     * no acepta cambios apagado. Una entrada desbordada (ver
+     * EstadoDispositivo) no se puede resolver y se conserva la actual.
+     */
+    default int restaurarEstado(long instantanea) {
+        long actual = capturarEstado();
+        if (EstadoDispositivo.mismoEstado(actual, instantanea)) {
+            return 0;
+        }
+        int ordenes = 0;
+        boolean encender = EstadoDispositivo.encendido(instantanea);
+        if (encender && !EstadoDispositivo.encendido(actual)) {
+            activar();
+            ordenes++;
+            actual = capturarEstado();
+        }
+        if (EstadoDispositivo.encendido(actual)) {
+            if (EstadoDispositivo.volumen(actual) != EstadoDispositivo.volumen(instantanea)) {
+                modificarVolumen(EstadoDispositivo.volumen(instantanea));
+                ordenes++;
+            }
+            if (EstadoDispositivo.entradaInternada(instantanea) && !EstadoDispositivo.mismaEntrada(actual, instantanea)) {
+                seleccionarEntrada(EstadoDispositivo.entrada(instantanea));
+                ordenes++;
+            }
+            if (!encender) {
+                desactivar();
+                ordenes++;
+            }
+        }
+        return ordenes;
+    }
+}
+
+/**
+ * Estado de un dispositivo empaquetado en una sola palabra atomica, para
+ * que varios controles lo manejen a la vez sin candados:
+ *   bit 0 encendido | bits 1-8 volumen | bits 9-24 indice de entrada | bits 25-63 version
+ * Cada cambio es un compareAndSet sobre la palabra completa, asi cada
+ * operacion es linealizable y un ajuste relativo de volumen nunca pierde
+ * actualizaciones. Las lecturas son un solo acceso volatil. Los nombres de
+ * entrada se internan en una tabla global y la palabra guarda su indice; el
+ * 0 es la entrada nula. La tabla admite 65535 nombres: los que no caben se
+ * guardan en el propio dispositivo y la palabra lleva un indice de
+ * desbordamiento, de modo que siguen funcionando aunque una instantanea no
+ * pueda representarlos. La version crece con cada cambio efectivo.
+ */
+final class EstadoDispositivo {
+    private static final long ENCENDIDO = 1L;
+    private static final int DESPLAZAMIENTO_VOLUMEN = 1;
+    private static final long MASCARA_VOLUMEN = 0xFFL;
+    private static final int DESPLAZAMIENTO_ENTRADA = 9;
+    private static final long MASCARA_ENTRADA = 0xFFFFL;
+    private static final int DESPLAZAMIENTO_VERSION = 25;
+    
+    private static final int ENTRADA_NULA = 0;
+    private static final int ENTRADA_DESBORDADA = (int) MASCARA_ENTRADA;
+    
+    private static final ConcurrentHashMap<String, Integer> INDICE_ENTRADAS = new ConcurrentHashMap<>();
+    private static volatile String[] entradas = new String[] {null};
+    
+    private final AtomicLong palabra;
+    private final int volumenMaximo;
+    private volatile String entradaDesbordada;
+    
+    EstadoDispositivo(int volumen, String entrada, int volumenMaximo) {
+        if (volumenMaximo < 0 || volumenMaximo > MASCARA_VOLUMEN) {
+            throw new IllegalArgumentException("Volumen maximo fuera de rango: " + volumenMaximo);
+        }
+        this.volumenMaximo = volumenMaximo;
+        int indice = indiceEntrada(entrada);
+        if (indice == ENTRADA_DESBORDADA) {
+            this.entradaDesbordada = entrada;
+        }
+        this.palabra = new AtomicLong(((long) limitar(volumen) << DESPLAZAMIENTO_VOLUMEN)
+                                      | ((long) indice << DESPLAZAMIENTO_ENTRADA));
+    }
+    
+    private static int indiceEntrada(String entrada) {
+        if (entrada == null) {
+            return ENTRADA_NULA;
+        }
+        Integer indice = INDICE_ENTRADAS.get(entrada);
+        return indice != null ? indice : registrarEntrada(entrada);
+    }
+    
+    /**
+     * La tabla se copia al crecer y se publica antes que el indice, de modo
+     * que quien encuentre el indice siempre puede resolverlo sin candados.
+     * Llena, devuelve el indice de desbordamiento sin registrar el nombre.
+     */
+    private static synchronized int registrarEntrada(String entrada) {
+        Integer indice = INDICE_ENTRADAS.get(entrada);
+        if (indice != null) {
+            return indice;
+        }
+        String[] actuales = entradas;
+        if (actuales.length == ENTRADA_DESBORDADA) {
+            return ENTRADA_DESBORDADA;
+        }
+        String[] nuevas = Arrays.copyOf(actuales, actuales.length + 1);
+        nuevas[actuales.length] = entrada;
+        entradas = nuevas;
+        INDICE_ENTRADAS.put(entrada, actuales.length);
+        return actuales.length;
+    }
+    
+    private int limitar(long volumen) {
+        return (int) Math.max(0, Math.min(volumenMaximo, volumen));
+    }
+    
+    /**
+     * Palabra actual, para leer varios campos de un mismo instante con los
+     * decodificadores estaticos.
+     */
+    public long leer() {
+        return palabra.get();
+    }
+    
+    public static boolean encendido(long palabra) {
+        return (palabra & ENCENDIDO) != 0;
+    }
+    
+    public static int volumen(long palabra) {
+        return (int) ((palabra >>> DESPLAZAMIENTO_VOLUMEN) & MASCARA_VOLUMEN);
+    }
+    
+    private static int indiceEntrada(long palabra) {
+        return (int) ((palabra >>> DESPLAZAMIENTO_ENTRADA) & MASCARA_ENTRADA);
+    }
+    
+    /**
+     * Nombre de la entrada de la palabra. Una entrada desbordada no se puede
+     * resolver desde la palabra sola y devuelve null (ver entradaInternada).
+     */
+    public static String entrada(long palabra) {
+        int indice = indiceEntrada(palabra);
+        return indice == ENTRADA_DESBORDADA ? null : entradas[indice];
+    }
+    
+    /**
+     * Indica si la entrada de la palabra esta en la tabla global y por tanto
+     * se puede restaurar desde una instantanea.
+     */
+    public static boolean entradaInternada(long palabra) {
+        return indiceEntrada(palabra) != ENTRADA_DESBORDADA;
+    }
+    
+    public static long version(long palabra) {
+        return palabra >>> DESPLAZAMIENTO_VERSION;
+    }
+    
+    /**
+     * Palabra con version 0 para un estado leido campo a campo.
+     */
+    public static long empaquetar(boolean encendido, int volumen, String entrada) {
+        return (encendido ? ENCENDIDO : 0L)
+               | ((long) Math.max(0, Math.min((int) MASCARA_VOLUMEN, volumen)) << DESPLAZAMIENTO_VOLUMEN)
+               | ((long) indiceEntrada(entrada) << DESPLAZAMIENTO_ENTRADA);
+    }
+    
+    public static long conEncendido(long palabra, boolean encendido) {
+        return encendido ? palabra | ENCENDIDO : palabra & ~ENCENDIDO;
+    }
+    
+    /**
+     * Compara encendido, volumen y entrada, sin la version.
+     */
+    public static boolean mismoEstado(long una, long otra) {
+        return ((una ^ otra) & ((1L << DESPLAZAMIENTO_VERSION) - 1)) == 0;
+    }
+    
+    /**
+     * Compara los indices internados, sin resolver los nombres.
+     */
+    public static boolean mismaEntrada(long una, long otra) {
+        return ((una ^ otra) & (MASCARA_ENTRADA << DESPLAZAMIENTO_ENTRADA)) == 0;
+    }
+    
+    public boolean estaEncendido() {
+        return encendido(palabra.get());
+    }
+    
+    public int obtenerVolumen() {
+        return volumen(palabra.get());
+    }
+    
+    public String obtenerEntrada() {
+        long actual = palabra.get();
+        return entradaInternada(actual) ? entrada(actual) : entradaDesbordada;
+    }
+    
+    public int obtenerVolumenMaximo() {
+        return volumenMaximo;
+    }
+    
+    /**
+     * Devuelve true si el dispositivo estaba apagado.
+     */
+    public boolean encender() {
+        return cambiarEncendido(true);
+    }
+    
+    /**
+     * Devuelve true si el dispositivo estaba encendido.
+     */
+    public boolean apagar() {
+        return cambiarEncendido(false);
+    }
+    
+    private boolean cambiarEncendido(boolean valor) {
+        long actual;
+        long siguiente;
+        do {
+            actual = palabra.get();
+            if (encendido(actual) == valor) {
+                return false;
+            }
+            siguiente = siguienteVersion(valor ? actual | ENCENDIDO : actual & ~ENCENDIDO);
+        } while (!palabra.compareAndSet(actual, siguiente));
+        return true;
+    }
+    
+    /**
+     * Fija el volumen, limitado al rango del dispositivo. Devuelve el
+     * volumen resultante, o -1 si el dispositivo esta apagado.
+     */
+    public int fijarVolumen(int nivel) {
+        return cambiarVolumen(nivel, false);
+    }
+    
+    /**
+     * Suma delta al volumen de forma atomica. Devuelve el volumen
+     * resultante, o -1 si el dispositivo esta apagado.
+     */
+    public int ajustarVolumen(int delta) {
+        return cambiarVolumen(delta, true);
+    }
+    
+    private int cambiarVolumen(int valor, boolean relativo) {
+        while (true) {
+            long actual = palabra.get();
+            if (!encendido(actual)) {
+                return -1;
+            }
+            int anterior = volumen(actual);
+            int nuevo = limitar(relativo ? (long) anterior + valor : valor);
+            if (nuevo == anterior) {
+                return nuevo;
+            }
+            long siguiente = (actual & ~(MASCARA_VOLUMEN << DESPLAZAMIENTO_VOLUMEN))
+                             | ((long) nuevo << DESPLAZAMIENTO_VOLUMEN);
+            if (palabra.compareAndSet(actual, siguienteVersion(siguiente))) {
+                return nuevo;
+            }
+        }
+    }
+    
+    /**
+     * Cambia la entrada si el dispositivo esta encendido; devuelve false si esta apagado.
+     */
+    public boolean seleccionarEntrada(String entrada) {
+        long indice = indiceEntrada(entrada);
+        if (indice == ENTRADA_DESBORDADA) {
+            return seleccionarEntradaDesbordada(entrada);
+        }
+        while (true) {
+            long actual = palabra.get();
+            if (!encendido(actual)) {
+                return false;
+            }
+            if (((actual >>> DESPLAZAMIENTO_ENTRADA) & MASCARA_ENTRADA) == indice) {
+                return true;
+            }
+            long siguiente = (actual & ~(MASCARA_ENTRADA << DESPLAZAMIENTO_ENTRADA)) | (indice << DESPLAZAMIENTO_ENTRADA);
+            if (palabra.compareAndSet(actual, siguienteVersion(siguiente))) {
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * Las escrituras de entradas desbordadas se serializan con el monitor del
+     * estado; el nombre se publica antes que la palabra, asi que un lector
+     * puede verlo un instante antes de que cambie la version.
+     */
+    private synchronized boolean seleccionarEntradaDesbordada(String entrada) {
+        String anterior = entradaDesbordada;
+        while (true) {
+            long actual = palabra.get();
+            if (!encendido(actual)) {
+                entradaDesbordada = anterior;
+                return false;
+            }
+            if (indiceEntrada(actual) == ENTRADA_DESBORDADA && entrada.equals(anterior)) {
+                return true;
+            }
+            entradaDesbordada = entrada;
+            long siguiente = actual | (MASCARA_ENTRADA << DESPLAZAMIENTO_ENTRADA);
+            if (palabra.compareAndSet(actual, siguienteVersion(siguiente))) {
+                return true;
+            }
+        }
+    }
+    
+    private static long siguienteVersion(long palabra) {
+        return palabra + (1L << DESPLAZAMIENTO_VERSION);
+    }
+}
+
+/**
+ * Historial acotado de instantaneas de un dispositivo para deshacer
+ * cambios. Guarda las palabras de EstadoDispositivo en un anillo de long,
+ * sin objetos por entrada; al llenarse descarta la mas antigua. Una
+ * instantanea identica a la ultima guardada (misma version incluida) no se
+ * repite. No es seguro entre hilos, como el control que lo usa.
+ */
+final class HistorialEstados {
+    private final long[] instantaneas;
+    private int siguiente;
+    private int cantidad;
+    
+    HistorialEstados(int capacidad) {
+        if (capacidad < 1) {
+            throw new IllegalArgumentException("Capacidad invalida: " + capacidad);
+        }
+        this.instantaneas = new long[capacidad];
+    }
+    
+    public void guardar(long instantanea) {
+        if (cantidad > 0 && instantaneas[anterior(siguiente)] == instantanea) {
+            return;
+        }
+        instantaneas[siguiente] = instantanea;
+        siguiente = (siguiente + 1) % instantaneas.length;
+        cantidad = Math.min(cantidad + 1, instantaneas.length);
+    }
+    
+    /**
+     * Quita y devuelve la instantanea mas reciente.
+     */
+    public long extraer() {
+        if (cantidad == 0) {
+            throw new IllegalStateException("El historial de estados esta vacio");
+        }
+        siguiente = anterior(siguiente);
+        cantidad--;
+        return instantaneas[siguiente];
+    }
+    
+    private int anterior(int indice) {
+        return (indice + instantaneas.length - 1) % instantaneas.length;
+    }
+    
+    public boolean estaVacio() {
+        return cantidad == 0;
+    }
+    
+    public int contar() {
+        return cantidad;
+    }
+}
+
+/**
+ * Implementacion concreta: Televisor
+ */
+class Televisor implements DispositivoMultimedia {
+    private final EstadoDispositivo estado;
+    private final String marca;
+    
+    public Televisor(String marca) {
+        this.marca = marca;
+        this.estado = new EstadoDispositivo(20, "HDMI1", 100);
+    }
+    
+    @Override
+    public void activar() {
+        estado.encender();
+        Registro.info(() -> "Televisor " + marca + " encendido");
+    }
+    
+    @Override
+    public void desactivar() {
+        estado.apagar();
+        Registro.info(() -> "Televisor " + marca + " apagado");
+    }
+    
+    @Override
+    public void modificarVolumen(int nivel) {
+        int volumen = estado.fijarVolumen(nivel);
+        if (volumen >= 0) {
+            Registro.info(() -> "Volumen del televisor ajustado a: " + volumen);
+        }
+    }
+    
+    @Override
+    public int ajustarVolumen(int delta) {
+        int volumen = estado.ajustarVolumen(delta);
+        if (volumen < 0) {
+            return estado.obtenerVolumen();
+        }
+        Registro.info(() -> "Volumen del televisor ajustado a: " + volumen);
+        return volumen;
+    }
+    
+    @Override
+    public void seleccionarEntrada(String entrada) {
+        if (estado.seleccionarEntrada(entrada)) {
+            Registro.info(() -> "Entrada cambiada a: " + entrada);
+        }
+    }
+    
+    @Override
+    public boolean estaActivo() {
+        return estado.estaEncendido();
+    }
+    
+    @Override
+    public int obtenerVolumen() {
+        return estado.obtenerVolumen();
+    }
+    
+    @Override
+    public String obtenerEntrada() {
+        return estado.obtenerEntrada();
+    }
+    
+    @Override
+    public int obtenerVolumenMaximo() {
+        return estado.obtenerVolumenMaximo();
+    }
+    
+    @Override
+    public long capturarEstado() {
+        return estado.leer();
+    }
+    
+    @Override
+    public String obtenerModelo() {
+        return "Televisor " + marca;
+    }
+}
+
+/**
+ * Implementacion concreta: Sistema de Sonido
+ */
+class SistemaSonido implements DispositivoMultimedia {
+    private final EstadoDispositivo estado;
+    private final String modelo;
+    
+    public SistemaSonido(String modelo) {
+        this.modelo = modelo;
+        this.estado = new EstadoDispositivo(30, "Estéreo", 80);
+    }
+    
+    @Override
+    public void activar() {
+        estado.encender();
+        Registro.info(() -> "Sistema de sonido " + modelo + " activado");
+    }
+    
+    @Override
+    public void desactivar() {
+        estado.apagar();
+        Registro.info(() -> "Sistema de sonido " + modelo + " desactivado");
+    }
+    
+    @Override
+    public void modificarVolumen(int nivel) {
+        int volumen = estado.fijarVolumen(nivel);
+        if (volumen >= 0) {
+            Registro.info(() -> "Volumen del sistema de sonido: " + volumen);
+        }
+    }
+    
+    @Override
+    public int ajustarVolumen(int delta) {
+        int volumen = estado.ajustarVolumen(delta);
+        if (volumen < 0) {
+            return estado.obtenerVolumen();
+        }
+        Registro.info(() -> "Volumen del sistema de sonido: " + volumen);
+        return volumen;
+    }
+    
+    @Override
+    public void seleccionarEntrada(String entrada) {
+        if (estado.seleccionarEntrada(entrada)) {
+            Registro.info(() -> "Modo de audio cambiado a: " + entrada);
+        }
+    }
+    
+    @Override
+    public boolean estaActivo() {
+        return estado.estaEncendido();
+    }
+    
+    @Override
+    public int obtenerVolumen() {
+        return estado.obtenerVolumen();
+    }
+    
+    @Override
+    public String obtenerEntrada() {
+        return estado.obtenerEntrada();
+    }
+    
+    @Override
+    public int obtenerVolumenMaximo() {
+        return estado.obtenerVolumenMaximo();
+    }
+    
+    @Override
+    public long capturarEstado() {
+        return estado.leer();
+    }
+    
+    @Override
+    public String obtenerModelo() {
+        return "Sistema de Sonido " + modelo;
+    }
+}
+
+/**
+ * Decorador que mide como tramo de traza cada orden que un control envia a
+ * su dispositivo; las lecturas no se miden. ControlUniversal solo lo
+ * interpone si las trazas estaban activas al crear el control; si despues
+ * se desactivan, cuesta una lectura volatil por orden.
+ */
+final class DispositivoTrazado implements DispositivoMultimedia {
+    private final DispositivoMultimedia dispositivo;
+    private final PuntoTraza punto = new PuntoTraza();
+    
+    DispositivoTrazado(DispositivoMultimedia dispositivo) {
+        this.dispositivo = dispositivo;
+    }
+    
+    @Override
+    public void activar() {
+        long traza = Trazas.iniciar(punto);
+        try {
+            dispositivo.activar();
+        } finally {
+            Trazas.terminar(traza, CategoriaTraza.DISPOSITIVO, dispositivo, "activar");
+        }
+    }
+    
+    @Override
+    public void desactivar() {
+        long traza = Trazas.iniciar(punto);
+        try {
+            dispositivo.desactivar();
+        } finally {
+            Trazas.terminar(traza, CategoriaTraza.DISPOSITIVO, dispositivo, "desactivar");
+        }
+    }
+    
+    @Override
+    public void modificarVolumen(int nivel) {
+        long traza = Trazas.iniciar(punto);
+        try {
+            dispositivo.modificarVolumen(nivel);
+        } finally {
+            Trazas.terminar(traza, CategoriaTraza.DISPOSITIVO, dispositivo, "modificarVolumen");
+        }
+    }
+    
+    @Override
+    public int ajustarVolumen(int delta) {
+        long traza = Trazas.iniciar(punto);
+        try {
+            return dispositivo.ajustarVolumen(delta);
+        } finally {
+            Trazas.terminar(traza, CategoriaTraza.DISPOSITIVO, dispositivo, "ajustarVolumen");
+        }
+    }
+    
+    @Override
+    public void seleccionarEntrada(String entrada) {
+        long traza = Trazas.iniciar(punto);
+        try {
+            dispositivo.seleccionarEntrada(entrada);
+        } finally {
+            Trazas.terminar(traza, CategoriaTraza.DISPOSITIVO, dispositivo, "seleccionarEntrada");
+        }
+    }
+    
+    @Override
+    public int restaurarEstado(long instantanea) {
+        long traza = Trazas.iniciar(punto);
+        try {
+            return dispositivo.restaurarEstado(instantanea);
+        } finally {
+            Trazas.terminar(traza, CategoriaTraza.DISPOSITIVO, dispositivo, "restaurarEstado");
+        }
+    }
+    
+    @Override
+    public boolean estaActivo() {
+        return dispositivo.estaActivo();
+    }
+    
+    @Override
+    public int obtenerVolumen() {
+        return dispositivo.obtenerVolumen();
+    }
+    
+    @Override
+    public String obtenerEntrada() {
+        return dispositivo.obtenerEntrada();
+    }
+    
+    @Override
+    public int obtenerVolumenMaximo() {
+        return dispositivo.obtenerVolumenMaximo();
+    }
+    
+    @Override
+    public long capturarEstado() {
+        return dispositivo.capturarEstado();
+    }
+    
+    @Override
+    public String obtenerModelo() {
+        return dispositivo.obtenerModelo();
+    }
+}
+
+/**
+ * Abstraccion: Control Universal
+ */
+abstract class ControlUniversal {
+    protected DispositivoMultimedia dispositivo;
+    private ColaComandosDispositivo colaComandos;
+    
+    /**
+     * Si las trazas estan activas al crear el control, sus ordenes pasan por
+     * un DispositivoTrazado que las mide; si no, van directas al
+     * dispositivo, sin costo alguno.
+     */
+    public ControlUniversal(DispositivoMultimedia dispositivo) {
+        this.dispositivo = Trazas.obtenerRecolector() == null ? dispositivo : new DispositivoTrazado(dispositivo);
+    }
+    
+    /**
+     * Envia las ordenes de este control por una cola asincrona que las aplica
+     * en orden y fusiona las redundantes antes de viajar al dispositivo.
+     */
+    public ColaComandosDispositivo habilitarColaComandos(Executor ejecutor) {
+        deshabilitarColaComandos();
+        colaComandos = new ColaComandosDispositivo(dispositivo, ejecutor);
+        dispositivo = colaComandos;
+        return colaComandos;
+    }
+    
+    /**
+     * Espera a que se apliquen las ordenes pendientes y vuelve a hablar
+     * directamente con el dispositivo.
+     */
+    public void deshabilitarColaComandos() {
+        if (colaComandos != null) {
+            colaComandos.close();
+            dispositivo = colaComandos.obtenerDispositivo();
+            colaComandos = null;
+        }
+    }
+    
+    public abstract void encender();
+    public abstract void apagar();
+    public abstract void aumentarVolumen();
+    public abstract void disminuirVolumen();
+    public abstract void cambiarEntrada(String entrada);
+    
+    public void mostrarEstado() {
+        System.out.println("\nEstado del dispositivo:");
+        System.out.println("Modelo: " + dispositivo.obtenerModelo());
+        System.out.println("Encendido: " + (dispositivo.estaActivo() ? "Sí" : "No"));
+        System.out.println("Volumen actual: " + dispositivo.obtenerVolumen());
+    }
+}
+
+/**
+ * Control basico
+ */
+class ControlBasico extends ControlUniversal {
+    
+    public ControlBasico(DispositivoMultimedia dispositivo) {
+        super(dispositivo);
+        Registro.info(() -> "Control básico configurado para: " + dispositivo.obtenerModelo());
+    }
+    
+    @Override
+    public void encender() {
+        dispositivo.activar();
+    }
+    
+    @Override
+    public void apagar() {
+        dispositivo.desactivar();
+    }
+    
+    @Override
+    public void aumentarVolumen() {
+        dispositivo.ajustarVolumen(10);
+    }
+    
+    @Override
+    public void disminuirVolumen() {
+        dispositivo.ajustarVolumen(-10);
+    }
+    
+    @Override
+    public void cambiarEntrada(String entrada) {
+        dispositivo.seleccionarEntrada(entrada);
+    }
+}
+
+/**
+ * Control Avanzado
+ */
+class ControlAvanzado extends ControlUniversal {
+    static final int CAPACIDAD_HISTORIAL = 16;
+    
+    private int volumenPrevio;
+    private final HistorialEstados historial;
+    
+    public ControlAvanzado(DispositivoMultimedia dispositivo) {
+        super(dispositivo);
+        this.volumenPrevio = 20;
+        this.historial = new HistorialEstados(CAPACIDAD_HISTORIAL);
+        Registro.info(() -> "Control avanzado configurado para: " + dispositivo.obtenerModelo());
+    }
+    
+    @Override
+    public void encender() {
+        dispositivo.activar();
+    }
+    
+    @Override
+    public void apagar() {
+        dispositivo.desactivar();
+    }
+    
+    @Override
+    public void aumentarVolumen() {
+        dispositivo.ajustarVolumen(5);
+    }
+    
+    @Override
+    public void disminuirVolumen() {
+        dispositivo.ajustarVolumen(-5);
+    }
+    
+    /**
+     * Guarda el estado actual, entrada incluida, antes de cambiarla.
+     */
+    @Override
+    public void cambiarEntrada(String entrada) {
+        historial.guardar(dispositivo.capturarEstado());
+        dispositivo.seleccionarEntrada(entrada);
+    }
+    
+    /**
+     * Guarda el estado actual para poder volver a el con restaurarConfiguracion.
+     */
+    public void guardarConfiguracion() {
+        historial.guardar(dispositivo.capturarEstado());
+    }
+    
+    public void silenciar() {
+        if (dispositivo.estaActivo()) {
+            int volumen = dispositivo.obtenerVolumen();
+            if (volumen > 0) {
+                volumenPrevio = volumen;
+                dispositivo.modificarVolumen(0);
+                Registro.info("Dispositivo silenciado");
+            } else {
+                dispositivo.modificarVolumen(volumenPrevio);
+                Registro.info(() -> "Silencio desactivado. Volumen: " + volumenPrevio);
+            }
+        }
+    }
+    
+    /**
+     * Vuelve al ultimo estado guardado; llamadas sucesivas retroceden por el
+     * historial. Solo se envian el volumen y la entrada que cambiaron, y el
+     * dispositivo sigue encendido.
+     */
+    public void restaurarConfiguracion() {
+        if (dispositivo.estaActivo()) {
+            if (historial.estaVacio()) {
+                Registro.info("No hay configuración previa");
+                return;
+            }
+            dispositivo.restaurarEstado(EstadoDispositivo.conEncendido(historial.extraer(), true));
+            Registro.info("Configuración previa restaurada");
+        }
+    }
+}
+
+/**
+ * Cola asincrona de ordenes para un dispositivo lento. Las ordenes se
+ * aplican en el orden en que llegaron, una a la vez, sobre el ejecutor
+ * indicado; mientras esperan se fusionan las redundantes:
+ *   - los pasos de volumen consecutivos se convierten en un unico ajuste
+ *     absoluto al volumen final,
+ *   - un cambio de entrada reemplaza al cambio de entrada pendiente,
+ *   - encender o apagar un dispositivo que ya quedara en ese estado se descarta.
+ * Volumen y entrada solo se fusionan entre dos ordenes de encendido, para
+ * que nunca crucen un encender o apagar. Las lecturas responden con el
+ * estado proyectado tras las ordenes ya encoladas, sin viajar al dispositivo.
+ * Se supone que la cola es la unica que escribe en el dispositivo; si una
+ * orden falla, la proyeccion se vuelve a leer del dispositivo cuando la
+ * cola queda vacia.
+ */
+class ColaComandosDispositivo implements DispositivoMultimedia, AutoCloseable {
+    static final int RONDAS_POR_TURNO = 16;
+    
+    private enum TipoOrden { ENCENDER, APAGAR, VOLUMEN, ENTRADA }
+    
+    private static final class Orden {
+        final TipoOrden tipo;
+        final CompletableFuture<Void> aplicada = new CompletableFuture<>();
+        int volumen;
+        String entrada;
+        
+        Orden(TipoOrden tipo) {
+            this.tipo = tipo;
+        }
+    }
+    
+    private final DispositivoMultimedia dispositivo;
+    private final Executor ejecutor;
+    private final int volumenMaximo;
+    private final Object candado = new Object();
+    private final LongAdder ordenesRecibidas = new LongAdder();
+    private final LongAdder ordenesFusionadas = new LongAdder();
+    private final LongAdder viajes = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+    
+    private ArrayList<Orden> pendientes = new ArrayList<>();
+    private Orden volumenPendiente;
+    private Orden entradaPendiente;
+    private CompletableFuture<Void> ultimaOrden = CompletableFuture.completedFuture(null);
+    private boolean programada;
+    private boolean desincronizada;
+    private boolean encendidoProyectado;
+    private int volumenProyectado;
+    private String entradaProyectada;
+    
+    public ColaComandosDispositivo(DispositivoMultimedia dispositivo, Executor ejecutor) {
+        this.dispositivo = dispositivo;
+        this.ejecutor = ejecutor;
+        this.volumenMaximo = dispositivo.obtenerVolumenMaximo();
+        proyectarDesdeDispositivo();
+    }
+    
+    private void proyectarDesdeDispositivo() {
+        encendidoProyectado = dispositivo.estaActivo();
+        volumenProyectado = dispositivo.obtenerVolumen();
+        entradaProyectada = dispositivo.obtenerEntrada();
+    }
+    
+    public DispositivoMultimedia obtenerDispositivo() {
+        return dispositivo;
+    }
+    
+    @Override
+    public void activar() {
+        encolarEncendido(true);
+    }
+    
+    @Override
+    public void desactivar() {
+        encolarEncendido(false);
+    }
+    
+    @Override
+    public void modificarVolumen(int nivel) {
+        encolarVolumen(nivel, false);
+    }
+    
+    /**
+     * Devuelve el volumen proyectado; el ajuste llega al dispositivo despues.
+     */
+    @Override
+    public int ajustarVolumen(int delta) {
+        return encolarVolumen(delta, true);
+    }
+    
+    @Override
+    public void seleccionarEntrada(String entrada) {
+        encolarEntrada(entrada);
+    }
+    
+    @Override
+    public boolean estaActivo() {
+        synchronized (candado) {
+            return encendidoProyectado;
+        }
+    }
+    
+    @Override
+    public int obtenerVolumen() {
+        synchronized (candado) {
+            return volumenProyectado;
+        }
+    }
+    
+    @Override
+    public String obtenerEntrada() {
+        synchronized (candado) {
+            return entradaProyectada;
+        }
+    }
+    
+    @Override
+    public int obtenerVolumenMaximo() {
+        return volumenMaximo;
+    }
+    
+    @Override
+    public String obtenerModelo() {
+        return dispositivo.obtenerModelo();
+    }
+    
+    /**
+     * Encola encender o apagar y devuelve un futuro que se completa cuando
+     * el dispositivo lo aplico.
+     */
+    public CompletableFuture<Void> encolarEncendido(boolean encender) {
+        synchronized (candado) {
+            ordenesRecibidas.increment();
+            if (encendidoProyectado == encender) {
+                ordenesFusionadas.increment();
+                return ultimaOrden;
+            }
+            encendidoProyectado = encender;
+            volumenPendiente = null;
+            entradaPendiente = null;
+            return agregar(new Orden(encender ? TipoOrden.ENCENDER : TipoOrden.APAGAR));
+        }
+    }
+    
+    /**
+     * Encola un volumen absoluto, o un paso si relativo es true. Devuelve el
+     * volumen proyectado.
+     */
+    public int encolarVolumen(int valor, boolean relativo) {
+        synchronized (candado) {
+            ordenesRecibidas.increment();
+            if (!encendidoProyectado) {
+                ordenesFusionadas.increment();
+                return volumenProyectado;
+            }
+            long objetivo = relativo ? (long) volumenProyectado + valor : valor;
+            volumenProyectado = (int) Math.max(0, Math.min(volumenMaximo, objetivo));
+            if (volumenPendiente != null) {
+                volumenPendiente.volumen = volumenProyectado;
+                ordenesFusionadas.increment();
+            } else {
+                volumenPendiente = new Orden(TipoOrden.VOLUMEN);
+                volumenPendiente.volumen = volumenProyectado;
+                agregar(volumenPendiente);
+            }
+            return volumenProyectado;
+        }
+    }
+    
+    public CompletableFuture<Void> encolarEntrada(String entrada) {
+        synchronized (candado) {
+            ordenesRecibidas.increment();
+            if (!encendidoProyectado) {
+                ordenesFusionadas.increment();
+                return ultimaOrden;
+            }
+            entradaProyectada = entrada;
+            if (entradaPendiente != null) {
+                entradaPendiente.entrada = entrada;
+                ordenesFusionadas.increment();
+                return entradaPendiente.aplicada;
+            }
+            entradaPendiente = new Orden(TipoOrden.ENTRADA);
+            entradaPendiente.entrada = entrada;
+            return agregar(entradaPendiente);
+        }
+    }
+    
+    private CompletableFuture<Void> agregar(Orden orden) {
+        pendientes.add(orden);
+        ultimaOrden = orden.aplicada;
+        if (!programada) {
+            programar();
+        }
+        return orden.aplicada;
+    }
+    
+    /**
+     * Con el candado tomado, programa la tarea que aplica las ordenes. Si el
+     * ejecutor la rechaza, las pendientes fallan con el rechazo y la
+     * proyeccion se vuelve a leer del dispositivo, de modo que la siguiente
+     * orden intenta programarla de nuevo en lugar de quedar encolada para siempre.
+     */
+    private void programar() {
+        programada = true;
+        try {
+            ejecutor.execute(this::aplicarPendientes);
+        } catch (RejectedExecutionException e) {
+            programada = false;
+            ArrayList<Orden> rechazadas = pendientes;
+            pendientes = new ArrayList<>();
+            volumenPendiente = null;
+            entradaPendiente = null;
+            desincronizada = false;
+            proyectarDesdeDispositivo();
+            fallos.add(rechazadas.size());
+            Registro.error(() -> "Ordenes rechazadas por el ejecutor: " + rechazadas.size());
+            for (Orden rechazada : rechazadas) {
+                rechazada.aplicada.completeExceptionally(e);
+            }
+        }
+    }
+    
+    /**
+     * Una sola tarea a la vez toma todas las ordenes pendientes y las aplica
+     * en orden; las que lleguen mientras tanto se siguen fusionando en la
+     * nueva lista. Tras RONDAS_POR_TURNO listas se vuelve a programar para
+     * no retener el hilo del ejecutor mientras sigan llegando ordenes.
+     */
+    private void aplicarPendientes() {
+        for (int ronda = 0; ; ronda++) {
+            ArrayList<Orden> lote;
+            synchronized (candado) {
+                if (pendientes.isEmpty()) {
+                    if (desincronizada) {
+                        desincronizada = false;
+                        proyectarDesdeDispositivo();
+                    }
+                    programada = false;
+                    return;
+                }
+                if (ronda == RONDAS_POR_TURNO) {
+                    programar();
+                    return;
+                }
+                lote = pendientes;
+                pendientes = new ArrayList<>();
+                volumenPendiente = null;
+                entradaPendiente = null;
+            }
+            for (Orden orden : lote) {
+                aplicar(orden);
+            }
+        }
+    }
+    
+    private void aplicar(Orden orden) {
+        try {
+            switch (orden.tipo) {
+                case ENCENDER:
+                    dispositivo.activar();
+                    break;
+                case APAGAR:
+                    dispositivo.desactivar();
+                    break;
+                case VOLUMEN:
+                    dispositivo.modificarVolumen(orden.volumen);
+                    break;
+                case ENTRADA:
+                    dispositivo.seleccionarEntrada(orden.entrada);
+                    break;
+            }
+            viajes.increment();
+            orden.aplicada.complete(null);
+        } catch (RuntimeException e) {
+            viajes.increment();
+            fallos.increment();
+            synchronized (candado) {
+                desincronizada = true;
+            }
+            Registro.error(() -> "Error: " + e.getMessage());
+            orden.aplicada.completeExceptionally(e);
+        }
+    }
+    
+    /**
+     * Futuro que se completa cuando se aplicaron todas las ordenes encoladas
+     * hasta ahora, hayan tenido exito o no.
+     */
+    public CompletableFuture<Void> vaciar() {
+        CompletableFuture<Void> ultima;
+        synchronized (candado) {
+            ultima = ultimaOrden;
+        }
+        return ultima.handle((resultado, error) -> null);
+    }
+    
+    public long obtenerOrdenesRecibidas() {
+        return ordenesRecibidas.sum();
+    }
+    
+    public long obtenerOrdenesFusionadas() {
+        return ordenesFusionadas.sum();
+    }
+    
+    public long obtenerViajes() {
+        return viajes.sum();
+    }
+    
+    public long obtenerFallos() {
+        return fallos.sum();
+    }
+    
+    /**
+     * Espera a que se apliquen las ordenes pendientes.
+     */
+    @Override
+    public void close() {
+        vaciar().join();
+    }
+}
+
+/**
+ * Dispositivo al otro lado de la red del campus: agrega a cada orden una
+ * latencia simulada y, con la probabilidad indicada, la falta de respuesta
+ */
+class DispositivoRemotoSimulado implements DispositivoMultimedia {
+    private final DispositivoMultimedia dispositivo;
+    private final long latenciaMicros;
+    private final double probabilidadFallo;
+    private final AtomicLong viajes = new AtomicLong();
+    
+    public DispositivoRemotoSimulado(DispositivoMultimedia dispositivo, long latenciaMicros, double probabilidadFallo) {
+        this.dispositivo = dispositivo;
+        this.latenciaMicros = latenciaMicros;
+        this.probabilidadFallo = probabilidadFallo;
+    }
+    
+    private void viajar() {
+        viajes.incrementAndGet();
+        if (latenciaMicros > 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(latenciaMicros));
+        }
+        if (probabilidadFallo > 0 && ThreadLocalRandom.current().nextDouble() < probabilidadFallo) {
+            throw new IllegalStateException("Sin respuesta de " + dispositivo.obtenerModelo());
+        }
+    }
+    
+    @Override
+    public void activar() {
+        viajar();
+        dispositivo.activar();
+    }
+    
+    @Override
+    public void desactivar() {
+        viajar();
+        dispositivo.desactivar();
+    }
+    
+    @Override
+    public void modificarVolumen(int nivel) {
+        viajar();
+        dispositivo.modificarVolumen(nivel);
+    }
+    
+    @Override
+    public int ajustarVolumen(int delta) {
+        viajar();
+        return dispositivo.ajustarVolumen(delta);
+    }
+    
+    @Override
+    public void seleccionarEntrada(String entrada) {
+        viajar();
+        dispositivo.seleccionarEntrada(entrada);
+    }
+    
+    @Override
+    public boolean estaActivo() {
+        return dispositivo.estaActivo();
+    }
+    
+    @Override
+    public int obtenerVolumen() {
+        return dispositivo.obtenerVolumen();
+    }
+    
+    @Override
+    public String obtenerEntrada() {
+        return dispositivo.obtenerEntrada();
+    }
+    
+    @Override
+    public int obtenerVolumenMaximo() {
+        return dispositivo.obtenerVolumenMaximo();
+    }
+    
+    @Override
+    public long capturarEstado() {
+        return dispositivo.capturarEstado();
+    }
+    
+    public long obtenerViajes() {
+        return viajes.get();
+    }
+    
+    @Override
+    public String obtenerModelo() {
+        return dispositivo.obtenerModelo();
+    }
+}
+
+/**
+ * Dispositivo registrado en la flota con su identificador y ubicacion
+ */
+final class DispositivoFlota {
+    private final String identificador;
+    private final String ubicacion;
+    private final DispositivoMultimedia dispositivo;
+    
+    DispositivoFlota(String identificador, String ubicacion, DispositivoMultimedia dispositivo) {
+        this.identificador = identificador;
+        this.ubicacion = ubicacion;
+        this.dispositivo = dispositivo;
+    }
+    
+    public String obtenerIdentificador() {
+        return identificador;
+    }
+    
+    public String obtenerUbicacion() {
+        return ubicacion;
+    }
+    
+    public DispositivoMultimedia obtenerDispositivo() {
+        return dispositivo;
+    }
+}
+
+/**
+ * Resultado de una orden sobre un dispositivo de la flota
+ */
+final class ResultadoDispositivo {
+    private final String identificador;
+    private final String error;
+    private final long duracionNanos;
+    
+    ResultadoDispositivo(String identificador, String error, long duracionNanos) {
+        this.identificador = identificador;
+        this.error = error;
+        this.duracionNanos = duracionNanos;
+    }
+    
+    public String obtenerIdentificador() {
+        return identificador;
+    }
+    
+    public boolean fueExitoso() {
+        return error == null;
+    }
+    
+    /**
+     * Mensaje del fallo, o null si la orden se aplico.
+     */
+    public String obtenerError() {
+        return error;
+    }
+    
+    public long obtenerDuracionNanos() {
+        return duracionNanos;
+    }
+}
+
+/**
+ * Resultado de una orden sobre un grupo: el de cada dispositivo, en el
+ * orden del grupo, y el tiempo total hasta completar todos
+ */
+final class ResultadoComandoFlota {
+    private final String comando;
+    private final ResultadoDispositivo[] resultados;
+    private final long duracionNanos;
+    private final int fallidos;
+    
+    ResultadoComandoFlota(String comando, ResultadoDispositivo[] resultados, long duracionNanos) {
+        this.comando = comando;
+        this.resultados = resultados;
+        this.duracionNanos = duracionNanos;
+        int cuenta = 0;
+        for (ResultadoDispositivo resultado : resultados) {
+            if (!resultado.fueExitoso()) {
+                cuenta++;
+            }
+        }
+        this.fallidos = cuenta;
+    }
+    
+    public List<ResultadoDispositivo> obtenerResultados() {
+        return Collections.unmodifiableList(Arrays.asList(resultados));
+    }
+    
+    public List<ResultadoDispositivo> obtenerFallidos() {
+        List<ResultadoDispositivo> lista = new ArrayList<>(fallidos);
+        for (ResultadoDispositivo resultado : resultados) {
+            if (!resultado.fueExitoso()) {
+                lista.add(resultado);
+            }
+        }
+        return lista;
+    }
+    
+    public int contarExitosos() {
+        return resultados.length - fallidos;
+    }
+    
+    public int contarFallidos() {
+        return fallidos;
+    }
+    
+    public long obtenerDuracionNanos() {
+        return duracionNanos;
+    }
+    
+    /**
+     * Distribucion del tiempo que tardo cada dispositivo.
+     */
+    public ResumenLatencia resumirLatencias() {
+        HistogramaLatencia histograma = new HistogramaLatencia();
+        for (ResultadoDispositivo resultado : resultados) {
+            histograma.registrar(resultado.obtenerDuracionNanos());
+        }
+        return histograma.resumir(comando);
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%s: %d dispositivos, %d exitosos, %d fallidos, %.1f ms",
+                             comando, resultados.length, contarExitosos(), fallidos, duracionNanos / 1e6);
+    }
+}
+
+/**
+ * Control de flota: registra los dispositivos del campus por identificador,
+ * modelo y ubicacion, y aplica una orden a un grupo completo en paralelo.
+ * Las ubicaciones son jerarquicas separadas por '/' ("Edificio A/Aula 101")
+ * y se indexan por cada prefijo, asi se puede seleccionar un edificio
+ * entero o un aula. Las ordenes se reparten en un ForkJoinPool propio
+ * dividiendo el grupo en tramos; como cada orden espera a la red, el
+ * paralelismo puede superar con creces al numero de procesadores. Un fallo
+ * en un dispositivo queda en su resultado sin afectar a los demas.
+ */
+class FlotaDispositivos implements AutoCloseable {
+    private final ConcurrentHashMap<String, DispositivoFlota> porIdentificador;
+    private final ConcurrentHashMap<String, Set<DispositivoFlota>> porModelo;
+    private final ConcurrentHashMap<String, Set<DispositivoFlota>> porUbicacion;
+    private final ForkJoinPool ejecutor;
+    
+    public FlotaDispositivos(int paralelismo) {
+        this.porIdentificador = new ConcurrentHashMap<>();
+        this.porModelo = new ConcurrentHashMap<>();
+        this.porUbicacion = new ConcurrentHashMap<>();
+        this.ejecutor = new ForkJoinPool(paralelismo);
+    }
+    
+    /**
+     * Registra el dispositivo; si ya habia uno con el mismo identificador lo reemplaza.
+     */
+    public DispositivoFlota registrar(String identificador, String ubicacion, DispositivoMultimedia dispositivo) {
+        DispositivoFlota entrada = new DispositivoFlota(identificador, ubicacion, dispositivo);
+        DispositivoFlota anterior = porIdentificador.put(identificador, entrada);
+        if (anterior != null) {
+            desindexar(anterior);
+        }
+        porModelo.computeIfAbsent(dispositivo.obtenerModelo(), clave -> ConcurrentHashMap.newKeySet()).add(entrada);
+        for (String prefijo : prefijos(ubicacion)) {
+            porUbicacion.computeIfAbsent(prefijo, clave -> ConcurrentHashMap.newKeySet()).add(entrada);
+        }
+        return entrada;
+    }
+    
+    public boolean eliminar(String identificador) {
+        DispositivoFlota entrada = porIdentificador.remove(identificador);
+        if (entrada == null) {
+            return false;
+        }
+        desindexar(entrada);
+        return true;
+    }
+    
+    private void desindexar(DispositivoFlota entrada) {
+        Set<DispositivoFlota> modelo = porModelo.get(entrada.obtenerDispositivo().obtenerModelo());
+        if (modelo != null) {
+            modelo.remove(entrada);
+        }
+        for (String prefijo : prefijos(entrada.obtenerUbicacion())) {
+            Set<DispositivoFlota> ubicacion = porUbicacion.get(prefijo);
+            if (ubicacion != null) {
+                ubicacion.remove(entrada);
+            }
+        }
+    }
+    
+    private static List<String> prefijos(String ubicacion) {
+        List<String> prefijos = new ArrayList<>();
+        int separador = ubicacion.indexOf('/');
+        while (separador >= 0) {
+            prefijos.add(ubicacion.substring(0, separador));
+            separador = ubicacion.indexOf('/', separador + 1);
+        }
+        prefijos.add(ubicacion);
+        return prefijos;
+    }
+    
+    public int contarDispositivos() {
+        return porIdentificador.size();
+    }
+    
+    public DispositivoFlota obtener(String identificador) {
+        return porIdentificador.get(identificador);
+    }
+    
+    public List<DispositivoFlota> seleccionarTodos() {
+        return new ArrayList<>(porIdentificador.values());
+    }
+    
+    /**
+     * Dispositivos cuyo obtenerModelo() coincide, por ejemplo "Televisor Samsung".
+     */
+    public List<DispositivoFlota> seleccionarPorModelo(String modelo) {
+        Set<DispositivoFlota> grupo = porModelo.get(modelo);
+        return grupo == null ? new ArrayList<>() : new ArrayList<>(grupo);
+    }
+    
+    /**
+     * Dispositivos en la ubicacion o dentro de ella, por ejemplo "Edificio A".
+     */
+    public List<DispositivoFlota> seleccionarPorUbicacion(String ubicacion) {
+        Set<DispositivoFlota> grupo = porUbicacion.get(ubicacion);
+        return grupo == null ? new ArrayList<>() : new ArrayList<>(grupo);
+    }
+    
+    public ResultadoComandoFlota encender(List<DispositivoFlota> grupo) {
+        return aplicar(grupo, "encender", DispositivoMultimedia::activar);
+    }
+    
+    public ResultadoComandoFlota apagar(List<DispositivoFlota> grupo) {
+        return aplicar(grupo, "apagar", DispositivoMultimedia::desactivar);
+    }
+    
+    public ResultadoComandoFlota modificarVolumen(List<DispositivoFlota> grupo, int nivel) {
+        return aplicar(grupo, "modificarVolumen(" + nivel + ")", dispositivo -> dispositivo.modificarVolumen(nivel));
+    }
+    
+    public ResultadoComandoFlota ajustarVolumen(List<DispositivoFlota> grupo, int delta) {
+        return aplicar(grupo, "ajustarVolumen(" + delta + ")", dispositivo -> dispositivo.ajustarVolumen(delta));
+    }
+    
+    public ResultadoComandoFlota seleccionarEntrada(List<DispositivoFlota> grupo, String entrada) {
+        return aplicar(grupo, "seleccionarEntrada(" + entrada + ")", dispositivo -> dispositivo.seleccionarEntrada(entrada));
+    }
+    
+    /**
+     * Aplica la orden a cada dispositivo del grupo en paralelo y espera a
+     * que terminen todos.
+     */
+    public ResultadoComandoFlota aplicar(List<DispositivoFlota> grupo, String nombre,
+                                         Consumer<DispositivoMultimedia> orden) {
+        return aplicar(grupo, nombre, (dispositivo, indice) -> orden.accept(dispositivo));
+    }
+    
+    /**
+     * Instantanea del estado de cada dispositivo del grupo, en el mismo
+     * orden; es un long por dispositivo.
+     */
+    public long[] capturarEstado(List<DispositivoFlota> grupo) {
+        long[] instantaneas = new long[grupo.size()];
+        for (int i = 0; i < instantaneas.length; i++) {
+            instantaneas[i] = grupo.get(i).obtenerDispositivo().capturarEstado();
+        }
+        return instantaneas;
+    }
+    
+    /**
+     * Devuelve cada dispositivo del grupo a su instantanea tras un evento.
+     * Solo viajan los campos que cambiaron; los dispositivos que ya
+     * coinciden no reciben ninguna orden.
+     */
+    public ResultadoComandoFlota restaurarEstado(List<DispositivoFlota> grupo, long[] instantaneas) {
+        if (instantaneas.length != grupo.size()) {
+            throw new IllegalArgumentException("Se esperaban " + grupo.size() + " instantaneas y hay " +
+                                               instantaneas.length);
+        }
+        return aplicar(grupo, "restaurarEstado", (dispositivo, indice) -> dispositivo.restaurarEstado(instantaneas[indice]));
+    }
+    
+    private ResultadoComandoFlota aplicar(List<DispositivoFlota> grupo, String nombre,
+                                          ObjIntConsumer<DispositivoMultimedia> orden) {
+        ResultadoDispositivo[] resultados = new ResultadoDispositivo[grupo.size()];
+        long inicio = System.nanoTime();
+        if (!grupo.isEmpty()) {
+            int tramo = Math.max(1, grupo.size() / (ejecutor.getParallelism() * 4));
+            ejecutor.invoke(new TareaFlota(grupo, orden, resultados, 0, grupo.size(), tramo));
+        }
+        ResultadoComandoFlota resultado = new ResultadoComandoFlota(nombre, resultados, System.nanoTime() - inicio);
+        Registro.info(() -> "Flota: " + resultado);
+        return resultado;
+    }
+    
+    @Override
+    public void close() {
+        ejecutor.shutdown();
+    }
+    
+    /**
+     * Divide el tramo [desde, hasta) a la mitad hasta que cabe en un tramo
+     * minimo y lo ejecuta en el hilo actual.
+     */
+    private static class TareaFlota extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final transient List<DispositivoFlota> grupo;
+        private final transient ObjIntConsumer<DispositivoMultimedia> orden;
+        private final transient ResultadoDispositivo[] resultados;
+        private final int desde;
+        private final int hasta;
+        private final int tramo;
+        
+        TareaFlota(List<DispositivoFlota> grupo, ObjIntConsumer<DispositivoMultimedia> orden,
+                   ResultadoDispositivo[] resultados, int desde, int hasta, int tramo) {
+            this.grupo = grupo;
+            this.orden = orden;
+            this.resultados = resultados;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.tramo = tramo;
+        }
+        
+        @Override
+        protected void compute() {
+            if (hasta - desde <= tramo) {
+                for (int i = desde; i < hasta; i++) {
+                    DispositivoFlota entrada = grupo.get(i);
+                    long inicio = System.nanoTime();
+                    String error = null;
+                    try {
+                        orden.accept(entrada.obtenerDispositivo(), i);
+                    } catch (RuntimeException e) {
+                        error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+                    }
+                    resultados[i] = new ResultadoDispositivo(entrada.obtenerIdentificador(), error,
+                                                             System.nanoTime() - inicio);
+                }
+                return;
+            }
+            int medio = (desde + hasta) >>> 1;
+            invokeAll(new TareaFlota(grupo, orden, resultados, desde, medio, tramo),
+                      new TareaFlota(grupo, orden, resultados, medio, hasta, tramo));
+        }
+    }
+}
+
+// ==================== PATRON BSERVER ====================
+
+/**
+ * Interfaz para observadores del sistema de notificaciones
+ */
+interface ObservadorNotificacion {
+    void recibirActualizacion(String mensaje);
+    String obtenerIdentificador();
+    
+    /**
+     * Temas a los que se suscribe el observador (ver Audiencia). Se leen al
+     * registrarlo; para cambiarlos hay que registrarlo de nuevo.
+     */
+    default Set<String> obtenerTemas() {
+        return Collections.emptySet();
+    }
+    
+    /**
+     * Recibe varios mensajes en una sola invocacion. Por omision los entrega
+     * uno a uno; los observadores con costo fijo por llamada pueden procesarlos juntos.
+     * Si un mensaje falla se lanza ExcepcionEntregaParcial con cuantos se
+     * procesaron antes, para que el canal complete esos y continue tras el
+     * fallido; cualquier otra excepcion hace que el canal reintente el lote
+     * mensaje a mensaje.
+     */
+    default void recibirLote(List<String> mensajes) {
+        for (int i = 0; i < mensajes.size(); i++) {
+            try {
+                recibirActualizacion(mensajes.get(i));
+            } catch (RuntimeException e) {
+                throw new ExcepcionEntregaParcial(i, e);
+            }
+        }
+    }
+    
+    /**
+     * Recibe la notificacion estructurada. Por omision la adapta a texto
+     * para los observadores que solo implementan recibirActualizacion.
+     */
+    default void recibirNotificacion(Notificacion notificacion) {
+        recibirActualizacion(notificacion.comoTexto());
+    }
+    
+    /**
+     * Version estructurada de recibirLote; por omision la adapta a texto.
+     */
+    default void recibirLoteNotificaciones(List<Notificacion> notificaciones) {
+        List<String> mensajes = new ArrayList<>(notificaciones.size());
+        for (Notificacion notificacion : notificaciones) {
+            mensajes.add(notificacion.comoTexto());
+        }
+        recibirLote(mensajes);
+    }
+}
+
+/**
+ * Un lote de notificaciones se interrumpio: el observador proceso las
+ * primeras procesadas y fallo en la siguiente, que es la causa. Las
+ * posteriores no llegaron a procesarse.
+ */
+class ExcepcionEntregaParcial extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    private final int procesadas;
+    
+    public ExcepcionEntregaParcial(int procesadas, Throwable causa) {
+        super("Lote interrumpido tras " + procesadas + " notificaciones: " + causa.getMessage(), causa);
+        this.procesadas = procesadas;
+    }
+    
+    public int obtenerProcesadas() {
+        return procesadas;
+    }
+}
+
+/**
+ * Prioridad de una notificacion academica
+ */
+enum PrioridadNotificacion {
+    BAJA, NORMAL, ALTA
+}
+
+/**
+ * Notificacion academica inmutable. El sistema le asigna id y tema al
+ * publicarla; el id 0 significa que aun no se ha publicado.
+ *
+ * Formato binario (big-endian), con cabecera fija para leer cualquier
+ * campo sin decodificar los demas:
+ *   0  version:byte       1  prioridad:byte
+ *   2  id:long            10 marcaTiempo:long
+ *   18 bytes del titulo:int  22 bytes del contenido:int  26 bytes del tema:int (-1 sin tema)
+ *   30 titulo, contenido y tema en UTF-8
+ */
+final class Notificacion {
+    static final byte VERSION_FORMATO = 1;
+    static final int CABECERA_BINARIA = 30;
+    
+    private final long id;
+    private final String titulo;
+    private final String contenido;
+    private final long marcaTiempo;
+    private final PrioridadNotificacion prioridad;
+    private final String tema;
+    private String texto;
+    private byte[] binario;
+    
+    public Notificacion(String titulo, String contenido) {
+        this(titulo, contenido, PrioridadNotificacion.NORMAL);
+    }
+    
+    public Notificacion(String titulo, String contenido, PrioridadNotificacion prioridad) {
+        this(0, titulo, contenido, System.currentTimeMillis(), prioridad, null);
+    }
+    
+    public Notificacion(long id, String titulo, String contenido, long marcaTiempo,
+                        PrioridadNotificacion prioridad, String tema) {
+        this.id = id;
+        this.titulo = Objects.requireNonNull(titulo);
+        this.contenido = Objects.requireNonNull(contenido);
+        this.marcaTiempo = marcaTiempo;
+        this.prioridad = Objects.requireNonNull(prioridad);
+        this.tema = tema;
+    }
+    
+    /**
+     * Copia con el id y el tema asignados al publicarla.
+     */
+    Notificacion sellar(long id, String tema) {
+        return new Notificacion(id, titulo, contenido, marcaTiempo, prioridad, tema);
+    }
+    
+    public long obtenerId() {
+        return id;
+    }
+    
+    public String obtenerTitulo() {
+        return titulo;
+    }
+    
+    public String obtenerContenido() {
+        return contenido;
+    }
+    
+    public long obtenerMarcaTiempo() {
+        return marcaTiempo;
+    }
+    
+    public PrioridadNotificacion obtenerPrioridad() {
+        return prioridad;
+    }
+    
+    /**
+     * Temas de la audiencia separados por coma, o null si se difundio a todos.
+     */
+    public String obtenerTema() {
+        return tema;
+    }
+    
+    /**
+     * Forma de texto que reciben los observadores que no leen la estructura.
+     * Se construye la primera vez que se pide; una carrera solo repite el
+     * calculo, porque String es inmutable.
+     */
+    public String comoTexto() {
+        String actual = texto;
+        if (actual == null) {
+            actual = "[" + titulo + "] " + contenido;
+            texto = actual;
+        }
+        return actual;
+    }
+    
+    /**
+     * Forma binaria, calculada una vez y compartida por la bitacora y el
+     * transporte; no debe modificarse.
+     */
+    byte[] serializar() {
+        byte[] actual = binario;
+        if (actual == null) {
+            byte[] bytesTitulo = titulo.getBytes(StandardCharsets.UTF_8);
+            byte[] bytesContenido = contenido.getBytes(StandardCharsets.UTF_8);
+            byte[] bytesTema = tema == null ? null : tema.getBytes(StandardCharsets.UTF_8);
+            int largoTema = bytesTema == null ? 0 : bytesTema.length;
+            ByteBuffer destino = ByteBuffer.allocate(CABECERA_BINARIA + bytesTitulo.length + bytesContenido.length + largoTema);
+            destino.put(VERSION_FORMATO)
+                   .put((byte) prioridad.ordinal())
+                   .putLong(id)
+                   .putLong(marcaTiempo)
+                   .putInt(bytesTitulo.length)
+                   .putInt(bytesContenido.length)
+                   .putInt(bytesTema == null ? -1 : bytesTema.length)
+                   .put(bytesTitulo)
+                   .put(bytesContenido);
+            if (bytesTema != null) {
+                destino.put(bytesTema);
+            }
+            actual = destino.array();
+            binario = actual;
+        }
+        return actual;
+    }
+    
+    public static Notificacion deserializar(ByteBuffer origen) {
+        return new VistaNotificacion(origen).aNotificacion();
+    }
+    
+    @Override
+    public String toString() {
+        return comoTexto();
+    }
+}
+
+/**
+ * Acceso a una notificacion serializada sin copiarla: los campos numericos
+ * se leen en su posicion fija y los textos solo se decodifican si se piden.
+ * El buffer puede ser una region de un segmento mapeado de la bitacora.
+ */
+final class VistaNotificacion {
+    private final ByteBuffer datos;
+    
+    VistaNotificacion(ByteBuffer datos) {
+        if (datos.remaining() < Notificacion.CABECERA_BINARIA) {
+            throw new IllegalArgumentException("Notificacion truncada: " + datos.remaining() + " bytes");
+        }
+        this.datos = datos.slice();
+        if (this.datos.get(0) != Notificacion.VERSION_FORMATO) {
+            throw new IllegalArgumentException("Version de formato desconocida: " + this.datos.get(0));
+        }
+    }
+    
+    public PrioridadNotificacion obtenerPrioridad() {
+        return PrioridadNotificacion.values()[datos.get(1)];
+    }
+    
+    public long obtenerId() {
+        return datos.getLong(2);
+    }
+    
+    public long obtenerMarcaTiempo() {
+        return datos.getLong(10);
+    }
+    
+    /**
+     * Bytes UTF-8 del contenido, como vista de solo lectura sobre el buffer original.
+     */
+    public ByteBuffer obtenerContenidoBinario() {
+        return datos.slice(Notificacion.CABECERA_BINARIA + datos.getInt(18), datos.getInt(22)).asReadOnlyBuffer();
+    }
+    
+    public String obtenerTitulo() {
+        return texto(Notificacion.CABECERA_BINARIA, datos.getInt(18));
+    }
+    
+    public String obtenerContenido() {
+        return texto(Notificacion.CABECERA_BINARIA + datos.getInt(18), datos.getInt(22));
+    }
+    
+    public String obtenerTema() {
+        int largo = datos.getInt(26);
+        return largo < 0 ? null : texto(Notificacion.CABECERA_BINARIA + datos.getInt(18) + datos.getInt(22), largo);
+    }
+    
+    private String texto(int posicion, int largo) {
+        byte[] bytes = new byte[largo];
+        datos.get(posicion, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    public Notificacion aNotificacion() {
+        return new Notificacion(obtenerId(), obtenerTitulo(), obtenerContenido(), obtenerMarcaTiempo(),
+                                obtenerPrioridad(), obtenerTema());
+    }
+}
+
+/**
+ * Construye los temas de suscripcion por rol, departamento, area o curso
+ */
+final class Audiencia {
+    public static final String ESTUDIANTES = rol("estudiante");
+    public static final String PROFESORES = rol("profesor");
+    public static final String ADMINISTRATIVOS = rol("administrativo");
+    
+    private Audiencia() {
+    }
+    
+    public static String rol(String rol) {
+        return tema("rol", rol);
+    }
+    
+    public static String departamento(String departamento) {
+        return tema("departamento", departamento);
+    }
+    
+    public static String area(String area) {
+        return tema("area", area);
+    }
+    
+    public static String curso(String curso) {
+        return tema("curso", curso);
+    }
+    
+    private static String tema(String tipo, String valor) {
+        return tipo + ":" + valor.trim().toLowerCase(Locale.ROOT);
+    }
+}
+
+/**
+ * Mensaje leido de la bitacora junto con su posicion
+ */
+final class EntradaBitacora {
+    private final long offset;
+    private final long marcaTiempo;
+    private final VistaNotificacion vista;
+    
+    EntradaBitacora(long offset, long marcaTiempo, VistaNotificacion vista) {
+        this.offset = offset;
+        this.marcaTiempo = marcaTiempo;
+        this.vista = vista;
+    }
+    
+    public long obtenerOffset() {
+        return offset;
+    }
+    
+    public long obtenerMarcaTiempo() {
+        return marcaTiempo;
+    }
+    
+    /**
+     * Vista sobre el segmento mapeado, sin copiar el registro.
+     */
+    public VistaNotificacion obtenerVista() {
+        return vista;
+    }
+    
+    public Notificacion obtenerNotificacion() {
+        return vista.aNotificacion();
+    }
+}
+
+/**
+ * Bitacora duradera de notificaciones, de solo escritura al final, repartida
+ * en segmentos de tamaño fijo mapeados en memoria. Cada segmento se llama
+ * como el offset de su primer registro y cada registro ocupa
+ * [longitud:int][marcaTiempo:long][notificacion en formato binario]; una longitud 0 marca el
+ * final de lo escrito, asi que al reabrir basta recorrer el ultimo segmento.
+ *
+ * Cada consumidor guarda el offset del siguiente mensaje que le falta: el
+ * menor que se le envio y aun no confirmo, asi una entrega fallida o una
+ * confirmada fuera de orden no hace saltar a los anteriores. Las
+ * confirmaciones se escriben en disco al sincronizar o cerrar, por lo que
+ * tras una caida se reproducen a lo sumo los mensajes posteriores a la
+ * ultima sincronizacion (entrega al menos una vez). La retencion elimina los
+ * segmentos cerrados mas antiguos cuando se supera el tamaño total o su
+ * ultimo registro es mas viejo que la edad maxima; se aplica al abrir un
+ * segmento y al sincronizar.
+ */
+class BitacoraNotificaciones implements AutoCloseable {
+    private static final int CABECERA = Integer.BYTES + Long.BYTES;
+    private static final int PASO_INDICE = 64;
+    private static final String EXTENSION = ".seg";
+    private static final String ARCHIVO_CONFIRMACIONES = "consumidores.properties";
+    
+    private final Path directorio;
+    private final int tamanoSegmento;
+    private final long retencionBytes;
+    private final long retencionMs;
+    private final ConcurrentSkipListMap<Long, Segmento> segmentos;
+    private final ConcurrentHashMap<String, Progreso> confirmaciones;
+    private Segmento activo;
+    private volatile long siguienteOffset;
+    
+    public BitacoraNotificaciones(Path directorio, int tamanoSegmento, long retencionBytes, long retencionMs)
+            throws IOException {
+        if (tamanoSegmento <= CABECERA * 2 || retencionBytes < tamanoSegmento || retencionMs <= 0) {
+            throw new IllegalArgumentException("Parametros de bitacora invalidos");
+        }
+        this.directorio = directorio;
+        this.tamanoSegmento = tamanoSegmento;
+        this.retencionBytes = retencionBytes;
+        this.retencionMs = retencionMs;
+        this.segmentos = new ConcurrentSkipListMap<>();
+        this.confirmaciones = new ConcurrentHashMap<>();
+        Files.createDirectories(directorio);
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(directorio, "*" + EXTENSION)) {
+            for (Path archivo : archivos) {
+                String nombre = archivo.getFileName().toString();
+                long base = Long.parseLong(nombre.substring(0, nombre.length() - EXTENSION.length()));
+                segmentos.put(base, new Segmento(archivo, base, Math.max(tamanoSegmento, (int) Files.size(archivo))));
+            }
+        }
+        if (segmentos.isEmpty()) {
+            activo = abrirSegmento(0);
+        } else {
+            activo = segmentos.lastEntry().getValue();
+        }
+        siguienteOffset = activo.base + activo.cantidad;
+        Path archivoConfirmaciones = directorio.resolve(ARCHIVO_CONFIRMACIONES);
+        if (Files.exists(archivoConfirmaciones)) {
+            Properties propiedades = new Properties();
+            try (Reader lector = Files.newBufferedReader(archivoConfirmaciones, StandardCharsets.UTF_8)) {
+                propiedades.load(lector);
+            }
+            for (String consumidor : propiedades.stringPropertyNames()) {
+                confirmaciones.put(consumidor, new Progreso(Long.parseLong(propiedades.getProperty(consumidor))));
+            }
+        }
+    }
+    
+    private Segmento abrirSegmento(long base) throws IOException {
+        Segmento segmento = new Segmento(directorio.resolve(String.format("%020d%s", base, EXTENSION)), base, tamanoSegmento);
+        segmentos.put(base, segmento);
+        return segmento;
+    }
+    
+    /**
+     * Agrega la notificacion al final y devuelve su offset.
+     */
+    public long agregar(Notificacion notificacion) {
+        return agregar(notificacion.serializar());
+    }
+    
+    /**
+     * Agrega las notificaciones en offsets consecutivos y devuelve el del primero.
+     */
+    public synchronized long agregarLote(List<Notificacion> notificaciones) {
+        long primero = siguienteOffset;
+        for (Notificacion notificacion : notificaciones) {
+            agregar(notificacion.serializar());
+        }
+        return primero;
+    }
+    
+    private synchronized long agregar(byte[] datos) {
+        int requerido = CABECERA + datos.length;
+        if (requerido + Integer.BYTES > tamanoSegmento) {
+            throw new IllegalArgumentException("Mensaje demasiado grande para un segmento: " + datos.length + " bytes");
+        }
+        try {
+            if (activo.posicion + requerido + Integer.BYTES > activo.capacidad) {
+                activo = abrirSegmento(siguienteOffset);
+                aplicarRetencion();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo abrir un nuevo segmento", e);
+        }
+        long marcaTiempo = System.currentTimeMillis();
+        activo.escribir(datos, marcaTiempo);
+        return siguienteOffset++;
+    }
+    
+    public long obtenerPrimerOffset() {
+        return segmentos.firstKey();
+    }
+    
+    public long obtenerSiguienteOffset() {
+        return siguienteOffset;
+    }
+    
+    public int contarSegmentos() {
+        return segmentos.size();
+    }
+    
+    /**
+     * Lee hasta maximo mensajes a partir del offset indicado. Si el offset
+     * ya fue eliminado por la retencion, empieza en el primero disponible.
+     */
+    public List<EntradaBitacora> leerDesde(long offset, int maximo) {
+        List<EntradaBitacora> entradas = new ArrayList<>();
+        Map.Entry<Long, Segmento> entrada = segmentos.floorEntry(Math.max(offset, obtenerPrimerOffset()));
+        while (entrada != null && entradas.size() < maximo) {
+            entrada.getValue().leer(Math.max(offset, entrada.getKey()), maximo - entradas.size(), entradas);
+            entrada = segmentos.higherEntry(entrada.getKey());
+        }
+        return entradas;
+    }
+    
+    private Progreso progresoDe(String consumidor) {
+        return confirmaciones.computeIfAbsent(consumidor, clave -> new Progreso(0));
+    }
+    
+    /**
+     * Anota que se envio al consumidor el tramo [desde, hasta); queda en
+     * curso hasta que se confirme.
+     */
+    public void enviar(String consumidor, long desde, long hasta) {
+        progresoDe(consumidor).enviar(desde, hasta);
+    }
+    
+    /**
+     * Confirma un tramo enviado. Lo confirmado solo avanza hasta el menor
+     * tramo que siga en curso.
+     */
+    public void confirmar(String consumidor, long desde, long hasta) {
+        progresoDe(consumidor).confirmar(desde, hasta);
+    }
+    
+    /**
+     * Registra que el consumidor proceso todo lo anterior a siguiente.
+     */
+    public void confirmar(String consumidor, long siguiente) {
+        progresoDe(consumidor).confirmarHasta(siguiente);
+    }
+    
+    /**
+     * Offset del siguiente mensaje pendiente para el consumidor; uno nuevo
+     * empieza en el primer mensaje retenido.
+     */
+    public long obtenerConfirmado(String consumidor) {
+        Progreso progreso = confirmaciones.get(consumidor);
+        return Math.max(progreso == null ? 0 : progreso.siguiente(), obtenerPrimerOffset());
+    }
+    
+    /**
+     * Olvida los tramos en curso del consumidor, que se volveran a reproducir,
+     * y devuelve desde donde hacerlo.
+     */
+    public long reanudar(String consumidor) {
+        return Math.max(progresoDe(consumidor).reanudar(), obtenerPrimerOffset());
+    }
+    
+    /**
+     * Entrega al observador lo que le falta desde su ultima confirmacion a
+     * traves de un canal propio, con los fallos aislados por mensaje, y
+     * devuelve cuantos mensajes reprodujo.
+     */
+    public int reproducir(String consumidor, ObservadorNotificacion observador) {
+        CanalObservador canal = new CanalObservador(observador, 0, null);
+        return reproducir(consumidor, reanudar(consumidor), obtenerSiguienteOffset(), canal.obtenerTemas(),
+                          canal::entregarLoteAhora);
+    }
+    
+    /**
+     * Reproduce los mensajes de [desde, hasta) dirigidos a los temas
+     * indicados, con el mismo criterio que la publicacion en vivo: los de
+     * difusion llegan a todos y los de tema solo a sus suscriptores. Cada
+     * tanda se envia con destino y se confirma cuando el futuro que devuelve
+     * se completa; los mensajes de otros temas se confirman con ella.
+     * Devuelve cuantos mensajes entrego.
+     */
+    public int reproducir(String consumidor, long desde, long hasta, Set<String> temas,
+                          Function<List<Notificacion>, CompletableFuture<Void>> destino) {
+        Progreso progreso = progresoDe(consumidor);
+        int reproducidos = 0;
+        List<EntradaBitacora> entradas;
+        while (desde < hasta && !(entradas = leerDesde(desde, (int) Math.min(256, hasta - desde))).isEmpty()) {
+            long inicio = entradas.get(0).obtenerOffset();
+            desde = entradas.get(entradas.size() - 1).obtenerOffset() + 1;
+            List<Notificacion> notificaciones = new ArrayList<>(entradas.size());
+            for (EntradaBitacora entrada : entradas) {
+                if (dirigidaA(entrada.obtenerVista().obtenerTema(), temas)) {
+                    notificaciones.add(entrada.obtenerNotificacion());
+                }
+            }
+            long fin = desde;
+            progreso.enviar(inicio, fin);
+            if (notificaciones.isEmpty()) {
+                progreso.confirmar(inicio, fin);
+                continue;
+            }
+            destino.apply(notificaciones).thenRun(() -> progreso.confirmar(inicio, fin));
+            reproducidos += notificaciones.size();
+        }
+        return reproducidos;
+    }
+    
+    /**
+     * Al sellarse, el tema de una notificacion es la lista de los temas a
+     * los que se publico separados por comas, o null si fue de difusion.
+     */
+    private static boolean dirigidaA(String tema, Set<String> temas) {
+        if (tema == null) {
+            return true;
+        }
+        for (String parte : tema.split(",")) {
+            if (temas.contains(parte)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Elimina los segmentos cerrados que exceden el tamaño o la edad de retencion.
+     */
+    public synchronized void aplicarRetencion() {
+        long total = 0;
+        for (Segmento segmento : segmentos.values()) {
+            total += segmento.capacidad;
+        }
+        long limiteEdad = System.currentTimeMillis() - retencionMs;
+        Map.Entry<Long, Segmento> primero;
+        while ((primero = segmentos.firstEntry()) != null && primero.getValue() != activo) {
+            Segmento segmento = primero.getValue();
+            if (total <= retencionBytes && segmento.ultimaMarcaTiempo >= limiteEdad) {
+                break;
+            }
+            segmentos.remove(primero.getKey());
+            total -= segmento.capacidad;
+            segmento.eliminar();
+        }
+    }
+    
+    /**
+     * Aplica la retencion, fuerza a disco todos los segmentos con escrituras
+     * pendientes (no solo el activo: uno recien cerrado puede tenerlas) y
+     * guarda las confirmaciones de los consumidores.
+     */
+    public synchronized void sincronizar() throws IOException {
+        aplicarRetencion();
+        for (Segmento segmento : segmentos.values()) {
+            if (segmento.sucio) {
+                segmento.mapa.force();
+                segmento.sucio = false;
+            }
+        }
+        Properties propiedades = new Properties();
+        for (Map.Entry<String, Progreso> confirmacion : confirmaciones.entrySet()) {
+            propiedades.setProperty(confirmacion.getKey(), Long.toString(confirmacion.getValue().siguiente()));
+        }
+        Path temporal = directorio.resolve(ARCHIVO_CONFIRMACIONES + ".tmp");
+        try (Writer escritor = Files.newBufferedWriter(temporal, StandardCharsets.UTF_8)) {
+            propiedades.store(escritor, "Offsets confirmados por consumidor");
+        }
+        Files.move(temporal, directorio.resolve(ARCHIVO_CONFIRMACIONES),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        sincronizar();
+        for (Segmento segmento : segmentos.values()) {
+            segmento.canal.close();
+        }
+    }
+    
+    /**
+     * Avance de un consumidor: los tramos enviados que aun no confirmo, por
+     * offset inicial, y el final del mas alto confirmado. Las prioridades
+     * hacen que se confirmen fuera de orden y una entrega fallida no se
+     * confirma nunca, asi que el siguiente pendiente es el menor tramo en curso.
+     */
+    private static final class Progreso {
+        private final TreeMap<Long, Long> enCurso = new TreeMap<>();
+        private long confirmado;
+        
+        Progreso(long confirmado) {
+            this.confirmado = confirmado;
+        }
+        
+        synchronized void enviar(long desde, long hasta) {
+            enCurso.put(desde, hasta);
+        }
+        
+        synchronized void confirmar(long desde, long hasta) {
+            enCurso.remove(desde, hasta);
+            confirmado = Math.max(confirmado, hasta);
+        }
+        
+        synchronized void confirmarHasta(long siguiente) {
+            enCurso.headMap(siguiente).values().removeIf(hasta -> hasta <= siguiente);
+            confirmado = Math.max(confirmado, siguiente);
+        }
+        
+        synchronized long siguiente() {
+            return enCurso.isEmpty() ? confirmado : Math.min(confirmado, enCurso.firstKey());
+        }
+        
+        synchronized long reanudar() {
+            confirmado = siguiente();
+            enCurso.clear();
+            return confirmado;
+        }
+    }
+    
+    /**
+     * Segmento mapeado. Solo el escritor (con el candado de la bitacora)
+     * modifica el contenido; cantidad es volatil y se publica despues de
+     * escribir cada registro, asi los lectores nunca ven uno incompleto.
+     * El indice disperso guarda la posicion de uno de cada PASO_INDICE
+     * registros para que leer desde un offset no recorra todo el segmento.
+     */
+    private static class Segmento {
+        final Path archivo;
+        final long base;
+        final int capacidad;
+        final FileChannel canal;
+        final MappedByteBuffer mapa;
+        int posicion;
+        int[] indice = new int[64];
+        volatile int cantidad;
+        volatile long ultimaMarcaTiempo;
+        boolean sucio;
+        
+        Segmento(Path archivo, long base, int capacidad) throws IOException {
+            this.archivo = archivo;
+            this.base = base;
+            this.capacidad = capacidad;
+            this.canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                          StandardOpenOption.WRITE);
+            this.mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, capacidad);
+            recuperar();
+        }
+        
+        private void recuperar() {
+            int cuenta = 0;
+            int actual = 0;
+            long marca = 0;
+            while (actual + CABECERA <= capacidad) {
+                int longitud = mapa.getInt(actual);
+                if (longitud <= 0 || actual + CABECERA + longitud > capacidad) {
+                    break;
+                }
+                marca = mapa.getLong(actual + Integer.BYTES);
+                indexar(cuenta, actual);
+                actual += CABECERA + longitud;
+                cuenta++;
+            }
+            this.posicion = actual;
+            this.ultimaMarcaTiempo = marca;
+            this.cantidad = cuenta;
+        }
+        
+        private void indexar(int registro, int posicionRegistro) {
+            if (registro % PASO_INDICE == 0) {
+                int ranura = registro / PASO_INDICE;
+                if (ranura == indice.length) {
+                    indice = Arrays.copyOf(indice, ranura * 2);
+                }
+                indice[ranura] = posicionRegistro;
+            }
+        }
+        
+        void escribir(byte[] datos, long marcaTiempo) {
+            indexar(cantidad, posicion);
+            mapa.putLong(posicion + Integer.BYTES, marcaTiempo);
+            mapa.put(posicion + CABECERA, datos);
+            mapa.putInt(posicion, datos.length);
+            posicion += CABECERA + datos.length;
+            ultimaMarcaTiempo = marcaTiempo;
+            sucio = true;
+            cantidad = cantidad + 1;
+        }
+        
+        void leer(long desde, int maximo, List<EntradaBitacora> destino) {
+            int disponibles = cantidad;
+            int[] indiceLeido = indice;
+            ByteBuffer vista = mapa.duplicate();
+            int ranura = (int) Math.min((desde - base) / PASO_INDICE, (disponibles - 1) / PASO_INDICE);
+            if (ranura < 0 || ranura >= indiceLeido.length) {
+                return;
+            }
+            int actual = indiceLeido[ranura];
+            for (long offset = base + (long) ranura * PASO_INDICE; offset < base + disponibles && maximo > 0; offset++) {
+                int longitud = vista.getInt(actual);
+                if (offset >= desde) {
+                    destino.add(new EntradaBitacora(offset, vista.getLong(actual + Integer.BYTES),
+                                                    new VistaNotificacion(vista.slice(actual + CABECERA, longitud))));
+                    maximo--;
+                }
+                actual += CABECERA + longitud;
+            }
+        }
+        
+        void eliminar() {
+            try {
+                canal.close();
+                Files.deleteIfExists(archivo);
+            } catch (IOException e) {
+                Registro.advertencia(() -> "No se pudo eliminar el segmento " + archivo + ": " + e.getMessage());
+            }
+        }
+    }
+}
+
+/**
+ * Sujeto observable: Sistema de Notificaciones Academicas
+ */
+class SistemaNotificacionesAcademico {
+    private final ConcurrentHashMap<String, CanalObservador> observadores;
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, CanalObservador>> indiceTemas;
+    private final AtomicLong secuenciaRegistro;
+    private final AtomicLong versionRegistro;
+    private volatile InstantaneaObservadores instantanea;
+    private final AtomicLong secuenciaNotificaciones;
+    private volatile Notificacion ultimaNotificacion;
+    private volatile Executor ejecutorEntrega;
+    private volatile int capacidadCola;
+    private volatile PoliticaDesbordamiento politicaCola;
+    private final ConcurrentHashMap<String, NotificacionDiferida> diferidas;
+    private final LongAdder coalescidas;
+    private volatile long ventanaCoalescenciaMs;
+    private volatile BitacoraNotificaciones bitacora;
+    private final ReentrantReadWriteLock candadoHistorial;
+    private final HistogramaLatencia[] latenciaPorPrioridad;
+    
+    private static final ScheduledExecutorService TEMPORIZADOR = Executors.newSingleThreadScheduledExecutor(tarea -> {
+        Thread hilo = new Thread(tarea, "temporizador-notificaciones");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+    
+    public SistemaNotificacionesAcademico() {
+        this.observadores = new ConcurrentHashMap<>();
+        this.indiceTemas = new ConcurrentHashMap<>();
+        this.secuenciaRegistro = new AtomicLong();
+        this.versionRegistro = new AtomicLong();
+        this.instantanea = new InstantaneaObservadores(0, new CanalObservador[0]);
+        this.secuenciaNotificaciones = new AtomicLong();
+        this.ultimaNotificacion = new Notificacion("Sistema", "Sistema inicializado");
+        this.capacidadCola = Integer.MAX_VALUE;
+        this.politicaCola = PoliticaDesbordamiento.BLOQUEAR;
+        this.diferidas = new ConcurrentHashMap<>();
+        this.coalescidas = new LongAdder();
+        this.candadoHistorial = new ReentrantReadWriteLock();
+        this.latenciaPorPrioridad = new HistogramaLatencia[PrioridadNotificacion.values().length];
+        for (int i = 0; i < latenciaPorPrioridad.length; i++) {
+            latenciaPorPrioridad[i] = new HistogramaLatencia();
+        }
+    }
+    
+    /**
+     * Registra al observador bajo su identificador; si ya habia uno con el
+     * mismo identificador lo reemplaza.
+     */
+    public void registrarObservador(ObservadorNotificacion observador) {
+        incorporar(crearCanal(observador));
+    }
+    
+    private CanalObservador crearCanal(ObservadorNotificacion observador) {
+        CanalObservador canal = new CanalObservador(observador, secuenciaRegistro.incrementAndGet(),
+                                                    latenciaPorPrioridad);
+        canal.configurarCola(capacidadCola, politicaCola);
+        return canal;
+    }
+    
+    /**
+     * Agrega el canal a la publicacion en vivo.
+     */
+    private void incorporar(CanalObservador canal) {
+        String identificador = canal.obtenerObservador().obtenerIdentificador();
+        CanalObservador anterior = observadores.put(identificador, canal);
+        if (anterior != null) {
+            desindexar(identificador, anterior);
+        }
+        for (String tema : canal.obtenerTemas()) {
+            indiceTemas.computeIfAbsent(tema, clave -> new ConcurrentHashMap<>()).put(identificador, canal);
+        }
+        versionRegistro.incrementAndGet();
+        Registro.info(() -> "Nuevo observador registrado: " + identificador);
+    }
+    
+    public void eliminarObservador(ObservadorNotificacion observador) {
+        String identificador = observador.obtenerIdentificador();
+        CanalObservador canal = observadores.get(identificador);
+        if (canal != null && canal.obtenerObservador().equals(observador) &&
+            observadores.remove(identificador, canal)) {
+            desindexar(identificador, canal);
+            versionRegistro.incrementAndGet();
+            Registro.info(() -> "Observador eliminado: " + identificador);
+        }
+    }
+    
+    public void eliminarObservador(String identificador) {
+        CanalObservador canal = observadores.remove(identificador);
+        if (canal != null) {
+            desindexar(identificador, canal);
+            versionRegistro.incrementAndGet();
+            Registro.info(() -> "Observador eliminado: " + identificador);
+        }
+    }
+    
+    private void desindexar(String identificador, CanalObservador canal) {
+        Trazas.olvidar(CategoriaTraza.ENTREGA, identificador);
+        for (String tema : canal.obtenerTemas()) {
+            ConcurrentHashMap<String, CanalObservador> suscriptores = indiceTemas.get(tema);
+            if (suscriptores != null) {
+                suscriptores.remove(identificador, canal);
+            }
+        }
+    }
+    
+    /**
+     * Observadores suscritos a alguno de los temas, sin repetir. Solo recorre
+     * las entradas del indice de esos temas.
+     */
+    private CanalObservador[] observadoresDe(String[] temas) {
+        if (temas.length == 1) {
+            ConcurrentHashMap<String, CanalObservador> suscriptores = indiceTemas.get(temas[0]);
+            return suscriptores == null ? new CanalObservador[0] : suscriptores.values().toArray(new CanalObservador[0]);
+        }
+        Set<CanalObservador> unicos = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (String tema : temas) {
+            ConcurrentHashMap<String, CanalObservador> suscriptores = indiceTemas.get(tema);
+            if (suscriptores != null) {
+                unicos.addAll(suscriptores.values());
+            }
+        }
+        return unicos.toArray(new CanalObservador[0]);
+    }
+    
+    /**
+     * Devuelve los observadores en orden de registro. La copia se reconstruye
+     * solo cuando el registro cambio desde la ultima publicacion, de modo que
+     * registrar y eliminar son O(1) y publicar nunca ve una modificacion a medias.
+     */
+    private CanalObservador[] observadoresActuales() {
+        InstantaneaObservadores actual = instantanea;
+        long version = versionRegistro.get();
+        if (actual.version == version) {
+            return actual.canales;
+        }
+        CanalObservador[] canales = observadores.values().toArray(new CanalObservador[0]);
+        Arrays.sort(canales, Comparator.comparingLong(CanalObservador::obtenerSecuencia));
+        instantanea = new InstantaneaObservadores(version, canales);
+        return canales;
+    }
+    
+    public int contarObservadores() {
+        return observadores.size();
+    }
+    
+    /**
+     * Activa la entrega asincrona: publicarNotificacion regresa de inmediato y
+     * cada observador recibe sus mensajes en orden desde el ejecutor indicado
+     * (por ejemplo, uno de hilos virtuales en Java 21 o un pool fijo).
+     */
+    public void habilitarEntregaAsincrona(Executor ejecutor) {
+        this.ejecutorEntrega = Objects.requireNonNull(ejecutor);
+    }
+    
+    /**
+     * Entrega asincrona con una cola acotada por observador y la politica de
+     * desbordamiento indicada, aplicada a los observadores actuales y futuros.
+     */
+    public void habilitarEntregaAsincrona(Executor ejecutor, int capacidad, PoliticaDesbordamiento politica) {
+        this.capacidadCola = capacidad;
+        this.politicaCola = politica;
+        for (CanalObservador canal : observadores.values()) {
+            canal.configurarCola(capacidad, politica);
+        }
+        habilitarEntregaAsincrona(ejecutor);
+    }
+    
+    /**
+     * Cambia la cola de un observador concreto, por ejemplo para que uno
+     * critico bloquee al publicador en lugar de perder mensajes.
+     */
+    public void configurarColaObservador(String identificador, int capacidad, PoliticaDesbordamiento politica) {
+        CanalObservador canal = observadores.get(identificador);
+        if (canal != null) {
+            canal.configurarCola(capacidad, politica);
+        }
+    }
+    
+    /**
+     * Muestra el retraso de entrega de los observadores con mas mensajes pendientes.
+     */
+    public void mostrarRetrasoObservadores(int limite) {
+        CanalObservador[] canales = observadoresActuales().clone();
+        Arrays.sort(canales, Comparator.comparingInt(CanalObservador::obtenerPendientes).reversed());
+        System.out.println("\nRetraso de entrega por observador:");
+        for (int i = 0; i < Math.min(limite, canales.length); i++) {
+            CanalObservador canal = canales[i];
+            System.out.printf("- %s: %d pendientes (max %d), %d entregados, %d descartados, %d coalescidos, " +
+                              "%d fallos, retraso %.1f ms (max %.1f ms)%n",
+                              canal.obtenerObservador().obtenerIdentificador(), canal.obtenerPendientes(),
+                              canal.obtenerMaximoPendientes(), canal.obtenerEntregados(), canal.obtenerDescartados(),
+                              canal.obtenerCoalescidos(), canal.obtenerFallos(),
+                              canal.obtenerUltimoRetrasoNanos() / 1e6, canal.obtenerMaximoRetrasoNanos() / 1e6);
+        }
+    }
+    
+    /**
+     * Latencia de entrega, desde la publicacion hasta que el observador la
+     * proceso, de todas las entregas de la prioridad indicada.
+     */
+    public ResumenLatencia obtenerLatencia(PrioridadNotificacion prioridad) {
+        return latenciaPorPrioridad[prioridad.ordinal()].resumir(prioridad.name());
+    }
+    
+    public void mostrarLatenciaPorPrioridad() {
+        System.out.println("\nLatencia de entrega por prioridad:");
+        for (PrioridadNotificacion prioridad : PrioridadNotificacion.values()) {
+            System.out.println("  " + obtenerLatencia(prioridad));
+        }
+    }
+    
+    public void deshabilitarEntregaAsincrona() {
+        this.ejecutorEntrega = null;
+    }
+    
+    /**
+     * Guarda cada publicacion en la bitacora y confirma el offset de cada
+     * observador al entregarsela, para poder reproducir lo que le falte.
+     */
+    public void habilitarBitacora(BitacoraNotificaciones bitacora) {
+        this.bitacora = bitacora;
+    }
+    
+    /**
+     * Registra al observador y, si hay bitacora, le reproduce por su canal lo
+     * publicado para sus temas desde su ultima confirmacion (todo, si nunca
+     * se habia registrado). El grueso se reproduce antes de incorporarlo a la
+     * publicacion en vivo; el resto, con el candado del historial tomado para
+     * escribir, de modo que ninguna publicacion se cuela entre la
+     * reproduccion y la incorporacion: no pierde mensajes ni los recibe fuera
+     * de orden. No debe llamarse desde una entrega sincrona, que ocurre con
+     * el candado tomado para leer.
+     */
+    public int registrarObservadorConHistorial(ObservadorNotificacion observador) {
+        BitacoraNotificaciones actual = bitacora;
+        if (actual == null) {
+            registrarObservador(observador);
+            return 0;
+        }
+        CanalObservador canal = crearCanal(observador);
+        String consumidor = observador.obtenerIdentificador();
+        long desde = actual.reanudar(consumidor);
+        long hasta = actual.obtenerSiguienteOffset();
+        int reproducidos = reproducirPorCanal(actual, canal, desde, hasta);
+        candadoHistorial.writeLock().lock();
+        try {
+            reproducidos += reproducirPorCanal(actual, canal, hasta, actual.obtenerSiguienteOffset());
+            incorporar(canal);
+        } finally {
+            candadoHistorial.writeLock().unlock();
+        }
+        int total = reproducidos;
+        Registro.info(() -> "Mensajes reproducidos para " + consumidor + ": " + total);
+        return total;
+    }
+    
+    private int reproducirPorCanal(BitacoraNotificaciones actual, CanalObservador canal, long desde, long hasta) {
+        Executor ejecutor = ejecutorEntrega;
+        return actual.reproducir(canal.obtenerObservador().obtenerIdentificador(), desde, hasta, canal.obtenerTemas(),
+                                 ejecutor == null ? canal::entregarLoteAhora
+                                                  : notificaciones -> canal.encolarLote(notificaciones, ejecutor));
+    }
+    
+    /**
+     * Con bitacora, agregar a la bitacora, elegir los canales y encolar
+     * ocurren con el candado del historial tomado para leer; sin ella no hay
+     * nada que reproducir y se publica sin candado.
+     */
+    private Lock tomarCandadoHistorial(BitacoraNotificaciones actual) {
+        if (actual == null) {
+            return null;
+        }
+        Lock lectura = candadoHistorial.readLock();
+        lectura.lock();
+        return lectura;
+    }
+    
+    /**
+     * Asigna id y tema a la notificacion si aun no se habia publicado.
+     */
+    private Notificacion sellar(Notificacion notificacion, String[] temas) {
+        if (notificacion.obtenerId() != 0) {
+            return notificacion;
+        }
+        return notificacion.sellar(secuenciaNotificaciones.incrementAndGet(),
+                                   temas.length == 0 ? null : String.join(",", temas));
+    }
+    
+    public Notificacion obtenerUltimaNotificacion() {
+        return ultimaNotificacion;
+    }
+    
+    private CompletableFuture<Void> notificarObservadores(CanalObservador[] canales, Notificacion notificacion,
+                                                          BitacoraNotificaciones actual) {
+        long offset = actual == null ? -1 : actual.agregar(notificacion);
+        Executor ejecutor = ejecutorEntrega;
+        CompletableFuture<?>[] entregas = new CompletableFuture<?>[canales.length];
+        for (int i = 0; i < canales.length; i++) {
+            if (offset >= 0) {
+                actual.enviar(canales[i].obtenerObservador().obtenerIdentificador(), offset, offset + 1);
+            }
+            CompletableFuture<Void> entrega = ejecutor == null ? canales[i].entregarAhora(notificacion)
+                                                               : canales[i].encolar(notificacion, ejecutor);
+            entregas[i] = offset < 0 ? entrega : confirmarAlEntregar(actual, canales[i], entrega, offset, offset + 1);
+        }
+        return CompletableFuture.allOf(entregas);
+    }
+    
+    private static CompletableFuture<Void> confirmarAlEntregar(BitacoraNotificaciones bitacora, CanalObservador canal,
+                                                               CompletableFuture<Void> entrega, long desde, long hasta) {
+        String consumidor = canal.obtenerObservador().obtenerIdentificador();
+        return entrega.thenRun(() -> bitacora.confirmar(consumidor, desde, hasta));
+    }
+    
+    /**
+     * Publica la notificacion y devuelve un manejador que se completa cuando
+     * todos los observadores la procesaron; si alguno fallo se completa con
+     * error, sin afectar la entrega a los demas.
+     */
+    public CompletableFuture<Void> publicarNotificacion(String titulo, String contenido) {
+        return publicar(new Notificacion(titulo, contenido));
+    }
+    
+    /**
+     * Publica solo a los observadores suscritos a alguno de los temas
+     * indicados (ver Audiencia); sin temas equivale a difundir a todos.
+     */
+    public CompletableFuture<Void> publicarNotificacion(String titulo, String contenido, String... temas) {
+        return publicar(new Notificacion(titulo, contenido), temas);
+    }
+    
+    /**
+     * Publica con la prioridad indicada. En modo asincrono las de mayor
+     * prioridad se entregan antes que las pendientes de menor prioridad.
+     */
+    public CompletableFuture<Void> publicarNotificacion(String titulo, String contenido,
+                                                        PrioridadNotificacion prioridad, String... temas) {
+        return publicar(new Notificacion(titulo, contenido, prioridad), temas);
+    }
+    
+    /**
+     * Publica una notificacion ya construida, por ejemplo con otra
+     * prioridad, a los temas indicados o a todos si no se indica ninguno.
+     */
+    public CompletableFuture<Void> publicar(Notificacion notificacion, String... temas) {
+        long traza = Trazas.iniciar();
+        try {
+            return publicarSellada(sellar(notificacion, temas), temas);
+        } finally {
+            Trazas.terminar(traza, CategoriaTraza.PUBLICACION, temas.length == 0 ? "todos" : temas[0], "publicar");
+        }
+    }
+    
+    private CompletableFuture<Void> publicarSellada(Notificacion publicada, String[] temas) {
+        this.ultimaNotificacion = publicada;
+        BitacoraNotificaciones actual = bitacora;
+        Lock historial = tomarCandadoHistorial(actual);
+        try {
+            CanalObservador[] canales = temas.length == 0 ? observadoresActuales() : observadoresDe(temas);
+            Registro.info("\n=== NUEVA NOTIFICACIÓN ===");
+            Registro.info(() -> "Título: " + publicada.obtenerTitulo());
+            Registro.info(() -> "Contenido: " + publicada.obtenerContenido());
+            if (temas.length > 0) {
+                Registro.info(() -> "Audiencia: " + String.join(", ", temas));
+            }
+            Registro.info(() -> "Observadores a notificar: " + canales.length);
+            return notificarObservadores(canales, publicada, actual);
+        } finally {
+            if (historial != null) {
+                historial.unlock();
+            }
+        }
+    }
+    
+    /**
+     * Publica varias notificaciones de una vez. En modo sincrono cada
+     * observador las recibe en una sola llamada a recibirLote; en modo
+     * asincrono se encolan juntas y el drenador las agrupa al entregarlas.
+     */
+    public CompletableFuture<Void> publicarLote(List<Notificacion> notificaciones, String... temas) {
+        if (notificaciones.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long traza = Trazas.iniciar();
+        try {
+            return publicarLoteSellado(notificaciones, temas);
+        } finally {
+            Trazas.terminar(traza, CategoriaTraza.PUBLICACION, temas.length == 0 ? "todos" : temas[0], "publicarLote");
+        }
+    }
+    
+    private CompletableFuture<Void> publicarLoteSellado(List<Notificacion> notificaciones, String[] temas) {
+        List<Notificacion> publicadas = new ArrayList<>(notificaciones.size());
+        for (Notificacion notificacion : notificaciones) {
+            publicadas.add(sellar(notificacion, temas));
+        }
+        this.ultimaNotificacion = publicadas.get(publicadas.size() - 1);
+        BitacoraNotificaciones actual = bitacora;
+        Lock historial = tomarCandadoHistorial(actual);
+        try {
+            CanalObservador[] canales = temas.length == 0 ? observadoresActuales() : observadoresDe(temas);
+            Registro.info("\n=== LOTE DE NOTIFICACIONES ===");
+            Registro.info(() -> "Notificaciones: " + notificaciones.size());
+            if (temas.length > 0) {
+                Registro.info(() -> "Audiencia: " + String.join(", ", temas));
+            }
+            Registro.info(() -> "Observadores a notificar: " + canales.length);
+            long primerOffset = actual == null ? -1 : actual.agregarLote(publicadas);
+            long finOffset = primerOffset + publicadas.size();
+            Executor ejecutor = ejecutorEntrega;
+            CompletableFuture<?>[] entregas = new CompletableFuture<?>[canales.length];
+            for (int i = 0; i < canales.length; i++) {
+                if (primerOffset >= 0) {
+                    actual.enviar(canales[i].obtenerObservador().obtenerIdentificador(), primerOffset, finOffset);
+                }
+                CompletableFuture<Void> entrega = ejecutor == null ? canales[i].entregarLoteAhora(publicadas)
+                                                                   : canales[i].encolarLote(publicadas, ejecutor);
+                entregas[i] = primerOffset < 0 ? entrega
+                                               : confirmarAlEntregar(actual, canales[i], entrega, primerOffset, finOffset);
+            }
+            return CompletableFuture.allOf(entregas);
+        } finally {
+            if (historial != null) {
+                historial.unlock();
+            }
+        }
+    }
+    
+    /**
+     * Activa la coalescencia: las notificaciones publicadas con
+     * publicarCoalescida esperan la ventana indicada y, si en ese tiempo
+     * llega otra con la misma clave, solo se publica la mas reciente.
+     */
+    public void habilitarCoalescencia(long ventanaMs) {
+        if (ventanaMs < 0) {
+            throw new IllegalArgumentException("Ventana de coalescencia invalida: " + ventanaMs);
+        }
+        this.ventanaCoalescenciaMs = ventanaMs;
+    }
+    
+    /**
+     * Publica la notificacion tras la ventana de coalescencia, reemplazando a
+     * cualquier otra pendiente con la misma clave. El manejador devuelto se
+     * completa cuando se entrega la version que finalmente se publico.
+     */
+    public CompletableFuture<Void> publicarCoalescida(String clave, String titulo, String contenido, String... temas) {
+        long ventana = ventanaCoalescenciaMs;
+        if (ventana == 0) {
+            return publicarNotificacion(titulo, contenido, temas);
+        }
+        Notificacion notificacion = new Notificacion(titulo, contenido);
+        boolean[] primera = new boolean[1];
+        NotificacionDiferida diferida = diferidas.compute(clave, (k, actual) -> {
+            if (actual == null) {
+                primera[0] = true;
+                return new NotificacionDiferida(notificacion, temas);
+            }
+            actual.notificacion = notificacion;
+            actual.temas = temas;
+            coalescidas.increment();
+            return actual;
+        });
+        if (primera[0]) {
+            TEMPORIZADOR.schedule(() -> liberarDiferida(clave, diferida), ventana, TimeUnit.MILLISECONDS);
+        }
+        return diferida.resultado;
+    }
+    
+    private void liberarDiferida(String clave, NotificacionDiferida diferida) {
+        if (diferidas.remove(clave, diferida)) {
+            publicar(diferida.notificacion, diferida.temas)
+                .whenComplete((valor, error) -> {
+                    if (error == null) {
+                        diferida.resultado.complete(null);
+                    } else {
+                        diferida.resultado.completeExceptionally(error);
+                    }
+                });
+        }
+    }
+    
+    public long obtenerNotificacionesCoalescidas() {
+        return coalescidas.sum();
+    }
+    
+    public void mostrarObservadoresActivos() {
+        System.out.println("\nObservadores activos en el sistema:");
+        CanalObservador[] canales = observadoresActuales();
+        if (canales.length == 0) {
+            System.out.println("No hay observadores registrados");
+        } else {
+            for (CanalObservador canal : canales) {
+                System.out.println("- " + canal.obtenerObservador().obtenerIdentificador());
+            }
+        }
+    }
+    
+    /**
+     * Notificacion a la espera de su ventana de coalescencia. Sus campos se
+     * modifican solo dentro de compute sobre el mapa de diferidas.
+     */
+    private static class NotificacionDiferida {
+        Notificacion notificacion;
+        String[] temas;
+        final CompletableFuture<Void> resultado;
+        
+        NotificacionDiferida(Notificacion notificacion, String[] temas) {
+            this.notificacion = notificacion;
+            this.temas = temas;
+            this.resultado = new CompletableFuture<>();
+        }
+    }
+    
+    private static class InstantaneaObservadores {
+        final long version;
+        final CanalObservador[] canales;
+        
+        InstantaneaObservadores(long version, CanalObservador[] canales) {
+            this.version = version;
+            this.canales = canales;
+        }
+    }
+}
+
+/**
+ * Politica aplicada cuando la cola de un observador esta llena
+ */
+enum PoliticaDesbordamiento {
+    /** El publicador espera a que haya espacio. */
+    BLOQUEAR,
+    /** Se descarta el mensaje pendiente mas antiguo. */
+    DESCARTAR_ANTIGUO,
+    /** Se descarta el mensaje que llega. */
+    DESCARTAR_NUEVO,
+    /** Un mensaje pendiente con la misma clave se reemplaza por el nuevo; si no hay, se descarta el mas antiguo. */
+    COALESCER
+}
+
+/**
+ * Canal de entrega de un observador. En modo asincrono los mensajes esperan
+ * en una cola acotada y un unico drenador activo a la vez los entrega en
+ * orden, de modo que un observador lento solo retrasa su propia cola; al
+ * llenarse se aplica la politica de desbordamiento del canal. Las
+ * excepciones del observador se aislan y se cuentan. El drenador entrega
+ * como maximo RAFAGA mensajes por turno antes de ceder el hilo del ejecutor.
+ *
+ * Hay un carril por prioridad, cada uno con la capacidad configurada, y
+ * cada turno toma mensajes de un solo carril: el de mayor prioridad con
+ * pendientes. Asi un aviso ALTA espera a lo sumo el turno en curso aunque
+ * haya miles de BAJA encolados. Para que los carriles inferiores no se
+ * queden sin servicio, tras SALTOS_MAXIMOS turnos postergado uno de ellos
+ * recibe el siguiente turno.
+ */
+class CanalObservador {
+    private static final int RAFAGA = 64;
+    private static final int SALTOS_MAXIMOS = 8;
+    
+    private final ObservadorNotificacion observador;
+    private final long secuencia;
+    private final Set<String> temas;
+    private final Carril[] carriles;
+    private final HistogramaLatencia[] latencias;
+    private final PuntoTraza punto;
+    private int pendientes;
+    private final ReentrantLock candado;
+    private final Condition hayEspacio;
+    private final LongAdder entregados;
+    private final LongAdder fallos;
+    private final LongAdder descartados;
+    private final LongAdder coalescidos;
+    private volatile int capacidad;
+    private volatile PoliticaDesbordamiento politica;
+    private boolean drenando;
+    private int maximoPendientes;
+    private volatile long ultimoRetrasoNanos;
+    private volatile long maximoRetrasoNanos;
+    
+    /**
+     * Los histogramas, uno por prioridad, pueden compartirse entre canales
+     * para medir la latencia de entrega de todo el sistema por carril.
+     */
+    public CanalObservador(ObservadorNotificacion observador, long secuencia, HistogramaLatencia[] latencias) {
+        this.observador = observador;
+        this.secuencia = secuencia;
+        this.temas = Set.copyOf(observador.obtenerTemas());
+        this.carriles = new Carril[PrioridadNotificacion.values().length];
+        for (int i = 0; i < carriles.length; i++) {
+            carriles[i] = new Carril();
+        }
+        this.latencias = latencias;
+        this.punto = new PuntoTraza();
+        this.candado = new ReentrantLock();
+        this.hayEspacio = candado.newCondition();
+        this.entregados = new LongAdder();
+        this.fallos = new LongAdder();
+        this.descartados = new LongAdder();
+        this.coalescidos = new LongAdder();
+        this.capacidad = Integer.MAX_VALUE;
+        this.politica = PoliticaDesbordamiento.BLOQUEAR;
+    }
+    
+    public void configurarCola(int capacidad, PoliticaDesbordamiento politica) {
+        if (capacidad < 1) {
+            throw new IllegalArgumentException("Capacidad de cola invalida: " + capacidad);
+        }
+        candado.lock();
+        try {
+            this.capacidad = capacidad;
+            this.politica = Objects.requireNonNull(politica);
+            hayEspacio.signalAll();
+        } finally {
+            candado.unlock();
+        }
+    }
+    
+    public ObservadorNotificacion obtenerObservador() {
+        return observador;
+    }
+    
+    public long obtenerSecuencia() {
+        return secuencia;
+    }
+    
+    public Set<String> obtenerTemas() {
+        return temas;
+    }
+    
+    public CompletableFuture<Void> entregarAhora(Notificacion notificacion) {
+        CompletableFuture<Void> resultado = new CompletableFuture<>();
+        entregar(notificacion, resultado, System.nanoTime(), true);
+        return resultado;
+    }
+    
+    public CompletableFuture<Void> entregarLoteAhora(List<Notificacion> notificaciones) {
+        long inicio = System.nanoTime();
+        List<EntregaPendiente> tanda = new ArrayList<>(notificaciones.size());
+        CompletableFuture<?>[] resultados = new CompletableFuture<?>[notificaciones.size()];
+        for (int i = 0; i < notificaciones.size(); i++) {
+            EntregaPendiente entrega = new EntregaPendiente(notificaciones.get(i), inicio);
+            tanda.add(entrega);
+            resultados[i] = entrega.resultado;
+        }
+        entregarTanda(tanda, true);
+        return CompletableFuture.allOf(resultados);
+    }
+    
+    /**
+     * Encola varias notificaciones tomando el candado una sola vez. Con
+     * BLOQUEAR, en cuanto una no cabe en su carril se suelta el candado, se
+     * arranca el drenador y el resto sigue por encolar, que espera espacio
+     * como una publicacion suelta: esperar con el candado tomado antes de
+     * lanzar el drenador no terminaria nunca.
+     */
+    public CompletableFuture<Void> encolarLote(List<Notificacion> notificaciones, Executor ejecutor) {
+        CompletableFuture<?>[] resultados = new CompletableFuture<?>[notificaciones.size()];
+        long ahora = System.nanoTime();
+        boolean lanzar = false;
+        int i = 0;
+        candado.lock();
+        try {
+            for (; i < notificaciones.size(); i++) {
+                if (politica == PoliticaDesbordamiento.BLOQUEAR
+                        && carriles[notificaciones.get(i).obtenerPrioridad().ordinal()].cola.size() >= capacidad) {
+                    break;
+                }
+                EntregaPendiente nueva = new EntregaPendiente(notificaciones.get(i), ahora);
+                resultados[i] = nueva.resultado;
+                if (admitir(nueva)) {
+                    agregar(nueva);
+                }
+            }
+            if (!drenando && pendientes > 0) {
+                drenando = true;
+                lanzar = true;
+            }
+        } finally {
+            candado.unlock();
+        }
+        if (lanzar) {
+            lanzarDrenador(ejecutor);
+        }
+        for (; i < notificaciones.size(); i++) {
+            resultados[i] = encolar(notificaciones.get(i), ejecutor);
+        }
+        return CompletableFuture.allOf(resultados);
+    }
+    
+    /**
+     * Encola la notificacion aplicando la politica de desbordamiento. Las
+     * descartadas completan su futuro cancelado; una coalescida (mismo
+     * titulo) se completa cuando se entrega la que la reemplazo.
+     */
+    public CompletableFuture<Void> encolar(Notificacion notificacion, Executor ejecutor) {
+        EntregaPendiente nueva = new EntregaPendiente(notificacion, System.nanoTime());
+        boolean lanzar = false;
+        candado.lock();
+        try {
+            if (admitir(nueva)) {
+                agregar(nueva);
+                if (!drenando) {
+                    drenando = true;
+                    lanzar = true;
+                }
+            }
+        } finally {
+            candado.unlock();
+        }
+        if (lanzar) {
+            lanzarDrenador(ejecutor);
+        }
+        return nueva.resultado;
+    }
+    
+    private void agregar(EntregaPendiente nueva) {
+        carriles[nueva.notificacion.obtenerPrioridad().ordinal()].cola.addLast(nueva);
+        pendientes++;
+        maximoPendientes = Math.max(maximoPendientes, pendientes);
+    }
+    
+    /**
+     * Decide, con el candado tomado, si la nueva entrega debe agregarse al
+     * final de su carril. La capacidad y la politica se aplican por carril,
+     * asi una avalancha de baja prioridad no desplaza a los avisos urgentes.
+     */
+    private boolean admitir(EntregaPendiente nueva) {
+        PoliticaDesbordamiento actual = politica;
+        ArrayDeque<EntregaPendiente> cola = carriles[nueva.notificacion.obtenerPrioridad().ordinal()].cola;
+        if (actual == PoliticaDesbordamiento.COALESCER && nueva.clave != null) {
+            for (EntregaPendiente pendiente : cola) {
+                if (nueva.clave.equals(pendiente.clave)) {
+                    pendiente.notificacion = nueva.notificacion;
+                    pendiente.resultado.whenComplete((valor, error) -> {
+                        if (error == null) {
+                            nueva.resultado.complete(null);
+                        } else {
+                            nueva.resultado.completeExceptionally(error);
+                        }
+                    });
+                    coalescidos.increment();
+                    return false;
+                }
+            }
+        }
+        if (cola.size() < capacidad) {
+            return true;
+        }
+        switch (actual) {
+            case BLOQUEAR:
+                try {
+                    while (cola.size() >= capacidad) {
+                        hayEspacio.await();
+                    }
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    descartados.increment();
+                    nueva.resultado.cancel(false);
+                    return false;
+                }
+            case DESCARTAR_NUEVO:
+                descartados.increment();
+                nueva.resultado.cancel(false);
+                return false;
+            default:
+                descartados.increment();
+                pendientes--;
+                cola.pollFirst().resultado.cancel(false);
+                return true;
+        }
+    }
+    
+    private void lanzarDrenador(Executor ejecutor) {
+        try {
+            ejecutor.execute(() -> drenar(ejecutor));
+        } catch (RejectedExecutionException e) {
+            candado.lock();
+            try {
+                drenando = false;
+                for (Carril carril : carriles) {
+                    EntregaPendiente entrega;
+                    while ((entrega = carril.cola.pollFirst()) != null) {
+                        entrega.resultado.completeExceptionally(e);
+                    }
+                }
+                pendientes = 0;
+                hayEspacio.signalAll();
+            } finally {
+                candado.unlock();
+            }
+        }
+    }
+    
+    /**
+     * Elige, con el candado tomado, el carril del siguiente turno: el de
+     * mayor prioridad con pendientes, salvo que uno inferior ya haya sido
+     * postergado SALTOS_MAXIMOS veces. Devuelve null si no hay pendientes.
+     */
+    private Carril elegirCarril() {
+        Carril elegido = null;
+        for (int i = carriles.length - 1; i >= 0; i--) {
+            Carril carril = carriles[i];
+            if (carril.cola.isEmpty()) {
+                continue;
+            }
+            if (elegido == null) {
+                elegido = carril;
+            } else if (carril.saltos >= SALTOS_MAXIMOS) {
+                elegido = carril;
+            }
+        }
+        for (Carril carril : carriles) {
+            if (carril == elegido) {
+                carril.saltos = 0;
+            } else if (!carril.cola.isEmpty()) {
+                carril.saltos++;
+            }
+        }
+        return elegido;
+    }
+    
+    /**
+     * Toma hasta RAFAGA mensajes de un carril y los entrega en una sola
+     * invocacion; luego cede el hilo y vuelve a programarse.
+     */
+    private void drenar(Executor ejecutor) {
+        List<EntregaPendiente> tanda = new ArrayList<>();
+        candado.lock();
+        try {
+            Carril carril = elegirCarril();
+            if (carril == null) {
+                drenando = false;
+                return;
+            }
+            EntregaPendiente entrega;
+            while (tanda.size() < RAFAGA && (entrega = carril.cola.pollFirst()) != null) {
+                tanda.add(entrega);
+            }
+            pendientes -= tanda.size();
+            hayEspacio.signalAll();
+        } finally {
+            candado.unlock();
+        }
+        long ahora = System.nanoTime();
+        for (EntregaPendiente entrega : tanda) {
+            long retraso = ahora - entrega.encoladaNanos;
+            if (retraso > maximoRetrasoNanos) {
+                maximoRetrasoNanos = retraso;
+            }
+        }
+        ultimoRetrasoNanos = ahora - tanda.get(tanda.size() - 1).encoladaNanos;
+        entregarTanda(tanda, false);
+        lanzarDrenador(ejecutor);
+    }
+    
+    /**
+     * Entrega la tanda en una sola invocacion aislando los fallos por
+     * mensaje. Si el observador informa con ExcepcionEntregaParcial cuantas
+     * proceso, esas se completan, la siguiente falla con su causa y el resto
+     * vuelve a entregarse como lote. Con otra excepcion no se sabe cuales
+     * proceso, asi que la tanda se reintenta mensaje a mensaje. Cada mensaje
+     * fallido cuenta como un fallo.
+     */
+    private void entregarTanda(List<EntregaPendiente> tanda, boolean sincrona) {
+        int desde = 0;
+        while (tanda.size() - desde > 1) {
+            List<EntregaPendiente> resto = tanda.subList(desde, tanda.size());
+            List<Notificacion> notificaciones = new ArrayList<>(resto.size());
+            for (EntregaPendiente entrega : resto) {
+                notificaciones.add(entrega.notificacion);
+            }
+            try {
+                recibirLoteTrazado(notificaciones, sincrona);
+                completar(resto, resto.size());
+                return;
+            } catch (ExcepcionEntregaParcial e) {
+                int procesadas = e.obtenerProcesadas();
+                if (procesadas < 0 || procesadas >= resto.size()) {
+                    break;
+                }
+                completar(resto, procesadas);
+                fallar(resto.get(procesadas).resultado, e.getCause() != null ? e.getCause() : e);
+                desde += procesadas + 1;
+            } catch (RuntimeException e) {
+                Registro.advertencia(() -> "Lote para " + observador.obtenerIdentificador() + " fallido ("
+                                           + e.getMessage() + "); se reintenta mensaje a mensaje");
+                break;
+            }
+        }
+        for (EntregaPendiente entrega : tanda.subList(desde, tanda.size())) {
+            entregar(entrega.notificacion, entrega.resultado, entrega.encoladaNanos, sincrona);
+        }
+    }
+    
+    private void completar(List<EntregaPendiente> entregas, int cantidad) {
+        long fin = System.nanoTime();
+        for (int i = 0; i < cantidad; i++) {
+            EntregaPendiente entrega = entregas.get(i);
+            registrarLatencia(entrega.notificacion, fin - entrega.encoladaNanos);
+            entrega.resultado.complete(null);
+        }
+        entregados.add(cantidad);
+    }
+    
+    private void fallar(CompletableFuture<Void> resultado, Throwable causa) {
+        fallos.increment();
+        Registro.error(() -> "Error al notificar a " + observador.obtenerIdentificador() + ": " + causa.getMessage());
+        resultado.completeExceptionally(causa);
+    }
+    
+    private void entregar(Notificacion notificacion, CompletableFuture<Void> resultado, long desdeNanos,
+                          boolean sincrona) {
+        try {
+            recibirTrazado(notificacion, sincrona);
+            registrarLatencia(notificacion, System.nanoTime() - desdeNanos);
+            entregados.increment();
+            resultado.complete(null);
+        } catch (RuntimeException e) {
+            fallar(resultado, e);
+        }
+    }
+    
+    /**
+     * Una entrega sincrona ocurre dentro de la publicacion y solo se mide si
+     * la publicacion fue muestreada; una asincrona es raiz en el hilo de
+     * entrega. Las sincronas no usan el punto del canal: el publicador
+     * recorre todos los canales y leer el punto de cada uno cuesta mas que
+     * consultar el ThreadLocal, que ya esta en cache.
+     */
+    private void recibirTrazado(Notificacion notificacion, boolean sincrona) {
+        long traza = sincrona ? Trazas.iniciarAnidado() : Trazas.iniciar(punto);
+        try {
+            observador.recibirNotificacion(notificacion);
+        } finally {
+            Trazas.terminar(traza, CategoriaTraza.ENTREGA, observador, "recibirNotificacion");
+        }
+    }
+    
+    private void recibirLoteTrazado(List<Notificacion> notificaciones, boolean sincrona) {
+        long traza = sincrona ? Trazas.iniciarAnidado() : Trazas.iniciar(punto);
+        try {
+            observador.recibirLoteNotificaciones(notificaciones);
+        } finally {
+            Trazas.terminar(traza, CategoriaTraza.ENTREGA, observador, "recibirLoteNotificaciones");
+        }
+    }
+    
+    private void registrarLatencia(Notificacion notificacion, long nanos) {
+        if (latencias != null) {
+            latencias[notificacion.obtenerPrioridad().ordinal()].registrar(nanos);
+        }
+    }
+    
+    public int obtenerPendientes() {
+        candado.lock();
+        try {
+            return pendientes;
+        } finally {
+            candado.unlock();
+        }
+    }
+    
+    public int obtenerMaximoPendientes() {
+        candado.lock();
+        try {
+            return maximoPendientes;
+        } finally {
+            candado.unlock();
+        }
+    }
+    
+    public long obtenerEntregados() {
+        return entregados.sum();
+    }
+    
+    public long obtenerFallos() {
+        return fallos.sum();
+    }
+    
+    public long obtenerDescartados() {
+        return descartados.sum();
+    }
+    
+    public long obtenerCoalescidos() {
+        return coalescidos.sum();
+    }
+    
+    public long obtenerUltimoRetrasoNanos() {
+        return ultimoRetrasoNanos;
+    }
+    
+    public long obtenerMaximoRetrasoNanos() {
+        return maximoRetrasoNanos;
+    }
+    
+    private static class Carril {
+        final ArrayDeque<EntregaPendiente> cola = new ArrayDeque<>();
+        int saltos;
+    }
+    
+    private static class EntregaPendiente {
+        final String clave;
+        final long encoladaNanos;
+        final CompletableFuture<Void> resultado;
+        Notificacion notificacion;
+        
+        EntregaPendiente(Notificacion notificacion, long encoladaNanos) {
+            this.clave = notificacion.obtenerTitulo();
+            this.notificacion = notificacion;
+            this.encoladaNanos = encoladaNanos;
+            this.resultado = new CompletableFuture<>();
+        }
+    }
+}
+
+/**
+ * Almacen compartido de textos de notificacion. Cada texto distinto se
+ * guarda una sola vez con un id entero; los historiales solo guardan ids.
+ * Los textos viven en un anillo de capacidad fija: al reutilizar una ranura
+ * el texto anterior deja de resolverse, asi el almacen tampoco crece sin
+ * limite. Una difusion entrega la misma instancia a todos los destinatarios,
+ * por lo que el ultimo texto registrado se compara por identidad antes de
+ * buscarlo en el indice.
+ */
+final class AlmacenMensajes {
+    private static final AlmacenMensajes COMPARTIDO = new AlmacenMensajes(1 << 16);
+    
+    private final AtomicReferenceArray<EntradaMensaje> ranuras;
+    private final ConcurrentHashMap<String, EntradaMensaje> indice;
+    private final int mascara;
+    private int siguienteId;
+    private volatile EntradaMensaje ultima;
+    
+    AlmacenMensajes(int capacidad) {
+        if (capacidad <= 0 || Integer.bitCount(capacidad) != 1) {
+            throw new IllegalArgumentException("La capacidad debe ser potencia de dos: " + capacidad);
+        }
+        this.ranuras = new AtomicReferenceArray<>(capacidad);
+        this.indice = new ConcurrentHashMap<>();
+        this.mascara = capacidad - 1;
+    }
+    
+    public static AlmacenMensajes compartido() {
+        return COMPARTIDO;
+    }
+    
+    /**
+     * Devuelve el id del texto, registrandolo si aun no esta.
+     */
+    public int registrar(String texto) {
+        EntradaMensaje entrada = ultima;
+        if (entrada != null && entrada.texto == texto) {
+            return entrada.id;
+        }
+        entrada = indice.get(texto);
+        if (entrada == null) {
+            synchronized (this) {
+                entrada = indice.get(texto);
+                if (entrada == null) {
+                    entrada = new EntradaMensaje(siguienteId++, texto);
+                    EntradaMensaje desalojada = ranuras.getAndSet(entrada.id & mascara, entrada);
+                    if (desalojada != null) {
+                        indice.remove(desalojada.texto, desalojada);
+                    }
+                    indice.put(texto, entrada);
+                }
+            }
+        }
+        ultima = entrada;
+        return entrada.id;
+    }
+    
+    /**
+     * Texto del id, o null si su ranura ya fue reutilizada.
+     */
+    public String resolver(int id) {
+        EntradaMensaje entrada = ranuras.get(id & mascara);
+        return entrada != null && entrada.id == id ? entrada.texto : null;
+    }
+    
+    public int contarMensajes() {
+        return indice.size();
+    }
+    
+    private static final class EntradaMensaje {
+        final int id;
+        final String texto;
+        
+        EntradaMensaje(int id, String texto) {
+            this.id = id;
+            this.texto = texto;
+        }
+    }
+}
+
+/**
+ * Historial acotado de un observador: anillo de ids del AlmacenMensajes.
+ * El arreglo crece por duplicacion hasta la capacidad, asi quien recibe
+ * pocas notificaciones no reserva el anillo completo; al llenarse se
+ * sobrescriben las mas antiguas. Los textos se resuelven solo al consultarlo.
+ */
+final class HistorialNotificaciones {
+    static final int CAPACIDAD_PREDETERMINADA = 100;
+    
+    private final AlmacenMensajes almacen;
+    private final int capacidad;
+    private int[] ids;
+    private long total;
+    
+    HistorialNotificaciones(AlmacenMensajes almacen, int capacidad) {
+        if (capacidad <= 0) {
+            throw new IllegalArgumentException("Capacidad de historial invalida: " + capacidad);
+        }
+        this.almacen = almacen;
+        this.capacidad = capacidad;
+        this.ids = new int[Math.min(capacidad, 8)];
+    }
+    
+    public synchronized void agregar(String mensaje) {
+        int id = almacen.registrar(mensaje);
+        if (total < capacidad && total == ids.length) {
+            ids = Arrays.copyOf(ids, (int) Math.min(capacidad, total * 2));
+        }
+        ids[(int) (total % capacidad)] = id;
+        total++;
+    }
+    
+    /**
+     * Mensajes retenidos del mas antiguo al mas reciente; los que el almacen
+     * ya desalojo aparecen como "(mensaje no disponible)".
+     */
+    public synchronized List<String> resolver() {
+        int retenidos = (int) Math.min(total, capacidad);
+        List<String> mensajes = new ArrayList<>(retenidos);
+        for (long i = total - retenidos; i < total; i++) {
+            String texto = almacen.resolver(ids[(int) (i % capacidad)]);
+            mensajes.add(texto != null ? texto : "(mensaje no disponible)");
+        }
+        return mensajes;
+    }
+    
+    public synchronized int contarRetenidos() {
+        return (int) Math.min(total, capacidad);
+    }
+    
+    public synchronized long contarRecibidos() {
+        return total;
+    }
+}
+
+/**
+ * Observador: Estudiante
+ */
+class Estudiante implements ObservadorNotificacion {
+    private String nombre;
+    private String matricula;
+    private HistorialNotificaciones notificacionesRecibidas;
+    private Set<String> temas;
+    
+    public Estudiante(String nombre, String matricula, String... cursos) {
+        this.nombre = nombre;
+        this.matricula = matricula;
+        this.notificacionesRecibidas = new HistorialNotificaciones(AlmacenMensajes.compartido(),
+                                                                   HistorialNotificaciones.CAPACIDAD_PREDETERMINADA);
+        this.temas = new HashSet<>();
+        this.temas.add(Audiencia.ESTUDIANTES);
+        for (String curso : cursos) {
+            this.temas.add(Audiencia.curso(curso));
+        }
+    }
+    
+    @Override
+    public void recibirActualizacion(String mensaje) {
+        notificacionesRecibidas.agregar(mensaje);
+        Registro.info(() -> "Estudiante " + nombre + " recibió: " + mensaje);
+    }
+    
+    /**
+     * Cambia cuantas notificaciones recientes conserva el estudiante.
+     */
+    public void configurarHistorial(int capacidad) {
+        this.notificacionesRecibidas = new HistorialNotificaciones(AlmacenMensajes.compartido(), capacidad);
+    }
+    
+    @Override
+    public String obtenerIdentificador() {
+        return "Estudiante " + nombre + " (" + matricula + ")";
+    }
+    
+    @Override
+    public Set<String> obtenerTemas() {
+        return temas;
+    }
+    
+    public void mostrarHistorial() {
+        System.out.println("\nHistorial de notificaciones para " + nombre + ":");
+        List<String> mensajes = notificacionesRecibidas.resolver();
+        for (int i = 0; i < mensajes.size(); i++) {
+            System.out.println((i + 1) + ". " + mensajes.get(i));
+        }
+    }
+}
+
+/**
+ * Observador: Profesor
+ */
+class Profesor implements ObservadorNotificacion {
+    private String nombre;
+    private String departamento;
+    
+    public Profesor(String nombre, String departamento) {
+        this.nombre = nombre;
+        this.departamento = departamento;
+    }
+    
+    @Override
+    public void recibirActualizacion(String mensaje) {
+        Registro.info(() -> "Profesor " + nombre + " del departamento " + departamento + 
+                            " notificado: " + mensaje);
+    }
+    
+    @Override
+    public String obtenerIdentificador() {
+        return "Prof. " + nombre + " - " + departamento;
+    }
+    
+    @Override
+    public Set<String> obtenerTemas() {
+        return Set.of(Audiencia.PROFESORES, Audiencia.departamento(departamento));
+    }
+}
+
+/**
+ * Observador: Administrativo
+ */
+class Administrativo implements ObservadorNotificacion {
+    private String nombre;
+    private String area;
+    
+    public Administrativo(String nombre, String area) {
+        this.nombre = nombre;
+        this.area = area;
+    }
+    
+    @Override
+    public void recibirActualizacion(String mensaje) {
+        Registro.info(() -> "Personal administrativo (" + area + "): " + nombre + 
+                            " procesa notificación: " + mensaje);
+    }
+    
+    @Override
+    public String obtenerIdentificador() {
+        return "Admin. " + nombre + " - " + area;
+    }
+    
+    @Override
+    public Set<String> obtenerTemas() {
+        return Set.of(Audiencia.ADMINISTRATIVOS, Audiencia.area(area));
+    }
+}
+// ==================== CLASE PRINCIPAL ====================
+
+public class ImplementacionPatronesDiseno {
+    
+    public static void demostracionSingleton() {
+        System.out.println("\n" + "=".repeat(60));
+        System.out.println("DEMOSTRACIÓN DEL PATRÓN SINGLETON (CREACIONAL)");
+        System.out.println("=".repeat(60));
+        
+        System.out.println("\nObteniendo instancias del gestor de conexiones...");
+        
+        GestorConexiones gestor1 = GestorConexiones.obtenerInstancia();
+        GestorConexiones gestor2 = GestorConexiones.obtenerInstancia();
+        GestorConexiones gestor3 = GestorConexiones.obtenerInstancia();
+        
+        System.out.println("\nVerificación de instancia única:");
+        System.out.println("HashCode gestor1: " + System.identityHashCode(gestor1));
+        System.out.println("HashCode gestor2: " + System.identityHashCode(gestor2));
+        System.out.println("HashCode gestor3: " + System.identityHashCode(gestor3));
+        System.out.println("¿Todas las referencias apuntan al mismo objeto? " + 
+                         (gestor1 == gestor2 && gestor2 == gestor3));
+        
+        System.out.println("\nUtilizando el gestor de conexiones:");
+        gestor1.establecerConexion();
+        gestor2.ejecutarComando("SELECT * FROM Estudiantes");
+        gestor3.ejecutarComando("UPDATE Calificaciones SET nota = 9.5 WHERE id = 101");
+        
+        gestor1.mostrarInformacion();
+        
+        System.out.println("\nIntentando crear nueva conexión (debería reutilizar la existente):");
+        gestor2.establecerConexion();
+        
+        gestor3.cerrarConexion();
+        gestor1.mostrarInformacion();
+    }
+    
+    public static void demostracionBridge() {
+        System.out.println("\n" + "=".repeat(60));
+        System.out.println("DEMOSTRACIÓN DEL PATRÓN BRIDGE (ESTRUCTURAL)");
+        System.out.println("=".repeat(60));
+        
+        System.out.println("\nCreando dispositivos multimedia...");
+        DispositivoMultimedia televisorSala = new Televisor("Samsung");
+        DispositivoMultimedia sonidoHome = new SistemaSonido("Sony");
+        
+        System.out.println("\nConfigurando controles universales:");
+        ControlUniversal controlTV = new ControlBasico(televisorSala);
+        ControlUniversal controlAudio = new ControlAvanzado(sonidoHome);
+        
+        System.out.println("\n--- Operaciones con Control Básico ---");
+        controlTV.encender();
+        controlTV.aumentarVolumen();
+        controlTV.aumentarVolumen();
+        controlTV.cambiarEntrada("HDMI2");
+        controlTV.disminuirVolumen();
+        controlTV.mostrarEstado();
+        controlTV.apagar();
+        
+        System.out.println("\n--- Operaciones con Control Avanzado ---");
+        ControlAvanzado controlAudioAvanzado = (ControlAvanzado) controlAudio;
+        controlAudioAvanzado.encender();
+        controlAudioAvanzado.aumentarVolumen();
+        controlAudioAvanzado.aumentarVolumen();
+        controlAudioAvanzado.cambiarEntrada("Dolby Atmos");
+        controlAudioAvanzado.silenciar();
+        controlAudioAvanzado.silenciar();
+        controlAudioAvanzado.restaurarConfiguracion();
+        controlAudioAvanzado.mostrarEstado();
+        controlAudioAvanzado.apagar();
+        
+        System.out.println("\n--- Flexibilidad del patrón Bridge ---");
+        System.out.println("Configurando control avanzado con televisor:");
+        ControlUniversal controlCombinado = new ControlAvanzado(televisorSala);
+        controlCombinado.encender();
+        controlCombinado.cambiarEntrada("USB");
+        controlCombinado.mostrarEstado();
+    }
+    
+    public static void demostracionObserver() {
+        System.out.println("\n" + "=".repeat(60));
+        System.out.println("DEMOSTRACIÓN DEL PATRÓN OBSERVER (COMPORTAMIENTO)");
+        System.out.println("=".repeat(60));
+        
+        System.out.println("\nInicializando sistema de notificaciones académicas...");
+        SistemaNotificacionesAcademico sistema = new SistemaNotificacionesAcademico();
+        
+        System.out.println("\nRegistrando participantes del sistema académico:");
+        Estudiante estudiante1 = new Estudiante("Ana López", "A123456");
+        Estudiante estudiante2 = new Estudiante("Carlos Ruiz", "B789012");
+        Profesor profesor1 = new Profesor("Dr. Martínez", "Informática");
+        Administrativo admin1 = new Administrativo("María González", "Registro");
+        
+        sistema.registrarObservador(estudiante1);
+        sistema.registrarObservador(profesor1);
+        sistema.mostrarObservadoresActivos();
+        
+        System.out.println("\n--- Publicando notificaciones ---");
+        sistema.publicarNotificacion("Cambio de Horario", 
+                                   "Las clases del viernes se moverán al sábado en el mismo horario");
+        
+        pausa(800);
+        
+        sistema.publicarNotificacion("Entrega de Proyectos", 
+                                   "Fecha límite extendida hasta el próximo lunes a las 23:59");
+        
+        pausa(800);
+        
+        System.out.println("\nRegistrando nuevo observador...");
+        sistema.registrarObservador(estudiante2);
+        sistema.registrarObservador(admin1);
+        sistema.mostrarObservadoresActivos();
+        
+        sistema.publicarNotificacion("Mantenimiento del Sistema", 
+                                   "El campus virtual estará fuera de servicio el domingo de 2:00 a 6:00 AM",
+                                   PrioridadNotificacion.ALTA);
+        
+        pausa(800);
+        
+        System.out.println("\nEliminando un observador...");
+        sistema.eliminarObservador(profesor1);
+        sistema.mostrarObservadoresActivos();
+        
+        sistema.publicarNotificacion("Resultados Exámenes", 
+                                   "Los resultados del parcial ya están disponibles en el portal");
+        
+        System.out.println("\n--- Resumen final ---");
+        estudiante1.mostrarHistorial();
+    }
+    
+    private static void pausa(int milisegundos) {
+        try {
+            Thread.sleep(milisegundos);
+        } catch (InterruptedException e) {
+            System.out.println("Pausa interrumpida");
+        }
+    }
+    
+    public static void main(String[] args) {
+        System.out.println("UNIVERSIDAD Rafael Urdaneta");
+        System.out.println("FACULTAD DE Ing computacion");
+        System.out.println("IMPLEMENTACIÓN DE PATRONES DE DISEÑO EN JAVA");
+        System.out.println("=============================================\n");
+        
+        System.out.println("Este programa demuestra tres patrones de diseño fundamentales:");
+        System.out.println("1. Singleton (Patrón Creacional)");
+        System.out.println("2. Bridge (Patrón Estructural)");
+        System.out.println("3. Observer (Patrón de Comportamiento)\n");
+        
+        demostracionSingleton();
+        pausa(1500);
+        
+        demostracionBridge();
+        pausa(1500);
+        
+        demostracionObserver();
+        
+        System.out.println("\n" + "=".repeat(60));
+        System.out.println("CONCLUSIÓN");
+        System.out.println("=".repeat(60));
+        
+        System.out.println("\nSe ha demostrado exitosamente:");
+        System.out.println("✓ Singleton: Gestión de una única instancia para conexiones a BD");
+        System.out.println("✓ Bridge: Separación entre controles y dispositivos multimedia");
+        System.out.println("✓ Observer: Sistema de notificaciones académicas eficiente");
+        
+        System.out.println("\n" + "=".repeat(60));
+        System.out.println("FIN DE LA DEMOSTRACIÓN");
+        System.out.println("=".repeat(60));
+    }
+}
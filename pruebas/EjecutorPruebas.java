@@ -0,0 +1,169 @@
+import java.lang.annotation.*;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+// ==================== PRUEBAS ====================
+
+/**
+ * Marca un metodo de instancia sin parametros como prueba. Cada prueba se
+ * ejecuta sobre una instancia nueva de su clase.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@interface Prueba {
+}
+
+/**
+ * Comprobaciones de las pruebas. Un fallo lanza AssertionError con el
+ * mensaje indicado.
+ */
+final class Verificar {
+    private Verificar() {
+    }
+    
+    public static void verdadero(boolean condicion, String mensaje) {
+        if (!condicion) {
+            throw new AssertionError(mensaje);
+        }
+    }
+    
+    public static void falso(boolean condicion, String mensaje) {
+        verdadero(!condicion, mensaje);
+    }
+    
+    public static void igual(Object esperado, Object obtenido, String mensaje) {
+        if (!Objects.equals(esperado, obtenido)) {
+            throw new AssertionError(mensaje + ": se esperaba <" + esperado + "> y se obtuvo <" + obtenido + ">");
+        }
+    }
+    
+    public static void igual(long esperado, long obtenido, String mensaje) {
+        if (esperado != obtenido) {
+            throw new AssertionError(mensaje + ": se esperaba <" + esperado + "> y se obtuvo <" + obtenido + ">");
+        }
+    }
+    
+    /**
+     * Ejecuta el bloque y devuelve la excepcion lanzada, que debe ser del tipo indicado.
+     */
+    public static <T extends Throwable> T lanza(Class<T> tipo, Bloque bloque, String mensaje) {
+        try {
+            bloque.ejecutar();
+        } catch (Throwable e) {
+            if (tipo.isInstance(e)) {
+                return tipo.cast(e);
+            }
+            throw new AssertionError(mensaje + ": se esperaba " + tipo.getSimpleName() + " y se lanzo " + e, e);
+        }
+        throw new AssertionError(mensaje + ": se esperaba " + tipo.getSimpleName() + " y no se lanzo nada");
+    }
+    
+    /**
+     * Espera hasta que la condicion se cumpla o venza el plazo.
+     */
+    public static void eventualmente(BooleanSupplier condicion, long plazoMs, String mensaje) {
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(plazoMs);
+        try {
+            while (!condicion.getAsBoolean()) {
+                if (System.nanoTime() - limite > 0) {
+                    throw new AssertionError(mensaje + ": no se cumplio en " + plazoMs + " ms");
+                }
+                Thread.sleep(1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(mensaje + ": espera interrumpida", e);
+        }
+    }
+    
+    interface Bloque {
+        void ejecutar() throws Exception;
+    }
+}
+
+/**
+ * Ejecuta las pruebas de las clases registradas. Cada prueba corre en su
+ * propio hilo con un plazo, de modo que un bloqueo se informa como fallo
+ * en lugar de colgar la ejecucion. Se ejecuta con:
+ * java -cp out EjecutorPruebas [filtro]
+ * donde el filtro, si se indica, selecciona las clases o metodos cuyo
+ * nombre lo contiene. Termina con codigo 1 si alguna prueba falla.
+ */
+class EjecutorPruebas {
+    private static final long PLAZO_MS = 20_000;
+    private static final Class<?>[] CLASES = {
+        PruebasPoolConexiones.class,
+        PruebasLoteComandos.class,
+        PruebasCacheResultados.class,
+        PruebasCanalObservador.class,
+        PruebasLoteNotificaciones.class,
+        PruebasBitacora.class,
+        PruebasColaComandos.class,
+        PruebasToleranciaFallos.class,
+        PruebasInstantaneas.class,
+        PruebasTrazas.class,
+        PruebasEstadoDispositivo.class,
+    };
+    
+    public static void main(String[] args) throws Exception {
+        String filtro = args.length > 0 ? args[0] : "";
+        Registro.silenciar();
+        int ejecutadas = 0;
+        List<String> fallidas = new ArrayList<>();
+        for (Class<?> clase : CLASES) {
+            List<Method> metodos = new ArrayList<>();
+            for (Method metodo : clase.getDeclaredMethods()) {
+                if (metodo.isAnnotationPresent(Prueba.class)
+                        && (clase.getSimpleName() + "." + metodo.getName()).contains(filtro)) {
+                    metodos.add(metodo);
+                }
+            }
+            metodos.sort(Comparator.comparing(Method::getName));
+            for (Method metodo : metodos) {
+                String nombre = clase.getSimpleName() + "." + metodo.getName();
+                long inicio = System.nanoTime();
+                Throwable fallo = ejecutar(clase, metodo);
+                long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+                ejecutadas++;
+                if (fallo == null) {
+                    System.out.println("OK     " + nombre + " (" + ms + " ms)");
+                } else {
+                    fallidas.add(nombre);
+                    System.out.println("FALLO  " + nombre + " (" + ms + " ms): " + fallo);
+                    fallo.printStackTrace(System.out);
+                }
+            }
+        }
+        System.out.println("\n" + ejecutadas + " pruebas, " + fallidas.size() + " fallidas");
+        for (String nombre : fallidas) {
+            System.out.println("  " + nombre);
+        }
+        System.exit(fallidas.isEmpty() ? 0 : 1);
+    }
+    
+    private static Throwable ejecutar(Class<?> clase, Method metodo) throws InterruptedException {
+        Throwable[] fallo = new Throwable[1];
+        Thread hilo = new Thread(() -> {
+            try {
+                Constructor<?> constructor = clase.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                metodo.setAccessible(true);
+                metodo.invoke(constructor.newInstance());
+            } catch (InvocationTargetException e) {
+                fallo[0] = e.getCause();
+            } catch (Throwable e) {
+                fallo[0] = e;
+            }
+        }, "prueba-" + metodo.getName());
+        hilo.setDaemon(true);
+        hilo.start();
+        hilo.join(PLAZO_MS);
+        if (hilo.isAlive()) {
+            hilo.interrupt();
+            return new AssertionError("Sin terminar tras " + PLAZO_MS + " ms (posible bloqueo)");
+        }
+        return fallo[0];
+    }
+}
@@ -0,0 +1,94 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Observador de prueba que solo implementa recibirActualizacion, de modo
+ * que las entregas sueltas y en lote pasan por las adaptaciones por omision
+ * de la interfaz. Guarda los textos recibidos en orden, falla con los que
+ * contienen fallarCon, puede detenerse en una compuerta y mide cuantas
+ * entregas corren a la vez. Con loteTodoONada sus lotes no procesan nada
+ * si alguno de sus mensajes falla, como un observador que valida el lote
+ * entero antes de aplicarlo.
+ */
+class ObservadorPrueba implements ObservadorNotificacion {
+    final List<String> recibidas = Collections.synchronizedList(new ArrayList<>());
+    final AtomicInteger lotes = new AtomicInteger();
+    final AtomicInteger maximoSimultaneas = new AtomicInteger();
+    private final AtomicInteger simultaneas = new AtomicInteger();
+    private final String identificador;
+    private final Set<String> temas;
+    volatile String fallarCon;
+    volatile CountDownLatch compuerta;
+    volatile boolean loteTodoONada;
+    
+    ObservadorPrueba(String identificador, String... temas) {
+        this.identificador = identificador;
+        this.temas = Set.of(temas);
+    }
+    
+    static String texto(String titulo) {
+        return new Notificacion(titulo, "contenido").comoTexto();
+    }
+    
+    @Override
+    public void recibirActualizacion(String mensaje) {
+        entrar();
+        try {
+            verificarFallo(mensaje);
+            recibidas.add(mensaje);
+        } finally {
+            simultaneas.decrementAndGet();
+        }
+    }
+    
+    @Override
+    public void recibirLoteNotificaciones(List<Notificacion> notificaciones) {
+        lotes.incrementAndGet();
+        if (!loteTodoONada) {
+            ObservadorNotificacion.super.recibirLoteNotificaciones(notificaciones);
+            return;
+        }
+        for (Notificacion notificacion : notificaciones) {
+            verificarFallo(notificacion.comoTexto());
+        }
+        for (Notificacion notificacion : notificaciones) {
+            recibidas.add(notificacion.comoTexto());
+        }
+    }
+    
+    private void entrar() {
+        maximoSimultaneas.accumulateAndGet(simultaneas.incrementAndGet(), Math::max);
+        CountDownLatch actual = compuerta;
+        if (actual != null) {
+            try {
+                actual.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    private void verificarFallo(String mensaje) {
+        String marca = fallarCon;
+        if (marca != null && mensaje.contains(marca)) {
+            throw new IllegalStateException("Fallo provocado en " + mensaje);
+        }
+    }
+    
+    List<String> copiaRecibidas() {
+        synchronized (recibidas) {
+            return new ArrayList<>(recibidas);
+        }
+    }
+    
+    @Override
+    public String obtenerIdentificador() {
+        return identificador;
+    }
+    
+    @Override
+    public Set<String> obtenerTemas() {
+        return temas;
+    }
+}
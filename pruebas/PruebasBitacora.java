@@ -0,0 +1,177 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Reproduccion de la bitacora al registrar un observador: respeta sus
+ * temas, pasa por su canal, no pierde ni desordena lo publicado durante el
+ * registro, y las confirmaciones no saltan mensajes fallidos o confirmados
+ * fuera de orden.
+ */
+class PruebasBitacora {
+    private static BitacoraNotificaciones abrir(Path directorio, long retencionMs) throws IOException {
+        return new BitacoraNotificaciones(directorio, 4096, 1L << 20, retencionMs);
+    }
+    
+    private static void borrar(Path directorio) throws IOException {
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(directorio)) {
+            for (Path archivo : archivos) {
+                Files.delete(archivo);
+            }
+        }
+        Files.delete(directorio);
+    }
+    
+    private interface ConBitacora {
+        void ejecutar(BitacoraNotificaciones bitacora, SistemaNotificacionesAcademico sistema) throws Exception;
+    }
+    
+    private static void conSistema(ConBitacora prueba) throws Exception {
+        Path directorio = Files.createTempDirectory("pruebas-bitacora");
+        try {
+            BitacoraNotificaciones bitacora = abrir(directorio, 60_000);
+            try {
+                SistemaNotificacionesAcademico sistema = new SistemaNotificacionesAcademico();
+                sistema.habilitarBitacora(bitacora);
+                prueba.ejecutar(bitacora, sistema);
+            } finally {
+                bitacora.close();
+            }
+        } finally {
+            borrar(directorio);
+        }
+    }
+    
+    @Prueba
+    void laReproduccionSoloEntregaLosTemasDelObservador() throws Exception {
+        conSistema((bitacora, sistema) -> {
+            String calculo = Audiencia.curso("Calculo");
+            sistema.publicarNotificacion("a", "contenido", calculo);
+            sistema.publicarNotificacion("b", "contenido", Audiencia.curso("Fisica"));
+            sistema.publicarNotificacion("c", "contenido");
+            sistema.publicarNotificacion("d", "contenido", Audiencia.curso("Fisica"), calculo);
+            ObservadorPrueba observador = new ObservadorPrueba("alumno", calculo);
+            int reproducidos = sistema.registrarObservadorConHistorial(observador);
+            Verificar.igual(3, reproducidos, "reproducidos");
+            Verificar.igual(List.of(ObservadorPrueba.texto("a"), ObservadorPrueba.texto("c"), ObservadorPrueba.texto("d")),
+                            observador.copiaRecibidas(), "solo su tema y las difusiones");
+            Verificar.igual(4, bitacora.obtenerConfirmado("alumno"), "los de otros temas tambien se confirman");
+        });
+    }
+    
+    @Prueba
+    void laReproduccionPasaPorElCanalYAislaLosFallos() throws Exception {
+        conSistema((bitacora, sistema) -> {
+            for (String titulo : List.of("a", "b", "c")) {
+                sistema.publicarNotificacion(titulo, "contenido");
+            }
+            ObservadorPrueba observador = new ObservadorPrueba("alumno");
+            observador.fallarCon = "[b]";
+            sistema.registrarObservadorConHistorial(observador);
+            Verificar.igual(List.of(ObservadorPrueba.texto("a"), ObservadorPrueba.texto("c")),
+                            observador.copiaRecibidas(), "el fallo no detiene la reproduccion");
+            Verificar.igual(0, bitacora.obtenerConfirmado("alumno"), "la tanda con un fallo no se confirma");
+            observador.fallarCon = null;
+            sistema.registrarObservadorConHistorial(observador);
+            Verificar.igual(3, bitacora.obtenerConfirmado("alumno"), "confirmado tras reintentar");
+        });
+    }
+    
+    @Prueba
+    void unaEntregaEnVivoFallidaNoSeSaltaAlConfirmar() throws Exception {
+        conSistema((bitacora, sistema) -> {
+            ObservadorPrueba observador = new ObservadorPrueba("alumno");
+            sistema.registrarObservadorConHistorial(observador);
+            observador.fallarCon = "[b]";
+            for (String titulo : List.of("a", "b", "c")) {
+                sistema.publicarNotificacion(titulo, "contenido");
+            }
+            Verificar.igual(1, bitacora.obtenerConfirmado("alumno"), "lo confirmado se detiene en el fallido");
+        });
+    }
+    
+    @Prueba
+    void lasConfirmacionesFueraDeOrdenNoSaltanHuecos() throws Exception {
+        conSistema((bitacora, sistema) -> {
+            bitacora.enviar("alumno", 0, 1);
+            bitacora.enviar("alumno", 1, 3);
+            bitacora.enviar("alumno", 3, 4);
+            bitacora.confirmar("alumno", 1, 3);
+            bitacora.confirmar("alumno", 3, 4);
+            Verificar.igual(0, bitacora.obtenerConfirmado("alumno"), "el primero sigue en curso");
+            bitacora.confirmar("alumno", 0, 1);
+            Verificar.igual(4, bitacora.obtenerConfirmado("alumno"), "sin huecos, avanza hasta el final");
+        });
+    }
+    
+    @Prueba
+    void loPublicadoDuranteElRegistroLlegaUnaVezYEnOrden() throws Exception {
+        conSistema((bitacora, sistema) -> {
+            final int total = 2_000;
+            ExecutorService publicador = Executors.newSingleThreadExecutor();
+            try {
+                CountDownLatch iniciado = new CountDownLatch(1);
+                Future<?> publicacion = publicador.submit(() -> {
+                    for (int i = 0; i < total; i++) {
+                        sistema.publicarNotificacion("m" + i, "contenido");
+                        if (i == total / 4) {
+                            iniciado.countDown();
+                        }
+                    }
+                });
+                iniciado.await();
+                ObservadorPrueba observador = new ObservadorPrueba("alumno");
+                sistema.registrarObservadorConHistorial(observador);
+                publicacion.get(10, TimeUnit.SECONDS);
+                List<String> esperadas = new ArrayList<>();
+                for (int i = 0; i < total; i++) {
+                    esperadas.add(ObservadorPrueba.texto("m" + i));
+                }
+                Verificar.igual(esperadas, observador.copiaRecibidas(), "todos los mensajes, una vez y en orden");
+            } finally {
+                publicador.shutdownNow();
+            }
+        });
+    }
+    
+    @Prueba
+    void sincronizarAplicaLaRetencionPorEdad() throws Exception {
+        Path directorio = Files.createTempDirectory("pruebas-bitacora");
+        try (BitacoraNotificaciones bitacora = abrir(directorio, 50)) {
+            String relleno = "x".repeat(200);
+            for (int i = 0; i < 60; i++) {
+                bitacora.agregar(new Notificacion("Aviso " + i, relleno));
+            }
+            Verificar.verdadero(bitacora.contarSegmentos() > 2, "la bitacora ocupa varios segmentos");
+            Thread.sleep(100);
+            bitacora.sincronizar();
+            Verificar.igual(1, bitacora.contarSegmentos(), "solo queda el segmento activo");
+        } finally {
+            borrar(directorio);
+        }
+    }
+    
+    @Prueba
+    void lasConfirmacionesSobrevivenAReabrir() throws Exception {
+        Path directorio = Files.createTempDirectory("pruebas-bitacora");
+        try {
+            try (BitacoraNotificaciones bitacora = abrir(directorio, 60_000)) {
+                for (int i = 0; i < 5; i++) {
+                    bitacora.agregar(new Notificacion("m" + i, "contenido"));
+                }
+                bitacora.enviar("alumno", 0, 3);
+                bitacora.enviar("alumno", 3, 5);
+                bitacora.confirmar("alumno", 3, 5);
+            }
+            try (BitacoraNotificaciones reabierta = abrir(directorio, 60_000)) {
+                ObservadorPrueba observador = new ObservadorPrueba("alumno");
+                Verificar.igual(5, reabierta.obtenerSiguienteOffset(), "siguiente offset");
+                Verificar.igual(5, reabierta.reproducir("alumno", observador), "se reproduce desde el hueco");
+                Verificar.igual(5, reabierta.obtenerConfirmado("alumno"), "confirmado tras reproducir");
+            }
+        } finally {
+            borrar(directorio);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.*;
+
+/**
+ * Tablas que nombra una sentencia e invalidacion de la cache de resultados
+ * cuando se escribe en cualquiera de ellas, tambien en un JOIN o una
+ * subconsulta.
+ */
+class PruebasCacheResultados {
+    private static final String NOMBRE = "PruebasCacheResultados";
+    
+    private static List<String> tablasDe(String sql) {
+        return SentenciaPreparada.analizar(SentenciaPreparada.normalizar(sql)).obtenerTablas();
+    }
+    
+    @Prueba
+    void encuentraLasTablasDeJoinsSubconsultasYListas() {
+        Verificar.igual(List.of("notas", "cursos"),
+                        tablasDe("SELECT * FROM notas n JOIN cursos c ON n.curso = c.id"), "join");
+        Verificar.igual(List.of("notas", "cursos"),
+                        tablasDe("SELECT * FROM notas WHERE curso IN (SELECT id FROM cursos)"), "subconsulta");
+        Verificar.igual(List.of("notas", "cursos", "aulas"),
+                        tablasDe("SELECT * FROM notas AS n, cursos c, aulas WHERE n.curso = c.id"), "lista");
+        Verificar.igual(List.of("cursos"),
+                        tablasDe("SELECT * FROM (SELECT id FROM cursos) t"), "tabla derivada");
+        Verificar.igual(List.of("notas"), tablasDe("INSERT INTO notas (alumno, nota) VALUES (?, ?)"), "insercion");
+        Verificar.igual(List.of("notas", "cursos"),
+                        tablasDe("UPDATE notas SET nota = 5 WHERE curso IN (SELECT id FROM cursos WHERE x = 'FROM y')"),
+                        "actualizacion con subconsulta y literal");
+        Verificar.igual("notas",
+                        SentenciaPreparada.analizar("SELECT * FROM (SELECT * FROM notas) t").obtenerTabla(),
+                        "tabla principal de una tabla derivada");
+    }
+    
+    private static GestorConexiones crearGestor(BaseDatosSimulada base) {
+        GestorConexiones gestor = GestorConexiones.obtenerInstancia(NOMBRE);
+        gestor.configurarPool(base, new ConfiguracionPool(1, 2, 1_000, 60_000, true));
+        gestor.habilitarCacheResultados(64, 60_000);
+        return gestor;
+    }
+    
+    private static void verificarInvalidacion(String lectura, String escritura) {
+        BaseDatosSimulada base = new BaseDatosSimulada(0);
+        GestorConexiones gestor = crearGestor(base);
+        try {
+            gestor.consultar(lectura);
+            gestor.consultar(lectura);
+            Verificar.igual(1, base.obtenerComandosEjecutados(), "la segunda lectura sale de la cache");
+            gestor.ejecutarComando(escritura);
+            gestor.consultar(lectura);
+            Verificar.igual(3, base.obtenerComandosEjecutados(), "la lectura tras '" + escritura + "' va a la base");
+        } finally {
+            GestorConexiones.eliminarInstancia(NOMBRE);
+        }
+    }
+    
+    @Prueba
+    void unaEscrituraEnUnaTablaDelJoinInvalidaLaLectura() {
+        verificarInvalidacion("SELECT * FROM notas n JOIN cursos c ON n.curso = c.id",
+                              "UPDATE cursos SET nombre = 'Calculo' WHERE id = 1");
+    }
+    
+    @Prueba
+    void unaEscrituraEnUnaTablaDeLaSubconsultaInvalidaLaLectura() {
+        verificarInvalidacion("SELECT * FROM notas WHERE curso IN (SELECT id FROM cursos WHERE activo = 1)",
+                              "DELETE FROM cursos WHERE id = 7");
+    }
+    
+    @Prueba
+    void unaEscrituraEnLaTablaPrincipalInvalidaLaLectura() {
+        verificarInvalidacion("SELECT * FROM notas", "INSERT INTO notas VALUES (1, 5)");
+    }
+    
+    @Prueba
+    void unaEscrituraEnOtraTablaConservaLaLectura() {
+        BaseDatosSimulada base = new BaseDatosSimulada(0);
+        GestorConexiones gestor = crearGestor(base);
+        try {
+            String lectura = "SELECT * FROM notas n JOIN cursos c ON n.curso = c.id";
+            gestor.consultar(lectura);
+            gestor.ejecutarComando("UPDATE aulas SET capacidad = 30");
+            gestor.consultar(lectura);
+            Verificar.igual(2, base.obtenerComandosEjecutados(), "la lectura sigue en cache");
+        } finally {
+            GestorConexiones.eliminarInstancia(NOMBRE);
+        }
+    }
+    
+    @Prueba
+    void lasEntradasExpiranAlVencerSuTiempoDeVida() throws Exception {
+        BaseDatosSimulada base = new BaseDatosSimulada(0);
+        GestorConexiones gestor = crearGestor(base);
+        try {
+            gestor.habilitarCacheResultados(64, 20);
+            gestor.consultar("SELECT * FROM notas");
+            Thread.sleep(40);
+            gestor.consultar("SELECT * FROM notas");
+            Verificar.igual(2, base.obtenerComandosEjecutados(), "la entrada expirada no se sirve");
+        } finally {
+            GestorConexiones.eliminarInstancia(NOMBRE);
+        }
+    }
+}
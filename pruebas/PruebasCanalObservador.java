@@ -0,0 +1,132 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Politicas de desbordamiento de la cola de un observador. Las entregas se
+ * programan en un ejecutor manual, asi la prueba decide cuando drena el
+ * canal y el estado de la cola es determinista.
+ */
+class PruebasCanalObservador {
+    private final ConcurrentLinkedQueue<Runnable> tareas = new ConcurrentLinkedQueue<>();
+    private final Executor manual = tareas::add;
+    
+    private void ejecutarPendientes() {
+        Runnable tarea;
+        while ((tarea = tareas.poll()) != null) {
+            tarea.run();
+        }
+    }
+    
+    private static Notificacion aviso(String titulo) {
+        return new Notificacion(titulo, "contenido");
+    }
+    
+    private static Notificacion aviso(String titulo, String contenido) {
+        return new Notificacion(titulo, contenido);
+    }
+    
+    private static CanalObservador crearCanal(ObservadorPrueba observador, int capacidad,
+                                              PoliticaDesbordamiento politica) {
+        CanalObservador canal = new CanalObservador(observador, 1, null);
+        canal.configurarCola(capacidad, politica);
+        return canal;
+    }
+    
+    @Prueba
+    void descartarNuevoRechazaLoQueLlegaConLaColaLlena() {
+        ObservadorPrueba observador = new ObservadorPrueba("obs");
+        CanalObservador canal = crearCanal(observador, 2, PoliticaDesbordamiento.DESCARTAR_NUEVO);
+        CompletableFuture<Void> a = canal.encolar(aviso("a"), manual);
+        CompletableFuture<Void> b = canal.encolar(aviso("b"), manual);
+        CompletableFuture<Void> c = canal.encolar(aviso("c"), manual);
+        Verificar.verdadero(c.isCancelled(), "el mensaje que llega se cancela");
+        ejecutarPendientes();
+        Verificar.igual(List.of(ObservadorPrueba.texto("a"), ObservadorPrueba.texto("b")),
+                        observador.copiaRecibidas(), "mensajes entregados");
+        Verificar.verdadero(a.isDone() && !a.isCompletedExceptionally() && b.isDone(), "entregas completadas");
+        Verificar.igual(1, canal.obtenerDescartados(), "descartados");
+    }
+    
+    @Prueba
+    void descartarAntiguoSacaElPendienteMasViejo() {
+        ObservadorPrueba observador = new ObservadorPrueba("obs");
+        CanalObservador canal = crearCanal(observador, 2, PoliticaDesbordamiento.DESCARTAR_ANTIGUO);
+        CompletableFuture<Void> a = canal.encolar(aviso("a"), manual);
+        CompletableFuture<Void> b = canal.encolar(aviso("b"), manual);
+        canal.encolar(aviso("c"), manual);
+        canal.encolar(aviso("d"), manual);
+        Verificar.verdadero(a.isCancelled() && b.isCancelled(), "los mas antiguos se cancelan");
+        ejecutarPendientes();
+        Verificar.igual(List.of(ObservadorPrueba.texto("c"), ObservadorPrueba.texto("d")),
+                        observador.copiaRecibidas(), "mensajes entregados");
+        Verificar.igual(2, canal.obtenerDescartados(), "descartados");
+        Verificar.igual(2, canal.obtenerMaximoPendientes(), "la cola nunca supera su capacidad");
+    }
+    
+    @Prueba
+    void coalescerReemplazaElPendienteConLaMismaClaveEnSuLugar() throws Exception {
+        ObservadorPrueba observador = new ObservadorPrueba("obs");
+        CanalObservador canal = crearCanal(observador, 4, PoliticaDesbordamiento.COALESCER);
+        CompletableFuture<Void> primera = canal.encolar(aviso("aula", "A-101"), manual);
+        canal.encolar(aviso("horario", "lunes"), manual);
+        CompletableFuture<Void> segunda = canal.encolar(aviso("aula", "B-202"), manual);
+        Verificar.igual(2, canal.obtenerPendientes(), "pendientes tras coalescer");
+        ejecutarPendientes();
+        Verificar.igual(List.of(aviso("aula", "B-202").comoTexto(), aviso("horario", "lunes").comoTexto()),
+                        observador.copiaRecibidas(), "se entrega la version nueva en el lugar de la vieja");
+        primera.get(1, TimeUnit.SECONDS);
+        segunda.get(1, TimeUnit.SECONDS);
+        Verificar.igual(1, canal.obtenerCoalescidos(), "coalescidos");
+        Verificar.igual(0, canal.obtenerDescartados(), "descartados");
+    }
+    
+    @Prueba
+    void coalescerSinCoincidenciaDescartaElMasAntiguo() {
+        ObservadorPrueba observador = new ObservadorPrueba("obs");
+        CanalObservador canal = crearCanal(observador, 2, PoliticaDesbordamiento.COALESCER);
+        CompletableFuture<Void> a = canal.encolar(aviso("a"), manual);
+        canal.encolar(aviso("b"), manual);
+        canal.encolar(aviso("c"), manual);
+        Verificar.verdadero(a.isCancelled(), "el mas antiguo se cancela");
+        ejecutarPendientes();
+        Verificar.igual(List.of(ObservadorPrueba.texto("b"), ObservadorPrueba.texto("c")),
+                        observador.copiaRecibidas(), "mensajes entregados");
+    }
+    
+    @Prueba
+    void bloquearDetieneAlPublicadorHastaQueHayaEspacio() throws Exception {
+        ObservadorPrueba observador = new ObservadorPrueba("obs");
+        CanalObservador canal = crearCanal(observador, 2, PoliticaDesbordamiento.BLOQUEAR);
+        ExecutorService publicador = Executors.newSingleThreadExecutor();
+        try {
+            canal.encolar(aviso("a"), manual);
+            canal.encolar(aviso("b"), manual);
+            Future<CompletableFuture<Void>> tercera = publicador.submit(() -> canal.encolar(aviso("c"), manual));
+            Thread.sleep(50);
+            Verificar.falso(tercera.isDone(), "el publicador espera con la cola llena");
+            ejecutarPendientes();
+            CompletableFuture<Void> entrega = tercera.get(5, TimeUnit.SECONDS);
+            ejecutarPendientes();
+            entrega.get(1, TimeUnit.SECONDS);
+            Verificar.igual(List.of(ObservadorPrueba.texto("a"), ObservadorPrueba.texto("b"), ObservadorPrueba.texto("c")),
+                            observador.copiaRecibidas(), "mensajes entregados en orden");
+            Verificar.igual(0, canal.obtenerDescartados(), "descartados");
+        } finally {
+            publicador.shutdownNow();
+        }
+    }
+    
+    @Prueba
+    void laCapacidadSeAplicaPorCarrilDePrioridad() {
+        ObservadorPrueba observador = new ObservadorPrueba("obs");
+        CanalObservador canal = crearCanal(observador, 1, PoliticaDesbordamiento.DESCARTAR_NUEVO);
+        canal.encolar(new Notificacion("baja", "contenido", PrioridadNotificacion.BAJA), manual);
+        CompletableFuture<Void> urgente =
+            canal.encolar(new Notificacion("urgente", "contenido", PrioridadNotificacion.ALTA), manual);
+        Verificar.falso(urgente.isCancelled(), "el carril urgente tiene su propia capacidad");
+        ejecutarPendientes();
+        Verificar.igual(List.of(new Notificacion("urgente", "contenido", PrioridadNotificacion.ALTA).comoTexto(),
+                                new Notificacion("baja", "contenido", PrioridadNotificacion.BAJA).comoTexto()),
+                        observador.copiaRecibidas(), "el urgente se entrega primero");
+    }
+}
@@ -0,0 +1,97 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Cola de ordenes de un dispositivo: ninguna actualizacion se pierde con
+ * varios controles a la vez, un rechazo del ejecutor no la deja bloqueada
+ * y una tarea no retiene el hilo indefinidamente mientras lleguen ordenes.
+ */
+class PruebasColaComandos {
+    private final ConcurrentLinkedQueue<Runnable> tareas = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean rechazar = new AtomicBoolean();
+    private final Executor manual = tarea -> {
+        if (rechazar.get()) {
+            throw new RejectedExecutionException("Ejecutor detenido");
+        }
+        tareas.add(tarea);
+    };
+    
+    private void ejecutarPendientes() {
+        Runnable tarea;
+        while ((tarea = tareas.poll()) != null) {
+            tarea.run();
+        }
+    }
+    
+    @Prueba
+    void losAjustesConcurrentesNoSePierden() throws Exception {
+        Televisor televisor = new Televisor("Cola");
+        televisor.activar();
+        ExecutorService entrega = Executors.newSingleThreadExecutor();
+        ExecutorService controles = Executors.newFixedThreadPool(4);
+        try (ColaComandosDispositivo cola = new ColaComandosDispositivo(televisor, entrega)) {
+            List<Future<?>> tareasControles = new ArrayList<>();
+            for (int h = 0; h < 4; h++) {
+                tareasControles.add(controles.submit(() -> {
+                    for (int i = 0; i < 15; i++) {
+                        cola.ajustarVolumen(1);
+                        cola.seleccionarEntrada("HDMI2");
+                    }
+                }));
+            }
+            for (Future<?> tarea : tareasControles) {
+                tarea.get(10, TimeUnit.SECONDS);
+            }
+            cola.vaciar().get(10, TimeUnit.SECONDS);
+            Verificar.igual(80, televisor.obtenerVolumen(), "volumen en el dispositivo");
+            Verificar.igual(80, cola.obtenerVolumen(), "volumen proyectado");
+            Verificar.igual("HDMI2", televisor.obtenerEntrada(), "entrada en el dispositivo");
+            Verificar.verdadero(cola.obtenerViajes() <= cola.obtenerOrdenesRecibidas(), "las ordenes se fusionan");
+        } finally {
+            controles.shutdownNow();
+            entrega.shutdownNow();
+        }
+    }
+    
+    @Prueba
+    void unRechazoDelEjecutorNoDejaLaColaBloqueada() {
+        Televisor televisor = new Televisor("Rechazo");
+        televisor.activar();
+        ColaComandosDispositivo cola = new ColaComandosDispositivo(televisor, manual);
+        rechazar.set(true);
+        CompletableFuture<Void> rechazada = cola.encolarEntrada("USB");
+        Verificar.verdadero(rechazada.isCompletedExceptionally(), "la orden rechazada falla");
+        Verificar.igual("HDMI1", cola.obtenerEntrada(), "la proyeccion vuelve al estado del dispositivo");
+        Verificar.igual(1, cola.obtenerFallos(), "fallos");
+        rechazar.set(false);
+        CompletableFuture<Void> aceptada = cola.encolarEntrada("HDMI2");
+        ejecutarPendientes();
+        Verificar.verdadero(aceptada.isDone() && !aceptada.isCompletedExceptionally(), "la siguiente orden se aplica");
+        Verificar.igual("HDMI2", televisor.obtenerEntrada(), "entrada en el dispositivo");
+    }
+    
+    @Prueba
+    void unaTareaCedeElHiloTrasVariasRondas() {
+        AtomicReference<ColaComandosDispositivo> referencia = new AtomicReference<>();
+        AtomicInteger aplicadas = new AtomicInteger();
+        Televisor eco = new Televisor("Eco") {
+            @Override
+            public void modificarVolumen(int nivel) {
+                super.modificarVolumen(nivel);
+                if (aplicadas.incrementAndGet() < 10 * ColaComandosDispositivo.RONDAS_POR_TURNO) {
+                    referencia.get().encolarVolumen(1, true);
+                }
+            }
+        };
+        eco.activar();
+        ColaComandosDispositivo cola = new ColaComandosDispositivo(eco, manual);
+        referencia.set(cola);
+        cola.encolarVolumen(1, true);
+        tareas.poll().run();
+        Verificar.igual(ColaComandosDispositivo.RONDAS_POR_TURNO, aplicadas.get(), "ordenes aplicadas en un turno");
+        Verificar.igual(1, tareas.size(), "la cola se vuelve a programar");
+        ejecutarPendientes();
+        Verificar.igual(10 * ColaComandosDispositivo.RONDAS_POR_TURNO, aplicadas.get(), "todas las ordenes se aplican");
+    }
+}
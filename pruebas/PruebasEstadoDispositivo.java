@@ -0,0 +1,71 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Entradas del estado empaquetado de los dispositivos: la entrada nula es
+ * valida y llenar la tabla global de nombres no rompe la seleccion. La
+ * prueba de desbordamiento llena esa tabla para el resto del proceso, por
+ * eso esta clase va la ultima en EjecutorPruebas.
+ */
+class PruebasEstadoDispositivo {
+    @Prueba
+    void laEntradaNulaEsValida() {
+        Televisor televisor = new Televisor("Prueba");
+        ControlBasico control = new ControlBasico(televisor);
+        control.encender();
+        control.cambiarEntrada(null);
+        Verificar.igual(null, televisor.obtenerEntrada(), "entrada nula");
+        long nula = televisor.capturarEstado();
+        control.cambiarEntrada("HDMI2");
+        Verificar.igual("HDMI2", televisor.obtenerEntrada(), "entrada tras la nula");
+        televisor.restaurarEstado(nula);
+        Verificar.igual(null, televisor.obtenerEntrada(), "la instantanea con entrada nula se restaura");
+    }
+    
+    @Prueba
+    void losAjustesConcurrentesNoPierdenActualizaciones() throws Exception {
+        EstadoDispositivo estado = new EstadoDispositivo(0, "HDMI1", 255);
+        estado.encender();
+        ExecutorService hilos = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> tareas = new ArrayList<>();
+            for (int h = 0; h < 4; h++) {
+                String entrada = "HDMI" + h;
+                tareas.add(hilos.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        estado.ajustarVolumen(1);
+                        estado.seleccionarEntrada(entrada);
+                    }
+                }));
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            hilos.shutdownNow();
+        }
+        Verificar.igual(200, estado.obtenerVolumen(), "volumen tras 200 ajustes de +1");
+    }
+    
+    @Prueba
+    void unaTablaLlenaNoImpideUsarEntradasNuevas() {
+        Televisor previo = new Televisor("Previo");
+        int registradas = 0;
+        while (EstadoDispositivo.entradaInternada(EstadoDispositivo.empaquetar(false, 0, "relleno-" + registradas))) {
+            registradas++;
+            Verificar.verdadero(registradas <= 0xFFFF, "la tabla de entradas esta acotada");
+        }
+        Televisor televisor = new Televisor("Prueba");
+        televisor.activar();
+        televisor.seleccionarEntrada("Proyector aula 12");
+        Verificar.igual("Proyector aula 12", televisor.obtenerEntrada(), "entrada desbordada");
+        televisor.seleccionarEntrada("Proyector aula 13");
+        Verificar.igual("Proyector aula 13", televisor.obtenerEntrada(), "otra entrada desbordada");
+        televisor.seleccionarEntrada("HDMI1");
+        Verificar.igual("HDMI1", televisor.obtenerEntrada(), "vuelta a una entrada internada");
+        televisor.seleccionarEntrada(null);
+        Verificar.igual(null, televisor.obtenerEntrada(), "la entrada nula sigue siendo valida");
+        Verificar.verdadero(EstadoDispositivo.entradaInternada(previo.capturarEstado()),
+                            "las entradas ya internadas siguen en la tabla");
+    }
+}
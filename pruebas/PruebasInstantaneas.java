@@ -0,0 +1,131 @@
+import java.util.*;
+
+/**
+ * Instantaneas de estado de los dispositivos: restaurar solo envia los
+ * campos que cambiaron, el encendido se ordena alrededor de ellos, el
+ * historial de ControlAvanzado retrocede de uno en uno y la flota restaura
+ * un grupo tocando solo los dispositivos que difieren.
+ */
+class PruebasInstantaneas {
+    private static DispositivoRemotoSimulado remoto(String marca) {
+        return new DispositivoRemotoSimulado(new Televisor(marca), 0, 0);
+    }
+    
+    @Prueba
+    void restaurarSoloEnviaLosCamposQueCambiaron() {
+        DispositivoRemotoSimulado televisor = remoto("Delta");
+        televisor.activar();
+        long instantanea = televisor.capturarEstado();
+        long viajes = televisor.obtenerViajes();
+        Verificar.igual(0, televisor.restaurarEstado(instantanea), "sin cambios no se envia nada");
+        televisor.modificarVolumen(35);
+        Verificar.igual(1, televisor.restaurarEstado(instantanea), "solo el volumen");
+        Verificar.igual(20, televisor.obtenerVolumen(), "volumen restaurado");
+        televisor.modificarVolumen(35);
+        televisor.seleccionarEntrada("HDMI2");
+        Verificar.igual(2, televisor.restaurarEstado(instantanea), "volumen y entrada");
+        Verificar.igual("HDMI1", televisor.obtenerEntrada(), "entrada restaurada");
+        Verificar.igual(viajes + 6, televisor.obtenerViajes(), "tres cambios y tres ordenes de restauracion");
+        Verificar.verdadero(EstadoDispositivo.mismoEstado(instantanea, televisor.capturarEstado()),
+                            "el dispositivo coincide con la instantanea");
+    }
+    
+    @Prueba
+    void elEncendidoSeOrdenaAlrededorDeLosDemasCampos() {
+        DispositivoRemotoSimulado televisor = remoto("Encendido");
+        televisor.activar();
+        long encendida = televisor.capturarEstado();
+        televisor.modificarVolumen(30);
+        televisor.desactivar();
+        Verificar.igual(2, televisor.restaurarEstado(encendida), "encender y fijar el volumen");
+        Verificar.verdadero(televisor.estaActivo(), "encendido");
+        Verificar.igual(20, televisor.obtenerVolumen(), "volumen fijado tras encender");
+        
+        televisor.modificarVolumen(10);
+        televisor.desactivar();
+        long apagada = televisor.capturarEstado();
+        televisor.activar();
+        televisor.modificarVolumen(50);
+        Verificar.igual(2, televisor.restaurarEstado(apagada), "fijar el volumen y apagar");
+        Verificar.falso(televisor.estaActivo(), "apagado al final");
+        Verificar.igual(10, televisor.obtenerVolumen(), "volumen fijado antes de apagar");
+        
+        televisor.activar();
+        televisor.modificarVolumen(40);
+        televisor.desactivar();
+        Verificar.igual(0, televisor.restaurarEstado(apagada), "apagado a apagado no envia nada");
+        Verificar.igual(40, televisor.obtenerVolumen(), "un dispositivo apagado no acepta cambios");
+    }
+    
+    @Prueba
+    void elHistorialDescartaLaMasAntiguaYNoRepite() {
+        HistorialEstados historial = new HistorialEstados(2);
+        long primera = EstadoDispositivo.empaquetar(true, 10, "HDMI1");
+        long segunda = EstadoDispositivo.empaquetar(true, 20, "HDMI1");
+        long tercera = EstadoDispositivo.empaquetar(true, 30, "HDMI1");
+        historial.guardar(primera);
+        historial.guardar(primera);
+        Verificar.igual(1, historial.contar(), "la repetida no se guarda");
+        historial.guardar(segunda);
+        historial.guardar(tercera);
+        Verificar.igual(2, historial.contar(), "acotado a su capacidad");
+        Verificar.igual(tercera, historial.extraer(), "la mas reciente primero");
+        Verificar.igual(segunda, historial.extraer(), "luego la anterior");
+        Verificar.verdadero(historial.estaVacio(), "la mas antigua se descarto");
+        Verificar.lanza(IllegalStateException.class, historial::extraer, "historial vacio");
+    }
+    
+    @Prueba
+    void restaurarConfiguracionRetrocedePorElHistorial() {
+        DispositivoRemotoSimulado sonido = remoto("Historial");
+        ControlAvanzado control = new ControlAvanzado(sonido);
+        control.encender();
+        control.cambiarEntrada("HDMI2");
+        control.cambiarEntrada("USB");
+        long viajes = sonido.obtenerViajes();
+        control.restaurarConfiguracion();
+        Verificar.igual("HDMI2", sonido.obtenerEntrada(), "entrada anterior");
+        Verificar.igual(viajes + 1, sonido.obtenerViajes(), "solo viaja la entrada");
+        control.restaurarConfiguracion();
+        Verificar.igual("HDMI1", sonido.obtenerEntrada(), "entrada original");
+        control.restaurarConfiguracion();
+        Verificar.igual("HDMI1", sonido.obtenerEntrada(), "sin historial no cambia nada");
+        Verificar.igual(viajes + 2, sonido.obtenerViajes(), "viajes tras agotar el historial");
+        Verificar.verdadero(sonido.estaActivo(), "el dispositivo sigue encendido");
+    }
+    
+    @Prueba
+    void laFlotaSoloRestauraLosDispositivosQueCambiaron() {
+        try (FlotaDispositivos flota = new FlotaDispositivos(4)) {
+            List<DispositivoRemotoSimulado> televisores = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                DispositivoRemotoSimulado televisor = remoto("Flota " + i);
+                televisor.activar();
+                televisores.add(televisor);
+                flota.registrar("tv-" + i, "Edificio A/Aula " + i, televisor);
+            }
+            List<DispositivoFlota> grupo = flota.seleccionarPorUbicacion("Edificio A");
+            long[] instantaneas = flota.capturarEstado(grupo);
+            televisores.get(1).modificarVolumen(60);
+            televisores.get(3).seleccionarEntrada("HDMI2");
+            long viajes = 0;
+            for (DispositivoRemotoSimulado televisor : televisores) {
+                viajes += televisor.obtenerViajes();
+            }
+            ResultadoComandoFlota resultado = flota.restaurarEstado(grupo, instantaneas);
+            Verificar.igual(4, resultado.contarExitosos(), "exitosos");
+            long despues = 0;
+            for (DispositivoRemotoSimulado televisor : televisores) {
+                despues += televisor.obtenerViajes();
+            }
+            Verificar.igual(viajes + 2, despues, "una orden por cada campo cambiado");
+            for (int i = 0; i < grupo.size(); i++) {
+                Verificar.verdadero(EstadoDispositivo.mismoEstado(instantaneas[i],
+                                                                  grupo.get(i).obtenerDispositivo().capturarEstado()),
+                                    "el dispositivo " + i + " coincide con su instantanea");
+            }
+            Verificar.lanza(IllegalArgumentException.class, () -> flota.restaurarEstado(grupo, new long[1]),
+                            "una instantanea por dispositivo");
+        }
+    }
+}
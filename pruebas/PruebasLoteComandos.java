@@ -0,0 +1,187 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Lotes de comandos sobre un driver sin lotes nativos, que los ejecuta uno
+ * a uno: resultados por comando ante un fallo a medias, una muestra de
+ * latencia por viaje y paso por la tolerancia a fallos.
+ */
+class PruebasLoteComandos {
+    private static final String NOMBRE = "PruebasLoteComandos";
+    
+    /**
+     * Driver en memoria que aplica los comandos de uno en uno y falla en
+     * los que contienen FALLA, o en los primeros fallosPendientes viajes.
+     */
+    static final class FuenteGuionada implements FuenteConexiones {
+        final List<String> aplicados = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger fallosPendientes = new AtomicInteger();
+        final AtomicLong secuencia = new AtomicLong();
+        final Set<String> hilos = ConcurrentHashMap.newKeySet();
+        
+        @Override
+        public ConexionBaseDatos abrirConexion(String nombreBaseDatos) {
+            long identificador = secuencia.incrementAndGet();
+            return new ConexionBaseDatos() {
+                @Override
+                public String ejecutar(String comandoSQL) {
+                    if (comandoSQL.contains("FALLA") || fallosPendientes.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                        throw new ExcepcionConexion("Fallo guionado en: " + comandoSQL);
+                    }
+                    aplicados.add(comandoSQL);
+                    hilos.add(Thread.currentThread().getName());
+                    return "OK " + comandoSQL;
+                }
+                
+                @Override
+                public boolean esValida() {
+                    return true;
+                }
+                
+                @Override
+                public void cerrar() {
+                }
+                
+                @Override
+                public long obtenerIdentificador() {
+                    return identificador;
+                }
+            };
+        }
+    }
+    
+    private static GestorConexiones crearGestor(FuenteGuionada fuente) {
+        GestorConexiones gestor = GestorConexiones.obtenerInstancia(NOMBRE);
+        gestor.configurarPool(fuente, new ConfiguracionPool(0, 2, 1_000, 60_000, true));
+        return gestor;
+    }
+    
+    private static Throwable causaDe(CompletableFuture<String> futuro) {
+        try {
+            futuro.get(5, TimeUnit.SECONDS);
+            throw new AssertionError("El futuro debia fallar");
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (InterruptedException | TimeoutException e) {
+            throw new AssertionError("El futuro no termino", e);
+        }
+    }
+    
+    @Prueba
+    void unFalloAMediasCompletaCadaFuturoConSuResultado() throws Exception {
+        FuenteGuionada fuente = new FuenteGuionada();
+        GestorConexiones gestor = crearGestor(fuente);
+        try (LoteComandos lote = gestor.crearLote(10, 60_000)) {
+            CompletableFuture<String> primero = lote.agregar("INSERT INTO notas VALUES (1)");
+            CompletableFuture<String> segundo = lote.agregar("INSERT INTO notas VALUES (2)");
+            CompletableFuture<String> fallido = lote.agregar("UPDATE notas SET FALLA = 1");
+            CompletableFuture<String> noEnviado = lote.agregar("INSERT INTO notas VALUES (3)");
+            lote.vaciar();
+            Verificar.igual("OK INSERT INTO notas VALUES (1)", primero.get(5, TimeUnit.SECONDS), "primer comando");
+            Verificar.igual("OK INSERT INTO notas VALUES (2)", segundo.get(5, TimeUnit.SECONDS), "segundo comando");
+            Verificar.verdadero(causaDe(fallido).getMessage().startsWith("Fallo guionado"),
+                                "el comando fallido recibe su propio error");
+            Throwable causa = causaDe(noEnviado);
+            Verificar.verdadero(causa instanceof ExcepcionConexion && causa.getMessage().startsWith("Comando no enviado"),
+                                "el comando posterior se informa como no enviado: " + causa);
+            Verificar.igual(2, fuente.aplicados.size(), "comandos aplicados en la base");
+            InstantaneaMetricas metricas = gestor.obtenerMetricas();
+            Verificar.igual(2, metricas.obtenerComandosEjecutados(), "comandos ejecutados");
+            Verificar.igual(2, metricas.obtenerFallos(), "comandos fallidos");
+            Verificar.igual(1, metricas.obtenerLatencias().get(TipoComando.OTRO).obtenerCantidad(),
+                            "una muestra de latencia para el lote mixto");
+        } finally {
+            GestorConexiones.eliminarInstancia(NOMBRE);
+        }
+    }
+    
+    @Prueba
+    void registraUnaMuestraDeLatenciaPorViaje() throws Exception {
+        FuenteGuionada fuente = new FuenteGuionada();
+        GestorConexiones gestor = crearGestor(fuente);
+        try (LoteComandos lote = gestor.crearLote(5, 60_000)) {
+            List<CompletableFuture<String>> futuros = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                futuros.add(lote.agregar("INSERT INTO notas VALUES (" + i + ")"));
+            }
+            for (int i = 0; i < 5; i++) {
+                Verificar.igual("OK INSERT INTO notas VALUES (" + i + ")", futuros.get(i).get(5, TimeUnit.SECONDS),
+                                "resultado del comando " + i);
+            }
+            InstantaneaMetricas metricas = gestor.obtenerMetricas();
+            Verificar.igual(5, metricas.obtenerComandosEjecutados(), "comandos ejecutados");
+            Verificar.igual(1, metricas.obtenerLatencias().get(TipoComando.INSERT).obtenerCantidad(),
+                            "muestras de latencia");
+        } finally {
+            GestorConexiones.eliminarInstancia(NOMBRE);
+        }
+    }
+    
+    @Prueba
+    void losLotesPasanPorElCircuitoDeProteccion() throws Exception {
+        FuenteGuionada fuente = new FuenteGuionada();
+        GestorConexiones gestor = crearGestor(fuente);
+        gestor.habilitarToleranciaFallos(new ConfiguracionTolerancia(1_000, 0, 0, 0, 1, 60_000));
+        try (LoteComandos lote = gestor.crearLote(1, 60_000)) {
+            fuente.fallosPendientes.set(1);
+            causaDe(lote.agregar("INSERT INTO notas VALUES (1)"));
+            Verificar.igual(EstadoCircuito.ABIERTO, gestor.obtenerEstadoCircuito(), "estado del circuito");
+            Throwable rechazo = causaDe(lote.agregar("INSERT INTO notas VALUES (2)"));
+            Verificar.verdadero(rechazo.getMessage().startsWith("Circuito abierto"), "lote rechazado: " + rechazo);
+            Verificar.igual(0, fuente.aplicados.size(), "comandos aplicados");
+        } finally {
+            GestorConexiones.eliminarInstancia(NOMBRE);
+        }
+    }
+    
+    @Prueba
+    void losLotesDeLecturasSeReintentan() throws Exception {
+        FuenteGuionada fuente = new FuenteGuionada();
+        GestorConexiones gestor = crearGestor(fuente);
+        gestor.habilitarToleranciaFallos(new ConfiguracionTolerancia(2_000, 2, 1, 5, 10, 60_000));
+        try (LoteComandos lote = gestor.crearLote(2, 60_000)) {
+            fuente.fallosPendientes.set(1);
+            CompletableFuture<String> primero = lote.agregar("SELECT * FROM cursos");
+            CompletableFuture<String> segundo = lote.agregar("SELECT * FROM notas");
+            Verificar.igual("OK SELECT * FROM cursos", primero.get(5, TimeUnit.SECONDS), "primera lectura");
+            Verificar.igual("OK SELECT * FROM notas", segundo.get(5, TimeUnit.SECONDS), "segunda lectura");
+            Verificar.igual(EstadoCircuito.CERRADO, gestor.obtenerEstadoCircuito(), "estado del circuito");
+        } finally {
+            GestorConexiones.eliminarInstancia(NOMBRE);
+        }
+    }
+    
+    @Prueba
+    void laCanalizacionSigueAlPoolReconfigurado() throws Exception {
+        GestorConexiones gestor = crearGestor(new FuenteGuionada());
+        try {
+            gestor.habilitarCanalizacion(4, 5, 2);
+            FuenteGuionada nueva = new FuenteGuionada();
+            gestor.configurarPool(nueva, new ConfiguracionPool(0, 2, 1_000, 60_000, true));
+            Verificar.igual("OK INSERT INTO notas VALUES (1)",
+                            gestor.ejecutarComandoAsincrono("INSERT INTO notas VALUES (1)").get(5, TimeUnit.SECONDS),
+                            "comando sobre el pool nuevo");
+            Verificar.igual(1, nueva.aplicados.size(), "comandos aplicados en la base nueva");
+        } finally {
+            GestorConexiones.eliminarInstancia(NOMBRE);
+        }
+    }
+    
+    @Prueba
+    void losLotesExplicitosCompartenLosHilosDelGestor() throws Exception {
+        FuenteGuionada fuente = new FuenteGuionada();
+        GestorConexiones gestor = crearGestor(fuente);
+        try {
+            for (int i = 0; i < 20; i++) {
+                LoteComandos lote = gestor.crearLote(1, 60_000);
+                lote.agregar("INSERT INTO notas VALUES (" + i + ")").get(5, TimeUnit.SECONDS);
+            }
+            Verificar.verdadero(fuente.hilos.size() < 20, "lotes sin cerrar con hilo propio: " + fuente.hilos);
+            Verificar.verdadero(fuente.hilos.stream().allMatch(hilo -> hilo.equals("despacho-lotes-" + NOMBRE)),
+                                "hilos del gestor: " + fuente.hilos);
+        } finally {
+            GestorConexiones.eliminarInstancia(NOMBRE);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Publicacion en lote: un lote mayor que la cola con BLOQUEAR no debe
+ * bloquear al publicador para siempre, y un fallo dentro de un lote solo
+ * afecta al mensaje que fallo.
+ */
+class PruebasLoteNotificaciones {
+    private final ConcurrentLinkedQueue<Runnable> tareas = new ConcurrentLinkedQueue<>();
+    private final Executor manual = tareas::add;
+    
+    private void ejecutarPendientes() {
+        Runnable tarea;
+        while ((tarea = tareas.poll()) != null) {
+            tarea.run();
+        }
+    }
+    
+    private static List<Notificacion> avisos(int cantidad) {
+        List<Notificacion> avisos = new ArrayList<>();
+        for (int i = 1; i <= cantidad; i++) {
+            avisos.add(new Notificacion("m" + i, "contenido"));
+        }
+        return avisos;
+    }
+    
+    private static List<String> textos(int... numeros) {
+        List<String> textos = new ArrayList<>();
+        for (int numero : numeros) {
+            textos.add(ObservadorPrueba.texto("m" + numero));
+        }
+        return textos;
+    }
+    
+    @Prueba
+    void unLoteMayorQueLaColaConBloquearNoSeQuedaEsperando() throws Exception {
+        SistemaNotificacionesAcademico sistema = new SistemaNotificacionesAcademico();
+        ObservadorPrueba observador = new ObservadorPrueba("lento");
+        sistema.registrarObservador(observador);
+        ExecutorService entrega = Executors.newFixedThreadPool(2);
+        try {
+            sistema.habilitarEntregaAsincrona(entrega, 4, PoliticaDesbordamiento.BLOQUEAR);
+            CompletableFuture<Void> publicado = CompletableFuture.supplyAsync(() -> sistema.publicarLote(avisos(10)))
+                                                                 .thenCompose(resultado -> resultado);
+            publicado.get(5, TimeUnit.SECONDS);
+            Verificar.igual(textos(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), observador.copiaRecibidas(), "mensajes entregados en orden");
+        } finally {
+            entrega.shutdownNow();
+        }
+    }
+    
+    @Prueba
+    void unFalloEnElLoteSoloAfectaAlMensajeQueFallo() {
+        ObservadorPrueba observador = new ObservadorPrueba("obs");
+        observador.fallarCon = "[m3]";
+        CanalObservador canal = new CanalObservador(observador, 1, null);
+        CompletableFuture<Void> entrega = canal.encolarLote(avisos(5), manual);
+        ejecutarPendientes();
+        Verificar.igual(textos(1, 2, 4, 5), observador.copiaRecibidas(), "mensajes procesados");
+        Verificar.igual(4, canal.obtenerEntregados(), "entregados");
+        Verificar.igual(1, canal.obtenerFallos(), "fallos");
+        Verificar.igual(2, observador.lotes.get(), "el resto se entrega como lote tras el fallo");
+        Verificar.verdadero(entrega.isCompletedExceptionally(), "el lote informa el fallo");
+    }
+    
+    @Prueba
+    void cadaMensajeFallidoCuentaComoUnFallo() {
+        ObservadorPrueba observador = new ObservadorPrueba("obs");
+        observador.fallarCon = "FALLA";
+        CanalObservador canal = new CanalObservador(observador, 1, null);
+        List<Notificacion> lote = avisos(5);
+        lote.set(1, new Notificacion("m2", "FALLA"));
+        lote.set(3, new Notificacion("m4", "FALLA"));
+        canal.encolarLote(lote, manual);
+        ejecutarPendientes();
+        Verificar.igual(textos(1, 3, 5), observador.copiaRecibidas(), "mensajes procesados");
+        Verificar.igual(3, canal.obtenerEntregados(), "entregados");
+        Verificar.igual(2, canal.obtenerFallos(), "fallos");
+    }
+    
+    @Prueba
+    void unLoteQueFallaSinDecirDondeSeReintentaMensajeAMensaje() {
+        ObservadorPrueba observador = new ObservadorPrueba("obs");
+        observador.fallarCon = "[m3]";
+        observador.loteTodoONada = true;
+        CanalObservador canal = new CanalObservador(observador, 1, null);
+        canal.encolarLote(avisos(5), manual);
+        ejecutarPendientes();
+        Verificar.igual(textos(1, 2, 4, 5), observador.copiaRecibidas(), "mensajes procesados");
+        Verificar.igual(4, canal.obtenerEntregados(), "entregados");
+        Verificar.igual(1, canal.obtenerFallos(), "fallos");
+    }
+    
+    @Prueba
+    void laEntregaSincronaDeUnLoteTambienAislaLosFallos() {
+        SistemaNotificacionesAcademico sistema = new SistemaNotificacionesAcademico();
+        ObservadorPrueba sano = new ObservadorPrueba("sano");
+        ObservadorPrueba fragil = new ObservadorPrueba("fragil");
+        fragil.fallarCon = "[m2]";
+        sistema.registrarObservador(sano);
+        sistema.registrarObservador(fragil);
+        CompletableFuture<Void> publicado = sistema.publicarLote(avisos(3));
+        Verificar.verdadero(publicado.isCompletedExceptionally(), "la publicacion informa el fallo");
+        Verificar.igual(textos(1, 2, 3), sano.copiaRecibidas(), "el observador sano recibe todo");
+        Verificar.igual(textos(1, 3), fragil.copiaRecibidas(), "el fragil recibe todo menos el que fallo");
+    }
+}
@@ -0,0 +1,246 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Ciclo de vida del pool de conexiones sobre la base simulada en memoria:
+ * minimo al crear, reutilizacion, limite y espera, validacion al prestar,
+ * descarte de conexiones dañadas, desalojo por inactividad y cierre.
+ */
+class PruebasPoolConexiones {
+    private static PoolConexiones crearPool(BaseDatosSimulada base, int minimo, int maximo,
+                                            long esperaMs, long inactividadMs) {
+        return new PoolConexiones("PruebasPool", base,
+                                  new ConfiguracionPool(minimo, maximo, esperaMs, inactividadMs, true),
+                                  new MetricasConexiones());
+    }
+    
+    @Prueba
+    void abreElMinimoAlCrearse() {
+        BaseDatosSimulada base = new BaseDatosSimulada(0);
+        PoolConexiones pool = crearPool(base, 2, 4, 100, 60_000);
+        try {
+            Verificar.igual(2, base.obtenerConexionesCreadas(), "conexiones creadas");
+            Verificar.igual(2, pool.obtenerConexionesInactivas(), "conexiones inactivas");
+            Verificar.igual(0, pool.obtenerConexionesEnUso(), "conexiones en uso");
+        } finally {
+            pool.cerrar();
+        }
+    }
+    
+    @Prueba
+    void reutilizaLaUltimaConexionDevuelta() {
+        BaseDatosSimulada base = new BaseDatosSimulada(0);
+        PoolConexiones pool = crearPool(base, 0, 4, 100, 60_000);
+        try {
+            long primera;
+            try (ConexionPrestada conexion = pool.prestar()) {
+                primera = conexion.obtenerIdentificador();
+                Verificar.igual("OK", conexion.ejecutar("SELECT * FROM cursos"), "resultado");
+            }
+            try (ConexionPrestada conexion = pool.prestar()) {
+                Verificar.igual(primera, conexion.obtenerIdentificador(), "conexion reutilizada");
+            }
+            Verificar.igual(1, pool.obtenerConexionesCreadas(), "conexiones creadas");
+        } finally {
+            pool.cerrar();
+        }
+    }
+    
+    @Prueba
+    void agotaLaEsperaAlSuperarElMaximo() {
+        BaseDatosSimulada base = new BaseDatosSimulada(0);
+        PoolConexiones pool = crearPool(base, 0, 2, 30, 60_000);
+        try {
+            ConexionPrestada primera = pool.prestar();
+            ConexionPrestada segunda = pool.prestar();
+            Verificar.lanza(ExcepcionConexion.class, pool::prestar, "prestamo por encima del maximo");
+            Verificar.igual(1, pool.obtenerEsperasAgotadas(), "esperas agotadas");
+            primera.close();
+            ConexionPrestada tercera = pool.prestar();
+            Verificar.igual(2, pool.obtenerConexionesEnUso(), "conexiones en uso");
+            tercera.close();
+            segunda.close();
+            Verificar.igual(0, pool.obtenerConexionesEnUso(), "conexiones en uso al final");
+            Verificar.igual(2, pool.obtenerConexionesAbiertas(), "conexiones abiertas");
+        } finally {
+            pool.cerrar();
+        }
+    }
+    
+    @Prueba
+    void elQueEsperaRecibeLaConexionDevuelta() throws Exception {
+        BaseDatosSimulada base = new BaseDatosSimulada(0);
+        PoolConexiones pool = crearPool(base, 0, 1, 5_000, 60_000);
+        ExecutorService hilo = Executors.newSingleThreadExecutor();
+        try {
+            ConexionPrestada ocupada = pool.prestar();
+            long identificador = ocupada.obtenerIdentificador();
+            Future<Long> espera = hilo.submit(() -> {
+                try (ConexionPrestada conexion = pool.prestar()) {
+                    return conexion.obtenerIdentificador();
+                }
+            });
+            Thread.sleep(50);
+            Verificar.falso(espera.isDone(), "el prestamo debe esperar mientras el pool esta lleno");
+            ocupada.close();
+            Verificar.igual(identificador, espera.get(5, TimeUnit.SECONDS).longValue(), "conexion entregada");
+        } finally {
+            hilo.shutdownNow();
+            pool.cerrar();
+        }
+    }
+    
+    @Prueba
+    void descartaLasConexionesInvalidasAlPrestar() {
+        BaseDatosSimulada base = new BaseDatosSimulada(0);
+        PoolConexiones pool = crearPool(base, 1, 2, 100, 60_000);
+        try {
+            long anterior;
+            try (ConexionPrestada conexion = pool.prestar()) {
+                anterior = conexion.obtenerIdentificador();
+            }
+            base.reiniciar();
+            try (ConexionPrestada conexion = pool.prestar()) {
+                Verificar.verdadero(conexion.obtenerIdentificador() != anterior, "se presto una conexion nueva");
+                Verificar.igual("OK", conexion.ejecutar("SELECT * FROM cursos"), "resultado");
+            }
+            Verificar.igual(1, pool.obtenerConexionesInvalidas(), "conexiones invalidas");
+            Verificar.igual(1, pool.obtenerConexionesAbiertas(), "conexiones abiertas");
+        } finally {
+            pool.cerrar();
+        }
+    }
+    
+    @Prueba
+    void descartaLaConexionQueFallaDuranteSuUso() {
+        BaseDatosSimulada base = new BaseDatosSimulada(0);
+        PoolConexiones pool = crearPool(base, 0, 2, 100, 60_000);
+        try {
+            long fallida;
+            base.inyectarFallos(1.0, 0, 0);
+            try (ConexionPrestada conexion = pool.prestar()) {
+                fallida = conexion.obtenerIdentificador();
+                Verificar.lanza(ExcepcionConexion.class, () -> conexion.ejecutar("SELECT * FROM cursos"),
+                                "fallo inyectado");
+            }
+            Verificar.igual(0, pool.obtenerConexionesAbiertas(), "conexiones abiertas tras el fallo");
+            base.inyectarFallos(0, 0, 0);
+            try (ConexionPrestada conexion = pool.prestar()) {
+                Verificar.verdadero(conexion.obtenerIdentificador() != fallida, "la conexion fallida no se reutiliza");
+            }
+        } finally {
+            pool.cerrar();
+        }
+    }
+    
+    @Prueba
+    void desalojaLasInactivasSinBajarDelMinimo() {
+        BaseDatosSimulada base = new BaseDatosSimulada(0);
+        PoolConexiones pool = crearPool(base, 1, 3, 100, 30);
+        try {
+            List<ConexionPrestada> prestadas = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                prestadas.add(pool.prestar());
+            }
+            for (ConexionPrestada conexion : prestadas) {
+                conexion.close();
+            }
+            Verificar.igual(3, pool.obtenerConexionesAbiertas(), "conexiones abiertas antes del desalojo");
+            Verificar.eventualmente(() -> {
+                pool.desalojarInactivas();
+                return pool.obtenerConexionesAbiertas() == 1;
+            }, 2_000, "desalojo hasta el minimo");
+            Verificar.igual(2, pool.obtenerConexionesDesalojadas(), "conexiones desalojadas");
+            Verificar.igual(1, pool.obtenerConexionesInactivas(), "conexiones inactivas");
+        } finally {
+            pool.cerrar();
+        }
+    }
+    
+    @Prueba
+    void alCerrarseRechazaPrestamosYDescartaLasDevueltas() {
+        BaseDatosSimulada base = new BaseDatosSimulada(0);
+        PoolConexiones pool = crearPool(base, 2, 4, 100, 60_000);
+        ConexionPrestada prestada = pool.prestar();
+        pool.cerrar();
+        Verificar.igual(1, pool.obtenerConexionesAbiertas(), "solo queda la conexion prestada");
+        Verificar.lanza(ExcepcionConexion.class, pool::prestar, "prestamo con el pool cerrado");
+        prestada.close();
+        Verificar.igual(0, pool.obtenerConexionesAbiertas(), "conexiones abiertas tras devolver");
+        Verificar.igual(0, pool.obtenerConexionesInactivas(), "conexiones inactivas tras devolver");
+    }
+    
+    @Prueba
+    void quienEsperabaAlCerrarseNoAbreUnaConexion() throws Exception {
+        BaseDatosSimulada base = new BaseDatosSimulada(0);
+        PoolConexiones pool = crearPool(base, 0, 1, 5_000, 60_000);
+        ExecutorService hilos = Executors.newSingleThreadExecutor();
+        try {
+            ConexionPrestada prestada = pool.prestar();
+            Future<ConexionPrestada> esperando = hilos.submit(pool::prestar);
+            Thread.sleep(50);
+            pool.cerrar();
+            prestada.close();
+            ExecutionException error = Verificar.lanza(ExecutionException.class,
+                                                       () -> esperando.get(5, TimeUnit.SECONDS), "prestamo en espera");
+            Verificar.verdadero(error.getCause() instanceof ExcepcionConexion, "causa: " + error.getCause());
+            Verificar.igual(1, base.obtenerConexionesCreadas(), "no se abre otra conexion");
+            Verificar.igual(0, pool.obtenerConexionesAbiertas(), "conexiones abiertas");
+            Verificar.igual(0, pool.obtenerConexionesEnUso(), "el permiso se devuelve");
+        } finally {
+            hilos.shutdownNow();
+            pool.cerrar();
+        }
+    }
+    
+    @Prueba
+    void nuncaPrestaMasQueElMaximoBajoConcurrencia() throws Exception {
+        BaseDatosSimulada base = new BaseDatosSimulada(20);
+        PoolConexiones pool = crearPool(base, 0, 4, 5_000, 60_000);
+        AtomicInteger enUso = new AtomicInteger();
+        AtomicInteger maximoObservado = new AtomicInteger();
+        ExecutorService hilos = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> tareas = new ArrayList<>();
+            for (int h = 0; h < 16; h++) {
+                tareas.add(hilos.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        try (ConexionPrestada conexion = pool.prestar()) {
+                            maximoObservado.accumulateAndGet(enUso.incrementAndGet(), Math::max);
+                            conexion.ejecutar("SELECT * FROM cursos");
+                            enUso.decrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get(20, TimeUnit.SECONDS);
+            }
+            Verificar.verdadero(maximoObservado.get() <= 4, "prestamos simultaneos: " + maximoObservado.get());
+            Verificar.verdadero(pool.obtenerConexionesCreadas() <= 4, "conexiones creadas: " + pool.obtenerConexionesCreadas());
+            Verificar.igual(16 * 50, base.obtenerComandosEjecutados(), "comandos ejecutados");
+            Verificar.igual(0, pool.obtenerConexionesEnUso(), "conexiones en uso al final");
+        } finally {
+            hilos.shutdownNow();
+            pool.cerrar();
+        }
+    }
+    
+    @Prueba
+    void elGestorEjecutaLosComandosSobreSuPool() {
+        GestorConexiones gestor = GestorConexiones.obtenerInstancia("PruebasPoolGestor");
+        try {
+            BaseDatosSimulada base = new BaseDatosSimulada(0);
+            gestor.configurarPool(base, new ConfiguracionPool(1, 4, 100, 60_000, true));
+            for (int i = 0; i < 10; i++) {
+                gestor.ejecutarComando("SELECT * FROM cursos");
+            }
+            Verificar.igual(10, base.obtenerComandosEjecutados(), "comandos en la base");
+            Verificar.igual(10, gestor.obtenerMetricas().obtenerComandosEjecutados(), "comandos medidos");
+            Verificar.igual(0, gestor.obtenerMetricas().obtenerFallos(), "fallos medidos");
+        } finally {
+            GestorConexiones.eliminarInstancia("PruebasPoolGestor");
+        }
+    }
+}
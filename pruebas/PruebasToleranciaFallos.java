@@ -0,0 +1,192 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Tolerancia a fallos sobre la base simulada: transiciones del circuito,
+ * un pool sin conexiones libres no cuenta como fallo de la base, solo los
+ * errores de conexion y los tiempos agotados descartan la conexion, y el
+ * ejecutor de comandos esta acotado por el pool y se detiene con el.
+ */
+class PruebasToleranciaFallos {
+    private static final String NOMBRE = "PruebasToleranciaFallos";
+    
+    private static PoolConexiones crearPool(BaseDatosSimulada base, int maximo, long esperaMs) {
+        return new PoolConexiones(NOMBRE, base, new ConfiguracionPool(0, maximo, esperaMs, 60_000, true),
+                                  new MetricasConexiones());
+    }
+    
+    private static long hilosDeComandos() {
+        String prefijo = "comando-" + NOMBRE + "-";
+        return Thread.getAllStackTraces().keySet().stream()
+                     .filter(hilo -> hilo.isAlive() && hilo.getName().startsWith(prefijo))
+                     .count();
+    }
+    
+    @Prueba
+    void elCircuitoSeAbreYSeCierraTrasLaPrueba() throws Exception {
+        CircuitoProteccion circuito = new CircuitoProteccion(NOMBRE, 2, 20);
+        circuito.registrarFallo();
+        Verificar.igual(EstadoCircuito.CERRADO, circuito.obtenerEstado(), "un fallo no llega al umbral");
+        circuito.registrarFallo();
+        Verificar.igual(EstadoCircuito.ABIERTO, circuito.obtenerEstado(), "abierto al llegar al umbral");
+        Verificar.falso(circuito.permitir(), "rechaza durante la ventana");
+        Thread.sleep(30);
+        Verificar.verdadero(circuito.permitir(), "vencida la ventana pasa una prueba");
+        Verificar.igual(EstadoCircuito.SEMIABIERTO, circuito.obtenerEstado(), "semiabierto");
+        Verificar.falso(circuito.permitir(), "solo pasa una prueba");
+        circuito.registrarFallo();
+        Verificar.igual(EstadoCircuito.ABIERTO, circuito.obtenerEstado(), "la prueba fallida lo reabre");
+        Thread.sleep(30);
+        Verificar.verdadero(circuito.permitir(), "segunda prueba");
+        circuito.registrarExito();
+        Verificar.igual(EstadoCircuito.CERRADO, circuito.obtenerEstado(), "la prueba con exito lo cierra");
+        Verificar.igual(2, circuito.obtenerAperturas(), "aperturas");
+        Verificar.igual(2, circuito.obtenerSemiaperturas(), "pruebas");
+        Verificar.igual(1, circuito.obtenerCierres(), "cierres");
+        Verificar.igual(2, circuito.obtenerRechazadas(), "rechazadas");
+    }
+    
+    @Prueba
+    void unPoolAgotadoNoAbreElCircuito() {
+        PoolConexiones pool = crearPool(new BaseDatosSimulada(0), 1, 20);
+        try (ToleranciaFallos tolerancia = new ToleranciaFallos(NOMBRE, new ConfiguracionTolerancia(1_000, 2, 1, 5, 1, 60_000), 1)) {
+            ConexionPrestada ocupada = pool.prestar();
+            for (int i = 0; i < 3; i++) {
+                Verificar.lanza(ExcepcionPoolAgotado.class,
+                                () -> tolerancia.ejecutar(true, pool, conexion -> conexion.ejecutar("SELECT * FROM cursos")),
+                                "sin conexiones libres");
+            }
+            Verificar.igual(EstadoCircuito.CERRADO, tolerancia.obtenerCircuito().obtenerEstado(), "estado del circuito");
+            Verificar.igual(0, tolerancia.obtenerReintentos(), "no se reintenta");
+            ocupada.close();
+            Verificar.igual("OK", tolerancia.ejecutar(true, pool, conexion -> conexion.ejecutar("SELECT * FROM cursos")),
+                            "con la conexion libre");
+        } finally {
+            pool.cerrar();
+        }
+    }
+    
+    @Prueba
+    void unaPruebaSinConexionDejaPasarLaSiguiente() throws Exception {
+        BaseDatosSimulada base = new BaseDatosSimulada(0);
+        PoolConexiones pool = crearPool(base, 1, 20);
+        try (ToleranciaFallos tolerancia = new ToleranciaFallos(NOMBRE, new ConfiguracionTolerancia(1_000, 0, 0, 0, 1, 20), 1)) {
+            base.inyectarFallos(1.0, 0, 0);
+            Verificar.lanza(ExcepcionConexion.class,
+                            () -> tolerancia.ejecutar(false, pool, conexion -> conexion.ejecutar("UPDATE notas SET nota = 5")),
+                            "fallo de la base");
+            base.inyectarFallos(0, 0, 0);
+            Verificar.igual(EstadoCircuito.ABIERTO, tolerancia.obtenerCircuito().obtenerEstado(), "abierto tras el fallo");
+            Thread.sleep(30);
+            ConexionPrestada ocupada = pool.prestar();
+            Verificar.lanza(ExcepcionPoolAgotado.class,
+                            () -> tolerancia.ejecutar(false, pool, conexion -> conexion.ejecutar("UPDATE notas SET nota = 5")),
+                            "la prueba no consigue conexion");
+            ocupada.close();
+            Verificar.igual(EstadoCircuito.ABIERTO, tolerancia.obtenerCircuito().obtenerEstado(), "no se queda semiabierto");
+            Verificar.igual("OK", tolerancia.ejecutar(false, pool, conexion -> conexion.ejecutar("UPDATE notas SET nota = 5")),
+                            "la siguiente llamada hace de prueba");
+            Verificar.igual(EstadoCircuito.CERRADO, tolerancia.obtenerCircuito().obtenerEstado(), "cerrado tras la prueba");
+            Verificar.igual(1, tolerancia.obtenerCircuito().obtenerAperturas(), "aperturas");
+        } finally {
+            pool.cerrar();
+        }
+    }
+    
+    @Prueba
+    void unLoteCortadoPorUnComandoErroneoNoAbreElCircuito() {
+        PoolConexiones pool = crearPool(new BaseDatosSimulada(0), 1, 100);
+        try (ToleranciaFallos tolerancia = new ToleranciaFallos(NOMBRE, new ConfiguracionTolerancia(1_000, 2, 1, 5, 1, 60_000), 1)) {
+            for (int i = 0; i < 3; i++) {
+                Verificar.lanza(ExcepcionLoteParcial.class, () -> tolerancia.ejecutar(true, pool, conexion -> {
+                    throw new ExcepcionLoteParcial(List.of("OK"), new IllegalArgumentException("Sintaxis invalida"));
+                }), "lote interrumpido");
+            }
+            Verificar.igual(EstadoCircuito.CERRADO, tolerancia.obtenerCircuito().obtenerEstado(), "estado del circuito");
+            Verificar.igual(0, tolerancia.obtenerReintentos(), "no se reintenta");
+            Verificar.lanza(ExcepcionLoteParcial.class, () -> tolerancia.ejecutar(false, pool, conexion -> {
+                throw new ExcepcionLoteParcial(List.of(), new ExcepcionConexion("Conexion perdida"));
+            }), "lote cortado por la conexion");
+            Verificar.igual(EstadoCircuito.ABIERTO, tolerancia.obtenerCircuito().obtenerEstado(),
+                            "un fallo de conexion si cuenta");
+        } finally {
+            pool.cerrar();
+        }
+    }
+    
+    @Prueba
+    void unErrorDelComandoNoDescartaLaConexion() {
+        BaseDatosSimulada base = new BaseDatosSimulada(0);
+        PoolConexiones pool = crearPool(base, 1, 100);
+        try {
+            SentenciaPreparada sentencia = SentenciaPreparada.analizar("SELECT * FROM notas WHERE alumno = ?");
+            long identificador;
+            try (ConexionPrestada conexion = pool.prestar()) {
+                identificador = conexion.obtenerIdentificador();
+                Verificar.lanza(IllegalArgumentException.class, () -> conexion.ejecutarPreparada(sentencia, new Object[0]),
+                                "parametros invalidos");
+            }
+            try (ConexionPrestada conexion = pool.prestar()) {
+                Verificar.igual(identificador, conexion.obtenerIdentificador(), "la conexion se reutiliza");
+                base.inyectarFallos(1.0, 0, 0);
+                Verificar.lanza(ExcepcionConexion.class, () -> conexion.ejecutar("SELECT * FROM notas"), "fallo de la base");
+                base.inyectarFallos(0, 0, 0);
+            }
+            try (ConexionPrestada conexion = pool.prestar()) {
+                Verificar.verdadero(conexion.obtenerIdentificador() != identificador, "la conexion fallida se descarta");
+            }
+        } finally {
+            pool.cerrar();
+        }
+    }
+    
+    @Prueba
+    void unTiempoAgotadoDescartaLaConexion() {
+        BaseDatosSimulada base = new BaseDatosSimulada(0);
+        PoolConexiones pool = crearPool(base, 1, 1_000);
+        try (ToleranciaFallos tolerancia = new ToleranciaFallos(NOMBRE, new ConfiguracionTolerancia(30, 0, 0, 0, 10, 60_000), 1)) {
+            long identificador;
+            try (ConexionPrestada conexion = pool.prestar()) {
+                identificador = conexion.obtenerIdentificador();
+            }
+            base.inyectarFallos(0, 1.0, 5_000_000);
+            Verificar.lanza(ExcepcionConexion.class,
+                            () -> tolerancia.ejecutar(true, pool, conexion -> conexion.ejecutar("SELECT * FROM cursos")),
+                            "tiempo limite");
+            base.inyectarFallos(0, 0, 0);
+            Verificar.igual(1, tolerancia.obtenerTiemposAgotados(), "tiempos agotados");
+            try (ConexionPrestada conexion = pool.prestar()) {
+                Verificar.verdadero(conexion.obtenerIdentificador() != identificador, "la conexion abandonada se descarta");
+            }
+        } finally {
+            pool.cerrar();
+        }
+    }
+    
+    @Prueba
+    void elEjecutorSeAcotaAlPoolYSeDetieneAlCerrarlo() throws Exception {
+        GestorConexiones gestor = GestorConexiones.obtenerInstancia(NOMBRE);
+        ExecutorService clientes = Executors.newFixedThreadPool(6);
+        try {
+            Verificar.lanza(IllegalStateException.class,
+                            () -> gestor.habilitarToleranciaFallos(new ConfiguracionTolerancia(1_000, 0, 0, 0, 10, 60_000)),
+                            "sin pool no hay tolerancia");
+            gestor.configurarPool(new BaseDatosSimulada(20_000), new ConfiguracionPool(0, 2, 5_000, 60_000, true));
+            gestor.habilitarToleranciaFallos(new ConfiguracionTolerancia(5_000, 0, 0, 0, 10, 60_000));
+            List<Future<String>> resultados = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                resultados.add(clientes.submit(() -> gestor.consultar("SELECT * FROM cursos", false)));
+            }
+            for (Future<String> resultado : resultados) {
+                Verificar.igual("OK", resultado.get(10, TimeUnit.SECONDS), "resultado");
+            }
+            Verificar.verdadero(hilosDeComandos() <= 2, "hilos de comandos: " + hilosDeComandos());
+            gestor.cerrarPool();
+            Verificar.igual(null, gestor.obtenerEstadoCircuito(), "la tolerancia se cierra con el pool");
+            Verificar.eventualmente(() -> hilosDeComandos() == 0, 5_000, "los hilos de comandos terminan");
+        } finally {
+            clientes.shutdownNow();
+            GestorConexiones.eliminarInstancia(NOMBRE);
+        }
+    }
+}
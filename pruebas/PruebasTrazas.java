@@ -0,0 +1,88 @@
+import java.util.*;
+
+/**
+ * Trazas muestreadas: cada hilo mide exactamente uno de cada N tramos raiz,
+ * los histogramas se guardan por nombre hasta un limite y se olvidan al
+ * retirar el observador, y los controles solo se decoran con las trazas
+ * activas al crearlos.
+ */
+class PruebasTrazas {
+    @Prueba
+    void seMideUnoDeCadaIntervaloPorHilo() {
+        Trazas.configurar(8, 64);
+        try {
+            RecolectorTrazas recolector = Trazas.obtenerRecolector();
+            PuntoTraza punto = new PuntoTraza();
+            int muestreados = 0;
+            for (int i = 0; i < 80; i++) {
+                long traza = Trazas.iniciar(punto);
+                long anidada = Trazas.iniciarAnidado();
+                Verificar.igual(traza != 0L, anidada != 0L, "el anidado solo se mide dentro de uno muestreado");
+                Trazas.terminar(anidada, CategoriaTraza.ENTREGA, "anidado", "paso");
+                if (traza != 0L) {
+                    muestreados++;
+                }
+                Trazas.terminar(traza, CategoriaTraza.DISPOSITIVO, "tv", "orden");
+            }
+            Verificar.igual(10, muestreados, "uno de cada ocho");
+            Verificar.igual(20L, recolector.obtenerMuestreados(), "cada raiz muestreada con su anidado");
+        } finally {
+            Trazas.desactivar();
+        }
+    }
+    
+    @Prueba
+    void losNombresSeAcotanYSeAgrupanEnOtros() {
+        Trazas.configurar(1, 64);
+        try {
+            RecolectorTrazas recolector = Trazas.obtenerRecolector();
+            for (int i = 0; i < RecolectorTrazas.MAXIMO_OBJETIVOS + 10; i++) {
+                Trazas.terminar(Trazas.iniciar(), CategoriaTraza.PUBLICACION, "tema-" + i, "publicar");
+            }
+            Verificar.igual(RecolectorTrazas.MAXIMO_OBJETIVOS + 1, recolector.contarObjetivos(CategoriaTraza.PUBLICACION),
+                            "los nombres de mas van a un solo histograma");
+            List<ResumenLatencia> resumenes = recolector.obtenerMasLentos(CategoriaTraza.PUBLICACION, Integer.MAX_VALUE);
+            Verificar.verdadero(resumenes.stream().anyMatch(resumen -> resumen.toString().contains(RecolectorTrazas.OTROS)),
+                                "histograma de otros");
+        } finally {
+            Trazas.desactivar();
+        }
+    }
+    
+    @Prueba
+    void retirarUnObservadorOlvidaSuHistograma() {
+        Trazas.configurar(1, 64);
+        try {
+            RecolectorTrazas recolector = Trazas.obtenerRecolector();
+            SistemaNotificacionesAcademico sistema = new SistemaNotificacionesAcademico();
+            ObservadorPrueba primero = new ObservadorPrueba("primero");
+            ObservadorPrueba segundo = new ObservadorPrueba("segundo");
+            sistema.registrarObservador(primero);
+            sistema.registrarObservador(segundo);
+            sistema.publicarNotificacion("aviso", "contenido");
+            Verificar.igual(2, recolector.contarObjetivos(CategoriaTraza.ENTREGA), "un histograma por observador");
+            sistema.eliminarObservador(primero);
+            sistema.eliminarObservador("segundo");
+            Verificar.igual(0, recolector.contarObjetivos(CategoriaTraza.ENTREGA), "histogramas olvidados");
+        } finally {
+            Trazas.desactivar();
+        }
+    }
+    
+    @Prueba
+    void elControlSoloSeDecoraConTrazasActivas() {
+        Televisor televisor = new Televisor("Trazas");
+        Verificar.verdadero(new ControlBasico(televisor).dispositivo == televisor, "sin trazas no hay decorador");
+        Trazas.configurar(1, 64);
+        try {
+            RecolectorTrazas recolector = Trazas.obtenerRecolector();
+            ControlBasico control = new ControlBasico(televisor);
+            Verificar.verdadero(control.dispositivo instanceof DispositivoTrazado, "con trazas se decora");
+            control.encender();
+            Verificar.igual(1, recolector.contarObjetivos(CategoriaTraza.DISPOSITIVO), "histograma por modelo");
+            Verificar.igual(1L, recolector.obtenerMuestreados(), "orden medida");
+        } finally {
+            Trazas.desactivar();
+        }
+    }
+}
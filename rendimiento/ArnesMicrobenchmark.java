@@ -0,0 +1,122 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
+
+/**
+ * Arnes de microbenchmarks con la estructura de JMH: iteraciones de
+ * calentamiento descartadas, iteraciones de medicion de duracion fija, un
+ * estado por hilo y un sumidero que consume los resultados para que el JIT
+ * no elimine el trabajo medido. La asignacion de memoria se mide por hilo con
+ * com.sun.management.ThreadMXBean (equivalente a -prof gc) y se informa en
+ * bytes por operacion.
+ */
+final class ArnesMicrobenchmark {
+    private static final int OPERACIONES_POR_CONSULTA = 64;
+    private static volatile long sumidero;
+    
+    private final int iteracionesCalentamiento;
+    private final int iteracionesMedicion;
+    private final long duracionIteracionMs;
+    private final com.sun.management.ThreadMXBean hilosJvm;
+    
+    ArnesMicrobenchmark(int iteracionesCalentamiento, int iteracionesMedicion, long duracionIteracionMs) {
+        this.iteracionesCalentamiento = iteracionesCalentamiento;
+        this.iteracionesMedicion = iteracionesMedicion;
+        this.duracionIteracionMs = duracionIteracionMs;
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            this.hilosJvm = (com.sun.management.ThreadMXBean) bean;
+            this.hilosJvm.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            this.hilosJvm = null;
+        }
+    }
+    
+    /**
+     * Ejecuta la operacion en el numero de hilos indicado. La fabrica se
+     * invoca una vez por hilo e iteracion y crea su estado (por ejemplo, un
+     * dispositivo propio); la operacion devuelve un valor que se consume.
+     */
+    public ResultadoMicrobenchmark medir(String nombre, int hilos, Supplier<LongSupplier> fabrica) {
+        for (int i = 0; i < iteracionesCalentamiento; i++) {
+            ejecutarIteracion(hilos, fabrica);
+        }
+        double[] rendimientos = new double[iteracionesMedicion];
+        long operaciones = 0;
+        long bytes = 0;
+        for (int i = 0; i < iteracionesMedicion; i++) {
+            long[] iteracion = ejecutarIteracion(hilos, fabrica);
+            rendimientos[i] = iteracion[0] * 1e9 / iteracion[1];
+            operaciones += iteracion[0];
+            bytes += iteracion[2];
+        }
+        return new ResultadoMicrobenchmark(nombre, hilos, rendimientos,
+                                           hilosJvm == null ? Double.NaN : (double) bytes / operaciones);
+    }
+    
+    /**
+     * Devuelve {operaciones, nanos de la ventana, bytes asignados}.
+     */
+    private long[] ejecutarIteracion(int hilos, Supplier<LongSupplier> fabrica) {
+        LongSupplier[] operaciones = new LongSupplier[hilos];
+        for (int i = 0; i < hilos; i++) {
+            operaciones[i] = fabrica.get();
+        }
+        AtomicBoolean activo = new AtomicBoolean(true);
+        CountDownLatch listos = new CountDownLatch(hilos);
+        CountDownLatch inicio = new CountDownLatch(1);
+        LongAdder total = new LongAdder();
+        LongAdder asignados = new LongAdder();
+        List<Thread> trabajadores = new ArrayList<>();
+        for (int i = 0; i < hilos; i++) {
+            LongSupplier operacion = operaciones[i];
+            Thread hilo = new Thread(() -> {
+                listos.countDown();
+                try {
+                    inicio.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long bytesIniciales = bytesAsignados();
+                long acumulado = 0;
+                long cuenta = 0;
+                while (activo.get()) {
+                    for (int j = 0; j < OPERACIONES_POR_CONSULTA; j++) {
+                        acumulado ^= operacion.getAsLong();
+                    }
+                    cuenta += OPERACIONES_POR_CONSULTA;
+                }
+                asignados.add(bytesAsignados() - bytesIniciales);
+                total.add(cuenta);
+                sumidero ^= acumulado;
+            }, "microbenchmark-" + i);
+            hilo.start();
+            trabajadores.add(hilo);
+        }
+        try {
+            listos.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long comienzo = System.nanoTime();
+        inicio.countDown();
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(duracionIteracionMs));
+        activo.set(false);
+        for (Thread hilo : trabajadores) {
+            try {
+                hilo.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return new long[] {total.sum(), System.nanoTime() - comienzo, asignados.sum()};
+    }
+    
+    private long bytesAsignados() {
+        return hilosJvm == null ? 0 : hilosJvm.getCurrentThreadAllocatedBytes();
+    }
+}
@@ -0,0 +1,1448 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * Mediciones de rendimiento de los componentes. Se ejecuta con:
+ * java -cp out BancoPruebasRendimiento [escenario]
+ */
+class BancoPruebasRendimiento {
+    private static final long DURACION_MS = 2000;
+    
+    public static void main(String[] args) {
+        String escenario = args.length > 0 ? args[0] : "todos";
+        if (escenario.equals("todos") || escenario.equals("pool")) {
+            medirPoolConexiones();
+        }
+        if (escenario.equals("todos") || escenario.equals("lotes")) {
+            medirLotes();
+        }
+        if (escenario.equals("todos") || escenario.equals("sentencias")) {
+            medirSentenciasPreparadas();
+        }
+        if (escenario.equals("todos") || escenario.equals("resultados")) {
+            medirCacheResultados();
+        }
+        if (escenario.equals("todos") || escenario.equals("metricas")) {
+            medirMetricas();
+        }
+        if (escenario.equals("todos") || escenario.equals("entrega")) {
+            medirEntregaAsincrona();
+        }
+        if (escenario.equals("todos") || escenario.equals("registro")) {
+            medirRegistroConcurrente();
+        }
+        if (escenario.equals("todos") || escenario.equals("temas")) {
+            medirEnrutamientoPorTemas();
+        }
+        if (escenario.equals("todos") || escenario.equals("colas")) {
+            medirColasAcotadas();
+        }
+        if (escenario.equals("todos") || escenario.equals("lote-notificaciones")) {
+            medirLoteNotificaciones();
+        }
+        if (escenario.equals("todos") || escenario.equals("bitacora")) {
+            medirBitacora();
+        }
+        if (escenario.equals("todos") || escenario.equals("historial")) {
+            medirHistorial();
+        }
+        if (escenario.equals("todos") || escenario.equals("notificacion")) {
+            medirNotificacionEstructurada();
+        }
+        if (escenario.equals("todos") || escenario.equals("prioridades")) {
+            medirPrioridades();
+        }
+        if (escenario.equals("todos") || escenario.equals("registro-eventos")) {
+            medirRegistroEventos();
+        }
+        if (escenario.equals("todos") || escenario.equals("dispositivos")) {
+            medirEstadoDispositivos();
+        }
+        if (escenario.equals("todos") || escenario.equals("flota")) {
+            medirFlota();
+        }
+        if (escenario.equals("todos") || escenario.equals("cola-comandos")) {
+            medirColaComandos();
+        }
+        if (escenario.equals("todos") || escenario.equals("singleton")) {
+            medirSingleton();
+        }
+        if (escenario.equals("todos") || escenario.equals("inquilinos")) {
+            medirInquilinos();
+        }
+        if (escenario.equals("todos") || escenario.equals("tolerancia")) {
+            medirToleranciaFallos();
+        }
+        if (escenario.equals("todos") || escenario.equals("instantaneas")) {
+            medirInstantaneas();
+        }
+        if (escenario.equals("todos") || escenario.equals("trazas")) {
+            medirTrazas();
+        }
+    }
+    
+    /**
+     * Rendimiento de ejecutarComando con 8, 32 y 128 hilos concurrentes,
+     * comparando una sola conexion frente a un pool de 16.
+     */
+    static void medirPoolConexiones() {
+        System.out.println("\n=== Pool de conexiones (latencia simulada 200us) ===");
+        GestorConexiones gestor = GestorConexiones.obtenerInstancia();
+        for (int maximo : new int[] {1, 16}) {
+            gestor.configurarPool(new BaseDatosSimulada(200), new ConfiguracionPool(1, maximo, 5000, 30000, true));
+            for (int hilos : new int[] {8, 32, 128}) {
+                long operaciones = ejecutarConcurrente(hilos, DURACION_MS,
+                    () -> gestor.ejecutarComando("SELECT * FROM Estudiantes"));
+                System.out.printf("maximo=%2d hilos=%3d: %,10d comandos/s%n",
+                                  maximo, hilos, operaciones * 1000 / DURACION_MS);
+            }
+        }
+        gestor.cerrarPool();
+    }
+    
+    /**
+     * Tiempo para ejecutar 10.000 UPDATE uno a uno, en lotes explicitos y en
+     * modo canalizado, con 200us por viaje y 2us por comando.
+     */
+    static void medirLotes() {
+        System.out.println("\n=== Lotes y canalizacion (10.000 UPDATE, 200us/viaje + 2us/comando) ===");
+        final int total = 10_000;
+        GestorConexiones gestor = GestorConexiones.obtenerInstancia();
+        gestor.configurarPool(new BaseDatosSimulada(200, 2), new ConfiguracionPool(1, 8, 5000, 30000, true));
+        
+        long inicio = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            gestor.ejecutarComando("UPDATE Calificaciones SET nota = 9.5 WHERE id = " + i);
+        }
+        reportarDuracion("uno a uno", inicio);
+        
+        inicio = System.nanoTime();
+        List<CompletableFuture<String>> futuros = new ArrayList<>(total);
+        try (LoteComandos lote = gestor.crearLote(100, 5)) {
+            for (int i = 0; i < total; i++) {
+                futuros.add(lote.agregar("UPDATE Calificaciones SET nota = 9.5 WHERE id = " + i));
+            }
+        }
+        CompletableFuture.allOf(futuros.toArray(new CompletableFuture<?>[0])).join();
+        reportarDuracion("lotes de 100", inicio);
+        
+        gestor.habilitarCanalizacion(100, 1, 4);
+        inicio = System.nanoTime();
+        futuros.clear();
+        for (int i = 0; i < total; i++) {
+            futuros.add(gestor.ejecutarComandoAsincrono("UPDATE Calificaciones SET nota = 9.5 WHERE id = " + i));
+        }
+        CompletableFuture.allOf(futuros.toArray(new CompletableFuture<?>[0])).join();
+        reportarDuracion("canalizado (100 x 4 en vuelo)", inicio);
+        gestor.cerrarPool();
+    }
+    
+    /**
+     * SQL en texto frente a sentencias preparadas en cache, con 100us por
+     * viaje y 50us de analisis en el servidor para el SQL no preparado.
+     */
+    static void medirSentenciasPreparadas() {
+        System.out.println("\n=== Sentencias preparadas (5.000 UPDATE, 100us/viaje + 50us/analisis) ===");
+        final int total = 5_000;
+        GestorConexiones gestor = GestorConexiones.obtenerInstancia();
+        gestor.configurarPool(new BaseDatosSimulada(100, 0, 50), new ConfiguracionPool(1, 1, 5000, 30000, true));
+        gestor.configurarCacheSentencias(64);
+        
+        long inicio = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            gestor.ejecutarComando("UPDATE Calificaciones SET nota = 9.5 WHERE id = " + i);
+        }
+        reportarDuracion("SQL en texto", inicio);
+        
+        inicio = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            gestor.ejecutarComando("UPDATE Calificaciones SET nota = ? WHERE id = ?", 9.5, i);
+        }
+        reportarDuracion("sentencia preparada", inicio);
+        gestor.mostrarInformacion();
+        gestor.cerrarPool();
+    }
+    
+    /**
+     * 5.000 lecturas repetidas sobre dos tablas con una escritura cada 100
+     * lecturas, sin cache y con cache de resultados.
+     */
+    static void medirCacheResultados() {
+        System.out.println("\n=== Cache de resultados (5.000 SELECT, 1 UPDATE cada 100, 100us/viaje) ===");
+        final int total = 5_000;
+        GestorConexiones gestor = GestorConexiones.obtenerInstancia();
+        gestor.configurarPool(new BaseDatosSimulada(100), new ConfiguracionPool(1, 1, 5000, 30000, true));
+        for (boolean usarCache : new boolean[] {false, true}) {
+            gestor.habilitarCacheResultados(128, 60_000);
+            long inicio = System.nanoTime();
+            for (int i = 0; i < total; i++) {
+                gestor.consultar(i % 2 == 0 ? "SELECT * FROM Estudiantes" : "SELECT * FROM Horarios", usarCache);
+                if (i % 100 == 99) {
+                    gestor.ejecutarComando("UPDATE Estudiantes SET activo = 1 WHERE id = " + i);
+                }
+            }
+            reportarDuracion(usarCache ? "con cache" : "sin cache", inicio);
+        }
+        gestor.mostrarInformacion();
+        gestor.deshabilitarCacheResultados();
+        gestor.cerrarPool();
+    }
+    
+    /**
+     * Costo de registrar metricas: primero el registro aislado desde varios
+     * hilos y luego ejecutarComando sobre una base sin latencia, con y sin
+     * metricas.
+     */
+    static void medirMetricas() {
+        System.out.println("\n=== Metricas de conexiones ===");
+        MetricasConexiones metricas = new MetricasConexiones();
+        for (int hilos : new int[] {1, 8}) {
+            long operaciones = ejecutarConcurrente(hilos, DURACION_MS,
+                () -> metricas.registrarComando(TipoComando.SELECT, 1500, true));
+            System.out.printf("registro aislado, hilos=%d: %,14d registros/s%n", hilos, operaciones * 1000 / DURACION_MS);
+        }
+        GestorConexiones gestor = GestorConexiones.obtenerInstancia();
+        gestor.configurarPool(new BaseDatosSimulada(0), new ConfiguracionPool(8, 8, 5000, 30000, false));
+        for (boolean habilitadas : new boolean[] {false, true, false, true}) {
+            gestor.habilitarMetricas(habilitadas);
+            long operaciones = ejecutarConcurrente(8, DURACION_MS,
+                () -> gestor.ejecutarComando("SELECT * FROM Estudiantes"));
+            System.out.printf("ejecutarComando, 8 hilos, metricas %-3s: %,12d comandos/s%n",
+                              habilitadas ? "si" : "no", operaciones * 1000 / DURACION_MS);
+        }
+        gestor.habilitarMetricas(true);
+        System.out.println(gestor.obtenerMetricas().obtenerLatencias().get(TipoComando.SELECT));
+        gestor.cerrarPool();
+    }
+    
+    /**
+     * 20 publicaciones a 100 observadores, uno de ellos lento (20ms por
+     * mensaje) y otro que siempre falla: tiempo hasta que publicar regresa y
+     * hasta que los observadores rapidos recibieron todo.
+     */
+    static void medirEntregaAsincrona() {
+        System.out.println("\n=== Entrega asincrona (100 observadores, uno lento y uno que falla) ===");
+        final int publicaciones = 20;
+        ExecutorService ejecutor = Executors.newFixedThreadPool(8);
+        for (boolean asincrona : new boolean[] {false, true}) {
+            SistemaNotificacionesAcademico sistema = new SistemaNotificacionesAcademico();
+            List<ObservadorMedicion> rapidos = new ArrayList<>();
+            PrintStream salida = silenciarSalida();
+            for (int i = 0; i < 98; i++) {
+                ObservadorMedicion observador = new ObservadorMedicion("rapido-" + i, 0, false);
+                rapidos.add(observador);
+                sistema.registrarObservador(observador);
+            }
+            sistema.registrarObservador(new ObservadorMedicion("lento", 20_000, false));
+            sistema.registrarObservador(new ObservadorMedicion("fallido", 0, true));
+            if (asincrona) {
+                sistema.habilitarEntregaAsincrona(ejecutor);
+            }
+            long inicio = System.nanoTime();
+            List<CompletableFuture<Void>> manejadores = new ArrayList<>();
+            for (int i = 0; i < publicaciones; i++) {
+                manejadores.add(sistema.publicarNotificacion("Aviso " + i, "Contenido " + i));
+            }
+            long publicado = System.nanoTime();
+            for (ObservadorMedicion observador : rapidos) {
+                observador.esperar(publicaciones);
+            }
+            long rapidosListos = System.nanoTime();
+            for (CompletableFuture<Void> manejador : manejadores) {
+                manejador.exceptionally(error -> null).join();
+            }
+            restaurarSalida(salida);
+            System.out.printf("%-10s publicar: %,6d ms, rapidos completos: %,6d ms, todo: %,6d ms%n",
+                              asincrona ? "asincrona" : "sincrona",
+                              TimeUnit.NANOSECONDS.toMillis(publicado - inicio),
+                              TimeUnit.NANOSECONDS.toMillis(rapidosListos - inicio),
+                              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+        }
+        ejecutor.shutdown();
+    }
+    
+    /**
+     * 4 hilos publican mientras 4 hilos registran y eliminan observadores sin
+     * pausa sobre una base de 1.000 observadores fijos.
+     */
+    static void medirRegistroConcurrente() {
+        System.out.println("\n=== Registro concurrente (4 publicadores, 4 hilos de altas/bajas, 1.000 fijos) ===");
+        SistemaNotificacionesAcademico sistema = new SistemaNotificacionesAcademico();
+        PrintStream salida = silenciarSalida();
+        for (int i = 0; i < 1000; i++) {
+            sistema.registrarObservador(new ObservadorMedicion("fijo-" + i, 0, false));
+        }
+        LongAdder publicaciones = new LongAdder();
+        LongAdder cambios = new LongAdder();
+        LongAdder errores = new LongAdder();
+        AtomicInteger siguiente = new AtomicInteger();
+        long total = ejecutarConcurrente(8, DURACION_MS, () -> {
+            try {
+                if (Thread.currentThread().getId() % 2 == 0) {
+                    sistema.publicarNotificacion("Inscripcion", "Cupos actualizados");
+                    publicaciones.increment();
+                } else {
+                    String identificador = "temporal-" + (siguiente.incrementAndGet() % 64);
+                    sistema.registrarObservador(new ObservadorMedicion(identificador, 0, false));
+                    sistema.eliminarObservador(identificador);
+                    cambios.increment();
+                }
+            } catch (RuntimeException e) {
+                errores.increment();
+            }
+        });
+        restaurarSalida(salida);
+        System.out.printf("operaciones: %,d, publicaciones/s: %,d, altas+bajas/s: %,d, errores: %d%n",
+                          total, publicaciones.sum() * 1000 / DURACION_MS, cambios.sum() * 1000 / DURACION_MS,
+                          errores.sum());
+    }
+    
+    /**
+     * 100.000 suscriptores (90.000 estudiantes en 100 cursos, 5.000
+     * profesores en 20 departamentos, 5.000 administrativos en 10 areas):
+     * difusion a todos frente a publicar a un curso y a un departamento.
+     */
+    static void medirEnrutamientoPorTemas() {
+        System.out.println("\n=== Difusion frente a enrutamiento por temas (100.000 suscriptores) ===");
+        SistemaNotificacionesAcademico sistema = new SistemaNotificacionesAcademico();
+        PrintStream salida = silenciarSalida();
+        List<ObservadorMedicion> todos = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            String tema;
+            String rol;
+            if (i < 90_000) {
+                rol = Audiencia.ESTUDIANTES;
+                tema = Audiencia.curso("curso-" + (i % 100));
+            } else if (i < 95_000) {
+                rol = Audiencia.PROFESORES;
+                tema = Audiencia.departamento("depto-" + (i % 20));
+            } else {
+                rol = Audiencia.ADMINISTRATIVOS;
+                tema = Audiencia.area("area-" + (i % 10));
+            }
+            ObservadorMedicion observador = new ObservadorMedicion("suscriptor-" + i, 0, false, Set.of(rol, tema));
+            todos.add(observador);
+            sistema.registrarObservador(observador);
+        }
+        final int repeticiones = 200;
+        for (int ronda = 0; ronda < 2; ronda++) {
+            long inicio = System.nanoTime();
+            for (int i = 0; i < repeticiones; i++) {
+                sistema.publicarNotificacion("Cambio de aula", "Curso 7 se mueve al aula 12");
+            }
+            long difusion = System.nanoTime() - inicio;
+            inicio = System.nanoTime();
+            for (int i = 0; i < repeticiones; i++) {
+                sistema.publicarNotificacion("Cambio de aula", "Curso 7 se mueve al aula 12",
+                                             Audiencia.curso("curso-7"), Audiencia.departamento("depto-7"));
+            }
+            long enrutada = System.nanoTime() - inicio;
+            restaurarSalida(salida);
+            System.out.printf("ronda %d: difusion %,8d us/publicacion, enrutada %,6d us/publicacion%n", ronda + 1,
+                              TimeUnit.NANOSECONDS.toMicros(difusion) / repeticiones,
+                              TimeUnit.NANOSECONDS.toMicros(enrutada) / repeticiones);
+            silenciarSalida();
+        }
+        restaurarSalida(salida);
+        long entregas = todos.stream().mapToLong(ObservadorMedicion::obtenerRecibidos).sum();
+        System.out.printf("entregas totales: %,d%n", entregas);
+    }
+    
+    /**
+     * Rafaga de 10.000 avisos "Resultados Exámenes" con 4 claves distintas
+     * hacia un observador rapido y uno lento (1ms por mensaje), con colas de
+     * 100 mensajes y cada politica de desbordamiento.
+     */
+    static void medirColasAcotadas() {
+        System.out.println("\n=== Colas acotadas por observador (rafaga de 10.000, capacidad 100) ===");
+        ExecutorService ejecutor = Executors.newFixedThreadPool(4);
+        for (PoliticaDesbordamiento politica : PoliticaDesbordamiento.values()) {
+            SistemaNotificacionesAcademico sistema = new SistemaNotificacionesAcademico();
+            PrintStream salida = silenciarSalida();
+            ObservadorMedicion rapido = new ObservadorMedicion("rapido", 0, false);
+            ObservadorMedicion lento = new ObservadorMedicion("lento", 1_000, false);
+            sistema.registrarObservador(rapido);
+            sistema.registrarObservador(lento);
+            sistema.habilitarEntregaAsincrona(ejecutor, 100, politica);
+            long inicio = System.nanoTime();
+            List<CompletableFuture<Void>> manejadores = new ArrayList<>();
+            for (int i = 0; i < 10_000; i++) {
+                manejadores.add(sistema.publicarNotificacion("Resultados Exámenes " + (i % 4), "Parcial " + i));
+            }
+            long publicado = System.nanoTime() - inicio;
+            for (CompletableFuture<Void> manejador : manejadores) {
+                manejador.exceptionally(error -> null).join();
+            }
+            restaurarSalida(salida);
+            System.out.printf("%-17s publicar: %,6d ms, total: %,6d ms, lento recibio %,d%n", politica,
+                              TimeUnit.NANOSECONDS.toMillis(publicado),
+                              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio), lento.obtenerRecibidos());
+            sistema.mostrarRetrasoObservadores(2);
+        }
+        ejecutor.shutdown();
+    }
+    
+    /**
+     * 500 cambios de horario hacia 200 observadores con 50us de costo fijo
+     * por invocacion, publicados uno a uno y en lote; y 500 actualizaciones
+     * de 10 secciones coalescidas en una ventana de 50ms.
+     */
+    static void medirLoteNotificaciones() {
+        System.out.println("\n=== Publicacion en lote y coalescencia (500 avisos, 200 observadores) ===");
+        List<Notificacion> avisos = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            avisos.add(new Notificacion("Cambio de Horario " + (i % 10), "Seccion " + (i % 10) + " version " + i));
+        }
+        for (int modo = 0; modo < 3; modo++) {
+            SistemaNotificacionesAcademico sistema = new SistemaNotificacionesAcademico();
+            PrintStream salida = silenciarSalida();
+            List<ObservadorMedicion> observadores = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                ObservadorMedicion observador = new ObservadorMedicion("obs-" + i, 50, false);
+                observadores.add(observador);
+                sistema.registrarObservador(observador);
+            }
+            long inicio = System.nanoTime();
+            String nombre;
+            if (modo == 0) {
+                nombre = "uno a uno";
+                for (Notificacion aviso : avisos) {
+                    sistema.publicarNotificacion(aviso.obtenerTitulo(), aviso.obtenerContenido());
+                }
+            } else if (modo == 1) {
+                nombre = "publicarLote";
+                sistema.publicarLote(avisos).join();
+            } else {
+                nombre = "coalescida (50ms)";
+                sistema.habilitarCoalescencia(50);
+                List<CompletableFuture<Void>> manejadores = new ArrayList<>();
+                for (Notificacion aviso : avisos) {
+                    manejadores.add(sistema.publicarCoalescida(aviso.obtenerTitulo(), aviso.obtenerTitulo(),
+                                                               aviso.obtenerContenido()));
+                }
+                CompletableFuture.allOf(manejadores.toArray(new CompletableFuture<?>[0])).join();
+            }
+            long duracion = System.nanoTime() - inicio;
+            restaurarSalida(salida);
+            long invocaciones = observadores.stream().mapToLong(ObservadorMedicion::obtenerInvocaciones).sum();
+            long recibidos = observadores.stream().mapToLong(ObservadorMedicion::obtenerRecibidos).sum();
+            System.out.printf("%-18s %,6d ms, %,7d invocaciones, %,7d mensajes recibidos%n", nombre + ":",
+                              TimeUnit.NANOSECONDS.toMillis(duracion), invocaciones, recibidos);
+        }
+    }
+    
+    /**
+     * Escritura secuencial de 1.000.000 de mensajes de ~100 bytes en
+     * segmentos de 16MB, relectura completa y reapertura con reproduccion
+     * para un consumidor que confirmo la mitad.
+     */
+    static void medirBitacora() {
+        System.out.println("\n=== Bitacora mapeada en memoria (1.000.000 mensajes de ~100 bytes) ===");
+        Path directorio;
+        try {
+            directorio = Files.createTempDirectory("bitacora-notificaciones");
+        } catch (IOException e) {
+            System.out.println("No se pudo crear el directorio temporal: " + e.getMessage());
+            return;
+        }
+        final int total = 1_000_000;
+        String relleno = "x".repeat(80);
+        try (BitacoraNotificaciones bitacora = new BitacoraNotificaciones(directorio, 16 << 20, 1L << 30, 86_400_000)) {
+            long inicio = System.nanoTime();
+            for (int i = 0; i < total; i++) {
+                bitacora.agregar(new Notificacion("Aviso " + i, relleno));
+            }
+            bitacora.sincronizar();
+            long escritura = System.nanoTime() - inicio;
+            long bytes = (long) total * (12 + new Notificacion("Aviso " + total / 2, relleno).serializar().length);
+            System.out.printf("escritura: %,d ms, %,d mensajes/s, ~%,d MB/s, %d segmentos%n",
+                              TimeUnit.NANOSECONDS.toMillis(escritura), total * 1_000_000_000L / escritura,
+                              bytes * 1000 / escritura, bitacora.contarSegmentos());
+            inicio = System.nanoTime();
+            long leidos = 0;
+            List<EntradaBitacora> entradas;
+            long desde = 0;
+            while (!(entradas = bitacora.leerDesde(desde, 4096)).isEmpty()) {
+                leidos += entradas.size();
+                desde = entradas.get(entradas.size() - 1).obtenerOffset() + 1;
+            }
+            System.out.printf("lectura: %,d mensajes en %,d ms%n", leidos,
+                              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+            bitacora.confirmar("Estudiante Carlos Ruiz (B789012)", total / 2);
+        } catch (IOException e) {
+            System.out.println("Error de E/S: " + e.getMessage());
+            return;
+        }
+        try (BitacoraNotificaciones reabierta = new BitacoraNotificaciones(directorio, 16 << 20, 1L << 30, 86_400_000)) {
+            ObservadorMedicion observador = new ObservadorMedicion("Estudiante Carlos Ruiz (B789012)", 0, false);
+            long inicio = System.nanoTime();
+            int reproducidos = reabierta.reproducir(observador.obtenerIdentificador(), observador);
+            System.out.printf("reapertura: siguiente offset %,d; reproducidos %,d en %,d ms%n",
+                              reabierta.obtenerSiguienteOffset(), reproducidos,
+                              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+        } catch (IOException e) {
+            System.out.println("Error de E/S: " + e.getMessage());
+        }
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(directorio)) {
+            for (Path archivo : archivos) {
+                Files.delete(archivo);
+            }
+            Files.delete(directorio);
+        } catch (IOException e) {
+            System.out.println("No se pudo limpiar " + directorio + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Memoria retenida por el historial de 50.000 estudiantes que reciben
+     * 1.000 difusiones de texto distinto: listas con una referencia por
+     * mensaje (como antes), y anillos de ids con tope de 1.000 y de 100.
+     */
+    static void medirHistorial() {
+        System.out.println("\n=== Historial de 50.000 estudiantes x 1.000 mensajes ===");
+        final int estudiantes = 50_000;
+        final int mensajes = 1_000;
+        String[] textos = new String[mensajes];
+        for (int i = 0; i < mensajes; i++) {
+            textos[i] = "[Cambio de horario " + i + "] La clase se traslada al aula " + (i % 40);
+        }
+        long base = memoriaUsada();
+        List<List<String>> listas = new ArrayList<>(estudiantes);
+        for (int e = 0; e < estudiantes; e++) {
+            listas.add(new ArrayList<>());
+        }
+        long inicio = System.nanoTime();
+        for (String texto : textos) {
+            for (List<String> lista : listas) {
+                lista.add(texto);
+            }
+        }
+        long tiempo = System.nanoTime() - inicio;
+        reportarMemoria("ArrayList<String> por estudiante", memoriaUsada() - base, tiempo);
+        System.out.println("  mensajes del estudiante 0: " + listas.get(0).size());
+        listas = null;
+        for (int capacidad : new int[] {1_000, HistorialNotificaciones.CAPACIDAD_PREDETERMINADA}) {
+            base = memoriaUsada();
+            AlmacenMensajes almacen = new AlmacenMensajes(1 << 16);
+            HistorialNotificaciones[] historiales = new HistorialNotificaciones[estudiantes];
+            for (int e = 0; e < estudiantes; e++) {
+                historiales[e] = new HistorialNotificaciones(almacen, capacidad);
+            }
+            inicio = System.nanoTime();
+            for (String texto : textos) {
+                for (HistorialNotificaciones historial : historiales) {
+                    historial.agregar(texto);
+                }
+            }
+            tiempo = System.nanoTime() - inicio;
+            reportarMemoria("anillo de ids, tope " + capacidad, memoriaUsada() - base, tiempo);
+            System.out.println("  textos en el almacen: " + almacen.contarMensajes() + ", ultimo del estudiante 0: "
+                               + historiales[0].resolver().get(historiales[0].contarRetenidos() - 1));
+        }
+        textos = null;
+    }
+    
+    /**
+     * Un consumidor que filtra 1.000.000 de notificaciones por titulo:
+     * recortando el texto "[titulo] contenido", leyendo el campo del objeto
+     * y leyendo id y prioridad de la forma binaria sin decodificarla.
+     */
+    static void medirNotificacionEstructurada() {
+        System.out.println("\n=== Notificacion estructurada (1.000.000 consumos) ===");
+        final int total = 1_000_000;
+        Notificacion[] notificaciones = new Notificacion[1024];
+        ByteBuffer[] binarios = new ByteBuffer[notificaciones.length];
+        for (int i = 0; i < notificaciones.length; i++) {
+            notificaciones[i] = new Notificacion(i + 1, "Curso " + (i % 16), "Cambio de aula para la seccion " + i,
+                                                 System.currentTimeMillis(), PrioridadNotificacion.values()[i % 3],
+                                                 Audiencia.curso("Curso " + (i % 16)));
+            binarios[i] = ByteBuffer.wrap(notificaciones[i].serializar());
+        }
+        for (int ronda = 0; ronda < 3; ronda++) {
+            long inicio = System.nanoTime();
+            long coincidencias = 0;
+            for (int i = 0; i < total; i++) {
+                String texto = notificaciones[i & 1023].comoTexto();
+                String titulo = texto.substring(1, texto.indexOf(']'));
+                if (titulo.equals("Curso 3")) {
+                    coincidencias++;
+                }
+            }
+            long conTexto = System.nanoTime() - inicio;
+            inicio = System.nanoTime();
+            long coincidenciasCampo = 0;
+            for (int i = 0; i < total; i++) {
+                if (notificaciones[i & 1023].obtenerTitulo().equals("Curso 3")) {
+                    coincidenciasCampo++;
+                }
+            }
+            long conCampo = System.nanoTime() - inicio;
+            inicio = System.nanoTime();
+            long altas = 0;
+            for (int i = 0; i < total; i++) {
+                VistaNotificacion vista = new VistaNotificacion(binarios[i & 1023]);
+                if (vista.obtenerPrioridad() == PrioridadNotificacion.ALTA && vista.obtenerId() > 0) {
+                    altas++;
+                }
+            }
+            long conVista = System.nanoTime() - inicio;
+            inicio = System.nanoTime();
+            long bytes = 0;
+            for (int i = 0; i < total; i++) {
+                Notificacion copia = notificaciones[i & 1023].sellar(i + 1, null);
+                bytes += copia.serializar().length;
+                Notificacion.deserializar(ByteBuffer.wrap(copia.serializar()));
+            }
+            long idaVuelta = System.nanoTime() - inicio;
+            System.out.printf("ronda %d: titulo desde texto %,d ms (%d), desde campo %,d ms (%d), " +
+                              "prioridad desde binario %,d ms (%d), serializar+leer %,d ms (%,d bytes)%n",
+                              ronda + 1, TimeUnit.NANOSECONDS.toMillis(conTexto), coincidencias,
+                              TimeUnit.NANOSECONDS.toMillis(conCampo), coincidenciasCampo,
+                              TimeUnit.NANOSECONDS.toMillis(conVista), altas,
+                              TimeUnit.NANOSECONDS.toMillis(idaVuelta), bytes);
+        }
+    }
+    
+    /**
+     * Avalancha de 20.000 avisos BAJA hacia 4 observadores que tardan 100us
+     * por mensaje, con un aviso de mantenimiento cada 5ms, primero todo en
+     * el mismo carril y luego con el mantenimiento en prioridad ALTA. La
+     * latencia de los avisos urgentes se mide de extremo a extremo.
+     */
+    static void medirPrioridades() {
+        System.out.println("\n=== Carriles de prioridad (20.000 BAJA + avisos urgentes cada 5ms) ===");
+        for (PrioridadNotificacion urgente : new PrioridadNotificacion[] {PrioridadNotificacion.BAJA,
+                                                                          PrioridadNotificacion.ALTA}) {
+            ExecutorService ejecutor = Executors.newFixedThreadPool(2);
+            SistemaNotificacionesAcademico sistema = new SistemaNotificacionesAcademico();
+            HistogramaLatencia latenciaUrgentes = new HistogramaLatencia();
+            PrintStream salida = silenciarSalida();
+            List<ObservadorCostoPorMensaje> observadores = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                ObservadorCostoPorMensaje observador = new ObservadorCostoPorMensaje("obs-" + i, 100, latenciaUrgentes);
+                observadores.add(observador);
+                sistema.registrarObservador(observador);
+            }
+            sistema.habilitarEntregaAsincrona(ejecutor);
+            List<CompletableFuture<Void>> manejadores = new ArrayList<>();
+            long siguienteUrgente = System.nanoTime();
+            int urgentes = 0;
+            for (int i = 0; i < 20_000; i++) {
+                manejadores.add(sistema.publicarNotificacion("Foro " + i, "Nuevo comentario", PrioridadNotificacion.BAJA));
+                if (System.nanoTime() >= siguienteUrgente && urgentes < 100) {
+                    manejadores.add(sistema.publicarNotificacion("Mantenimiento del Sistema",
+                                                                 Long.toString(System.nanoTime()), urgente));
+                    urgentes++;
+                    siguienteUrgente += TimeUnit.MILLISECONDS.toNanos(5);
+                }
+                if (i % 200 == 0) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                }
+            }
+            for (CompletableFuture<Void> manejador : manejadores) {
+                manejador.join();
+            }
+            restaurarSalida(salida);
+            ejecutor.shutdown();
+            System.out.println((urgente == PrioridadNotificacion.BAJA ? "un solo carril" : "carril ALTA")
+                               + ", avisos urgentes: " + latenciaUrgentes.resumir("urgentes (" + urgentes + ")"));
+            sistema.mostrarLatenciaPorPrioridad();
+        }
+    }
+    
+    /**
+     * Flota de 10.000 dispositivos (mitad televisores, mitad sistemas de
+     * sonido) en 50 edificios de 100 aulas, con 200us de red por orden y
+     * 0,1% de ordenes sin respuesta: encender todo, fijar el volumen de un
+     * edificio y cambiar la entrada de un modelo, con paralelismo 1, 64 y 256.
+     */
+    static void medirFlota() {
+        System.out.println("\n=== Flota de 10.000 dispositivos (200us por orden, 0,1% de fallos) ===");
+        PrintStream salida = silenciarSalida();
+        List<String> lineas = new ArrayList<>();
+        for (int paralelismo : new int[] {1, 64, 256}) {
+            try (FlotaDispositivos flota = new FlotaDispositivos(paralelismo)) {
+                for (int i = 0; i < 10_000; i++) {
+                    String ubicacion = "Edificio " + (i / 200) + "/Aula " + (i / 2 % 100);
+                    DispositivoMultimedia dispositivo = i % 2 == 0 ? new Televisor("Samsung") : new SistemaSonido("Bose");
+                    flota.registrar("av-" + i, ubicacion, new DispositivoRemotoSimulado(dispositivo, 200, 0.001));
+                }
+                ResultadoComandoFlota encendido = flota.encender(flota.seleccionarTodos());
+                ResultadoComandoFlota volumen = flota.modificarVolumen(flota.seleccionarPorUbicacion("Edificio 7"), 35);
+                ResultadoComandoFlota entrada = flota.seleccionarEntrada(flota.seleccionarPorModelo("Televisor Samsung"),
+                                                                         "HDMI2");
+                lineas.add("paralelismo " + paralelismo + ":");
+                for (ResultadoComandoFlota resultado : List.of(encendido, volumen, entrada)) {
+                    ResumenLatencia latencias = resultado.resumirLatencias();
+                    lineas.add(String.format("  %s (p50 %.0fus, p99 %.0fus por dispositivo)", resultado,
+                                             latencias.obtenerP50() / 1000.0, latencias.obtenerP99() / 1000.0));
+                }
+            }
+        }
+        restaurarSalida(salida);
+        lineas.forEach(System.out::println);
+    }
+    
+    /**
+     * Un control avanzado pulsando sobre un televisor remoto con 2ms por
+     * viaje: 50 rafagas de 3 cambios de entrada, 10 subidas y 4 bajadas de
+     * volumen, una pulsacion cada 200us. Se compara el envio directo con la
+     * cola de ordenes: viajes al dispositivo, bloqueo por pulsacion y tiempo
+     * hasta el estado final, que debe coincidir en ambos casos.
+     */
+    static void medirColaComandos() {
+        System.out.println("\n=== Cola de ordenes por dispositivo (2ms por viaje, pulsacion cada 200us) ===");
+        PrintStream salida = silenciarSalida();
+        List<String> lineas = new ArrayList<>();
+        ExecutorService ejecutor = Executors.newFixedThreadPool(2);
+        String[] entradas = {"HDMI2", "HDMI3", "Componente"};
+        for (boolean conCola : new boolean[] {false, true}) {
+            AtomicLong viajes = new AtomicLong();
+            DispositivoMultimedia remoto = new DispositivoRemotoSimulado(new Televisor("Samsung"), 2000, 0) {
+                @Override
+                public void modificarVolumen(int nivel) {
+                    viajes.incrementAndGet();
+                    super.modificarVolumen(nivel);
+                }
+                
+                @Override
+                public int ajustarVolumen(int delta) {
+                    viajes.incrementAndGet();
+                    return super.ajustarVolumen(delta);
+                }
+                
+                @Override
+                public void seleccionarEntrada(String entrada) {
+                    viajes.incrementAndGet();
+                    super.seleccionarEntrada(entrada);
+                }
+            };
+            remoto.activar();
+            ControlAvanzado control = new ControlAvanzado(remoto);
+            ColaComandosDispositivo cola = conCola ? control.habilitarColaComandos(ejecutor) : null;
+            HistogramaLatencia bloqueo = new HistogramaLatencia();
+            int pulsaciones = 0;
+            long inicio = System.nanoTime();
+            for (int rafaga = 0; rafaga < 50; rafaga++) {
+                for (int i = 0; i < 17; i++) {
+                    long antes = System.nanoTime();
+                    if (i < 3) {
+                        control.cambiarEntrada(entradas[(rafaga + i) % entradas.length]);
+                    } else if (i < 13) {
+                        control.aumentarVolumen();
+                    } else {
+                        control.disminuirVolumen();
+                    }
+                    bloqueo.registrar(System.nanoTime() - antes);
+                    pulsaciones++;
+                    LockSupport.parkNanos(200_000);
+                }
+            }
+            control.deshabilitarColaComandos();
+            long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+            ResumenLatencia resumen = bloqueo.resumir("bloqueo");
+            lineas.add(String.format("%-8s %,5d pulsaciones, %,5d viajes, %,6d ms hasta el estado final, "
+                                     + "bloqueo p50 %,.0fus p99 %,.0fus, volumen %d, entrada %s",
+                                     conCola ? "cola:" : "directo:", pulsaciones, viajes.get(), ms,
+                                     resumen.obtenerP50() / 1000.0, resumen.obtenerP99() / 1000.0,
+                                     remoto.obtenerVolumen(), remoto.obtenerEntrada()));
+            if (cola != null) {
+                lineas.add(String.format("         ordenes recibidas %,d, fusionadas o descartadas %,d, viajes %,d",
+                                         cola.obtenerOrdenesRecibidas(), cola.obtenerOrdenesFusionadas(),
+                                         cola.obtenerViajes()));
+            }
+        }
+        ejecutor.shutdown();
+        restaurarSalida(salida);
+        lineas.forEach(System.out::println);
+    }
+    
+    /**
+     * Costo de obtenerInstancia con 1, 4 y 16 hilos, y prueba de estres de la
+     * maquina de estados de la conexion: 8 hilos alternan al azar
+     * establecerConexion, cerrarConexion y ejecutarComando durante 2s. Sin
+     * actualizaciones perdidas, las conexiones contadas coinciden con las
+     * transiciones ganadas, aperturas y cierres difieren en el estado final,
+     * y cada comando queda contado como exito o fallo.
+     */
+    static void medirSingleton() {
+        System.out.println("\n=== Singleton GestorConexiones ===");
+        PrintStream salida = silenciarSalida();
+        List<String> lineas = new ArrayList<>();
+        for (int hilos : new int[] {1, 4, 16}) {
+            LongAdder sumidero = new LongAdder();
+            long operaciones = ejecutarConcurrente(hilos, DURACION_MS,
+                () -> sumidero.add(GestorConexiones.obtenerInstancia().hashCode() & 1));
+            lineas.add(String.format("obtenerInstancia hilos=%2d: %,14d ops/s", hilos, operaciones * 1000 / DURACION_MS));
+        }
+        
+        GestorConexiones gestor = GestorConexiones.obtenerInstancia();
+        gestor.cerrarPool();
+        gestor.habilitarMetricas(true);
+        boolean conectadoAntes = gestor.estaConectado();
+        InstantaneaMetricas antes = gestor.obtenerMetricas();
+        LongAdder aperturas = new LongAdder();
+        LongAdder cierres = new LongAdder();
+        LongAdder comandos = new LongAdder();
+        long operaciones = ejecutarConcurrente(8, DURACION_MS, () -> {
+            int eleccion = ThreadLocalRandom.current().nextInt(3);
+            if (eleccion == 0) {
+                if (gestor.establecerConexion()) {
+                    aperturas.increment();
+                }
+            } else if (eleccion == 1) {
+                if (gestor.cerrarConexion()) {
+                    cierres.increment();
+                }
+            } else {
+                gestor.ejecutarComando("SELECT * FROM Estudiantes");
+                comandos.increment();
+            }
+        });
+        boolean conectadoDespues = gestor.estaConectado();
+        InstantaneaMetricas despues = gestor.obtenerMetricas();
+        long contadas = despues.obtenerConexionesAbiertas() - antes.obtenerConexionesAbiertas();
+        long registrados = despues.obtenerComandosEjecutados() + despues.obtenerFallos()
+                           - antes.obtenerComandosEjecutados() - antes.obtenerFallos();
+        long diferencia = aperturas.sum() - cierres.sum();
+        long esperada = (conectadoDespues ? 1 : 0) - (conectadoAntes ? 1 : 0);
+        lineas.add(String.format("estres 8 hilos: %,d operaciones, %,d aperturas, %,d cierres, %,d comandos",
+                                 operaciones, aperturas.sum(), cierres.sum(), comandos.sum()));
+        lineas.add(String.format("  conexiones contadas %,d (%s), aperturas - cierres = %d (%s), comandos registrados %,d (%s)",
+                                 contadas, contadas == aperturas.sum() ? "ok" : "PERDIDAS",
+                                 diferencia, diferencia == esperada ? "ok" : "INCONSISTENTE",
+                                 registrados, registrados == comandos.sum() ? "ok" : "PERDIDOS"));
+        gestor.cerrarConexion();
+        restaurarSalida(salida);
+        lineas.forEach(System.out::println);
+    }
+    
+    /**
+     * Costo de buscar un gestor por nombre entre 64 bases frente al gestor
+     * predeterminado, y aislamiento con carga sesgada: 64 hilos saturan la
+     * base de Ingenieria mientras 2 hilos consultan Medicina, ambas con pool
+     * de 8 y 500us por viaje. Compartiendo un solo gestor, Medicina espera
+     * detras de Ingenieria; con un gestor por base conserva su latencia.
+     */
+    static void medirInquilinos() {
+        System.out.println("\n=== Gestores por base de datos ===");
+        PrintStream salida = silenciarSalida();
+        List<String> lineas = new ArrayList<>();
+        String[] nombres = new String[64];
+        for (int i = 0; i < nombres.length; i++) {
+            nombres[i] = "Facultad-" + i;
+            GestorConexiones.obtenerInstancia(nombres[i]);
+        }
+        for (int hilos : new int[] {1, 4, 16}) {
+            LongAdder sumidero = new LongAdder();
+            long predeterminado = ejecutarConcurrente(hilos, DURACION_MS,
+                () -> sumidero.add(GestorConexiones.obtenerInstancia().hashCode() & 1));
+            long porNombre = ejecutarConcurrente(hilos, DURACION_MS, () -> sumidero.add(
+                GestorConexiones.obtenerInstancia(nombres[ThreadLocalRandom.current().nextInt(nombres.length)]).hashCode() & 1));
+            lineas.add(String.format("busqueda hilos=%2d: predeterminado %,12d ops/s, por nombre %,12d ops/s",
+                                     hilos, predeterminado * 1000 / DURACION_MS, porNombre * 1000 / DURACION_MS));
+        }
+        for (String nombre : nombres) {
+            GestorConexiones.eliminarInstancia(nombre);
+        }
+        
+        for (boolean aislado : new boolean[] {false, true}) {
+            GestorConexiones ingenieria = GestorConexiones.obtenerInstancia("Ingenieria");
+            GestorConexiones medicina = aislado ? GestorConexiones.obtenerInstancia("Medicina") : ingenieria;
+            for (GestorConexiones gestor : new LinkedHashSet<>(List.of(ingenieria, medicina))) {
+                gestor.configurarPool(new BaseDatosSimulada(500), new ConfiguracionPool(1, 8, 5000, 30000, true));
+            }
+            long[] operacionesCalientes = new long[1];
+            Thread carga = new Thread(() -> operacionesCalientes[0] = ejecutarConcurrente(64, DURACION_MS,
+                () -> ingenieria.ejecutarComando("SELECT * FROM Laboratorios")));
+            carga.start();
+            HistogramaLatencia latencias = new HistogramaLatencia();
+            long operacionesFrias = ejecutarConcurrente(2, DURACION_MS, () -> {
+                long inicio = System.nanoTime();
+                medicina.ejecutarComando("SELECT * FROM Pacientes");
+                latencias.registrar(System.nanoTime() - inicio);
+            });
+            try {
+                carga.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ResumenLatencia resumen = latencias.resumir("Medicina");
+            lineas.add(String.format("%-20s Ingenieria %,7d cmd/s | Medicina %,6d cmd/s, p50 %,7.0fus, p99 %,7.0fus",
+                                     aislado ? "gestor por base:" : "gestor compartido:",
+                                     operacionesCalientes[0] * 1000 / DURACION_MS, operacionesFrias * 1000 / DURACION_MS,
+                                     resumen.obtenerP50() / 1000.0, resumen.obtenerP99() / 1000.0));
+            GestorConexiones.eliminarInstancia("Ingenieria");
+            GestorConexiones.eliminarInstancia("Medicina");
+        }
+        restaurarSalida(salida);
+        lineas.forEach(System.out::println);
+    }
+    
+    /**
+     * 16 hilos leyendo con consultar sobre un pool de 16 y 200us por viaje,
+     * sin y con tolerancia a fallos (limite 50ms, 2 reintentos, circuito
+     * con umbral 20 y ventana 200ms), en tres fases de 2s: base sana, base
+     * que cuelga el 2% de los viajes durante 1s, y caida total durante el
+     * primer segundo seguida de recuperacion.
+     */
+    static void medirToleranciaFallos() {
+        System.out.println("\n=== Tolerancia a fallos (16 hilos, pool de 16, 200us por viaje) ===");
+        PrintStream salida = silenciarSalida();
+        List<String> lineas = new ArrayList<>();
+        String[] fases = {"sana", "2% colgados 1s", "caida 1s"};
+        for (boolean tolerante : new boolean[] {false, true}) {
+            for (String fase : fases) {
+                GestorConexiones gestor = GestorConexiones.obtenerInstancia("Tolerancia");
+                BaseDatosSimulada base = new BaseDatosSimulada(200);
+                gestor.configurarPool(base, new ConfiguracionPool(16, 16, 5000, 30000, false));
+                if (tolerante) {
+                    gestor.habilitarToleranciaFallos(new ConfiguracionTolerancia(50, 2, 1, 20, 20, 200));
+                }
+                Timer recuperacion = new Timer(true);
+                if (fase.equals(fases[1])) {
+                    base.inyectarFallos(0, 0.02, 1_000_000);
+                } else if (fase.equals(fases[2])) {
+                    base.inyectarFallos(1.0, 0, 0);
+                    recuperacion.schedule(new TimerTask() {
+                        @Override
+                        public void run() {
+                            base.inyectarFallos(0, 0, 0);
+                        }
+                    }, DURACION_MS / 2);
+                }
+                HistogramaLatencia latencias = new HistogramaLatencia();
+                LongAdder exitos = new LongAdder();
+                long inicioFase = System.nanoTime();
+                long operaciones = ejecutarConcurrente(16, DURACION_MS, () -> {
+                    long inicio = System.nanoTime();
+                    if (gestor.consultar("SELECT * FROM Cursos", false) != null) {
+                        exitos.increment();
+                    }
+                    latencias.registrar(System.nanoTime() - inicio);
+                });
+                long msFase = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicioFase);
+                recuperacion.cancel();
+                ResumenLatencia resumen = latencias.resumir(fase);
+                lineas.add(String.format("%-10s %-15s %,6d llamadas, %,6d exitos, %,6d viajes, p50 %,8.0fus, p99 %,10.0fus, "
+                                         + "max %,10.0fus, fase %,5d ms",
+                                         tolerante ? "tolerante" : "directo", fase, operaciones, exitos.sum(),
+                                         base.obtenerComandosEjecutados() + base.obtenerFallosInyectados(),
+                                         resumen.obtenerP50() / 1000.0, resumen.obtenerP99() / 1000.0,
+                                         resumen.obtenerMaximo() / 1000.0, msFase));
+                if (tolerante && !fase.equals(fases[0])) {
+                    ByteArrayOutputStream informe = new ByteArrayOutputStream();
+                    PrintStream anterior = System.out;
+                    System.setOut(new PrintStream(informe, true, StandardCharsets.UTF_8));
+                    gestor.mostrarInformacion();
+                    System.setOut(anterior);
+                    for (String linea : informe.toString(StandardCharsets.UTF_8).split("\n")) {
+                        if (linea.startsWith("Circuito") || linea.startsWith("Tolerancia")) {
+                            lineas.add("           " + linea);
+                        }
+                    }
+                }
+                GestorConexiones.eliminarInstancia("Tolerancia");
+            }
+        }
+        restaurarSalida(salida);
+        lineas.forEach(System.out::println);
+    }
+    
+    /**
+     * Restauracion masiva tras un evento: 10.000 dispositivos remotos con
+     * 200us por orden y paralelismo 64. Se capturan sus instantaneas, el
+     * evento cambia volumen y entrada en 5 edificios (1.000 dispositivos) y
+     * se restaura todo, primero reenviando encendido, volumen y entrada a
+     * cada dispositivo y despues solo los campos que cambiaron.
+     */
+    static void medirInstantaneas() {
+        System.out.println("\n=== Restauracion de 10.000 dispositivos tras un evento (200us por orden) ===");
+        PrintStream salida = silenciarSalida();
+        List<String> lineas = new ArrayList<>();
+        try (FlotaDispositivos flota = new FlotaDispositivos(64)) {
+            List<DispositivoRemotoSimulado> remotos = new ArrayList<>();
+            for (int i = 0; i < 10_000; i++) {
+                String ubicacion = "Edificio " + (i / 200) + "/Aula " + (i / 2 % 100);
+                DispositivoMultimedia dispositivo = i % 2 == 0 ? new Televisor("Samsung") : new SistemaSonido("Bose");
+                DispositivoRemotoSimulado remoto = new DispositivoRemotoSimulado(dispositivo, 200, 0);
+                remotos.add(remoto);
+                flota.registrar("av-" + i, ubicacion, remoto);
+            }
+            List<DispositivoFlota> todos = flota.seleccionarTodos();
+            flota.encender(todos);
+            long inicio = System.nanoTime();
+            long[] instantaneas = flota.capturarEstado(todos);
+            long capturaMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - inicio);
+            lineas.add(String.format("captura: %,d instantaneas en %,d us (%,d bytes)",
+                                     instantaneas.length, capturaMicros, (long) instantaneas.length * Long.BYTES));
+            Map<DispositivoMultimedia, Long> porDispositivo = new IdentityHashMap<>();
+            for (int i = 0; i < instantaneas.length; i++) {
+                porDispositivo.put(todos.get(i).obtenerDispositivo(), instantaneas[i]);
+            }
+            for (boolean incremental : new boolean[] {false, true}) {
+                for (int edificio = 10; edificio < 15; edificio++) {
+                    List<DispositivoFlota> afectados = flota.seleccionarPorUbicacion("Edificio " + edificio);
+                    flota.modificarVolumen(afectados, 70);
+                    flota.seleccionarEntrada(afectados, "HDMI2");
+                }
+                long viajesAntes = remotos.stream().mapToLong(DispositivoRemotoSimulado::obtenerViajes).sum();
+                ResultadoComandoFlota resultado = incremental
+                    ? flota.restaurarEstado(todos, instantaneas)
+                    : flota.aplicar(todos, "reenviar todo", dispositivo -> {
+                          long instantanea = porDispositivo.get(dispositivo);
+                          dispositivo.activar();
+                          dispositivo.modificarVolumen(EstadoDispositivo.volumen(instantanea));
+                          dispositivo.seleccionarEntrada(EstadoDispositivo.entrada(instantanea));
+                      });
+                long viajes = remotos.stream().mapToLong(DispositivoRemotoSimulado::obtenerViajes).sum() - viajesAntes;
+                long distintos = 0;
+                for (int i = 0; i < instantaneas.length; i++) {
+                    if (!EstadoDispositivo.mismoEstado(instantaneas[i], todos.get(i).obtenerDispositivo().capturarEstado())) {
+                        distintos++;
+                    }
+                }
+                lineas.add(String.format("%-12s %,6d ordenes, %,6d ms, %d dispositivos fuera de su instantanea",
+                                         incremental ? "incremental:" : "completa:", viajes,
+                                         TimeUnit.NANOSECONDS.toMillis(resultado.obtenerDuracionNanos()), distintos));
+            }
+        }
+        restaurarSalida(salida);
+        lineas.forEach(System.out::println);
+    }
+    
+    /**
+     * Costo de las trazas en un hilo, mejor de 3 rondas alternadas de 1s
+     * por modo: ordenes de controles a dispositivos locales (comparadas
+     * tambien con llamar al dispositivo directamente) y publicaciones
+     * sincronas a 100 observadores, con trazas desactivadas, muestreando 1
+     * de cada 1024 y 1 de cada 16 tramos raiz, y muestreandolos todos. Los
+     * controles se crean de nuevo tras configurar cada modo, porque solo
+     * interponen el decorador de trazas si estas estaban activas, y una
+     * primera ronda sin medir pasa por todos los modos para que ninguno se
+     * mida antes de que el JIT haya visto controles con y sin decorador.
+     * Despues traza una carga mixta con un dispositivo remoto y un
+     * observador lento, la exporta en formato Chrome Trace Event y muestra
+     * el informe de los mas lentos.
+     */
+    static void medirTrazas() {
+        System.out.println("\n=== Trazas (1 hilo, mejor de 3 rondas de 1s) ===");
+        PrintStream salida = silenciarSalida();
+        List<String> lineas = new ArrayList<>();
+        DispositivoMultimedia[] dispositivos = {new Televisor("Samsung"), new SistemaSonido("Bose")};
+        ControlUniversal[] controles = new ControlUniversal[2];
+        crearControles(dispositivos, controles);
+        int[] contador = new int[1];
+        Runnable directo = () -> {
+            int i = contador[0]++;
+            DispositivoMultimedia dispositivo = dispositivos[i & 1];
+            if ((i & 2) == 0) {
+                dispositivo.ajustarVolumen((i & 4) == 0 ? 10 : -10);
+            } else {
+                dispositivo.seleccionarEntrada((i & 4) == 0 ? "HDMI1" : "HDMI2");
+            }
+        };
+        Runnable conControl = () -> {
+            int i = contador[0]++;
+            ControlUniversal control = controles[i & 1];
+            if ((i & 2) == 0) {
+                if ((i & 4) == 0) {
+                    control.aumentarVolumen();
+                } else {
+                    control.disminuirVolumen();
+                }
+            } else {
+                control.cambiarEntrada((i & 4) == 0 ? "HDMI1" : "HDMI2");
+            }
+        };
+        SistemaNotificacionesAcademico sistema = new SistemaNotificacionesAcademico();
+        for (int i = 0; i < 100; i++) {
+            sistema.registrarObservador(new ObservadorMedicion("obs-" + i, 0, false));
+        }
+        Runnable publicacion = () -> sistema.publicarNotificacion("Cambio de Horario", "La clase se traslada al aula 12");
+        
+        ejecutarConcurrente(1, DURACION_MS, conControl);
+        ejecutarConcurrente(1, DURACION_MS, publicacion);
+        long sinControl = ejecutarConcurrente(1, DURACION_MS, directo);
+        lineas.add(String.format("%-28s %,12d ordenes/s", "dispositivo sin control:", sinControl * 1000 / DURACION_MS));
+        String[] modos = {"desactivadas", "muestreo 1/1024", "muestreo 1/16", "muestreo 1/1"};
+        int[] intervalos = {0, 1024, 16, 1};
+        long[] ordenes = new long[modos.length];
+        long[] publicaciones = new long[modos.length];
+        for (int ronda = 0; ronda <= 3; ronda++) {
+            for (int modo = 0; modo < modos.length; modo++) {
+                if (intervalos[modo] == 0) {
+                    Trazas.desactivar();
+                } else {
+                    Trazas.configurar(intervalos[modo], 1 << 16);
+                }
+                crearControles(dispositivos, controles);
+                long ordenesRonda = ejecutarConcurrente(1, DURACION_MS / 2, conControl);
+                long publicacionesRonda = ejecutarConcurrente(1, DURACION_MS / 2, publicacion);
+                if (ronda > 0) {
+                    ordenes[modo] = Math.max(ordenes[modo], ordenesRonda);
+                    publicaciones[modo] = Math.max(publicaciones[modo], publicacionesRonda);
+                }
+            }
+        }
+        for (int modo = 0; modo < modos.length; modo++) {
+            lineas.add(String.format("%-28s %,12d ordenes/s (%+5.1f%%) %,10d publicaciones/s (%+5.1f%%)",
+                                     "control, " + modos[modo] + ":", ordenes[modo] * 2000 / DURACION_MS,
+                                     100.0 * (ordenes[modo] - ordenes[0]) / ordenes[0],
+                                     publicaciones[modo] * 2000 / DURACION_MS,
+                                     100.0 * (publicaciones[modo] - publicaciones[0]) / publicaciones[0]));
+        }
+        
+        Trazas.configurar(1, 1 << 16);
+        ControlAvanzado remoto = new ControlAvanzado(new DispositivoRemotoSimulado(new Televisor("LG"), 200, 0));
+        remoto.encender();
+        SistemaNotificacionesAcademico campus = new SistemaNotificacionesAcademico();
+        for (int i = 0; i < 20; i++) {
+            campus.registrarObservador(new ObservadorMedicion("obs-" + i, i == 7 ? 500 : i == 13 ? 100 : 0, false));
+        }
+        for (int i = 0; i < 500; i++) {
+            campus.publicarNotificacion("Aviso " + i, "Contenido " + i);
+            if (i % 10 == 0) {
+                remoto.aumentarVolumen();
+                remoto.cambiarEntrada(i % 20 == 0 ? "HDMI2" : "USB");
+            }
+        }
+        RecolectorTrazas recolector = Trazas.obtenerRecolector();
+        ByteArrayOutputStream informe = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(informe, true, StandardCharsets.UTF_8));
+        recolector.mostrarInforme(3);
+        try {
+            Path archivo = Files.createTempFile("trazas", ".json");
+            int eventos = recolector.exportar(archivo);
+            lineas.add(String.format("exportados %,d tramos a %s (%,d bytes)", eventos, archivo, Files.size(archivo)));
+        } catch (IOException e) {
+            lineas.add("No se pudo exportar: " + e.getMessage());
+        }
+        Trazas.desactivar();
+        restaurarSalida(salida);
+        lineas.forEach(System.out::println);
+        System.out.print(informe.toString(StandardCharsets.UTF_8));
+    }
+    
+    private static void crearControles(DispositivoMultimedia[] dispositivos, ControlUniversal[] controles) {
+        controles[0] = new ControlBasico(dispositivos[0]);
+        controles[1] = new ControlAvanzado(dispositivos[1]);
+        for (ControlUniversal control : controles) {
+            control.encender();
+        }
+    }
+    
+    /**
+     * 4 hilos manejando el mismo televisor durante 2s, cada uno sumando 1 y
+     * restando 1 al volumen desde 50: con lectura y escritura separadas
+     * (obtenerVolumen + modificarVolumen, como hacian los controles) y con
+     * ajustarVolumen atomico. Sin actualizaciones perdidas el volumen final
+     * vuelve a 50. Despues, 4 hilos leyendo mientras uno escribe.
+     */
+    static void medirEstadoDispositivos() {
+        System.out.println("\n=== Estado de dispositivo compartido (4 hilos, 2s) ===");
+        PrintStream salida = silenciarSalida();
+        String[] variantes = {"leer y escribir", "ajustarVolumen"};
+        long[] operaciones = new long[variantes.length];
+        int[] finales = new int[variantes.length];
+        for (int variante = 0; variante < variantes.length; variante++) {
+            Televisor televisor = new Televisor("Samsung");
+            televisor.activar();
+            televisor.modificarVolumen(50);
+            boolean atomico = variante == 1;
+            operaciones[variante] = ejecutarConcurrente(4, DURACION_MS, () -> {
+                if (atomico) {
+                    televisor.ajustarVolumen(1);
+                    televisor.ajustarVolumen(-1);
+                } else {
+                    televisor.modificarVolumen(televisor.obtenerVolumen() + 1);
+                    televisor.modificarVolumen(televisor.obtenerVolumen() - 1);
+                }
+            });
+            finales[variante] = televisor.obtenerVolumen();
+        }
+        Televisor compartido = new Televisor("LG");
+        compartido.activar();
+        AtomicBoolean escribiendo = new AtomicBoolean(true);
+        Thread escritor = new Thread(() -> {
+            int i = 0;
+            while (escribiendo.get()) {
+                compartido.ajustarVolumen((i++ & 1) == 0 ? 3 : -3);
+            }
+        });
+        escritor.start();
+        long lecturas = ejecutarConcurrente(4, DURACION_MS, () -> {
+            if (!compartido.estaActivo() || compartido.obtenerVolumen() > 100) {
+                throw new IllegalStateException("estado inconsistente");
+            }
+        });
+        escribiendo.set(false);
+        try {
+            escritor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        restaurarSalida(salida);
+        for (int variante = 0; variante < variantes.length; variante++) {
+            System.out.printf("%-16s %,12d pares +1/-1 por segundo, volumen final %d (esperado 50)%n",
+                              variantes[variante] + ":", operaciones[variante] * 1000 / DURACION_MS, finales[variante]);
+        }
+        System.out.printf("lecturas con un escritor: %,d/s%n", lecturas * 1000 / DURACION_MS);
+    }
+    
+    /**
+     * 4 hilos ajustando el volumen y la entrada de su propio televisor
+     * durante 2s, con la salida hacia /dev/null vaciada en cada linea como
+     * una consola: escritura sincrona, asincrona en lotes, nivel ADVERTENCIA
+     * (los eventos INFORMACION ni se construyen) y modo nulo.
+     */
+    static void medirRegistroEventos() {
+        System.out.println("\n=== Registro de eventos (4 hilos, 2s) ===");
+        PrintStream original = System.out;
+        PrintStream consola;
+        try {
+            consola = new PrintStream(new BufferedOutputStream(new FileOutputStream("/dev/null")), true);
+        } catch (FileNotFoundException e) {
+            System.out.println("No se pudo abrir /dev/null: " + e.getMessage());
+            return;
+        }
+        ThreadLocal<Televisor> televisores = ThreadLocal.withInitial(() -> {
+            Televisor televisor = new Televisor("Samsung");
+            televisor.activar();
+            return televisor;
+        });
+        AtomicInteger contador = new AtomicInteger();
+        Runnable operacion = () -> {
+            Televisor televisor = televisores.get();
+            int i = contador.incrementAndGet();
+            televisor.modificarVolumen(i % 100);
+            televisor.seleccionarEntrada((i & 1) == 0 ? "HDMI1" : "HDMI2");
+        };
+        DestinoRegistro destinoOriginal = Registro.obtenerDestino();
+        NivelRegistro nivelOriginal = Registro.obtenerNivel();
+        String[] variantes = {"consola sincrona", "asincrono (64K)", "nivel ADVERTENCIA", "modo nulo"};
+        for (int variante = 0; variante < variantes.length; variante++) {
+            DestinoAsincrono asincrono = null;
+            System.setOut(consola);
+            switch (variante) {
+                case 0:
+                    Registro.configurar(DestinoConsola.INSTANCIA, NivelRegistro.INFORMACION);
+                    break;
+                case 1:
+                    asincrono = new DestinoAsincrono(DestinoConsola.INSTANCIA, 1 << 16, PoliticaDesbordamiento.BLOQUEAR);
+                    Registro.configurar(asincrono, NivelRegistro.INFORMACION);
+                    break;
+                case 2:
+                    Registro.configurar(DestinoConsola.INSTANCIA, NivelRegistro.ADVERTENCIA);
+                    break;
+                default:
+                    Registro.silenciar();
+            }
+            long inicio = System.nanoTime();
+            long operaciones = ejecutarConcurrente(4, DURACION_MS, operacion);
+            Registro.obtenerDestino().vaciar();
+            long transcurrido = System.nanoTime() - inicio;
+            if (asincrono != null) {
+                asincrono.close();
+            }
+            System.setOut(original);
+            System.out.printf("%-20s %,12d operaciones/s%n", variantes[variante] + ":",
+                              operaciones * 1_000_000_000L / transcurrido);
+        }
+        Registro.configurar(destinoOriginal, nivelOriginal);
+        consola.close();
+    }
+    
+    /**
+     * Observador que paga su costo por cada mensaje del lote y mide la
+     * latencia de los avisos de mantenimiento, cuyo contenido es el
+     * System.nanoTime() de su publicacion.
+     */
+    static class ObservadorCostoPorMensaje implements ObservadorNotificacion {
+        private final String identificador;
+        private final long costoMicros;
+        private final HistogramaLatencia latenciaUrgentes;
+        
+        ObservadorCostoPorMensaje(String identificador, long costoMicros, HistogramaLatencia latenciaUrgentes) {
+            this.identificador = identificador;
+            this.costoMicros = costoMicros;
+            this.latenciaUrgentes = latenciaUrgentes;
+        }
+        
+        @Override
+        public void recibirActualizacion(String mensaje) {
+            throw new UnsupportedOperationException("Solo recibe notificaciones estructuradas");
+        }
+        
+        @Override
+        public void recibirNotificacion(Notificacion notificacion) {
+            recibirLoteNotificaciones(Collections.singletonList(notificacion));
+        }
+        
+        @Override
+        public void recibirLoteNotificaciones(List<Notificacion> notificaciones) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(costoMicros * notificaciones.size()));
+            long ahora = System.nanoTime();
+            for (Notificacion notificacion : notificaciones) {
+                if (notificacion.obtenerTitulo().equals("Mantenimiento del Sistema")) {
+                    latenciaUrgentes.registrar(ahora - Long.parseLong(notificacion.obtenerContenido()));
+                }
+            }
+        }
+        
+        @Override
+        public String obtenerIdentificador() {
+            return identificador;
+        }
+    }
+    
+    private static long memoriaUsada() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    
+    private static void reportarMemoria(String variante, long bytes, long nanos) {
+        System.out.printf("%-36s %,6d MB retenidos, %,d ms para 50M entregas%n",
+                          variante + ":", bytes >> 20, TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+    
+    private static DestinoRegistro destinoPrevio = DestinoConsola.INSTANCIA;
+    private static NivelRegistro nivelPrevio = NivelRegistro.INFORMACION;
+    
+    /**
+     * Pone el registro en modo nulo y redirige System.out a un flujo nulo
+     * durante una medicion.
+     */
+    static PrintStream silenciarSalida() {
+        destinoPrevio = Registro.obtenerDestino();
+        nivelPrevio = Registro.obtenerNivel();
+        Registro.silenciar();
+        PrintStream original = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return original;
+    }
+    
+    static void restaurarSalida(PrintStream original) {
+        System.setOut(original);
+        Registro.configurar(destinoPrevio, nivelPrevio);
+    }
+    
+    private static void reportarDuracion(String escenario, long inicioNanos) {
+        long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicioNanos);
+        System.out.printf("%-32s %,8d ms%n", escenario + ":", ms);
+    }
+    
+    /**
+     * Observador de medicion: cuenta mensajes y puede simular lentitud o fallos.
+     */
+    static class ObservadorMedicion implements ObservadorNotificacion {
+        private final String identificador;
+        private final long demoraMicros;
+        private final boolean falla;
+        private final Set<String> temas;
+        private final AtomicLong recibidos = new AtomicLong();
+        private final AtomicLong invocaciones = new AtomicLong();
+        
+        ObservadorMedicion(String identificador, long demoraMicros, boolean falla) {
+            this(identificador, demoraMicros, falla, Collections.emptySet());
+        }
+        
+        /**
+         * La demora se paga una vez por invocacion, como el viaje a un servicio externo.
+         */
+        ObservadorMedicion(String identificador, long demoraMicros, boolean falla, Set<String> temas) {
+            this.identificador = identificador;
+            this.demoraMicros = demoraMicros;
+            this.falla = falla;
+            this.temas = temas;
+        }
+        
+        @Override
+        public Set<String> obtenerTemas() {
+            return temas;
+        }
+        
+        @Override
+        public void recibirActualizacion(String mensaje) {
+            recibirLote(Collections.singletonList(mensaje));
+        }
+        
+        @Override
+        public void recibirLote(List<String> mensajes) {
+            invocaciones.incrementAndGet();
+            if (demoraMicros > 0) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(demoraMicros));
+            }
+            recibidos.addAndGet(mensajes.size());
+            if (falla) {
+                throw new IllegalStateException("fallo simulado");
+            }
+        }
+        
+        long obtenerInvocaciones() {
+            return invocaciones.get();
+        }
+        
+        @Override
+        public String obtenerIdentificador() {
+            return identificador;
+        }
+        
+        long obtenerRecibidos() {
+            return recibidos.get();
+        }
+        
+        void esperar(long cantidad) {
+            while (recibidos.get() < cantidad) {
+                Thread.onSpinWait();
+                Thread.yield();
+            }
+        }
+    }
+    
+    /**
+     * Ejecuta la operacion en bucle desde varios hilos durante el tiempo
+     * indicado y devuelve el total de operaciones completadas.
+     */
+    static long ejecutarConcurrente(int hilos, long duracionMs, Runnable operacion) {
+        LongAdder total = new LongAdder();
+        CountDownLatch inicio = new CountDownLatch(1);
+        AtomicBoolean activo = new AtomicBoolean(true);
+        List<Thread> trabajadores = new ArrayList<>();
+        for (int i = 0; i < hilos; i++) {
+            Thread hilo = new Thread(() -> {
+                try {
+                    inicio.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (activo.get()) {
+                    operacion.run();
+                    total.increment();
+                }
+            });
+            hilo.start();
+            trabajadores.add(hilo);
+        }
+        inicio.countDown();
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(duracionMs));
+        activo.set(false);
+        for (Thread hilo : trabajadores) {
+            try {
+                hilo.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return total.sum();
+    }
+}
@@ -0,0 +1,223 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * Generador de carga sin interfaz: en lugar de la demostracion guiada pone
+ * a trabajar a la vez N publicadores de notificaciones, N controles remotos
+ * y N clientes de base de datos durante un tiempo fijo, con observadores
+ * reales (estudiantes, profesores y administrativos) y entrega asincrona.
+ * Informa el rendimiento de cada intervalo y, al final, el total y los
+ * percentiles de latencia por componente. Se ejecuta con:
+ * java -cp out GeneradorCarga [clave=valor ...]
+ *
+ * Opciones (valor por omision): duracion=30 s, intervalo=5 s,
+ * publicadores=2, controladores=2, clientes=4, observadores=10000,
+ * cursos=20, hilosEntrega=numero de procesadores, cola=1024,
+ * conexiones=8, latenciaBd=100 us, registro=nulo|asincrono|consola.
+ */
+class GeneradorCarga {
+    private final Map<String, String> opciones;
+    private final HistogramaLatencia latenciaPublicacion = new HistogramaLatencia();
+    private final HistogramaLatencia latenciaControles = new HistogramaLatencia();
+    private final HistogramaLatencia latenciaComandos = new HistogramaLatencia();
+    private final LongAdder publicaciones = new LongAdder();
+    private final LongAdder operacionesControl = new LongAdder();
+    private final LongAdder comandos = new LongAdder();
+    private final LongAdder errores = new LongAdder();
+    private final AtomicBoolean activo = new AtomicBoolean(true);
+    
+    GeneradorCarga(Map<String, String> opciones) {
+        this.opciones = opciones;
+    }
+    
+    public static void main(String[] args) {
+        Map<String, String> opciones = new HashMap<>();
+        for (String argumento : args) {
+            int igual = argumento.indexOf('=');
+            if (igual <= 0) {
+                System.out.println("Opcion ignorada (se espera clave=valor): " + argumento);
+                continue;
+            }
+            opciones.put(argumento.substring(0, igual), argumento.substring(igual + 1));
+        }
+        new GeneradorCarga(opciones).ejecutar();
+    }
+    
+    private int entero(String clave, int porOmision) {
+        String valor = opciones.get(clave);
+        return valor == null ? porOmision : Integer.parseInt(valor);
+    }
+    
+    public void ejecutar() {
+        int duracion = entero("duracion", 30);
+        int intervalo = Math.max(1, entero("intervalo", 5));
+        int publicadores = entero("publicadores", 2);
+        int controladores = entero("controladores", 2);
+        int clientes = entero("clientes", 4);
+        int observadores = entero("observadores", 10_000);
+        int cursos = Math.max(1, entero("cursos", 20));
+        int hilosEntrega = entero("hilosEntrega", Runtime.getRuntime().availableProcessors());
+        
+        DestinoRegistro destinoOriginal = Registro.obtenerDestino();
+        NivelRegistro nivelOriginal = Registro.obtenerNivel();
+        DestinoAsincrono asincrono = null;
+        String registro = opciones.getOrDefault("registro", "nulo");
+        if (registro.equals("asincrono")) {
+            asincrono = new DestinoAsincrono(DestinoConsola.INSTANCIA, 1 << 16, PoliticaDesbordamiento.DESCARTAR_NUEVO);
+            Registro.configurar(asincrono, NivelRegistro.INFORMACION);
+        } else if (!registro.equals("consola")) {
+            Registro.silenciar();
+        }
+        
+        GestorConexiones gestor = GestorConexiones.obtenerInstancia();
+        gestor.configurarPool(new BaseDatosSimulada(entero("latenciaBd", 100)),
+                              new ConfiguracionPool(1, entero("conexiones", 8), 5000, 30000, false));
+        SistemaNotificacionesAcademico sistema = new SistemaNotificacionesAcademico();
+        for (int i = 0; i < observadores; i++) {
+            int tipo = i % 50;
+            if (tipo == 0) {
+                sistema.registrarObservador(new Administrativo("Admin " + i, "Registro"));
+            } else if (tipo < 5) {
+                sistema.registrarObservador(new Profesor("Profesor " + i, "Departamento " + (i % 5)));
+            } else {
+                sistema.registrarObservador(new Estudiante("Estudiante " + i, "M" + i, "Curso " + (i % cursos)));
+            }
+        }
+        ExecutorService ejecutor = Executors.newFixedThreadPool(Math.max(1, hilosEntrega));
+        sistema.habilitarEntregaAsincrona(ejecutor, entero("cola", 1024), PoliticaDesbordamiento.BLOQUEAR);
+        
+        System.out.printf("Carga: %d s, %d publicadores, %d controladores, %d clientes BD, %,d observadores, " +
+                          "%d hilos de entrega, registro %s%n", duracion, publicadores, controladores, clientes,
+                          observadores, hilosEntrega, registro);
+        List<Thread> trabajadores = new ArrayList<>();
+        for (int i = 0; i < publicadores; i++) {
+            trabajadores.add(iniciar("publicador-" + i, () -> publicar(sistema, cursos)));
+        }
+        for (int i = 0; i < controladores; i++) {
+            trabajadores.add(iniciar("controlador-" + i, this::controlar));
+        }
+        for (int i = 0; i < clientes; i++) {
+            trabajadores.add(iniciar("cliente-bd-" + i, () -> consultar(gestor)));
+        }
+        
+        long inicio = System.nanoTime();
+        long[] anteriores = new long[3];
+        for (int segundo = intervalo; segundo <= duracion; segundo += intervalo) {
+            LockSupport.parkNanos(inicio + TimeUnit.SECONDS.toNanos(segundo) - System.nanoTime());
+            long[] actuales = {publicaciones.sum(), operacionesControl.sum(), comandos.sum()};
+            System.out.printf("t=%4ds publicaciones %,9d/s  controles %,11d/s  comandos %,9d/s  errores %,d%n",
+                              segundo, (actuales[0] - anteriores[0]) / intervalo,
+                              (actuales[1] - anteriores[1]) / intervalo, (actuales[2] - anteriores[2]) / intervalo,
+                              errores.sum());
+            anteriores = actuales;
+        }
+        LockSupport.parkNanos(inicio + TimeUnit.SECONDS.toNanos(duracion) - System.nanoTime());
+        activo.set(false);
+        for (Thread trabajador : trabajadores) {
+            try {
+                trabajador.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        ejecutor.shutdown();
+        try {
+            ejecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        gestor.cerrarPool();
+        if (asincrono != null) {
+            asincrono.close();
+        }
+        Registro.configurar(destinoOriginal, nivelOriginal);
+        
+        System.out.printf("%nTotal en %.1f s: %,d publicaciones (%,.0f/s), %,d operaciones de control (%,.0f/s), " +
+                          "%,d comandos (%,.0f/s), %,d errores%n", segundos,
+                          publicaciones.sum(), publicaciones.sum() / segundos,
+                          operacionesControl.sum(), operacionesControl.sum() / segundos,
+                          comandos.sum(), comandos.sum() / segundos, errores.sum());
+        System.out.println("  " + latenciaPublicacion.resumir("publicar (llamada)"));
+        for (PrioridadNotificacion prioridad : PrioridadNotificacion.values()) {
+            ResumenLatencia entrega = sistema.obtenerLatencia(prioridad);
+            if (entrega.obtenerCantidad() > 0) {
+                System.out.println("  entrega " + entrega);
+            }
+        }
+        System.out.println("  " + latenciaControles.resumir("control remoto"));
+        System.out.println("  " + latenciaComandos.resumir("comando BD"));
+    }
+    
+    private Thread iniciar(String nombre, Runnable ciclo) {
+        Thread hilo = new Thread(() -> {
+            while (activo.get()) {
+                try {
+                    ciclo.run();
+                } catch (RuntimeException e) {
+                    errores.increment();
+                }
+            }
+        }, nombre);
+        hilo.start();
+        return hilo;
+    }
+    
+    /**
+     * Un aviso por curso al azar; uno de cada 100 se difunde a todos los
+     * estudiantes y uno de cada 1.000 es urgente.
+     */
+    private void publicar(SistemaNotificacionesAcademico sistema, int cursos) {
+        ThreadLocalRandom azar = ThreadLocalRandom.current();
+        int sorteo = azar.nextInt(1000);
+        PrioridadNotificacion prioridad = sorteo == 0 ? PrioridadNotificacion.ALTA : PrioridadNotificacion.NORMAL;
+        String tema = sorteo < 10 ? Audiencia.ESTUDIANTES : Audiencia.curso("Curso " + azar.nextInt(cursos));
+        long inicio = System.nanoTime();
+        sistema.publicarNotificacion("Aviso " + sorteo, "Contenido de carga", prioridad, tema);
+        latenciaPublicacion.registrar(System.nanoTime() - inicio);
+        publicaciones.increment();
+    }
+    
+    /**
+     * Cada hilo controla su propio televisor y sistema de sonido.
+     */
+    private void controlar() {
+        ControlUniversal[] controles = {
+            new ControlBasico(new Televisor("Samsung")),
+            new ControlAvanzado(new SistemaSonido("Bose"))
+        };
+        for (ControlUniversal control : controles) {
+            control.encender();
+        }
+        int i = 0;
+        while (activo.get()) {
+            ControlUniversal control = controles[i & 1];
+            long inicio = System.nanoTime();
+            switch ((i >>> 1) % 3) {
+                case 0:
+                    control.aumentarVolumen();
+                    break;
+                case 1:
+                    control.disminuirVolumen();
+                    break;
+                default:
+                    control.cambiarEntrada((i & 2) == 0 ? "HDMI1" : "HDMI2");
+            }
+            latenciaControles.registrar(System.nanoTime() - inicio);
+            operacionesControl.increment();
+            i++;
+        }
+    }
+    
+    private void consultar(GestorConexiones gestor) {
+        int id = ThreadLocalRandom.current().nextInt(1000);
+        String comando = id % 5 == 0 ? "UPDATE Calificaciones SET nota = 9.5 WHERE id = " + id
+                                     : "SELECT * FROM Estudiantes WHERE id = " + id;
+        long inicio = System.nanoTime();
+        gestor.ejecutarComando(comando);
+        latenciaComandos.registrar(System.nanoTime() - inicio);
+        comandos.increment();
+    }
+}
@@ -0,0 +1,149 @@
+import java.util.function.*;
+
+/**
+ * Microbenchmarks de los caminos de Singleton, Bridge y Observer, con y sin
+ * trazas, para detectar regresiones. Se ejecuta con:
+ * java -cp out MicrobenchmarksPatrones [filtro] [calentamiento] [mediciones] [ms por iteracion]
+ * El registro de eventos queda en modo nulo durante las mediciones.
+ */
+class MicrobenchmarksPatrones {
+    
+    public static void main(String[] args) {
+        String filtro = args.length > 0 ? args[0] : "";
+        ArnesMicrobenchmark arnes = new ArnesMicrobenchmark(args.length > 1 ? Integer.parseInt(args[1]) : 3,
+                                                            args.length > 2 ? Integer.parseInt(args[2]) : 5,
+                                                            args.length > 3 ? Long.parseLong(args[3]) : 1000);
+        DestinoRegistro destino = Registro.obtenerDestino();
+        NivelRegistro nivel = Registro.obtenerNivel();
+        Registro.silenciar();
+        System.out.printf("%-36s %3s %16s    %14s %6s %10s%n", "Benchmark", "Hil", "Rendimiento", "Error", "", "Asignacion");
+        try {
+            for (int hilos : new int[] {1, 4}) {
+                ejecutar(arnes, filtro, "singleton.obtenerInstancia", hilos,
+                         () -> () -> GestorConexiones.obtenerInstancia().hashCode());
+            }
+            GestorConexiones gestor = GestorConexiones.obtenerInstancia();
+            gestor.establecerConexion();
+            for (int hilos : new int[] {1, 4}) {
+                ejecutar(arnes, filtro, "singleton.ejecutarComando", hilos, () -> () -> {
+                    gestor.ejecutarComando("SELECT * FROM Estudiantes WHERE id = 7");
+                    return 1;
+                });
+            }
+            ejecutar(arnes, filtro, "bridge.controlUniversal", 1, MicrobenchmarksPatrones::operacionesControl);
+            ejecutarConTrazas(arnes, filtro, "bridge.controlUniversal.trazas1024", 1, MicrobenchmarksPatrones::operacionesControl);
+            ejecutar(arnes, filtro, "bridge.guardarYRestaurar", 1, () -> {
+                ControlAvanzado control = new ControlAvanzado(new Televisor("Samsung"));
+                control.encender();
+                int[] contador = new int[1];
+                return () -> {
+                    control.cambiarEntrada((contador[0]++ & 1) == 0 ? "HDMI2" : "USB");
+                    control.restaurarConfiguracion();
+                    return control.dispositivo.capturarEstado();
+                };
+            });
+            for (int observadores : new int[] {10, 1_000, 100_000}) {
+                String nombre = "observer.publicarNotificacion." + observadores;
+                if ((nombre + ".trazas1024").contains(filtro)) {
+                    SistemaNotificacionesAcademico sistema = new SistemaNotificacionesAcademico();
+                    for (int i = 0; i < observadores; i++) {
+                        sistema.registrarObservador(new ObservadorContador("obs-" + i));
+                    }
+                    ejecutar(arnes, filtro, nombre, 1, () -> () -> {
+                        sistema.publicarNotificacion("Cambio de Horario", "La clase se traslada al aula 12");
+                        return sistema.contarObservadores();
+                    });
+                    ejecutarConTrazas(arnes, filtro, nombre + ".trazas1024", 1, () -> () -> {
+                        sistema.publicarNotificacion("Cambio de Horario", "La clase se traslada al aula 12");
+                        return sistema.contarObservadores();
+                    });
+                }
+            }
+        } finally {
+            Registro.configurar(destino, nivel);
+        }
+    }
+    
+    private static void ejecutar(ArnesMicrobenchmark arnes, String filtro, String nombre, int hilos,
+                                 Supplier<LongSupplier> fabrica) {
+        if (nombre.contains(filtro)) {
+            System.out.println(arnes.medir(nombre, hilos, fabrica));
+        }
+    }
+    
+    /**
+     * Como ejecutar, con las trazas activas muestreando 1 de cada 1024
+     * tramos raiz; el estado se crea con ellas activas, asi los controles
+     * interponen el decorador de trazas.
+     */
+    private static void ejecutarConTrazas(ArnesMicrobenchmark arnes, String filtro, String nombre, int hilos,
+                                          Supplier<LongSupplier> fabrica) {
+        if (nombre.contains(filtro)) {
+            Trazas.configurar(1024, 1 << 16);
+            try {
+                ejecutar(arnes, filtro, nombre, hilos, fabrica);
+            } finally {
+                Trazas.desactivar();
+            }
+        }
+    }
+    
+    /**
+     * Estado por hilo: los dos controles sobre los dos dispositivos, de modo
+     * que cada llamada se despacha a traves de las cuatro combinaciones.
+     */
+    private static LongSupplier operacionesControl() {
+        ControlUniversal[] controles = {
+            new ControlBasico(new Televisor("Samsung")),
+            new ControlAvanzado(new SistemaSonido("Bose")),
+            new ControlAvanzado(new Televisor("LG")),
+            new ControlBasico(new SistemaSonido("Sony"))
+        };
+        for (ControlUniversal control : controles) {
+            control.encender();
+        }
+        int[] contador = new int[1];
+        return () -> {
+            int i = contador[0]++;
+            ControlUniversal control = controles[i & 3];
+            switch ((i >>> 2) % 3) {
+                case 0:
+                    control.aumentarVolumen();
+                    break;
+                case 1:
+                    control.disminuirVolumen();
+                    break;
+                default:
+                    control.cambiarEntrada((i & 4) == 0 ? "HDMI1" : "HDMI2");
+            }
+            return control.dispositivo.obtenerVolumen();
+        };
+    }
+    
+    /**
+     * Observador minimo: solo cuenta lo recibido.
+     */
+    static class ObservadorContador implements ObservadorNotificacion {
+        private final String identificador;
+        private long recibidos;
+        
+        ObservadorContador(String identificador) {
+            this.identificador = identificador;
+        }
+        
+        @Override
+        public void recibirActualizacion(String mensaje) {
+            recibidos++;
+        }
+        
+        @Override
+        public void recibirNotificacion(Notificacion notificacion) {
+            recibidos++;
+        }
+        
+        @Override
+        public String obtenerIdentificador() {
+            return identificador;
+        }
+    }
+}
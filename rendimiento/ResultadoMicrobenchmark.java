@@ -0,0 +1,41 @@
+/**
+ * Resultado de un microbenchmark: rendimiento medio con su desviacion
+ * estandar entre iteraciones y bytes asignados por operacion
+ */
+final class ResultadoMicrobenchmark {
+    private final String nombre;
+    private final int hilos;
+    private final double media;
+    private final double desviacion;
+    private final double bytesPorOperacion;
+    
+    ResultadoMicrobenchmark(String nombre, int hilos, double[] rendimientos, double bytesPorOperacion) {
+        this.nombre = nombre;
+        this.hilos = hilos;
+        double suma = 0;
+        for (double rendimiento : rendimientos) {
+            suma += rendimiento;
+        }
+        this.media = suma / rendimientos.length;
+        double cuadrados = 0;
+        for (double rendimiento : rendimientos) {
+            cuadrados += (rendimiento - media) * (rendimiento - media);
+        }
+        this.desviacion = rendimientos.length > 1 ? Math.sqrt(cuadrados / (rendimientos.length - 1)) : 0;
+        this.bytesPorOperacion = bytesPorOperacion;
+    }
+    
+    public double obtenerMedia() {
+        return media;
+    }
+    
+    public double obtenerBytesPorOperacion() {
+        return bytesPorOperacion;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%-36s %3d %,16.0f +- %,14.0f ops/s %10.1f B/op",
+                             nombre, hilos, media, desviacion, bytesPorOperacion);
+    }
+}